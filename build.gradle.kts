@@ -193,6 +193,21 @@ tasks.register<JavaExec>("runSim") {
     }
 }
 
+// Headless batch runs with parameter sweeps. Sample invocation:
+// gradle runBatch -Pworkspace="simulations/workspaces/foo.zip" -Psweep="sweep.properties" -Poutput="batchResults"
+tasks.register<JavaExec>("runBatch") {
+    jvmArgs(simbrainJvmArgs + "-Djava.awt.headless=true")
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.simbrain.workspace.batch.BatchRunnerKt")
+    if (project.hasProperty("workspace") && project.hasProperty("sweep")) {
+        args(
+            project.property("workspace") as String,
+            project.property("sweep") as String,
+            project.findProperty("output")?.toString() ?: "batchResults"
+        )
+    }
+}
+
 tasks.withType<KotlinCompile>().configureEach {
     kotlinOptions {
         jvmTarget = "17"
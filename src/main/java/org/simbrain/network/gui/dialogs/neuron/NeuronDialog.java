@@ -96,17 +96,15 @@ public final class NeuronDialog extends StandardDialog {
     }
 
     /**
-     * Called externally when the dialog is closed, to commit any changes made.
+     * Called externally when the dialog is closed, to commit any changes made. Large selections are committed in the
+     * background.
      */
     public void commitChanges() {
-
-        neuronPropertiesPanel.commitChanges();
-
-        neuronList.forEach(n ->{
+        neuronPropertiesPanel.commitChangesInBackground(() -> neuronList.forEach(n ->{
             n.getEvents().getLabelChanged().fire("", n.getLabel());
             n.getEvents().getColorChanged().fire();
             n.getEvents().getClampChanged().fire();
-        });
+        }));
 
     }
 
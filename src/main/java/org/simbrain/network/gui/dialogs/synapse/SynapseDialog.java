@@ -157,13 +157,13 @@ public final class SynapseDialog extends StandardDialog {
     }
 
     /**
-     * Called externally when the dialog is closed, to commit any changes made.
+     * Called externally when the dialog is closed, to commit any changes made. Large selections are committed in the
+     * background.
      */
     public void commitChanges() {
-        synapseEditingPanel.commitChanges();
         // Call twice, since the display of the synapse relies on multiple field values
         // which fire separate events. Ugly solution but works.
-        synapseEditingPanel.commitChanges();
+        synapseEditingPanel.commitChangesInBackground(() -> synapseEditingPanel.commitChangesInBackground());
     }
 
     /**
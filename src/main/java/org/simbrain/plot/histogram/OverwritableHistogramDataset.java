@@ -13,25 +13,33 @@
 package org.simbrain.plot.histogram;
 
 import org.jfree.data.general.DatasetChangeEvent;
-import org.jfree.data.statistics.HistogramBin;
 import org.jfree.data.statistics.HistogramDataset;
 import org.jfree.data.statistics.HistogramType;
 import org.jfree.data.statistics.SimpleHistogramDataset;
 import org.jfree.data.xy.AbstractIntervalXYDataset;
 import org.jfree.data.xy.IntervalXYDataset;
 
+import javax.swing.Timer;
 import java.awt.*;
 import java.io.Serializable;
 import java.util.List;
 import java.util.*;
 import java.util.Map.Entry;
 
-// TODO: See if this code has been updated in the latest JFreechart
 /**
- * A modification of the JFreeChart class HistogramDataset that allows data to
- * be overridden. The main change is the addition of the method overwrriteSeries
- * I would have extended HistogramDataset but needed access to the internal
- * list.
+ * A histogram dataset whose series can be overwritten with new values, e.g. each time a coupled weight matrix or
+ * neuron group is updated.
+ * <p>
+ * All series share one set of equal width bins. Counts are computed in a single pass over the values into an int
+ * array that is reused from one update to the next; values are never sorted. By default the bin edges adapt to the
+ * data: they are only recomputed (with a small margin) when values fall outside them or the data come to occupy less
+ * than half of them, so a slowly changing distribution is usually binned in one pass. The edges can instead be fixed
+ * with {@link #setFixedRange(double, double)}, in which case values outside the range are counted in the first or
+ * last bin.
+ * <p>
+ * For very large arrays a strided sample of the values can be binned instead (see {@link #setSampleSize(int)}), with
+ * counts scaled up to the full number of values. Chart updates are fired at most once per
+ * {@link #getMinimumUpdateInterval()} milliseconds; the last update in a burst is always delivered.
  *
  * @author Jeff Yoshimi
  * @author Zoë Tosi
@@ -45,6 +53,11 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      */
     private static final long serialVersionUID = -6341668077370231153L;
 
+    /**
+     * Fraction of the data range added on either side when adaptive edges are recomputed.
+     */
+    private static final double EDGE_MARGIN = .05;
+
     /**
      * A mapping from the names of data series to the data themselves.
      */
@@ -56,9 +69,43 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
     private HistogramType type;
 
     /**
-     * A value representing the largest value range among datasets.
+     * Number of bins.
+     */
+    private int numBins;
+
+    /**
+     * Lower edge of the first bin.
+     */
+    private double lowerEdge = Double.NaN;
+
+    /**
+     * Width of each bin.
+     */
+    private double binWidth = Double.NaN;
+
+    /**
+     * If true the edges are set by {@link #setFixedRange(double, double)} and do not adapt to the data.
+     */
+    private boolean fixedRange = false;
+
+    /**
+     * Upper edge of the last bin when the range is fixed.
+     */
+    private double fixedUpper = Double.NaN;
+
+    /**
+     * Maximum number of values of each series that are binned. 0 means all values are binned.
+     */
+    private int sampleSize = 0;
+
+    /**
+     * Minimum time in milliseconds between dataset change events.
      */
-    private double maxRangeValue = Double.MIN_VALUE;
+    private long minimumUpdateInterval = 40;
+
+    private transient long lastUpdateTime;
+
+    private transient Timer pendingUpdate;
 
     /**
      * Creates a new (empty) dataset with a default type of
@@ -92,8 +139,54 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
     }
 
     /**
-     * Add new values to an existing series. Overwrites the old data. The value
-     * set will be sorted after this method completes.
+     * Fix the bin edges so the bins evenly divide the range from lower to upper. Takes effect at the next update.
+     *
+     * @param lower lower edge of the first bin
+     * @param upper upper edge of the last bin
+     */
+    public void setFixedRange(double lower, double upper) {
+        if (!(upper > lower)) {
+            throw new IllegalArgumentException("Upper bound must be greater than lower bound");
+        }
+        fixedRange = true;
+        lowerEdge = lower;
+        binWidth = numBins > 0 ? (upper - lower) / numBins : Double.NaN;
+        fixedUpper = upper;
+    }
+
+    /**
+     * Let the bin edges adapt to the data again.
+     */
+    public void clearFixedRange() {
+        fixedRange = false;
+        lowerEdge = Double.NaN;
+    }
+
+    public boolean isFixedRange() {
+        return fixedRange;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Set the maximum number of values of each series that are binned; 0 to bin all values.
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = Math.max(0, sampleSize);
+    }
+
+    public long getMinimumUpdateInterval() {
+        return minimumUpdateInterval;
+    }
+
+    public void setMinimumUpdateInterval(long minimumUpdateInterval) {
+        this.minimumUpdateInterval = Math.max(0, minimumUpdateInterval);
+    }
+
+    /**
+     * Add new values to an existing series. Overwrites the old data.
      *
      * @param key    the series key (<code>null</code> not permitted).
      * @param values the raw observations.
@@ -103,15 +196,11 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
         addSeries(key, values, bins);
     }
 
-    // NOTE: This is where the bins and ths mins and maxes are computed. It happens with calls to getRange.
-
     /**
-     * Adds a series to the dataset. Any data value less than minimum will be
-     * assigned to the first bin, and any data value greater than maximum will
-     * be assigned to the last bin. Values falling on the boundary of adjacent
-     * bins will be assigned to the higher indexed bin.
-     * <p>
-     * The values array passed to this method will be sorted upon completion.
+     * Adds a series to the dataset, or replaces the values of an existing series. Any data value less than minimum
+     * will be assigned to the first bin, and any data value greater than maximum will be assigned to the last bin.
+     * Values falling on the boundary of adjacent bins will be assigned to the higher indexed bin. The values array is
+     * not modified.
      *
      * @param key    the series key (<code>null</code> not permitted).
      * @param values the raw observations.
@@ -129,103 +218,100 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
         if (values.length == 0) {
             return;
         }
+        ColoredDataSeries series = dataMap.computeIfAbsent(key, k -> new ColoredDataSeries());
+        series.values = values;
+        binAll(bins);
+        notifyChanged();
+    }
 
-        if (dataMap.get(key) != null) {
-            HistogramBin[] original = dataMap.get(key).data;
-            double range = getRange(original);
-            if (range >= maxRangeValue - maxRangeValue / 10 && range <= maxRangeValue + maxRangeValue / 10) {
-                double newMax = Double.MIN_VALUE;
-                for (ColoredDataSeries data : dataMap.values()) {
-                    if (data.equals(dataMap.get(key))) {
-                        continue;
-                    }
-                    range = getRange(data.data);
-                    if (range > newMax) {
-                        newMax = range;
-                    }
-                }
-                maxRangeValue = newMax;
-            }
+    /**
+     * Reset the data in the data map field. Series not named are removed; the counts arrays and colors of series
+     * that remain are kept.
+     *
+     * @param names List of data series names
+     * @param data  The data
+     * @param bins  number of bins to use
+     */
+    public void resetData(List<String> names, List<double[]> data, int bins) {
+        if (names.size() != data.size()) {
+            throw new IllegalStateException("Number of names for series (" +
+                names.size() + ") does not equal the number of data series (" +
+                data.size() + ")");
         }
-        Arrays.sort(values);
-        double range = Math.abs(values[values.length - 1] - values[0]);
-        if (range > maxRangeValue) {
-            maxRangeValue = range;
+        if (bins < 1) {
+            throw new IllegalArgumentException("The 'bins' value must be at least 1.");
         }
-        HistogramBin[] histBins = new HistogramBin[0];
-        double binWidth = 0;
-        if (values.length != 0) {
-            binWidth = (maxRangeValue) / bins;
-            histBins = new HistogramBin[bins];
-            int index = 0;
-            HistogramBin bin;
-            double endVal = 0;
-            double startVal = values[0];
-            for (int i = 0; i < bins; i++) {
-                if (index < values.length) {
-                    endVal = startVal + binWidth;
-                    bin = new HistogramBin(startVal, endVal);
-                    while (index < values.length && values[index] <= endVal) {
-                        bin.incrementCount();
-                        index++;
-                    }
-                    startVal = endVal;
-                } else {
-                    bin = new HistogramBin(0, 0); // Empty bin
-                }
-                histBins[i] = bin;
+        // Rebuild the map in the order of the names, reusing existing series
+        Map<String, ColoredDataSeries> old = new HashMap<>(dataMap);
+        dataMap.clear();
+        Iterator<double[]> dataIterator = data.iterator();
+        for (String name : names) {
+            ColoredDataSeries series = old.get(name);
+            if (series == null) {
+                series = new ColoredDataSeries();
             }
+            series.values = dataIterator.next();
+            dataMap.put(name, series);
         }
-
-        ColoredDataSeries packet = new ColoredDataSeries(histBins);
-
-        dataMap.put(key, packet);
-        this.fireDatasetChanged();
+        binAll(bins);
+        notifyChanged();
     }
 
     /**
-     * Contingent on the histogram bins being sorted.
-     *
-     * @param histSet
-     * @return
-     */
-    private double getRange(HistogramBin[] histSet) {
-        int cap1 = -1;
-        int cap2 = -1;
-        for (int i = 0; i < histSet.length; i++) {
-            if (histSet[i].getCount() > 0) {
-                cap1 = i;
-                break;
+     * Count the values of every series. Counts with the current edges first; adaptive edges are only recomputed,
+     * and the values counted again, if the first pass shows they no longer fit the data.
+     */
+    private void binAll(int bins) {
+        if (bins != numBins) {
+            numBins = bins;
+            if (fixedRange) {
+                binWidth = (fixedUpper - lowerEdge) / bins;
+            } else {
+                lowerEdge = Double.NaN;
             }
         }
-        for (int i = histSet.length - 1; i >= 0; i--) {
-            if (histSet[i].getCount() > 0) {
-                cap2 = i;
-                break;
+        boolean haveEdges = !Double.isNaN(lowerEdge);
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (ColoredDataSeries series : dataMap.values()) {
+            series.count(haveEdges ? lowerEdge : 0, haveEdges ? binWidth : 1, bins, sampleSize);
+            min = Math.min(min, series.min);
+            max = Math.max(max, series.max);
+        }
+        if (fixedRange || min > max) {
+            return;
+        }
+        double upperEdge = lowerEdge + binWidth * bins;
+        if (!haveEdges || min < lowerEdge || max > upperEdge || (max - min) < (upperEdge - lowerEdge) / 2) {
+            double margin = (max - min) * EDGE_MARGIN;
+            lowerEdge = min - margin;
+            binWidth = max > min ? (max - min + 2 * margin) / bins : 1.0 / bins;
+            for (ColoredDataSeries series : dataMap.values()) {
+                series.count(lowerEdge, binWidth, bins, sampleSize);
             }
         }
-        return Math.abs(histSet[cap2].getEndBoundary() - histSet[cap1].getStartBoundary());
     }
 
     /**
-     * Reset the data in the data map field.
-     *
-     * @param names List of data series names
-     * @param data  The data
-     * @param bins  number of bins to use
+     * Fire a dataset change event, or schedule one if the last was fired less than the minimum update interval ago.
      */
-    public void resetData(List<String> names, List<double[]> data, int bins) {
-        if (names.size() != data.size()) {
-            throw new IllegalStateException("Number of names for series (" +
-                names.size() + ") does not equal the number of data series (" +
-                data.size() + ")");
-        }
-        Iterator<double[]> dataIterator = data.iterator();
-        for (String str : names) {
-            dataMap.remove(str); // NOTE: Added to code to ensure old bin counts are erased
-            addSeries(str, dataIterator.next(), bins);
+    private void notifyChanged() {
+        long now = System.currentTimeMillis();
+        long wait = lastUpdateTime + minimumUpdateInterval - now;
+        if (wait <= 0) {
+            if (pendingUpdate != null) {
+                pendingUpdate.stop();
+            }
+            lastUpdateTime = now;
+            fireDatasetChanged();
+        } else if (pendingUpdate == null || !pendingUpdate.isRunning()) {
+            pendingUpdate = new Timer((int) wait, e -> {
+                lastUpdateTime = System.currentTimeMillis();
+                fireDatasetChanged();
+            });
+            pendingUpdate.setRepeats(false);
+            pendingUpdate.start();
         }
-        dataMap.keySet().retainAll(names);
     }
 
     @Override
@@ -241,16 +327,20 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
     }
 
     /**
-     * Returns the bins for a series.
+     * Returns a series.
      *
      * @param series the series index (in the range <code>0</code> to
      *               <code>getSeriesCount() - 1</code>).
-     * @return A list of bins.
+     * @return The series.
      * @throws IndexOutOfBoundsException if <code>series</code> is outside the
      *                                   specified range.
      */
-    List<HistogramBin> getBins(int series) {
-        return Arrays.asList(dataMap.get(getSeriesKey(series)).data);
+    ColoredDataSeries getSeries(int series) {
+        ColoredDataSeries data = dataMap.get(getSeriesKey(series));
+        if (data == null) {
+            throw new IndexOutOfBoundsException("No series " + series);
+        }
+        return data;
     }
 
     /**
@@ -272,7 +362,7 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      *                                   specified range.
      */
     public int getItemCount(int series) {
-        return getBins(series).size();
+        return getSeries(series).counts == null ? 0 : numBins;
     }
 
     /**
@@ -288,10 +378,7 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      *                                   specified range.
      */
     public Number getX(int series, int item) {
-        List<HistogramBin> bins = getBins(series);
-        HistogramBin bin = bins.get(item);
-        double x = (bin.getStartBoundary() + bin.getEndBoundary()) / 2.0;
-        return x;
+        return lowerEdge + (item + .5) * binWidth;
     }
 
     /**
@@ -306,14 +393,17 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      *                                   specified range.
      */
     public Number getY(int series, int item) {
-        List<HistogramBin> bins = getBins(series);
-        HistogramBin bin = bins.get(item);
+        ColoredDataSeries data = getSeries(series);
+        double count = data.counts[item] * data.scale;
         if (this.type == HistogramType.FREQUENCY) {
-            return bin.getCount();
+            if (data.scale == 1) {
+                return data.counts[item];
+            }
+            return count;
         } else if (this.type == HistogramType.RELATIVE_FREQUENCY) {
-            return bin.getCount() / bins.size();
+            return count / data.total;
         } else if (this.type == HistogramType.SCALE_AREA_TO_1) {
-            return bin.getCount() / bin.getBinWidth();
+            return count / (data.total * binWidth);
         } else { // pretty sure this shouldn't ever happen
             throw new IllegalStateException();
         }
@@ -330,9 +420,7 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      *                                   specified range.
      */
     public Number getStartX(int series, int item) {
-        List<HistogramBin> bins = getBins(series);
-        HistogramBin bin = bins.get(item);
-        return bin.getStartBoundary();
+        return lowerEdge + item * binWidth;
     }
 
     /**
@@ -346,9 +434,7 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
      *                                   specified range.
      */
     public Number getEndX(int series, int item) {
-        List<HistogramBin> bins = getBins(series);
-        HistogramBin bin = bins.get(item);
-        return bin.getEndBoundary();
+        return lowerEdge + (item + 1) * binWidth;
     }
 
     /**
@@ -440,9 +526,35 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
     public static class ColoredDataSeries {
 
         /**
-         * The data in a data series.
+         * The values last binned. Not copied; the caller owns the array.
+         */
+        private transient double[] values = new double[0];
+
+        /**
+         * Count of the values in each bin. Reused between updates while the number of bins is unchanged.
+         */
+        private int[] counts;
+
+        /**
+         * Number of values in the last update.
+         */
+        private int total;
+
+        /**
+         * Number of values represented by each counted value: 1, or more if the values were sampled.
+         */
+        private double scale = 1;
+
+        /**
+         * Offset of the next sample, advanced each update so successive samples cover different values.
          */
-        public final HistogramBin[] data;
+        private transient int samplePhase;
+
+        /**
+         * Minimum and maximum of the values counted in the last update.
+         */
+        private transient double min;
+        private transient double max;
 
         /**
          * The color of a given data series.
@@ -450,12 +562,53 @@ public class OverwritableHistogramDataset extends AbstractIntervalXYDataset impl
         public Color color;
 
         /**
-         * Create the data series.
+         * Count the values (or a strided sample of them) into bins of the given width starting at lower. Values
+         * outside the bins are counted in the first or last bin, and NaN and infinite values are ignored.
+         */
+        private void count(double lower, double width, int bins, int sampleSize) {
+            if (values == null) {
+                values = new double[0];
+            }
+            if (counts == null || counts.length != bins) {
+                counts = new int[bins];
+            } else {
+                Arrays.fill(counts, 0);
+            }
+            int n = values.length;
+            int stride = sampleSize > 0 && n > sampleSize ? (n + sampleSize - 1) / sampleSize : 1;
+            int start = stride > 1 ? samplePhase++ % stride : 0;
+            double inverseWidth = 1 / width;
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            int counted = 0;
+            for (int i = start; i < n; i += stride) {
+                double value = values[i];
+                if (!Double.isFinite(value)) {
+                    continue;
+                }
+                if (value < low) {
+                    low = value;
+                }
+                if (value > high) {
+                    high = value;
+                }
+                int bin = (int) ((value - lower) * inverseWidth);
+                counts[bin < 0 ? 0 : Math.min(bin, bins - 1)]++;
+                counted++;
+            }
+            min = low;
+            max = high;
+            total = n;
+            scale = counted == 0 || stride == 1 ? 1 : (double) n / counted;
+        }
+
+        /**
+         * Returns a copy of the count in each bin. Counts are of the sampled values, if the values were sampled.
          *
-         * @param bins the data
+         * @return the counts
          */
-        public ColoredDataSeries(final HistogramBin[] bins) {
-            this.data = bins;
+        public int[] getCounts() {
+            return counts == null ? new int[0] : counts.clone();
         }
     }
 
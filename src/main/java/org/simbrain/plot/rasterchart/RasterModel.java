@@ -19,8 +19,8 @@
 package org.simbrain.plot.rasterchart;
 
 import com.thoughtworks.xstream.XStream;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import org.simbrain.plot.RingBufferSeries;
+import org.simbrain.plot.RingBufferXYDataset;
 import org.simbrain.util.UserParameter;
 import org.simbrain.util.XStreamUtils;
 import org.simbrain.util.propertyeditor.EditableObject;
@@ -54,9 +54,14 @@ public class RasterModel implements EditableObject {
     private transient Supplier<Integer> timeSupplier;
 
     /**
-     * Raster Data.
+     * Raster data, one series per {@link RasterConsumer}.
      */
-    private XYSeriesCollection dataset = new XYSeriesCollection();
+    private List<RingBufferSeries> spikeSeries = new ArrayList<>();
+
+    /**
+     * Dataset containing the raster series.
+     */
+    private transient RingBufferXYDataset dataset = new RingBufferXYDataset();
 
     /**
      * Should the range automatically change to reflect the data.
@@ -121,9 +126,9 @@ public class RasterModel implements EditableObject {
      * Removes a data source from the chart.
      */
     public void removeDataSource() {
-        Integer lastSeriesIndex = dataset.getSeriesCount() - 1;
+        int lastSeriesIndex = dataset.getSeriesCount() - 1;
         if (lastSeriesIndex > 0) {
-            dataset.removeSeries(lastSeriesIndex);
+            dataset.removeSeries(spikeSeries.remove(lastSeriesIndex));
             rasterConsumerList.remove(lastSeriesIndex);
         }
 
@@ -133,8 +138,10 @@ public class RasterModel implements EditableObject {
      * Adds a data source to the chart.
      */
     public void addDataSource() {
-        Integer currentSize = dataset.getSeriesCount();
-        dataset.addSeries(new XYSeries(currentSize + 1));
+        int currentSize = dataset.getSeriesCount();
+        RingBufferSeries series = new RingBufferSeries(String.valueOf(currentSize + 1));
+        spikeSeries.add(series);
+        dataset.addSeries(series);
         rasterConsumerList.add(new RasterConsumer(currentSize));
     }
 
@@ -142,13 +149,12 @@ public class RasterModel implements EditableObject {
      * Clears the plot.
      */
     public void clearData() {
-        int seriesCount = dataset.getSeriesCount();
-        for (int i = 0; seriesCount > i; ++i) {
-            dataset.getSeries(i).clear();
+        for (RingBufferSeries series : spikeSeries) {
+            series.clear();
         }
     }
 
-    public XYSeriesCollection getDataset() {
+    public RingBufferXYDataset getDataset() {
         return dataset;
     }
 
@@ -166,6 +172,14 @@ public class RasterModel implements EditableObject {
      * See {@link org.simbrain.workspace.serialization.WorkspaceComponentDeserializer}
      */
     private Object readResolve() {
+        if (spikeSeries == null) {
+            spikeSeries = new ArrayList<>();
+        }
+        while (spikeSeries.size() < rasterConsumerList.size()) {
+            spikeSeries.add(new RingBufferSeries(String.valueOf(spikeSeries.size() + 1)));
+        }
+        dataset = new RingBufferXYDataset();
+        spikeSeries.forEach(dataset::addSeries);
         return this;
     }
 
@@ -253,16 +267,23 @@ public class RasterModel implements EditableObject {
         public void setValues(final double[] values) {
             try {
                 SwingUtilities.invokeAndWait(() -> {
+                    RingBufferSeries series = spikeSeries.get(index);
+                    double time = timeSupplier.get();
                     var udpated = false;
                     for (int i = 0, n = values.length; i < n; i++) {
                         if (values[i] >= spikeThreshold) {
-                            getDataset().getSeries(index).add(timeSupplier.get(), Double.valueOf(i));
+                            series.add(time, i, false);
                             udpated = true;
                         }
                     }
                     if (!udpated) {
-                        getDataset().getSeries(index).add(timeSupplier.get(), null);
+                        series.add(time, Double.NaN, false);
+                    }
+                    // Only keep the points in the window
+                    if (fixedWidth) {
+                        series.removeBefore(time - windowSize);
                     }
+                    series.changed();
                 });
             } catch (InterruptedException | InvocationTargetException e) {
                 throw new RuntimeException(e);
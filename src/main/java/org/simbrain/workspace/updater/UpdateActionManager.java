@@ -224,7 +224,9 @@ public class UpdateActionManager {
      * @param action the action to completely remove
      */
     public void removeAction(UpdateAction action) {
-        actionList.remove(action);
+        if (actionList.remove(action)) {
+            action.close();
+        }
         for (UpdateManagerListener listener : listeners) {
             listener.actionRemoved(action);
         }
@@ -306,6 +308,7 @@ public class UpdateActionManager {
 
         // Default updater
         availableActionList.add(new UpdateAllAction(workspaceUpdater));
+        availableActionList.add(new PipelinedUpdateAction(workspaceUpdater));
 
         // Add update actions for all components available
         for (WorkspaceComponent component : workspaceUpdater.getComponents()) {
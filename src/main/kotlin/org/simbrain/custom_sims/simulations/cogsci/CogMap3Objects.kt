@@ -42,6 +42,7 @@ val cogMap3Objects = newSim {
     val weightMatrix = WeightMatrix(recurrent, recurrent)
     weightMatrix.randomize()
     weightMatrix.weightMatrix.setSpectralRadius(spectralRadius)
+    weightMatrix.updateMasks()
     network.addNetworkModels(recurrent, weightMatrix)
 
     // Inputs to reservoir
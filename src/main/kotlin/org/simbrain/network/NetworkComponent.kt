@@ -18,6 +18,7 @@
 package org.simbrain.network
 
 import org.simbrain.network.core.Network
+import org.simbrain.network.core.NetworkModel
 import org.simbrain.network.core.getNetworkXStream
 import org.simbrain.network.neurongroups.NeuronGroup
 import org.simbrain.util.getSimbrainXStream
@@ -64,16 +65,12 @@ class NetworkComponent : WorkspaceComponent {
 
         event.modelAdded.on { m ->
             setChangedSinceLastSave(true)
-            if (m is AttributeContainer) {
-                fireAttributeContainerAdded(m)
-            }
-            if (m is NeuronGroup) {
-                m.neuronList.map { addedContainer ->
-                    this.fireAttributeContainerAdded(
-                        addedContainer
-                    )
-                }
-            }
+            handleModelAdded(m)
+        }
+
+        event.modelsAdded.on { models ->
+            setChangedSinceLastSave(true)
+            models.forEach { handleModelAdded(it) }
         }
 
         event.modelRemoved.on { m ->
@@ -98,6 +95,19 @@ class NetworkComponent : WorkspaceComponent {
         //        event.onTextRemoved(t -> setChangedSinceLastSave(true));
     }
 
+    private fun handleModelAdded(m: NetworkModel) {
+        if (m is AttributeContainer) {
+            fireAttributeContainerAdded(m)
+        }
+        if (m is NeuronGroup) {
+            m.neuronList.map { addedContainer ->
+                this.fireAttributeContainerAdded(
+                    addedContainer
+                )
+            }
+        }
+    }
+
     override val attributeContainers: List<AttributeContainer>
         get() = network.allModels.filterIsInstance<AttributeContainer>()
 
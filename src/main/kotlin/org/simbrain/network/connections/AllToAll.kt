@@ -15,7 +15,6 @@ package org.simbrain.network.connections
 import org.simbrain.network.core.Neuron
 import org.simbrain.network.core.Synapse
 import org.simbrain.util.UserParameter
-import org.simbrain.util.cartesianProduct
 import kotlin.random.Random
 
 /**
@@ -73,10 +72,24 @@ fun createAllToAllSynapses(
     targetNeurons: List<Neuron>,
     allowSelfConnection: Boolean = false
 ): List<Synapse> {
-    return (sourceNeurons cartesianProduct targetNeurons)
-        .filter { (src, tar) ->
-            allowSelfConnection || src !== tar
-        }.map { (src, tar) ->
-            Synapse(src, tar).apply { strength = 1.0 }
+    val pairs = sourceNeurons.size * targetNeurons.size
+    val sourceIndices = IntArray(pairs)
+    val targetIndices = IntArray(pairs)
+    var count = 0
+    for (i in sourceNeurons.indices) {
+        for (j in targetNeurons.indices) {
+            if (allowSelfConnection || sourceNeurons[i] !== targetNeurons[j]) {
+                sourceIndices[count] = i
+                targetIndices[count] = j
+                count++
+            }
         }
+    }
+    return createSynapses(
+        sourceNeurons,
+        targetNeurons,
+        sourceIndices.copyOf(count),
+        targetIndices.copyOf(count),
+        DoubleArray(count) { 1.0 }
+    )
 }
@@ -18,6 +18,7 @@
 */
 package org.simbrain.network.connections
 
+import org.simbrain.network.core.Neuron
 import org.simbrain.network.core.Synapse
 import org.simbrain.util.SimbrainConstants.Polarity
 import kotlin.random.Random
@@ -84,3 +85,47 @@ fun polarizeSynapses(synapses: Collection<Synapse>, percentExcitatory: Double, r
     toInhibit.forEach { it.strength = DEFAULT_INHIBITORY_STRENGTH }
 
 }
+
+/**
+ * Create many synapses in one pass. Synapse i connects `source[sourceIndices[i]]` to `target[targetIndices[i]]`
+ * with strength `weights[i]`, or the default strength if [weights] is null.
+ *
+ * The fan-in and fan-out storage of each neuron is sized once for all of its new synapses. Pairs that are already
+ * connected, including pairs repeated in the index arrays, are skipped. The synapses are not added to a network;
+ * use [org.simbrain.network.core.Network.addNetworkModelsBulk] to add them with a single event.
+ *
+ * @return the new synapses, in index order
+ */
+@JvmOverloads
+fun createSynapses(
+    source: List<Neuron>,
+    target: List<Neuron>,
+    sourceIndices: IntArray,
+    targetIndices: IntArray,
+    weights: DoubleArray? = null
+): List<Synapse> {
+    require(sourceIndices.size == targetIndices.size) { "Source and target index arrays must be the same size" }
+    require(weights == null || weights.size == sourceIndices.size) { "Weights must be the same size as the index arrays" }
+    val fanOutCounts = IntArray(source.size)
+    val fanInCounts = IntArray(target.size)
+    for (i in sourceIndices.indices) {
+        fanOutCounts[sourceIndices[i]]++
+        fanInCounts[targetIndices[i]]++
+    }
+    source.forEachIndexed { i, neuron -> neuron.reserveSynapses(0, fanOutCounts[i]) }
+    target.forEachIndexed { i, neuron -> neuron.reserveSynapses(fanInCounts[i], 0) }
+    val synapses = ArrayList<Synapse>(sourceIndices.size)
+    for (i in sourceIndices.indices) {
+        val src = source[sourceIndices[i]]
+        val tar = target[targetIndices[i]]
+        if (src.fanOut[tar] != null) {
+            continue
+        }
+        synapses.add(Synapse(src, tar).apply {
+            if (weights != null) {
+                strength = weights[i]
+            }
+        })
+    }
+    return synapses
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.abs
 import kotlin.math.ceil
 import kotlin.math.ln
+import kotlin.math.roundToLong
 import kotlin.random.Random
 
 /**
@@ -57,6 +58,23 @@ class Network: CoroutineScope, EditableObject {
         CONTINUOUS
     }
 
+    /**
+     * Floating point precision of array computations.
+     */
+    enum class Precision {
+        /**
+         * Double precision throughout.
+         */
+        DOUBLE,
+
+        /**
+         * Weight matrix products use single precision copies of the weights, and neuron array activations are
+         * rounded to single precision. Halves the memory read by the products, at the cost of accuracy beyond about
+         * 7 significant digits.
+         */
+        SINGLE
+    }
+
     /**
      * Handle network events.
      */
@@ -94,6 +112,13 @@ class Network: CoroutineScope, EditableObject {
             "does not impact logical update)", order = 20)
     var timeType = TimeType.DISCRETE
 
+    /**
+     * Precision of computations on neuron arrays and weight matrices.
+     */
+    @UserParameter("Precision", description = "Single precision speeds up large weight matrices at the cost of " +
+            "accuracy", order = 30)
+    var precision = Precision.DOUBLE
+
     /**
      * Whether network has been updated yet; used by thread.
      */
@@ -109,6 +134,14 @@ class Network: CoroutineScope, EditableObject {
         flatNeuronList.sortedBy { it.updatePriority }.toMutableList()
     }
 
+    /**
+     * Calendar used to deliver spikes while an [org.simbrain.network.update_actions.EventDrivenUpdate] is running;
+     * null otherwise.
+     */
+    @Transient
+    var spikeCalendar: SpikeCalendar? = null
+        private set
+
     /**
      * Manage ids for all network elements.
      */
@@ -239,6 +272,20 @@ class Network: CoroutineScope, EditableObject {
         networkModels.all.forEach { it.update() }
     }
 
+    /**
+     * Event-driven update method called by [org.simbrain.network.update_actions.EventDrivenUpdate]. Spikes are
+     * delivered by the provided calendar, then all models are updated as in [bufferedUpdate].
+     */
+    suspend fun eventDrivenUpdate(calendar: SpikeCalendar) {
+        spikeCalendar = calendar
+        try {
+            calendar.propagate()
+            bufferedUpdate()
+        } finally {
+            spikeCalendar = null
+        }
+    }
+
     /**
      * Set the activation level of all neurons to zero.
      */
@@ -328,17 +375,9 @@ class Network: CoroutineScope, EditableObject {
             if (usePlacementManager && model is LocatableModel && model.shouldBePlaced) {
                 placementManager.placeObject(model)
             }
-            model.events.deleted.on {
-                networkModels.remove(it)
-                events.modelRemoved.fire(it).join()
-                updatePriorityList()
-            }
+            addModelListeners(model)
             val deferred = events.modelAdded.fire(model)
             if (model is Neuron) {
-                model.events.priorityChanged.on { _, _ ->
-                    updatePriorityList()
-                }
-                model.events.updateRuleChanged.on { _, _ -> shouldUpdateTimeType = true }
                 updatePriorityList()
             }
             return deferred
@@ -346,6 +385,63 @@ class Network: CoroutineScope, EditableObject {
         return null
     }
 
+    /**
+     * Add many models at once, e.g. the synapses of a large connection. Ids are assigned and listeners added as in
+     * [addNetworkModel], but the models are added to the model list in one pass and a single
+     * [NetworkEvents.modelsAdded] event is fired for all of them, rather than a [NetworkEvents.modelAdded] event for
+     * each. The models are added in updating order, so e.g. neurons are added before synapses that refer to them.
+     *
+     * @return the deferred result of the event, or null if no models were added
+     */
+    @JvmOverloads
+    fun addNetworkModelsBulk(models: Collection<NetworkModel>, usePlacementManager: Boolean = true): Deferred<Boolean>? {
+        val toAdd = models.filter { it.shouldAdd() }.sortedBy { updatingOrder(it) }
+        if (toAdd.isEmpty()) {
+            return null
+        }
+        assignIdsBulk(toAdd)
+        networkModels.addAll(toAdd)
+        toAdd.forEach { model ->
+            if (usePlacementManager && model is LocatableModel && model.shouldBePlaced) {
+                placementManager.placeObject(model)
+            }
+            addModelListeners(model)
+        }
+        if (toAdd.any { it is Neuron }) {
+            updatePriorityList()
+        }
+        return events.modelsAdded.fire(toAdd)
+    }
+
+    /**
+     * Assign ids to many models. Models that do not contain other models are given consecutive ids per type, which
+     * are only turned into strings when first needed.
+     */
+    private fun assignIdsBulk(models: List<NetworkModel>) {
+        models.groupBy { it.javaClass }.forEach { (cls, group) ->
+            if (group.first().let { it is NeuronGroup || it is SynapseGroup || it is Subnetwork }) {
+                group.forEach { assignId(it) }
+            } else {
+                val (root, first) = idManager.reserveIds(cls, group.size)
+                group.forEachIndexed { i, model -> model.setLazyId(root, first + i) }
+            }
+        }
+    }
+
+    private fun addModelListeners(model: NetworkModel) {
+        model.events.deleted.on {
+            networkModels.remove(it)
+            events.modelRemoved.fire(it).join()
+            updatePriorityList()
+        }
+        if (model is Neuron) {
+            model.events.priorityChanged.on { _, _ ->
+                updatePriorityList()
+            }
+            model.events.updateRuleChanged.on { _, _ -> shouldUpdateTimeType = true }
+        }
+    }
+
     /**
      * Returns the precision of the current time step.
      *
@@ -369,6 +465,15 @@ class Network: CoroutineScope, EditableObject {
         return getNetworkXStream().fromXML(xmlRepresentation) as Network
     }
 
+    /**
+     * Create the strings of ids assigned lazily by [addNetworkModelsBulk] before saving, since the root and index
+     * they are made from are not saved.
+     */
+    private fun writeReplace(): Any {
+        networkModels.all.forEach { it.id }
+        return this
+    }
+
     /**
      * See {@link org.simbrain.workspace.serialization.WorkspaceComponentDeserializer}
      */
@@ -384,6 +489,17 @@ class Network: CoroutineScope, EditableObject {
 
         placementManager = PlacementManager()
 
+        // Networks saved before precision was added
+        @Suppress("SENSELESS_COMPARISON")
+        if (precision == null) {
+            precision = Precision.DOUBLE
+        }
+
+        // Networks saved before iterations were counted
+        if (iterations == 0L && time > 0) {
+            iterations = (time / timeStep).roundToLong()
+        }
+
         updateCompleted = AtomicBoolean(false)
         prioritySortedNeuronList = CachedObject {
             flatNeuronList.sortedBy { it.updatePriority }.toMutableList()
@@ -401,11 +517,12 @@ class Network: CoroutineScope, EditableObject {
     }
 
     /**
-     * Returns the current number of iterations.
-     *
-     * @return the number of update iterations which have been run since the network was created.
+     * The number of update iterations which have been run since the network was created or its time was reset.
+     * Counted rather than computed from [time], which can fall just short of a whole number of time steps. Noise
+     * streams are keyed by it.
      */
-    val iterations: Long get() = (time / timeStep).toLong()
+    var iterations = 0L
+        private set
 
     /**
      * string version of time, with units.
@@ -433,6 +550,7 @@ class Network: CoroutineScope, EditableObject {
      */
     fun updateTime() {
         time += timeStep
+        iterations++
     }
 
     /**
@@ -440,6 +558,7 @@ class Network: CoroutineScope, EditableObject {
      */
     fun resetTime() {
         time = 0.0
+        iterations = 0
     }
 
     /**
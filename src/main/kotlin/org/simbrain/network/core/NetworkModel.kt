@@ -2,6 +2,7 @@ package org.simbrain.network.core
 
 import kotlinx.coroutines.runBlocking
 import org.simbrain.network.events.NetworkModelEvents
+import org.simbrain.util.SimpleIdManager
 import org.simbrain.util.UserParameter
 import org.simbrain.util.stats.ProbabilityDistribution
 import org.simbrain.workspace.Consumable
@@ -16,6 +17,36 @@ abstract class NetworkModel {
      * A unique id for this model.
      */
     var id: String? = null
+        get() {
+            lazyIdRoot?.let {
+                field = it.format(lazyIdIndex)
+                lazyIdRoot = null
+            }
+            return field
+        }
+        set(value) {
+            field = value
+            lazyIdRoot = null
+        }
+
+    /**
+     * Root and index of an id assigned with [setLazyId], which is only turned into a string when first read.
+     */
+    @Transient
+    private var lazyIdRoot: SimpleIdManager.SimpleId? = null
+
+    @Transient
+    private var lazyIdIndex = 0
+
+    /**
+     * Assign an id without creating its string, e.g. when ids are assigned to many synapses at once.
+     * See [SimpleIdManager.reserveIds].
+     */
+    fun setLazyId(root: SimpleIdManager.SimpleId, index: Int) {
+        id = null
+        lazyIdRoot = root
+        lazyIdIndex = index
+    }
 
     /**
      * Optional string description of model object.
@@ -1,19 +1,23 @@
 package org.simbrain.network.core
 
-import com.thoughtworks.xstream.annotations.XStreamImplicit
 import com.thoughtworks.xstream.converters.Converter
 import com.thoughtworks.xstream.converters.MarshallingContext
 import com.thoughtworks.xstream.converters.UnmarshallingContext
 import com.thoughtworks.xstream.io.HierarchicalStreamReader
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter
 import org.simbrain.network.subnetworks.Subnetwork
-import org.simbrain.util.CachedObject
-import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.CopyOnWriteArraySet
+import java.util.SortedMap
+import java.util.TreeMap
 
 /**
  * The main data structure for [NetworkModel]s. Wraps a map from classes to ordered sets of those objects.
- * Backed by a linked hash set. Hash set deals with duplication; linked provides an iterator.
+ * Each set is backed by a linked hash set. Hash set deals with duplication and gives constant time add and remove;
+ * linked keeps insertion order.
+ *
+ * Models are also kept in buckets keyed by [updatingOrder], so [allInUpdatingOrder] is maintained as models are added
+ * and removed rather than re-sorted.
+ *
+ * Readers iterate over snapshots, so the list can be modified (e.g. models deleted) while it is being iterated over.
  *
  * Used both by [Network] and by [Subnetwork].
  */
@@ -22,39 +26,34 @@ class NetworkModelList {
     /**
      * Backing for the collection: a map from model types to linked hash sets.
      */
-    @XStreamImplicit
-    private val networkModels: MutableMap<Class<out NetworkModel>, CopyOnWriteArraySet<NetworkModel>?> = ConcurrentHashMap()
+    private val networkModels: MutableMap<Class<out NetworkModel>, ModelSet<NetworkModel>> = HashMap()
 
-    @Suppress("UNCHECKED_CAST")
-    fun <T : NetworkModel> put(modelClass: Class<T>, model: T) {
-        allInUpdatingOrderCache.invalidate()
-        if (modelClass in networkModels) {
-            networkModels[modelClass]!!.add(model)
-        } else {
-            val newSet = CopyOnWriteArraySet<T>()
-            newSet.add(model)
-            networkModels[modelClass] = newSet as CopyOnWriteArraySet<NetworkModel>
-        }
-    }
+    /**
+     * The same models grouped by [updatingOrder], with buckets sorted by that order.
+     */
+    private val updatingOrderBuckets: SortedMap<Int, ModelSet<NetworkModel>> = TreeMap()
+
+    @Volatile
+    private var allSnapshot: List<NetworkModel>? = null
+
+    fun <T : NetworkModel> put(modelClass: Class<T>, model: T) = putUnsafe(modelClass, model)
 
     /**
      * Put in the list without checking type. Needed for de-serialization. Avoid, and if used
      * use with caution.
      */
+    @Synchronized
     fun putUnsafe(modelClass: Class<out NetworkModel>, model: NetworkModel) {
-        allInUpdatingOrderCache.invalidate()
-        if (modelClass in networkModels) {
-            networkModels[modelClass]!!.add(model)
-        } else {
-            val newSet = CopyOnWriteArraySet<NetworkModel>()
-            newSet.add(model)
-            networkModels[modelClass] = newSet
+        if (networkModels.getOrPut(modelClass) { ModelSet() }.add(model)) {
+            updatingOrderBuckets.getOrPut(updatingOrder(model)) { ModelSet() }.add(model)
+            allSnapshot = null
         }
     }
 
     /**
      * Add a collection of network models to the map.
      */
+    @Synchronized
     fun addAll(models: Collection<NetworkModel>) {
         models.forEach { add(it) }
     }
@@ -63,68 +62,88 @@ class NetworkModelList {
      * Add a network model to the map.
      */
     fun add(model: NetworkModel) {
-        allInUpdatingOrderCache.invalidate()
-        if (model is Subnetwork) {
-            put(Subnetwork::class.java, model)
-        } else {
-            put(model.javaClass, model)
-        }
+        putUnsafe(keyOf(model), model)
     }
 
     /**
      * Returns an ordered set of network models of a specific type.
      */
     @Suppress("UNCHECKED_CAST")
-    operator fun <T : NetworkModel> get(modelClass: Class<T>): CopyOnWriteArraySet<T> {
-        return if (networkModels.containsKey(modelClass)) {
-            networkModels[modelClass] as CopyOnWriteArraySet<T>
-        } else {
-            CopyOnWriteArraySet()
-        }
+    @Synchronized
+    operator fun <T : NetworkModel> get(modelClass: Class<T>): Set<T> {
+        return (networkModels[modelClass] ?: emptySet()) as Set<T>
     }
 
-    @Suppress("UNCHECKED_CAST")
     inline fun <reified T : NetworkModel> get() = get(T::class.java)
 
     /**
      * Returns a set corresponding to the provided network model type.
      * Does not guarantee that the returned set contains models of that type.
      */
-    fun getRawModelSet(modelClass: Class<*>?): CopyOnWriteArraySet<*> {
-        return if (networkModels.containsKey(modelClass)) {
-            networkModels[modelClass]!!
-        } else {
-            CopyOnWriteArraySet<NetworkModel>()
-        }
-    }
+    @Synchronized
+    fun getRawModelSet(modelClass: Class<*>?): Set<*> = networkModels[modelClass] ?: emptySet<NetworkModel>()
 
+    /**
+     * Returns a snapshot of all network models, in updating order.
+     */
     val all: List<NetworkModel>
-        get() = networkModels.values.flatMap { it?.map { item -> item } ?: listOf() }
-
-    private val allInUpdatingOrderCache = CachedObject { all.sortedBy { updatingOrder(it) } }
+        get() = allSnapshot ?: synchronized(this) {
+            allSnapshot ?: updatingOrderBuckets.values.flatMap { it.snapshot }.also { allSnapshot = it }
+        }
 
     /**
      * Returns a list of network models in the order required for proper updating and reconstruction of all network models.
      * For example, neurons must be recreated before synapses since the synapses refer to neurons.
      */
-    val allInUpdatingOrder by allInUpdatingOrderCache::value
+    val allInUpdatingOrder get() = all
 
+    @Synchronized
     fun remove(model: NetworkModel) {
-        allInUpdatingOrderCache.invalidate()
-        if (model is Subnetwork) {
-            // Forces all subclasses of subnetwork to be grouped with the subnetwork class
-            networkModels[Subnetwork::class.java]?.remove(model)
-        } else {
-            networkModels[model.javaClass]?.remove(model)
+        // Forces all subclasses of subnetwork to be grouped with the subnetwork class
+        if (networkModels[keyOf(model)]?.remove(model) == true) {
+            updatingOrderBuckets[updatingOrder(model)]?.remove(model)
+            allSnapshot = null
         }
     }
 
+    private fun keyOf(model: NetworkModel) = if (model is Subnetwork) Subnetwork::class.java else model.javaClass
 
     override fun toString(): String =  all.joinToString("\n") { "$it" }
 
     fun toStringTabbed(): String =  all.joinToString("\n") { "\t$it" }
 
-    val size get() = networkModels.values.sumBy { it?.size ?: 0 }
+    val size: Int
+        @Synchronized get() = updatingOrderBuckets.values.sumOf { it.size }
+}
+
+/**
+ * An insertion ordered set of models with constant time add, remove, and contains. Iteration is over a snapshot
+ * which is only rebuilt after the set changes, so iterating does not copy the set each time and is not affected by
+ * concurrent modification. Only the owning [NetworkModelList] modifies the set.
+ */
+private class ModelSet<T : NetworkModel> : AbstractSet<T>() {
+
+    private val models = LinkedHashSet<T>()
+
+    @Volatile
+    private var _snapshot: List<T>? = null
+
+    val snapshot: List<T>
+        get() = _snapshot ?: synchronized(this) {
+            _snapshot ?: models.toList().also { _snapshot = it }
+        }
+
+    override val size get() = synchronized(this) { models.size }
+
+    override fun contains(element: T) = synchronized(this) { element in models }
+
+    override fun iterator() = snapshot.iterator()
+
+    @Synchronized
+    fun add(model: T) = models.add(model).also { if (it) _snapshot = null }
+
+    @Synchronized
+    fun remove(model: T) = models.remove(model).also { if (it) _snapshot = null }
 }
 
 /**
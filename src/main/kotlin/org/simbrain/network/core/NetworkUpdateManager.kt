@@ -21,6 +21,7 @@ package org.simbrain.network.core
 import org.simbrain.network.neurongroups.NeuronGroup
 import org.simbrain.network.subnetworks.Subnetwork
 import org.simbrain.network.update_actions.BufferedUpdate
+import org.simbrain.network.update_actions.EventDrivenUpdate
 import org.simbrain.network.update_actions.PriorityUpdate
 import org.simbrain.network.update_actions.UpdateNetworkModel
 import org.simbrain.workspace.updater.UpdateAction
@@ -71,6 +72,7 @@ class NetworkUpdateManager(private val network: Network) {
                 // By default these actions are always available
                 add(BufferedUpdate(network))
                 add(PriorityUpdate(network))
+                add(EventDrivenUpdate(network))
 
                 addAll(actionableModels.map { UpdateNetworkModel(it, network) })
             }
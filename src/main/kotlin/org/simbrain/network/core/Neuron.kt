@@ -23,6 +23,8 @@ import org.simbrain.network.updaterules.LinearRule
 import org.simbrain.network.updaterules.NeuronUpdateRule
 import org.simbrain.network.updaterules.interfaces.BoundedUpdateRule
 import org.simbrain.network.updaterules.interfaces.ClippedUpdateRule
+import org.simbrain.network.updaterules.interfaces.NoisyUpdateRule
+import org.simbrain.network.updaterules.interfaces.startNoiseStream
 import org.simbrain.network.util.ScalarDataHolder
 import org.simbrain.network.util.SpikingScalarData
 import org.simbrain.util.SimbrainConstants.Polarity
@@ -282,6 +284,10 @@ class Neuron : LocatableModel, EditableObject, AttributeContainer {
 
     context(Network)
     override fun accumulateInputs() {
+        if (spikeCalendar?.accumulateInputs(this) == true) {
+            addInputValue(bias)
+            return
+        }
         fanIn.forEach { it.updatePSR() }
         addInputValue(weightedInputs)
         addInputValue(bias)
@@ -295,6 +301,7 @@ class Neuron : LocatableModel, EditableObject, AttributeContainer {
         if (clamped) {
             return
         }
+        (updateRule as? NoisyUpdateRule)?.startNoiseStream(this)
         updateRule.apply(this, dataHolder)
         input = 0.0
     }
@@ -348,6 +355,7 @@ class Neuron : LocatableModel, EditableObject, AttributeContainer {
      */
     fun addToFanIn(source: Synapse) {
         if (fanIn != null) {
+            source.fanInIndex = fanIn.size
             fanIn.add(source)
         }
     }
@@ -355,9 +363,39 @@ class Neuron : LocatableModel, EditableObject, AttributeContainer {
     /**
      * Remove an afferent (incoming) weight from this neuron. Used by synapse but should not generally be called
      * directly.
+     *
+     * Takes constant time: the last synapse in [fanIn] is moved into the removed synapse's position, so the order of
+     * the remaining synapses can change.
      */
     fun removeFromFanIn(synapse: Synapse) {
-        fanIn.remove(synapse)
+        val index = synapse.fanInIndex
+        if (index !in fanIn.indices || fanIn[index] !== synapse) {
+            // Fan in was modified directly, so the index can't be used
+            fanIn.remove(synapse)
+            return
+        }
+        val last = fanIn.removeAt(fanIn.lastIndex)
+        if (last !== synapse) {
+            fanIn[index] = last
+            last.fanInIndex = index
+        }
+        synapse.fanInIndex = -1
+    }
+
+    /**
+     * Make room for [fanInCount] more incoming and [fanOutCount] more outgoing synapses, so that adding many synapses
+     * at once does not repeatedly grow the fan-in list and fan-out map. See
+     * [org.simbrain.network.connections.createSynapses].
+     */
+    fun reserveSynapses(fanInCount: Int, fanOutCount: Int) {
+        if (fanInCount > 0) {
+            fanIn.ensureCapacity(fanIn.size + fanInCount)
+        }
+        if (fanOutCount > 0) {
+            fanOut = HashMap<Neuron, Synapse>(((fanOut.size + fanOutCount) / 0.75f).toInt() + 1).apply {
+                putAll(fanOut)
+            }
+        }
     }
 
     /**
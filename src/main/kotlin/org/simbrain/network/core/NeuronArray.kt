@@ -3,6 +3,8 @@ package org.simbrain.network.core
 import org.simbrain.network.events.NeuronArrayEvents
 import org.simbrain.network.updaterules.LinearRule
 import org.simbrain.network.updaterules.NeuronUpdateRule
+import org.simbrain.network.updaterules.interfaces.NoisyUpdateRule
+import org.simbrain.network.updaterules.interfaces.startNoiseStream
 import org.simbrain.network.util.MatrixDataHolder
 import org.simbrain.network.util.ScalarDataHolder
 import org.simbrain.network.util.SpikingMatrixData
@@ -231,7 +233,11 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
         if (isClamped) {
             return
         }
+        (updateRule as? NoisyUpdateRule)?.startNoiseStream(this)
         updateRule.apply(this, dataHolder)
+        if (precision == Network.Precision.SINGLE) {
+            activations.roundToFloat()
+        }
         inputs.mul(0.0) // clear inputs
         events.updated.fire()
     }
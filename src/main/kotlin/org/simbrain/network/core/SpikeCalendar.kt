@@ -0,0 +1,229 @@
+package org.simbrain.network.core
+
+import org.simbrain.network.spikeresponders.JumpAndDecay
+import java.util.*
+import kotlin.math.pow
+
+/**
+ * Event-driven propagation of spikes, used by [org.simbrain.network.update_actions.EventDrivenUpdate].
+ *
+ * In the default update every synapse recomputes its post-synaptic response every iteration, and delayed synapses
+ * shift a private queue, whether or not the source neuron spiked. For sparsely firing spiking networks almost all of
+ * that work is wasted. Here, when a neuron spikes, one event per outgoing synapse is written into a network-wide ring
+ * buffer indexed by delivery time (the current iteration plus the synapse's delay), and each iteration only the events
+ * due at that iteration are processed. The responses of all event-driven synapses onto a neuron are summed into a
+ * single current that decays once per iteration, so the cost of an iteration scales with the number of spikes rather
+ * than the number of synapses.
+ *
+ * A synapse is event-driven if it is enabled, its source has a spiking update rule, and it uses a [JumpAndDecay]
+ * responder with zero baseline and no convolution, whose time constant matches the other event-driven synapses onto
+ * the same target. For these synapses the summed current equals the sum of the responses computed in the default
+ * update. All other synapses are updated as usual by their target neuron. The [Synapse.psr] of an event-driven synapse
+ * is only refreshed when one of its spikes is delivered, so update rules that read synapse responses directly rather
+ * than the neuron's input should be run with the buffered update.
+ *
+ * The calendar is rebuilt when neurons or synapses are added or removed. Call [invalidate] after changing the
+ * responder, source rule, or enabled state of existing synapses.
+ */
+class SpikeCalendar(private val network: Network) {
+
+    private var neurons: List<Neuron> = listOf()
+
+    private var neuronIndices = IdentityHashMap<Neuron, Int>()
+
+    private var synapseIndices = IdentityHashMap<Synapse, Int>()
+
+    private var synapses: Array<Synapse> = arrayOf()
+
+    private var synapseTargets = IntArray(0)
+
+    /**
+     * Time constant of the event-driven synapses onto each neuron, or NaN if there are none.
+     */
+    private var timeConstants = DoubleArray(0)
+
+    /**
+     * Per iteration decay factor of each neuron's current, computed from the time constant and time step.
+     */
+    private var decayFactors = DoubleArray(0)
+
+    private var decayTimeStep = Double.NaN
+
+    /**
+     * Summed response of the event-driven synapses onto each neuron.
+     */
+    private var currents = DoubleArray(0)
+
+    /**
+     * Synapses onto each neuron that are not event-driven and are updated as usual.
+     */
+    private var pulledSynapses: Array<List<Synapse>> = arrayOf()
+
+    /**
+     * Response of each synapse when its last spike was delivered, and the iteration it was delivered.
+     */
+    private var deliveredResponses = DoubleArray(0)
+    private var deliveryIterations = LongArray(0)
+
+    private var ring: Array<EventList> = arrayOf(EventList())
+
+    private var iteration = 0L
+
+    private var neuronCount = -1
+
+    private var synapseCount = -1
+
+    private var valid = false
+
+    /**
+     * Events due at one iteration: synapse indices and the response each spike produces.
+     */
+    private class EventList {
+        var synapses = IntArray(16)
+        var responses = DoubleArray(16)
+        var size = 0
+
+        fun add(synapse: Int, response: Double) {
+            if (size == synapses.size) {
+                synapses = synapses.copyOf(size * 2)
+                responses = responses.copyOf(size * 2)
+            }
+            synapses[size] = synapse
+            responses[size] = response
+            size++
+        }
+    }
+
+    /**
+     * Force the calendar to be rebuilt on the next iteration. Pending spikes are dropped.
+     */
+    fun invalidate() {
+        valid = false
+    }
+
+    context(Network)
+    private fun isEventDriven(synapse: Synapse): Boolean {
+        val responder = synapse.spikeResponder
+        return synapse.isEnabled
+                && synapse.source.updateRule.isSpikingRule
+                && responder is JumpAndDecay
+                && responder.baseLine == 0.0
+                && !responder.useConvolution
+    }
+
+    context(Network)
+    private fun rebuild() {
+        neurons = network.flatNeuronList
+        neuronIndices = IdentityHashMap<Neuron, Int>().apply { neurons.forEachIndexed { i, n -> put(n, i) } }
+        timeConstants = DoubleArray(neurons.size) { Double.NaN }
+        val eventSynapses = mutableListOf<Synapse>()
+        pulledSynapses = Array(neurons.size) { i ->
+            val pulled = mutableListOf<Synapse>()
+            neurons[i].fanIn.forEach { synapse ->
+                val timeConstant = (synapse.spikeResponder as? JumpAndDecay)?.timeConstant
+                if (isEventDriven(synapse) && synapse.source in neuronIndices &&
+                    (timeConstants[i].isNaN() || timeConstants[i] == timeConstant)
+                ) {
+                    timeConstants[i] = timeConstant!!
+                    eventSynapses.add(synapse)
+                } else {
+                    pulled.add(synapse)
+                }
+            }
+            pulled
+        }
+        synapses = eventSynapses.toTypedArray()
+        synapseIndices = IdentityHashMap<Synapse, Int>().apply { synapses.forEachIndexed { i, s -> put(s, i) } }
+        synapseTargets = IntArray(synapses.size) { neuronIndices[synapses[it].target]!! }
+        deliveredResponses = DoubleArray(synapses.size) { synapses[it].psr }
+        deliveryIterations = LongArray(synapses.size) { iteration }
+        currents = DoubleArray(neurons.size)
+        synapses.forEachIndexed { s, synapse -> currents[synapseTargets[s]] += synapse.psr }
+        decayFactors = DoubleArray(neurons.size)
+        decayTimeStep = Double.NaN
+        ring = Array((synapses.maxOfOrNull { it.delay } ?: 0) + 1) { EventList() }
+        neuronCount = neurons.size
+        synapseCount = neurons.sumOf { it.fanIn.size }
+        valid = true
+    }
+
+    context(Network)
+    private fun isStale() = !valid || network.flatNeuronList.let { current ->
+        current.size != neuronCount || current.sumOf { it.fanIn.size } != synapseCount
+    }
+
+    /**
+     * Schedule the spikes from the last update and deliver the spikes due at this iteration. Called once per
+     * iteration before neurons accumulate their inputs.
+     */
+    context(Network)
+    fun propagate() {
+        if (isStale()) {
+            rebuild()
+        }
+        if (decayTimeStep != timeStep) {
+            for (i in neurons.indices) {
+                decayFactors[i] = if (timeConstants[i].isNaN()) 0.0 else 1 - timeStep / timeConstants[i]
+            }
+            decayTimeStep = timeStep
+        }
+
+        // Schedule spikes
+        for (neuron in neurons) {
+            if (!neuron.isSpike) {
+                continue
+            }
+            for (synapse in neuron.fanOut.values) {
+                val index = synapseIndices[synapse] ?: continue
+                if (synapse.spikeResponder.probabilisticSpikeCheck()) {
+                    if (synapse.delay >= ring.size) {
+                        growRing(synapse.delay + 1)
+                    }
+                    ring[((iteration + synapse.delay) % ring.size).toInt()].add(index, synapse.strength)
+                }
+            }
+        }
+
+        // Decay all currents, then replace the decayed response of each synapse receiving a spike with its jump
+        for (i in currents.indices) {
+            currents[i] *= decayFactors[i]
+        }
+        val due = ring[(iteration % ring.size).toInt()]
+        for (e in 0 until due.size) {
+            val s = due.synapses[e]
+            val target = synapseTargets[s]
+            val decay = decayFactors[target]
+            val previous = deliveredResponses[s] * decay.pow((iteration - deliveryIterations[s]).toDouble())
+            currents[target] += due.responses[e] - previous
+            deliveredResponses[s] = due.responses[e]
+            deliveryIterations[s] = iteration
+            synapses[s].psr = due.responses[e]
+        }
+        due.size = 0
+        iteration++
+    }
+
+    private fun growRing(newSize: Int) {
+        val newRing = Array(newSize) { EventList() }
+        for (offset in ring.indices) {
+            newRing[((iteration + offset) % newSize).toInt()] = ring[((iteration + offset) % ring.size).toInt()]
+        }
+        ring = newRing
+    }
+
+    /**
+     * Add the inputs to a neuron from the synapses onto it. Returns false if the neuron is not managed by this
+     * calendar, in which case the caller should accumulate inputs as usual.
+     */
+    context(Network)
+    fun accumulateInputs(neuron: Neuron): Boolean {
+        val index = neuronIndices[neuron] ?: return false
+        var input = currents[index]
+        for (synapse in pulledSynapses[index]) {
+            synapse.updatePSR()
+            input += synapse.psr
+        }
+        neuron.addInputValue(input)
+        return true
+    }
+}
@@ -85,6 +85,12 @@ class Synapse : NetworkModel, EditableObject, AttributeContainer {
      */
     var target: Neuron
 
+    /**
+     * Position of this synapse in the target neuron's [Neuron.fanIn], so that it can be removed in constant time.
+     */
+    @Transient
+    internal var fanInIndex = -1
+
     /**
      * Whether this synapse should be visible in the GUI.
      */
@@ -6,7 +6,9 @@ import org.simbrain.util.*
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.util.stats.ProbabilityDistribution
 import smile.math.matrix.Matrix
+import java.util.stream.IntStream
 import kotlin.math.exp
+import kotlin.math.max
 import kotlin.math.sqrt
 
 class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: Int): ArrayLayer(inputSize), EditableObject, ActivationSequenceProcessor {
@@ -37,6 +39,44 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
             events.updateGraphics.fire()
         }
 
+    @UserParameter(
+        label = "Cached Inference",
+        description = "Use causal attention, and when the sequence has shifted by one position since the last " +
+                "update, project and attend from only the newest position, reusing cached keys, values and " +
+                "attention outputs for the rest",
+        order = 20
+    )
+    var cachedInference = false
+        set(value) {
+            field = value
+            clearCache()
+        }
+
+    @UserParameter(
+        label = "Heads",
+        description = "Number of attention heads. Each head attends using its own slice of the query, key and value " +
+                "columns. The number must divide the input and hidden sizes.",
+        minimumValue = 1.0,
+        order = 21
+    )
+    var headCount = 1
+        set(value) {
+            validateHeadCount(value)
+            field = value
+            clearCache()
+        }
+
+    @UserParameter(
+        label = "Causal",
+        description = "Each position attends only to itself and earlier positions. Always on with cached inference.",
+        order = 22
+    )
+    var causal = false
+        set(value) {
+            field = value
+            clearCache()
+        }
+
     override val activationArray: DoubleArray
         get() = activations.flatten()
 
@@ -81,50 +121,407 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
             randomize((randomizer ?: weightRandomizer))
         }
         listOf(K, Q, V, W1, b1, W2, b2).forEach { it.applyRandomizer() }
+        clearCache()
         events.updated.fire()
     }
 
-    private fun softmaxRow(row: DoubleArray): DoubleArray {
-        val max = row.maxOrNull() ?: 0.0  // For numerical stability
-        val expValues = row.map { exp(it - max) }
-        val sumExp = expValues.sum()
-        return expValues.map { it / sumExp }.toDoubleArray()
+    /**
+     * Inputs at the last update in [cachedInference] mode, used to tell whether the sequence has shifted by one
+     * position since then. Null when there is nothing cached.
+     */
+    @Transient
+    private var cachedInputs: Matrix? = null
+
+    /**
+     * [weightsFingerprint] at the last update in [cachedInference] mode. Weights are public matrices that can be edited
+     * in place, e.g. by a table editor or [Matrix.copyFrom], so the cache is checked against it rather than relying on
+     * every edit calling [clearCache].
+     */
+    @Transient
+    private var cachedWeights = 0L
+
+    /**
+     * Forget the cached keys, values and outputs, so the next update in [cachedInference] mode recomputes every
+     * position.
+     */
+    fun clearCache() {
+        cachedInputs = null
     }
 
+    /**
+     * A hash of every weight and bias. O(parameters), which is less than rerunning the feedforward network.
+     */
+    private fun weightsFingerprint(): Long {
+        var hash = 1L
+        for (matrix in listOf(K, Q, V, W1, b1, W2, b2)) {
+            for (i in 0 until matrix.nrow()) {
+                for (j in 0 until matrix.ncol()) {
+                    hash = hash * 31 + matrix[i, j].toRawBits()
+                }
+            }
+        }
+        return hash
+    }
 
     context(Network) override fun update() {
         if (isClamped) {
             return
         }
 
-        val scale = sqrt(inputSize.toDouble())
+        if (cachedInference) {
+            updateCached()
+        } else {
+            updateFull()
+        }
 
-        kStack.copyFrom(inputs.mm(K))
-        qStack.copyFrom(inputs.mm(Q))
-        vStack.copyFrom(inputs.mm(V))
+        inputs.mul(0.0)
+        events.updated.fire()
+    }
 
-        selfAttention.copyFrom(qStack.mm(kStack.transpose()))
-        selfAttention.div(scale)
+    /**
+     * Compute every position in one pass, with the heads run in parallel.
+     */
+    private fun updateFull() {
+        for (i in 0 until sequenceSize) {
+            project(inputs, i, qStack, kStack, vStack)
+        }
+        val attention = attentionOutput()
+        val weights = attentionWeights()
+        IntStream.range(0, headCount).parallel().forEach { head ->
+            val scores = DoubleArray(sequenceSize)
+            for (i in 0 until sequenceSize) {
+                attendHead(i, head, qStack, kStack, vStack, attention, scores, weights[head])
+            }
+        }
+        feedForwardAll()
+    }
 
-        // Apply softmax to each row
-        (0 until selfAttention.nrow())
-            .map { selfAttention.row(it) }
-            .map { row ->
-                softmaxRow(row)
-            }.toTypedArray()
-            .toMatrix()
-            .let { selfAttention.copyFrom(it) }
+    /**
+     * Record the attention weights of every position and run each through the residual, layer norm and feedforward
+     * network, using its own rows of [b1] and [b2].
+     */
+    private fun feedForwardAll() {
+        val attention = attentionOutput()
+        val weights = attentionWeights()
+        for (i in 0 until sequenceSize) {
+            recordAttention(i, weights)
+            addResidualRow(i, inputs, attention, feedForwardInput)
+            feedForwardRow(i, feedForwardInput, feedForwardHidden, activations)
+        }
+    }
 
-        val attentionOutput = selfAttention.mm(vStack)
+    /**
+     * Causal update that reuses the last update's work where it can. If the inputs are the last inputs shifted up by
+     * one row, as when a context window slides forward by one token, cached keys, values and attention outputs are
+     * shifted up and only the newest position is projected and attends over the cached keys and values; see
+     * [shiftCache]. If the inputs and weights are unchanged nothing is recomputed. Otherwise every position is
+     * recomputed and the cache refilled.
+     */
+    private fun updateCached() {
+        val weights = weightsFingerprint()
+        val cached = cachedInputs?.takeIf { weights == cachedWeights }
+        cachedWeights = weights
+        when {
+            cached == null -> {
+                cachedInputs = inputs.clone()
+                updateFull()
+            }
+            isShiftedByOne(cached) -> {
+                shiftCache()
+                cached.copyFrom(inputs)
+            }
+            !isSameAs(cached) -> {
+                updateFull()
+                cached.copyFrom(inputs)
+            }
+        }
+    }
 
-        feedForwardInput.copyFrom(inputs.clone().add(attentionOutput).layerNorm())
+    /**
+     * True if each row of [inputs] but the last equals the next row of [previous].
+     */
+    private fun isShiftedByOne(previous: Matrix): Boolean {
+        for (i in 0 until sequenceSize - 1) {
+            for (j in 0 until inputSize) {
+                if (inputs[i, j] != previous[i + 1, j]) return false
+            }
+        }
+        return sequenceSize > 1
+    }
 
-        feedForwardHidden.copyFrom(feedForwardInput.mm(W1).add(b1).relu())
+    private fun isSameAs(previous: Matrix): Boolean {
+        for (i in 0 until sequenceSize) {
+            for (j in 0 until inputSize) {
+                if (inputs[i, j] != previous[i, j]) return false
+            }
+        }
+        return true
+    }
 
-        activations.copyFrom(feedForwardInput.add(feedForwardHidden.mm(W2).add(b2)).layerNorm())
+    /**
+     * Drop the oldest position from the cache and add the newest.
+     *
+     * Each remaining position attended over the dropped one, so its attention output is corrected by removing the
+     * dropped value and renormalizing the rest of its weights, which is O(d) per position and exact up to rounding.
+     * Where the dropped position had most of a head's weight, the correction would lose precision, and that head's
+     * attention is recomputed from the cached keys and values instead. The newest position is then projected and
+     * attends over the cached keys and values, O(n·d). Since [b1] and [b2] are per position, the feedforward network
+     * is rerun for every position, so every row of [activations] matches a full recompute.
+     */
+    private fun shiftCache() {
+        val attention = attentionOutput()
+        val weights = attentionWeights()
+        val headSize = inputSize / headCount
+        val last = sequenceSize - 1
+        val recompute = BooleanArray(headCount * last)
+
+        for (head in 0 until headCount) {
+            val headAttention = weights[head]
+            val offset = head * headSize
+            for (i in 0 until last) {
+                val remaining = 1.0 - headAttention[i + 1, 0]
+                if (remaining < 0.5) {
+                    recompute[head * last + i] = true
+                    continue
+                }
+                for (m in offset until offset + headSize) {
+                    attention[i, m] = (attention[i + 1, m] - headAttention[i + 1, 0] * vStack[0, m]) / remaining
+                }
+                for (t in 0 until last) {
+                    headAttention[i, t] = headAttention[i + 1, t + 1] / remaining
+                }
+                headAttention[i, last] = 0.0
+            }
+        }
 
-        inputs.mul(0.0)
-        events.updated.fire()
+        listOf(kStack, qStack, vStack).forEach { matrix ->
+            for (i in 0 until last) {
+                for (j in 0 until inputSize) {
+                    matrix[i, j] = matrix[i + 1, j]
+                }
+            }
+        }
+
+        val scores = DoubleArray(sequenceSize)
+        for (head in 0 until headCount) {
+            for (i in 0 until last) {
+                if (recompute[head * last + i]) {
+                    attendHead(i, head, qStack, kStack, vStack, attention, scores, weights[head])
+                }
+            }
+        }
+
+        project(inputs, last, qStack, kStack, vStack)
+        for (head in 0 until headCount) {
+            attendHead(last, head, qStack, kStack, vStack, attention, scores, weights[head])
+        }
+
+        feedForwardAll()
+    }
+
+    /**
+     * Run the block on each of [sequences], which must be [sequenceSize] by [inputSize], and return their outputs.
+     * The block's own inputs, activations and cache are left alone, so this can be used to evaluate many context
+     * windows in one call. Sequences are projected and run through the feedforward network in parallel, and
+     * attention is run in parallel across every sequence and head.
+     */
+    fun forward(sequences: List<Matrix>): List<Matrix> {
+        sequences.forEach {
+            require(it.nrow() == sequenceSize && it.ncol() == inputSize) {
+                "Sequences must be $sequenceSize x $inputSize, but got ${it.nrow()} x ${it.ncol()}"
+            }
+        }
+        val count = sequences.size
+        val q = List(count) { Matrix(sequenceSize, inputSize) }
+        val k = List(count) { Matrix(sequenceSize, inputSize) }
+        val v = List(count) { Matrix(sequenceSize, inputSize) }
+        val attention = List(count) { Matrix(sequenceSize, inputSize) }
+        val outputs = List(count) { Matrix(sequenceSize, inputSize) }
+
+        IntStream.range(0, count).parallel().forEach { s ->
+            for (i in 0 until sequenceSize) {
+                project(sequences[s], i, q[s], k[s], v[s])
+            }
+        }
+        IntStream.range(0, count * headCount).parallel().forEach { task ->
+            val s = task / headCount
+            val head = task % headCount
+            val scores = DoubleArray(sequenceSize)
+            for (i in 0 until sequenceSize) {
+                attendHead(i, head, q[s], k[s], v[s], attention[s], scores, null)
+            }
+        }
+        IntStream.range(0, count).parallel().forEach { s ->
+            val hidden = Matrix(sequenceSize, hiddenSize)
+            for (i in 0 until sequenceSize) {
+                addResidualRow(i, sequences[s], attention[s], attention[s])
+                feedForwardRow(i, attention[s], hidden, outputs[s])
+            }
+        }
+        return outputs
+    }
+
+    /**
+     * Project row [i] of [x] into queries, keys and values.
+     */
+    private fun project(x: Matrix, i: Int, q: Matrix, k: Matrix, v: Matrix) {
+        for (j in 0 until inputSize) {
+            var qSum = 0.0
+            var kSum = 0.0
+            var vSum = 0.0
+            for (m in 0 until inputSize) {
+                val xm = x[i, m]
+                qSum += xm * Q[m, j]
+                kSum += xm * K[m, j]
+                vSum += xm * V[m, j]
+            }
+            q[i, j] = qSum
+            k[i, j] = kSum
+            v[i, j] = vSum
+        }
+    }
+
+    /**
+     * Attention from position [i] in one head, which uses the head's slice of the query, key and value columns.
+     * Scores, softmax and the weighted sum of values are fused into one pass over the visible positions using
+     * [scores] as scratch, and the causal mask is applied by stopping at position [i] rather than by masking a score
+     * matrix. The head's slice of row [i] of [output] is set to the attention output. If [weights] is given, the
+     * head's attention weights are written to its row [i].
+     */
+    private fun attendHead(
+        i: Int,
+        head: Int,
+        q: Matrix,
+        k: Matrix,
+        v: Matrix,
+        output: Matrix,
+        scores: DoubleArray,
+        weights: Matrix?
+    ) {
+        val headSize = inputSize / headCount
+        val offset = head * headSize
+        val scale = sqrt(headSize.toDouble())
+        val length = if (cachedInference || causal) i + 1 else sequenceSize
+
+        var largest = Double.NEGATIVE_INFINITY // For numerical stability
+        for (t in 0 until length) {
+            var score = 0.0
+            for (m in offset until offset + headSize) {
+                score += q[i, m] * k[t, m]
+            }
+            score /= scale
+            scores[t] = score
+            largest = max(largest, score)
+        }
+        var sum = 0.0
+        for (t in 0 until length) {
+            scores[t] = exp(scores[t] - largest)
+            sum += scores[t]
+        }
+        for (t in 0 until length) {
+            scores[t] /= sum
+        }
+
+        for (m in offset until offset + headSize) {
+            var attended = 0.0
+            for (t in 0 until length) {
+                attended += scores[t] * v[t, m]
+            }
+            output[i, m] = attended
+        }
+
+        if (weights != null) {
+            for (t in 0 until sequenceSize) {
+                weights[i, t] = if (t < length) scores[t] else 0.0
+            }
+        }
+    }
+
+    /**
+     * Set row [i] of [output] to the layer normalized sum of rows [i] of [x] and [attention]. [output] may be
+     * [attention].
+     */
+    private fun addResidualRow(i: Int, x: Matrix, attention: Matrix, output: Matrix) {
+        for (j in 0 until inputSize) {
+            output[i, j] = x[i, j] + attention[i, j]
+        }
+        output.layerNormRow(i)
+    }
+
+    /**
+     * Run row [i] of [input], already layer normalized, through the feedforward network and the output residual and
+     * layer norm, using row [i] of [hidden] for the hidden layer.
+     */
+    private fun feedForwardRow(i: Int, input: Matrix, hidden: Matrix, output: Matrix) {
+        for (h in 0 until hiddenSize) {
+            var sum = b1[i, h]
+            for (m in 0 until inputSize) {
+                sum += input[i, m] * W1[m, h]
+            }
+            hidden[i, h] = max(0.0, sum)
+        }
+        for (j in 0 until inputSize) {
+            var sum = input[i, j] + b2[i, j]
+            for (h in 0 until hiddenSize) {
+                sum += hidden[i, h] * W2[h, j]
+            }
+            output[i, j] = sum
+        }
+        output.layerNormRow(i)
+    }
+
+    /**
+     * Attention outputs of every position before the residual, kept for [shiftCache].
+     */
+    @Transient
+    private var attentionBuffer: Matrix? = null
+
+    private fun attentionOutput() = attentionBuffer ?: Matrix(sequenceSize, inputSize).also { attentionBuffer = it }
+
+    /**
+     * Per-head attention weights for [selfAttention]. With one head they are written there directly.
+     */
+    @Transient
+    private var headWeights: List<Matrix>? = null
+
+    private fun attentionWeights(): List<Matrix> {
+        if (headCount == 1) {
+            return listOf(selfAttention)
+        }
+        return headWeights?.takeIf { it.size == headCount }
+            ?: List(headCount) { Matrix(sequenceSize, sequenceSize) }.also { headWeights = it }
+    }
+
+    /**
+     * Set row [i] of [selfAttention] to the mean of the heads' weights.
+     */
+    private fun recordAttention(i: Int, weights: List<Matrix>) {
+        if (headCount == 1) return
+        for (t in 0 until sequenceSize) {
+            var sum = 0.0
+            for (head in 0 until headCount) {
+                sum += weights[head][i, t]
+            }
+            selfAttention[i, t] = sum / headCount
+        }
+    }
+
+    /**
+     * See [org.simbrain.workspace.serialization.WorkspaceComponentDeserializer]
+     */
+    override fun readResolve(): Any? {
+        // Blocks saved before heads were added
+        if (headCount == 0) {
+            headCount = 1
+        }
+        validateHeadCount(headCount)
+        return super.readResolve()
+    }
+
+    private fun validateHeadCount(count: Int) {
+        require(count > 0 && inputSize % count == 0 && hiddenSize % count == 0) {
+            "Head count $count must divide the input size $inputSize and hidden size $hiddenSize"
+        }
     }
 
     fun copy() = TransformerBlock(sequenceSize, inputSize, hiddenSize).also {
@@ -142,6 +539,9 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
         it.selfAttention.copyFrom(selfAttention)
         it.feedForwardInput.copyFrom(feedForwardInput)
         it.feedForwardHidden.copyFrom(feedForwardHidden)
+        it.cachedInference = cachedInference
+        it.headCount = headCount
+        it.causal = causal
     }
 
 
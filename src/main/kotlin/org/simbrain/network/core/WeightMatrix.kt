@@ -96,6 +96,21 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
     @Transient
     val inhibitoryMask: Matrix
 
+    /**
+     * Row-major single precision copy of [weightMatrix], used when the network's precision is
+     * [Network.Precision.SINGLE]. Null until needed or after the weights change; see [invalidateSingleWeights].
+     * Volatile since parallel training threads may build it.
+     */
+    @Transient
+    @Volatile
+    private var singleWeights: FloatArray? = null
+
+    /**
+     * Row sums of the PSRs computed in single precision, or null if the last [updatePSR] filled in [psrMatrix].
+     */
+    @Transient
+    private var singlePSRSums: FloatArray? = null
+
     @UserParameter(label = "Transpose Graphics", order = 10)
     var transposeGraphics = false
         set(value) {
@@ -138,6 +153,7 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
                 weightMatrix[i, j] = newWeights[i][j]
             }
         }
+        updateMasks()
     }
 
     @Consumable
@@ -187,14 +203,106 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
             // For "connectionist" case. One "half" of a matrix product.
             // Populate each row of the psrMatrix with the element-wise product of the pre-synaptic output vector and
             // that row of the matrix
-            if (source is ActivationSequenceProcessor) {
-                psrMatrix.copyFrom(weightMatrix.broadcastMultiply(source.activations.row(source.activations.nrow() - 1).toMatrix()))
+            val sourceActivations = if (source is ActivationSequenceProcessor) {
+                source.activations.row(source.activations.nrow() - 1).toMatrix()
             } else {
-                psrMatrix.copyFrom(weightMatrix.broadcastMultiply(source.activations))
+                source.activations
+            }
+            if (precision == Network.Precision.SINGLE) {
+                // Only the row sums are needed, so the psr matrix is not filled in
+                singlePSRSums = singlePrecisionProduct(sourceActivations)
+                return
             }
+            psrMatrix.copyFrom(weightMatrix.broadcastMultiply(sourceActivations))
         } else {
             spikeResponder.apply(this, spikeResponseData)
         }
+        singlePSRSums = null
+    }
+
+    override fun getSummedPSRs(): DoubleArray {
+        val sums = singlePSRSums ?: return super.getSummedPSRs()
+        return DoubleArray(sums.size) { sums[it].toDouble() }
+    }
+
+    /**
+     * Returns the single precision copy of the weights, making it if the weights have changed.
+     */
+    private fun singleWeights(): FloatArray {
+        singleWeights?.let { return it }
+        val rows = weightMatrix.nrow()
+        val cols = weightMatrix.ncol()
+        val weights = FloatArray(rows * cols)
+        for (i in 0 until rows) {
+            for (j in 0 until cols) {
+                weights[i * cols + j] = weightMatrix[i, j].toFloat()
+            }
+        }
+        singleWeights = weights
+        return weights
+    }
+
+    /**
+     * Call after changing [weightMatrix] directly, so that single precision computations use the new weights. Called
+     * by [updateMasks].
+     */
+    fun invalidateSingleWeights() {
+        singleWeights = null
+    }
+
+    /**
+     * The product of the weights and a column vector, computed in single precision.
+     */
+    private fun singlePrecisionProduct(vector: Matrix): FloatArray {
+        val weights = singleWeights()
+        val rows = weightMatrix.nrow()
+        val cols = weightMatrix.ncol()
+        val x = FloatArray(cols) { vector[it, 0].toFloat() }
+        val result = FloatArray(rows)
+        for (i in 0 until rows) {
+            val offset = i * cols
+            var sum = 0f
+            for (j in 0 until cols) {
+                sum += weights[offset + j] * x[j]
+            }
+            result[i] = sum
+        }
+        return result
+    }
+
+    /**
+     * The product of the weights and a column vector, as in a forward pass. Computed in single precision when
+     * [precision] is [Network.Precision.SINGLE].
+     */
+    fun times(vector: Matrix, precision: Network.Precision = Network.Precision.DOUBLE): Matrix {
+        if (precision == Network.Precision.DOUBLE) {
+            return weightMatrix.mm(vector)
+        }
+        val product = singlePrecisionProduct(vector)
+        return Matrix(product.size, 1).also { m -> for (i in product.indices) m[i, 0] = product[i].toDouble() }
+    }
+
+    /**
+     * The product of the transposed weights and a column vector, as when backpropagating errors. Computed in single
+     * precision when [precision] is [Network.Precision.SINGLE].
+     */
+    fun transposeTimes(vector: Matrix, precision: Network.Precision = Network.Precision.DOUBLE): Matrix {
+        if (precision == Network.Precision.DOUBLE) {
+            // Prefer this to vector.T.mm(wm).T because that requires an extra transpose
+            return weightMatrix.transpose().mm(vector)
+        }
+        val weights = singleWeights()
+        val rows = weightMatrix.nrow()
+        val cols = weightMatrix.ncol()
+        val result = FloatArray(cols)
+        for (i in 0 until rows) {
+            val offset = i * cols
+            val v = vector[i, 0].toFloat()
+            for (j in 0 until cols) {
+                result[j] += weights[offset + j] * v
+            }
+        }
+        return Matrix(cols, 1).also { m -> for (j in 0 until cols) m[j, 0] = result[j].toDouble() }
     }
 
     private fun updateExcitatoryMask() {
@@ -242,6 +350,7 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
      */
     fun hardClear() {
         weightMatrix.copyFrom(Matrix(weightMatrix.nrow(), weightMatrix.ncol()))
+        invalidateSingleWeights()
         events.updated.fire()
     }
 
@@ -254,5 +363,6 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
     fun updateMasks() {
         updateExcitatoryMask()
         updateInhibitoryMask()
+        invalidateSingleWeights()
     }
 }
@@ -10,6 +10,7 @@ class NetworkEvents: Events() {
     val zoomToFitPage = NoArgEvent(interval = 20)
     val updated = NoArgEvent()
     val modelAdded = OneArgEvent<NetworkModel>()
+    val modelsAdded = OneArgEvent<List<NetworkModel>>()
     val modelRemoved = OneArgEvent<NetworkModel>()
     val updateActionsChanged = NoArgEvent()
     val freeWeightVisibilityChanged = OneArgEvent<Boolean>()
@@ -18,7 +18,9 @@ import org.simbrain.network.gui.nodes.*
 import org.simbrain.network.layouts.GridLayout
 import org.simbrain.network.neurongroups.BasicNeuronGroupParams
 import org.simbrain.network.neurongroups.NeuronGroupParams
+import org.simbrain.network.subnetworks.HopfieldArrayNetwork
 import org.simbrain.network.subnetworks.RestrictedBoltzmannMachine
+import org.simbrain.network.subnetworks.SOMArrayNetwork
 import org.simbrain.network.util.Alignment
 import org.simbrain.util.*
 import org.simbrain.util.decayfunctions.DecayFunction
@@ -576,11 +578,17 @@ class NetworkActions(val networkPanel: NetworkPanel) {
             addSubnetAction("Competitive Network") { CompetitiveCreationDialog(networkPanel) },
             addSubnetAction("Feed Forward Network") { FeedForwardCreationDialog(networkPanel) },
             addSubnetAction("Hopfield") { HopfieldCreationDialog(networkPanel) },
+            addSubnetAction("Hopfield (Array)") {
+                HopfieldArrayNetwork.HopfieldArrayCreator().createEditorDialog {
+                networkPanel.network.addNetworkModel(it.create()) } },
             addSubnetAction("Restricted Boltzmann Machine") {
                 // TODO: As this pattern is reused add a util to NetworkDialogs.kt
                 RestrictedBoltzmannMachine.RBMCreator().createEditorDialog {
                 networkPanel.network.addNetworkModel(it.create()) } },
             addSubnetAction("SOM Network") { SOMCreationDialog(networkPanel) },
+            addSubnetAction("SOM Network (Array)") {
+                SOMArrayNetwork.SOMArrayCreator().createEditorDialog {
+                networkPanel.network.addNetworkModel(it.create()) } },
             addSubnetAction("SRN (Simple Recurrent Network)") { networkPanel.showSRNCreationDialog() }
         )
 
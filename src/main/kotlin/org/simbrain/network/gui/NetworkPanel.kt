@@ -398,8 +398,10 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
 
         fun createSubNetwork() = when (subnetwork) {
             is Hopfield -> HopfieldNode(this, subnetwork)
+            is HopfieldArrayNetwork -> HopfieldArrayNetworkNode(this, subnetwork)
             is CompetitiveNetwork -> CompetitiveNetworkNode(this, subnetwork)
             is SOMNetwork -> SOMNetworkNode(this, subnetwork)
+            is SOMArrayNetwork -> SOMArrayNetworkNode(this, subnetwork)
             is SRNNetwork -> SRNNode(this, subnetwork)
             is RestrictedBoltzmannMachine -> RBMNode(this, subnetwork)
             is BackpropNetwork -> BackpropNetworkNode(this, subnetwork)
@@ -701,6 +703,9 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
             modelAdded.on(Dispatchers.Swing, wait = true) {
                 createNode(it)
             }
+            modelsAdded.on(Dispatchers.Swing, wait = true) { models ->
+                models.forEach { createNode(it) }
+            }
             modelRemoved.on {
                 zoomToFitPage.fire()
             }
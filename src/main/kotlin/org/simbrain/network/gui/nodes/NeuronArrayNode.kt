@@ -37,6 +37,10 @@ import org.simbrain.network.gui.spaceMenu
 import org.simbrain.network.util.SpikingMatrixData
 import org.simbrain.util.*
 import org.simbrain.util.piccolo.addBorder
+import org.simbrain.util.piccolo.component1
+import org.simbrain.util.piccolo.component2
+import org.simbrain.util.piccolo.component3
+import org.simbrain.util.piccolo.component4
 import org.simbrain.util.table.MatrixDataFrame
 import org.simbrain.util.table.SimbrainTablePanel
 import org.simbrain.workspace.couplings.getConsumer
@@ -212,7 +216,6 @@ class NeuronArrayNode(networkPanel: NetworkPanel, val neuronArray: NeuronArray)
         neuronCircleGroup.setOffset(DIAMETER / 2.0, DIAMETER / 2.0 + 20.0 + infoText.height)
         activationImage.offset(0.0, infoText.offset.y + infoText.height + 5)
         spikeImage.offset(0.0, infoText.offset.y + infoText.height + 5)
-        activationImage.addBorder()
         updateBorder()
 
         // call once to make sure all the actions are registered
@@ -220,70 +223,78 @@ class NeuronArrayNode(networkPanel: NetworkPanel, val neuronArray: NeuronArray)
 
     }
 
-    private fun updateActivationImage() {
-        activationImage.removeAllChildren()
-        spikeImage.removeAllChildren()
-        biasImage.removeAllChildren()
-        val activations = neuronArray.activations.toDoubleArray()
+    /**
+     * Pixel buffers for the activation, spike, and bias images. Kept across updates and only replaced when the size or
+     * layout of the array changes.
+     */
+    private var activationPixels: ArrayImage? = null
+    private var spikePixels: ArrayImage? = null
+    private var biasPixels: ArrayImage? = null
 
-        fun renderGridImages() {
-            val len = ceil(sqrt(activations.size.toDouble())).toInt()
-            val img = activations.toSimbrainColorImage(len, len)
-            activationImage.image = img
-            activationImage.setBounds(
-                0.0, 0.0,
-                infoText.width, infoText.width
+    private fun ArrayImage?.reuse(width: Int, height: Int, alpha: Boolean = false) =
+        this?.takeIf { it.width == width && it.height == height } ?: ArrayImage(width, height, alpha)
+
+    /**
+     * Show an array image in an image node. The node's bounds and border are only reset when they change; otherwise
+     * the node is just repainted if its pixels changed.
+     */
+    private fun PImage.show(arrayImage: ArrayImage, changed: Boolean, x: Double, y: Double, w: Double, h: Double) {
+        if (image !== arrayImage.image) {
+            image = arrayImage.image
+        }
+        val (bx, by, bw, bh) = bounds
+        if (bx != x || by != y || bw != w || bh != h) {
+            setBounds(x, y, w, h)
+            removeAllChildren()
+            addBorder()
+        } else if (changed) {
+            repaint()
+        }
+    }
+
+    private fun updateActivationImage() {
+        val size = neuronArray.size
+
+        /**
+         * Draw the activations, spikes, and biases into images [width] by [height] pixels, shown with the given
+         * height in the node.
+         */
+        fun renderImages(width: Int, height: Int, imageHeight: Double) {
+            val activationPixels = activationPixels.reuse(width, height).also { activationPixels = it }
+            activationImage.show(
+                activationPixels, activationPixels.drawSimbrainColors(neuronArray.activations),
+                0.0, 0.0, infoText.width, imageHeight
             )
-            activationImage.addBorder()
+            spikeImage.visible = neuronArray.updateRule.isSpikingRule
             if (neuronArray.updateRule.isSpikingRule) {
                 val spikes = (neuronArray.dataHolder as SpikingMatrixData).spikes
-                spikeImage.image = spikes.toOverlay(len, len, NeuronNode.spikingColor)
-                spikeImage.setBounds(
-                    0.0, 0.0,
-                    infoText.width, infoText.width
+                val spikePixels = spikePixels.reuse(width, height, alpha = true).also { spikePixels = it }
+                spikeImage.show(
+                    spikePixels, spikePixels.drawOverlay(spikes, NeuronNode.spikingColor),
+                    0.0, 0.0, infoText.width, imageHeight
                 )
-                spikeImage.addBorder()
             }
             if (showBias) {
-                biasImage.image = neuronArray.biases.toDoubleArray().toSimbrainColorImage(len, len)
-                biasImage.setBounds(
-                    0.0, infoText.width + infoText.height + margin,
-                    infoText.width, infoText.width
+                val biasPixels = biasPixels.reuse(width, height).also { biasPixels = it }
+                biasImage.show(
+                    biasPixels, biasPixels.drawSimbrainColors(neuronArray.biases),
+                    0.0, imageHeight + infoText.height + margin, infoText.width, imageHeight
                 )
-                biasImage.addBorder()
             }
         }
 
+        fun renderGridImages() {
+            val len = ceil(sqrt(size.toDouble())).toInt()
+            renderImages(len, len, infoText.width)
+        }
+
         fun renderFlatImages() {
-            val img = activations.toSimbrainColorImage(activations.size, 1)
-            activationImage.image = img
-            activationImage.setBounds(
-                0.0, 0.0,
-                infoText.width, flatPixelArrayHeight.toDouble()
-            )
-            activationImage.addBorder()
-            if (neuronArray.updateRule.isSpikingRule) {
-                val spikes = (neuronArray.dataHolder as SpikingMatrixData).spikes
-                spikeImage.image = spikes.toOverlay(activations.size, 1, NeuronNode.spikingColor)
-                spikeImage.setBounds(
-                    0.0, 0.0,
-                    infoText.width, flatPixelArrayHeight.toDouble()
-                )
-                spikeImage.addBorder()
-            }
-            if (showBias) {
-                biasImage.image = neuronArray.biases.toDoubleArray().toSimbrainColorImage(activations.size, 1)
-                biasImage.setBounds(
-                    0.0, flatPixelArrayHeight.toDouble() + infoText.height + margin,
-                    infoText.width, flatPixelArrayHeight.toDouble()
-                )
-                biasImage.addBorder()
-            }
+            renderImages(size, 1, flatPixelArrayHeight.toDouble())
         }
 
         fun renderNeuronCircles() {
             neuronCircles.forEachIndexed { i, circle ->
-                circle.activation = activations[i]
+                circle.activation = neuronArray.activations[i, 0]
                 circle.setClamped(neuronArray.isClamped)
                 circle.setLabel(neuronArray.labelArray[i])
             }
@@ -311,7 +322,7 @@ class NeuronArrayNode(networkPanel: NetworkPanel, val neuronArray: NeuronArray)
 
     private fun computeInfoText() = """
             ${neuronArray.id}    Nodes: ${neuronArray.size} ${if (neuronArray.targetValues != null) "T" else ""}
-            Mean activation: ${neuronArray.activations.toDoubleArray().average().format(4)}
+            Mean activation: ${(neuronArray.activations.sum() / neuronArray.size).format(4)}
             """.trimIndent()
 
     /**
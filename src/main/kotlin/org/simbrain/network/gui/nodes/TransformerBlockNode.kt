@@ -318,6 +318,7 @@ class TransformerBlockNode(networkPanel: NetworkPanel, val transformerBlock: Tra
                         add("v", SimbrainTablePanel(MatrixDataFrame(transformerBlock.vStack)))
                     }
                     dialog.addCommitTask {
+                        transformerBlock.clearCache()
                         with(networkPanel.network) {
                             transformerBlock.update()
                         }
@@ -198,6 +198,7 @@ class WeightMatrixNode(networkPanel: NetworkPanel, val weightMatrix: Connector)
                             showNumericInputDialog("Set spectral Radius:", weightMatrix.weightMatrix.maxEigenvalue())
                         if (radius != null) {
                             weightMatrix.weightMatrix.setSpectralRadius(radius)
+                            weightMatrix.updateMasks()
                             weightMatrix.events.updated.fire()
                         }
                     }
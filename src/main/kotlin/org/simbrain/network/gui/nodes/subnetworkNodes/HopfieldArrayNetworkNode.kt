@@ -0,0 +1,33 @@
+package org.simbrain.network.gui.nodes.subnetworkNodes
+
+import org.simbrain.network.core.NetworkModel
+import org.simbrain.network.gui.NetworkPanel
+import org.simbrain.network.gui.dialogs.makeTrainerPanel
+import org.simbrain.network.gui.nodes.SubnetworkNode
+import org.simbrain.network.subnetworks.HopfieldArrayNetwork
+import org.simbrain.util.StandardDialog
+import org.simbrain.workspace.gui.CouplingMenu
+import javax.swing.JPopupMenu
+
+class HopfieldArrayNetworkNode(networkPanel: NetworkPanel, private val hopfieldNet: HopfieldArrayNetwork):
+    SubnetworkNode(networkPanel, hopfieldNet) {
+
+    override val model: NetworkModel
+        get() = hopfieldNet
+
+    override val toolTipText: String
+        get() = hopfieldNet.toString()
+
+    override val contextMenu: JPopupMenu
+        get() = JPopupMenu().apply {
+            with(networkPanel) {
+                applyUnsupervisedActions(hopfieldNet)
+            }
+            addSeparator()
+            add(CouplingMenu(networkPanel.networkComponent, hopfieldNet))
+        }
+
+    override val propertyDialog: StandardDialog
+        get() = with(networkPanel) {hopfieldNet.makeTrainerPanel()}
+
+}
\ No newline at end of file
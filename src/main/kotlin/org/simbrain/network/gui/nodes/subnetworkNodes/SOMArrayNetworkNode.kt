@@ -0,0 +1,33 @@
+package org.simbrain.network.gui.nodes.subnetworkNodes
+
+import org.simbrain.network.core.NetworkModel
+import org.simbrain.network.gui.NetworkPanel
+import org.simbrain.network.gui.dialogs.makeTrainerPanel
+import org.simbrain.network.gui.nodes.SubnetworkNode
+import org.simbrain.network.subnetworks.SOMArrayNetwork
+import org.simbrain.util.StandardDialog
+import org.simbrain.workspace.gui.CouplingMenu
+import javax.swing.JPopupMenu
+
+class SOMArrayNetworkNode(networkPanel: NetworkPanel, private val som: SOMArrayNetwork):
+    SubnetworkNode(networkPanel, som) {
+
+    override val model: NetworkModel
+        get() = som
+
+    override val toolTipText: String
+        get() = som.toString()
+
+    override val contextMenu: JPopupMenu
+        get() = JPopupMenu().apply {
+            with(networkPanel) {
+                applyUnsupervisedActions(som)
+            }
+            addSeparator()
+            add(CouplingMenu(networkPanel.networkComponent, som))
+        }
+
+    override val propertyDialog: StandardDialog
+        get() = with(networkPanel) {som.makeTrainerPanel()}
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks
+
+import org.simbrain.network.core.*
+import org.simbrain.network.gui.dialogs.NetworkPreferences
+import org.simbrain.network.subnetworks.Hopfield.HopfieldUpdate
+import org.simbrain.network.trainers.UnsupervisedNetwork
+import org.simbrain.network.trainers.UnsupervisedTrainer
+import org.simbrain.network.util.Alignment
+import org.simbrain.network.util.Direction
+import org.simbrain.network.util.alignNetworkModels
+import org.simbrain.network.util.offsetNetworkModel
+import org.simbrain.util.UserParameter
+import org.simbrain.util.binaryRandomize
+import org.simbrain.util.format
+import org.simbrain.util.propertyeditor.EditableObject
+import org.simbrain.util.stats.ProbabilityDistribution
+import smile.math.matrix.Matrix
+
+/**
+ * A discrete Hopfield network whose weights are stored in a single symmetric [WeightMatrix] connecting a
+ * [NeuronArray] to itself. Behaves like [Hopfield] (binary 0/1 units with a threshold, bipolar Hebbian storage), but
+ * avoids per-neuron and per-synapse objects so that networks with thousands of units can be run interactively.
+ *
+ * Storing the input data is a single matrix product. Synchronous updates are a single matrix-vector product.
+ * Asynchronous updates compute the local fields once per sweep and then update them incrementally as units flip,
+ * visiting units in a permutation that is allocated once and reshuffled in place for random updates.
+ */
+class HopfieldArrayNetwork : Subnetwork, UnsupervisedNetwork {
+
+    lateinit var neuronArray: NeuronArray
+
+    override val inputLayer
+        get() = neuronArray
+
+    lateinit var weights: WeightMatrix
+
+    override val trainer = UnsupervisedTrainer()
+
+    override lateinit var inputData: Matrix
+
+    @UserParameter(label = "Update function")
+    var updateFunc = HopfieldUpdate.RAND
+
+    @UserParameter(label = "Threshold", description = "Units are on when their local field exceeds this value")
+    var threshold = 0.0
+
+    override lateinit var customInfo: InfoText
+
+    /**
+     * Local field of each unit, i.e. the weighted sum of the current states.
+     */
+    @Transient
+    private var localField: DoubleArray? = null
+
+    /**
+     * Order in which units are visited in asynchronous updates.
+     */
+    @Transient
+    private var updateOrder: IntArray? = null
+
+    @Transient
+    private var states: DoubleArray? = null
+
+    constructor(numNeurons: Int) : super() {
+        label = "Hopfield network (array)"
+
+        this.inputData = Matrix(10, numNeurons).binaryRandomize()
+
+        neuronArray = NeuronArray(numNeurons).apply {
+            label = "The Neurons"
+            gridMode = true
+            increment = 1.0
+            fillActivations(0.0)
+        }
+        addModel(neuronArray)
+
+        weights = WeightMatrix(neuronArray, neuronArray).apply {
+            label = "weights"
+            hardClear()
+        }
+        addModel(weights)
+
+        customInfo = InfoText(stateInfoText)
+        alignNetworkModels(neuronArray, customInfo, Alignment.HORIZONTAL)
+        offsetNetworkModel(neuronArray, customInfo, Direction.NORTH, 40.0)
+    }
+
+    @XStreamConstructor
+    constructor() : super()
+
+    val size get() = neuronArray.size
+
+    /**
+     * Store every row of the input data as an attractor, by adding the outer products of the bipolar patterns to the
+     * weights. Equivalent to calling [trainOnCurrentPattern] once for each row, but done as one matrix product.
+     */
+    context(Network)
+    override fun trainOnInputData() {
+        storePatterns(inputData)
+    }
+
+    /**
+     * Add the outer products of the bipolar versions of the given binary patterns (one per row) to the weights.
+     */
+    fun storePatterns(patterns: Matrix) {
+        require(patterns.ncol() == size) { "Patterns have ${patterns.ncol()} columns but the network has $size units" }
+        val bipolarPatterns = Matrix(patterns.nrow(), size)
+        for (j in 0 until size) {
+            for (i in 0 until patterns.nrow()) {
+                bipolarPatterns[i, j] = bipolar(patterns[i, j])
+            }
+        }
+        val weightMatrix = weights.weightMatrix
+        weightMatrix.add(bipolarPatterns.tm(bipolarPatterns))
+        for (i in 0 until size) {
+            weightMatrix[i, i] = 0.0
+        }
+        weightsChanged()
+    }
+
+    /**
+     * Apply the basic Hopfield rule to the current pattern.
+     */
+    context(Network)
+    override fun trainOnCurrentPattern() {
+        val state = readStates()
+        val weightMatrix = weights.weightMatrix
+        for (j in 0 until size) {
+            val bj = bipolar(state[j])
+            for (i in 0 until size) {
+                if (i != j) {
+                    weightMatrix[i, j] = weightMatrix[i, j] + bipolar(state[i]) * bj
+                }
+            }
+        }
+        weightsChanged()
+    }
+
+    override fun randomize(randomizer: ProbabilityDistribution?) {
+        val weightMatrix = weights.weightMatrix
+        for (j in 0 until size) {
+            weightMatrix[j, j] = 0.0
+            for (i in 0 until j) {
+                val w = (randomizer ?: NetworkPreferences.weightRandomizer).sampleDouble()
+                weightMatrix[i, j] = w
+                weightMatrix[j, i] = w
+            }
+        }
+        weightsChanged()
+    }
+
+    /**
+     * Add external input to the inputs of [neuronArray]: input from connectors other than [weights], e.g. a layer
+     * cueing a pattern, on top of any input added by couplings. The local fields from [weights] are computed in
+     * update.
+     */
+    context(Network)
+    override fun accumulateInputs() {
+        for (connector in neuronArray.incomingConnectors) {
+            if (connector === weights) continue
+            connector.updatePSR()
+            val psr = connector.getSummedPSRs()
+            for (i in 0 until size) {
+                neuronArray.inputs[i, 0] += psr[i]
+            }
+        }
+    }
+
+    /**
+     * Update the units, each seeing its local field plus its external input. External input is then cleared, as
+     * with a [NeuronArray].
+     */
+    context(Network)
+    override fun update() {
+        if (neuronArray.isClamped) {
+            neuronArray.inputs.mul(0.0)
+            return
+        }
+        when (updateFunc) {
+            HopfieldUpdate.SYNC -> updateSynchronously()
+            HopfieldUpdate.SEQ -> updateAsynchronously(false)
+            HopfieldUpdate.RAND -> updateAsynchronously(true)
+        }
+        neuronArray.inputs.mul(0.0)
+        neuronArray.events.updated.fire()
+        updateStateInfoText()
+    }
+
+    /**
+     * Update all units at once from the current local fields.
+     */
+    private fun updateSynchronously() {
+        val field = weights.weightMatrix.mm(neuronArray.activations).add(neuronArray.inputs)
+        for (i in 0 until size) {
+            neuronArray.activations[i, 0] = if (field[i, 0] > threshold) 1.0 else 0.0
+        }
+    }
+
+    /**
+     * Update units one at a time, each seeing the states of units updated before it. When a unit flips, its column of
+     * the weight matrix (contiguous, since the matrix is column-major and symmetric) is added to the local fields.
+     */
+    context(Network)
+    private fun updateAsynchronously(shuffle: Boolean) {
+        val state = readStates()
+        val field = computeLocalField(state)
+        for (i in 0 until size) {
+            field[i] += neuronArray.inputs[i, 0]
+        }
+        val order = updateOrder?.takeIf { it.size == size } ?: IntArray(size) { it }.also { updateOrder = it }
+        if (shuffle) {
+            for (i in order.lastIndex downTo 1) {
+                val j = random.nextInt(i + 1)
+                order[i] = order[j].also { order[j] = order[i] }
+            }
+        } else {
+            order.indices.forEach { order[it] = it }
+        }
+        val weightMatrix = weights.weightMatrix
+        for (i in order) {
+            val newState = if (field[i] > threshold) 1.0 else 0.0
+            val delta = newState - state[i]
+            if (delta != 0.0) {
+                state[i] = newState
+                for (k in 0 until size) {
+                    field[k] += delta * weightMatrix[k, i]
+                }
+            }
+        }
+        for (i in 0 until size) {
+            neuronArray.activations[i, 0] = state[i]
+        }
+    }
+
+    private fun readStates(): DoubleArray {
+        val state = states?.takeIf { it.size == size } ?: DoubleArray(size).also { states = it }
+        for (i in 0 until size) {
+            state[i] = neuronArray.activations[i, 0]
+        }
+        return state
+    }
+
+    private fun computeLocalField(state: DoubleArray): DoubleArray {
+        val field = localField?.takeIf { it.size == size } ?: DoubleArray(size).also { localField = it }
+        field.fill(0.0)
+        val weightMatrix = weights.weightMatrix
+        for (j in 0 until size) {
+            val s = state[j]
+            if (s != 0.0) {
+                for (i in 0 until size) {
+                    field[i] += weightMatrix[i, j] * s
+                }
+            }
+        }
+        return field
+    }
+
+    /**
+     * Energy of the current state, -1/2 sum_ij w_ij a_i a_j.
+     */
+    val energy: Double
+        get() {
+            val state = readStates()
+            val field = computeLocalField(state)
+            return (-0.5 * state.indices.sumOf { state[it] * field[it] }).let { if (it == -0.0) 0.0 else it }
+        }
+
+    val stateInfoText: String
+        get() = "Energy: " + energy.format(4)
+
+    fun updateStateInfoText() {
+        customInfo.text = stateInfoText
+        events.customInfoUpdated.fire()
+    }
+
+    private fun weightsChanged() {
+        weights.updateMasks()
+        weights.events.updated.fire()
+        events.updated.fire()
+    }
+
+    /**
+     * Helper class for creating new array-backed Hopfield nets using
+     * [org.simbrain.util.propertyeditor.AnnotatedPropertyEditor].
+     */
+    class HopfieldArrayCreator : EditableObject {
+
+        @UserParameter(
+            label = "Number of neurons",
+            description = "How many neurons this Hopfield net should have",
+            order = -1
+        )
+        var numNeurons: Int = 100
+
+        fun create(): HopfieldArrayNetwork {
+            return HopfieldArrayNetwork(numNeurons)
+        }
+    }
+
+    /**
+     * Convert binary values (1,0) to bipolar values (1,-1).
+     */
+    private fun bipolar(inputVal: Double): Double {
+        return if (inputVal == 0.0) -1.0 else inputVal
+    }
+}
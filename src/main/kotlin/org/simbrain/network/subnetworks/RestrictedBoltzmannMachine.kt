@@ -20,6 +20,7 @@ package org.simbrain.network.subnetworks
 
 import org.simbrain.network.core.*
 import org.simbrain.network.gui.dialogs.NetworkPreferences
+import org.simbrain.network.trainers.ContrastiveDivergenceTrainer
 import org.simbrain.network.trainers.UnsupervisedNetwork
 import org.simbrain.network.trainers.UnsupervisedTrainer
 import org.simbrain.network.trainers.updateBiases
@@ -59,7 +60,11 @@ class RestrictedBoltzmannMachine : Subnetwork, UnsupervisedNetwork {
 
     override lateinit var customInfo: InfoText
 
-    override val trainer = UnsupervisedTrainer()
+    /**
+     * Trains with mini-batch contrastive divergence. Declared as an [UnsupervisedTrainer] so that networks saved
+     * before the contrastive divergence trainer existed can still be opened.
+     */
+    override val trainer: UnsupervisedTrainer = ContrastiveDivergenceTrainer()
 
     constructor(numVisibleNodes: Int, numHiddenNodes: Int): super() {
         this.label = "Restricted Boltzmann Machine"
@@ -132,6 +137,12 @@ class RestrictedBoltzmannMachine : Subnetwork, UnsupervisedNetwork {
 
     context(Network)
     override fun trainOnInputData() {
+        val cdTrainer = trainer as? ContrastiveDivergenceTrainer
+        if (cdTrainer != null) {
+            cdTrainer.trainEpoch(this)
+            updateStateInfoText()
+            return
+        }
         inputData.toArray().forEach { row ->
             visibleLayer.activations = row.toMatrix()
             trainOnCurrentPattern()
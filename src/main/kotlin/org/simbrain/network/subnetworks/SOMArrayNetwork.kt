@@ -0,0 +1,551 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks
+
+import org.simbrain.network.core.*
+import org.simbrain.network.gui.dialogs.NetworkPreferences
+import org.simbrain.network.trainers.TrainingSet
+import org.simbrain.network.trainers.UnsupervisedNetwork
+import org.simbrain.network.trainers.UnsupervisedTrainer
+import org.simbrain.network.util.Alignment
+import org.simbrain.network.util.Direction
+import org.simbrain.network.util.alignNetworkModels
+import org.simbrain.network.util.offsetNetworkModel
+import org.simbrain.util.UserParameter
+import org.simbrain.util.binaryRandomize
+import org.simbrain.util.point
+import org.simbrain.util.propertyeditor.EditableObject
+import org.simbrain.util.propertyeditor.GuiEditable
+import org.simbrain.util.roundToString
+import org.simbrain.util.setColConstant
+import org.simbrain.util.stats.ProbabilityDistribution
+import smile.math.matrix.Matrix
+import kotlin.math.ceil
+import kotlin.math.exp
+
+/**
+ * An array-backed Self-Organizing Map. Unlike [SOMNetwork], which is built from neurons and synapses, the codebook
+ * is stored in a single [WeightMatrix] whose rows are the prototype vectors of the map units, so that large maps (e.g.
+ * 64x64 units on 784 dimensional inputs) can be trained at interactive rates.
+ *
+ * Units are arranged on a [latticeWidth] by [latticeHeight] grid. Squared lattice distances are precomputed for every
+ * grid offset, and neighborhood coefficients are computed from that table with a Gaussian of width
+ * [neighborhoodRadius], truncated at three widths.
+ *
+ * Training can be online, as in [SOMNetwork], or batch, in which case each epoch sets every prototype to the
+ * neighborhood-weighted mean of the inputs mapped to it (see [trainBatchEpoch]).
+ */
+class SOMArrayNetwork : Subnetwork, UnsupervisedNetwork {
+
+    override lateinit var inputLayer: NeuronArray
+
+    /**
+     * One node per map unit. The winning unit has activation 1 and all others 0.
+     */
+    lateinit var somLayer: NeuronArray
+
+    /**
+     * The codebook. Row i is the prototype of unit i.
+     */
+    lateinit var prototypes: WeightMatrix
+
+    override lateinit var inputData: Matrix
+
+    override lateinit var customInfo: InfoText
+
+    override val trainer = UnsupervisedTrainer()
+
+    var latticeWidth = 1
+        private set
+
+    var latticeHeight = 1
+        private set
+
+    var initialLearningRate by GuiEditable(
+        label = "Initial learning rate",
+        description = "Initial learning rate, which then decays",
+        initValue = 0.1,
+        order = 10
+    )
+
+    var learningDecayRate by GuiEditable(
+        label = "Learning decay rate",
+        description = "Proportion by which the learning rate decays after each online pattern",
+        initValue = 0.002,
+        order = 20
+    )
+
+    var initialNeighborhoodRadius by GuiEditable(
+        label = "Initial neighborhood radius",
+        description = "Initial width of the neighborhood function, in lattice units",
+        initValue = 3.0,
+        order = 30
+    )
+
+    var neighborhoodDecayAmount by GuiEditable(
+        label = "Neighborhood decay amount",
+        description = "Amount the neighborhood radius decrements after each online pattern or batch epoch",
+        initValue = 0.01,
+        order = 40
+    )
+
+    var batchMode by GuiEditable(
+        label = "Batch training",
+        description = "If true, training on the input data runs a batch SOM epoch; otherwise patterns are presented " +
+                "one at a time",
+        initValue = false,
+        order = 50
+    )
+
+    var learningRate = initialLearningRate
+
+    var neighborhoodRadius = initialNeighborhoodRadius
+
+    /**
+     * Index of the most recent winning unit, or -1 if none.
+     */
+    var winner = -1
+        private set
+
+    /**
+     * Squared distance between the input and the winning prototype.
+     */
+    var winDistance = 0.0
+        private set
+
+    /**
+     * Squared lattice distance for every grid offset, indexed by [offsetIndex].
+     */
+    @Transient
+    private var latticeDistances: DoubleArray? = null
+
+    /**
+     * Neighborhood coefficients for every grid offset, recomputed when the radius changes.
+     */
+    @Transient
+    private var neighborhoodKernel: DoubleArray? = null
+
+    @Transient
+    private var kernelRadius = Double.NaN
+
+    // Reusable buffers for the winner search and updates
+    @Transient
+    private var partialDistances: DoubleArray? = null
+
+    @Transient
+    private var activeUnits: IntArray? = null
+
+    @Transient
+    private var neighborUnits: IntArray? = null
+
+    @Transient
+    private var neighborCoefficients: DoubleArray? = null
+
+    @Transient
+    private var inputBuffer: DoubleArray? = null
+
+    @Transient
+    private var batchSums: Matrix? = null
+
+    @Transient
+    private var batchCounts: DoubleArray? = null
+
+    @JvmOverloads
+    constructor(
+        numInputs: Int,
+        latticeWidth: Int,
+        latticeHeight: Int = latticeWidth
+    ) : super() {
+        this.label = "SOM Array Network"
+        this.latticeWidth = latticeWidth
+        this.latticeHeight = latticeHeight
+
+        inputLayer = NeuronArray(numInputs).apply {
+            label = "Input layer"
+            isClamped = true
+        }
+        this.addModel(inputLayer)
+
+        somLayer = NeuronArray(latticeWidth * latticeHeight).apply {
+            label = "SOM layer"
+            gridMode = true
+            fillActivations(0.0)
+        }
+        this.addModel(somLayer)
+
+        prototypes = WeightMatrix(inputLayer, somLayer)
+        this.addModel(prototypes)
+        prototypes.randomize(NetworkPreferences.weightRandomizer)
+
+        this.inputData = Matrix(10, numInputs).binaryRandomize()
+
+        alignNetworkModels(inputLayer, somLayer, Alignment.VERTICAL)
+        offsetNetworkModel(inputLayer, somLayer, Direction.NORTH, 200.0)
+
+        customInfo = InfoText(stateInfoText)
+        customInfo.location = point(0, -100)
+    }
+
+    @XStreamConstructor
+    constructor() : super()
+
+    val numUnits get() = latticeWidth * latticeHeight
+
+    val stateInfoText: String
+        get() = """
+            Learning rate (${learningRate.roundToString(3)})
+            Radius (${neighborhoodRadius.roundToString(2)})
+        """.trimIndent()
+
+    fun updateStateInfoText() {
+        customInfo.text = stateInfoText
+        events.customInfoUpdated.fire()
+    }
+
+    /**
+     * Reset the learning rate and neighborhood radius to their initial values.
+     */
+    fun reset() {
+        learningRate = initialLearningRate
+        neighborhoodRadius = initialNeighborhoodRadius
+        updateStateInfoText()
+    }
+
+    context(Network)
+    override fun accumulateInputs() {
+        inputLayer.accumulateInputs()
+    }
+
+    /**
+     * As with [SOMNetwork], updating finds the winner for the current input and trains on it.
+     */
+    context(Network)
+    override fun update() {
+        inputLayer.update()
+        trainOnCurrentPattern()
+    }
+
+    context(Network)
+    override fun trainOnInputData() {
+        if (batchMode) {
+            trainBatchEpoch(inputData)
+            return
+        }
+        val input = inputBuffer(inputData.ncol())
+        for (row in 0 until inputData.nrow()) {
+            for (j in input.indices) {
+                input[j] = inputData[row, j]
+            }
+            trainOnPattern(input)
+        }
+        inputLayer.setActivations(input)
+        publishUpdate()
+    }
+
+    context(Network)
+    override fun trainOnCurrentPattern() {
+        trainOnPattern(inputLayer.activationArray)
+        publishUpdate()
+    }
+
+    /**
+     * Find the winner for an input vector, move the prototypes of the winner and its neighbors towards it, and decay
+     * the learning rate and neighborhood radius.
+     */
+    fun trainOnPattern(input: DoubleArray) {
+        val winner = findWinner(input)
+        val weights = prototypes.weightMatrix
+        val neighborCount = collectNeighbors(winner)
+        val units = neighborUnits!!
+        val coefficients = neighborCoefficients!!
+        for (k in 0 until neighborCount) {
+            coefficients[k] *= learningRate
+        }
+        // Column-major storage, so loop over units in the inner loop
+        for (j in input.indices) {
+            val x = input[j]
+            for (k in 0 until neighborCount) {
+                val i = units[k]
+                val w = weights[i, j]
+                weights[i, j] = w + coefficients[k] * (x - w)
+            }
+        }
+        learningRate -= learningRate * learningDecayRate
+        neighborhoodRadius = (neighborhoodRadius - neighborhoodDecayAmount).coerceAtLeast(0.0)
+    }
+
+    /**
+     * Run one epoch of the batch SOM algorithm: map every row of the inputs to its winner, then set each prototype to
+     * the neighborhood-weighted mean of all inputs, and decay the neighborhood radius. The learning rate is not used.
+     */
+    context(Network)
+    fun trainBatchEpoch(inputs: Matrix) {
+        require(inputs.ncol() == inputLayer.size) {
+            "Inputs have ${inputs.ncol()} columns but the input layer has ${inputLayer.size} nodes"
+        }
+        val dimension = inputs.ncol()
+        val sums = batchSums?.takeIf { it.nrow() == numUnits && it.ncol() == dimension }
+            ?: Matrix(numUnits, dimension).also { batchSums = it }
+        val counts = batchCounts?.takeIf { it.size == numUnits } ?: DoubleArray(numUnits).also { batchCounts = it }
+        sums.mul(0.0)
+        counts.fill(0.0)
+
+        val input = inputBuffer(dimension)
+        for (row in 0 until inputs.nrow()) {
+            for (j in 0 until dimension) {
+                input[j] = inputs[row, j]
+            }
+            val winner = findWinner(input)
+            counts[winner]++
+            for (j in 0 until dimension) {
+                sums[winner, j] = sums[winner, j] + input[j]
+            }
+        }
+
+        val weights = prototypes.weightMatrix
+        val units = neighborUnits(numUnits)
+        val coefficients = neighborCoefficients(numUnits)
+        for (i in 0 until numUnits) {
+            // The neighborhood function is symmetric, so the units near i are the units i is near
+            val neighborCount = collectNeighbors(i)
+            var denominator = 0.0
+            var contributing = 0
+            for (k in 0 until neighborCount) {
+                val b = units[k]
+                if (counts[b] > 0) {
+                    units[contributing] = b
+                    coefficients[contributing] = coefficients[k]
+                    denominator += coefficients[k] * counts[b]
+                    contributing++
+                }
+            }
+            if (denominator == 0.0) {
+                continue
+            }
+            for (j in 0 until dimension) {
+                var numerator = 0.0
+                for (k in 0 until contributing) {
+                    numerator += coefficients[k] * sums[units[k], j]
+                }
+                weights[i, j] = numerator / denominator
+            }
+        }
+
+        neighborhoodRadius = (neighborhoodRadius - neighborhoodDecayAmount).coerceAtLeast(0.0)
+        inputLayer.setActivations(input)
+        publishUpdate()
+    }
+
+    /**
+     * Run one batch epoch over the inputs of a training set.
+     */
+    context(Network)
+    fun trainBatchEpoch(trainingSet: TrainingSet) {
+        trainBatchEpoch(trainingSet.allSet.map { (input, _) -> input.toDoubleArray() }.toTypedArray().let {
+            Matrix.of(it)
+        })
+    }
+
+    /**
+     * Find the unit whose prototype is closest (in squared Euclidean distance) to the input.
+     *
+     * Distances are accumulated a block of input dimensions at a time, over all units still in the running. The
+     * previous winner's distance is computed first and used as a bound, and after each block any unit whose partial
+     * distance already exceeds the bound is dropped. Since winners tend to change slowly this usually eliminates most
+     * units after the first few blocks.
+     */
+    fun findWinner(input: DoubleArray): Int {
+        val weights = prototypes.weightMatrix
+        val n = numUnits
+        val partial = partialDistances?.takeIf { it.size == n } ?: DoubleArray(n).also { partialDistances = it }
+        val active = activeUnits?.takeIf { it.size == n } ?: IntArray(n).also { activeUnits = it }
+
+        val candidate = if (winner in 0 until n) winner else 0
+        var bound = 0.0
+        for (j in input.indices) {
+            val diff = weights[candidate, j] - input[j]
+            bound += diff * diff
+        }
+
+        var activeCount = 0
+        for (i in 0 until n) {
+            if (i != candidate) {
+                active[activeCount++] = i
+                partial[i] = 0.0
+            }
+        }
+
+        var blockStart = 0
+        while (blockStart < input.size && activeCount > 0) {
+            val blockEnd = minOf(blockStart + DISTANCE_BLOCK_SIZE, input.size)
+            for (j in blockStart until blockEnd) {
+                val x = input[j]
+                for (k in 0 until activeCount) {
+                    val i = active[k]
+                    val diff = weights[i, j] - x
+                    partial[i] += diff * diff
+                }
+            }
+            var kept = 0
+            for (k in 0 until activeCount) {
+                val i = active[k]
+                if (partial[i] < bound) {
+                    active[kept++] = i
+                }
+            }
+            activeCount = kept
+            blockStart = blockEnd
+        }
+
+        var best = candidate
+        var bestDistance = bound
+        for (k in 0 until activeCount) {
+            val i = active[k]
+            if (partial[i] < bestDistance || (partial[i] == bestDistance && i < best)) {
+                best = i
+                bestDistance = partial[i]
+            }
+        }
+        winner = best
+        winDistance = bestDistance
+        return best
+    }
+
+    /**
+     * Fill [neighborUnits] and [neighborCoefficients] with the units in the neighborhood of a unit and their
+     * neighborhood coefficients, and return how many there are.
+     */
+    private fun collectNeighbors(center: Int): Int {
+        val kernel = neighborhoodKernel()
+        val units = neighborUnits(numUnits)
+        val coefficients = neighborCoefficients(numUnits)
+        val cx = center % latticeWidth
+        val cy = center / latticeWidth
+        val reach = kernelReach()
+        var count = 0
+        for (y in maxOf(0, cy - reach)..minOf(latticeHeight - 1, cy + reach)) {
+            for (x in maxOf(0, cx - reach)..minOf(latticeWidth - 1, cx + reach)) {
+                val h = kernel[offsetIndex(x - cx, y - cy)]
+                if (h > 0.0) {
+                    units[count] = y * latticeWidth + x
+                    coefficients[count] = h
+                    count++
+                }
+            }
+        }
+        return count
+    }
+
+    private fun kernelReach() = minOf(
+        ceil(NEIGHBORHOOD_CUTOFF * neighborhoodRadius).toInt(),
+        maxOf(latticeWidth, latticeHeight)
+    )
+
+    private fun offsetIndex(dx: Int, dy: Int) = (dy + latticeHeight - 1) * (2 * latticeWidth - 1) + dx + latticeWidth - 1
+
+    private fun latticeDistances() = latticeDistances ?: DoubleArray((2 * latticeWidth - 1) * (2 * latticeHeight - 1))
+        .also { table ->
+            for (dy in -(latticeHeight - 1) until latticeHeight) {
+                for (dx in -(latticeWidth - 1) until latticeWidth) {
+                    table[offsetIndex(dx, dy)] = (dx * dx + dy * dy).toDouble()
+                }
+            }
+            latticeDistances = table
+        }
+
+    private fun neighborhoodKernel(): DoubleArray {
+        val kernel = neighborhoodKernel
+        if (kernel != null && kernelRadius == neighborhoodRadius) {
+            return kernel
+        }
+        val distances = latticeDistances()
+        val cutoff = (NEIGHBORHOOD_CUTOFF * neighborhoodRadius).let { it * it }
+        val twoSigmaSquared = 2 * neighborhoodRadius * neighborhoodRadius
+        return (kernel ?: DoubleArray(distances.size)).also { newKernel ->
+            for (k in distances.indices) {
+                newKernel[k] = when {
+                    distances[k] == 0.0 -> 1.0
+                    distances[k] > cutoff -> 0.0
+                    else -> exp(-distances[k] / twoSigmaSquared)
+                }
+            }
+            neighborhoodKernel = newKernel
+            kernelRadius = neighborhoodRadius
+        }
+    }
+
+    private fun neighborUnits(size: Int) = neighborUnits?.takeIf { it.size == size }
+        ?: IntArray(size).also { neighborUnits = it }
+
+    private fun neighborCoefficients(size: Int) = neighborCoefficients?.takeIf { it.size == size }
+        ?: DoubleArray(size).also { neighborCoefficients = it }
+
+    private fun inputBuffer(size: Int) = inputBuffer?.takeIf { it.size == size }
+        ?: DoubleArray(size).also { inputBuffer = it }
+
+    /**
+     * Show the current winner and notify the gui that the prototypes changed.
+     */
+    private fun publishUpdate() {
+        somLayer.activations.setColConstant(0, 0.0)
+        if (winner >= 0) {
+            somLayer.activations[winner, 0] = 1.0
+        }
+        somLayer.events.updated.fire()
+        prototypes.updateMasks()
+        prototypes.events.updated.fire()
+        updateStateInfoText()
+    }
+
+    override fun randomize(randomizer: ProbabilityDistribution?) {
+        prototypes.randomize(randomizer ?: NetworkPreferences.weightRandomizer)
+    }
+
+    /**
+     * Helper class for creating new array-backed SOMs using [org.simbrain.util.propertyeditor.AnnotatedPropertyEditor].
+     */
+    class SOMArrayCreator : EditableObject {
+
+        @UserParameter(label = "Lattice width", order = 10)
+        var latticeWidth: Int = 10
+
+        @UserParameter(label = "Lattice height", order = 20)
+        var latticeHeight: Int = 10
+
+        @UserParameter(label = "Number of inputs", order = 30)
+        var numIn: Int = 16
+
+        fun create(): SOMArrayNetwork {
+            return SOMArrayNetwork(numIn, latticeWidth, latticeHeight)
+        }
+    }
+
+    companion object {
+
+        /**
+         * Number of input dimensions accumulated between pruning passes in [findWinner].
+         */
+        private const val DISTANCE_BLOCK_SIZE = 32
+
+        /**
+         * The neighborhood function is zero beyond this many radii.
+         */
+        private const val NEIGHBORHOOD_CUTOFF = 3.0
+    }
+}
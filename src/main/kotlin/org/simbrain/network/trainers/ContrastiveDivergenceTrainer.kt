@@ -0,0 +1,275 @@
+package org.simbrain.network.trainers
+
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.subnetworks.RestrictedBoltzmannMachine
+import org.simbrain.util.propertyeditor.GuiEditable
+import kotlin.math.exp
+
+/**
+ * Mini-batch contrastive divergence (CD-k) and persistent contrastive divergence (PCD) training for a
+ * [RestrictedBoltzmannMachine]. See https://www.cs.toronto.edu/~hinton/absps/guideTR.pdf
+ *
+ * Each epoch presents the input data in shuffled mini-batches. Every phase of a batch is a matrix-matrix product over
+ * flat row-major buffers that are allocated once and reused across batches and epochs. Random numbers come from the
+ * network's generator, so training is reproducible for a given network seed.
+ *
+ * While training, the weights and biases are kept in working buffers and only copied back into the machine's
+ * [org.simbrain.network.core.WeightMatrix] and [NeuronArray]s (firing their update events) every [publishInterval]
+ * batches and at the end of each epoch.
+ */
+class ContrastiveDivergenceTrainer : UnsupervisedTrainer() {
+
+    var batchSize by GuiEditable(
+        label = "Batch size",
+        description = "Number of patterns per weight update",
+        initValue = 10,
+        order = 10
+    )
+
+    var gibbsSteps by GuiEditable(
+        label = "Gibbs steps (k)",
+        description = "Number of Gibbs sampling steps in the negative phase",
+        initValue = 1,
+        order = 20
+    )
+
+    var persistent by GuiEditable(
+        label = "Persistent chains",
+        description = "If true, the negative phase continues from the previous batch's chains (PCD) rather than " +
+                "from the data (CD)",
+        initValue = false,
+        order = 30
+    )
+
+    var publishInterval by GuiEditable(
+        label = "Publish interval",
+        description = "Number of batches between updates of the network's weights and biases shown in the GUI",
+        initValue = 10,
+        order = 40
+    )
+
+    /**
+     * Mean squared reconstruction error of the last epoch.
+     */
+    var reconstructionError = 0.0
+        private set
+
+    @Transient
+    private var buffers: Buffers? = null
+
+    /**
+     * Working state for one machine and batch size. Matrices are row-major: batch rows of visible or hidden units,
+     * and hidden rows of visible weights.
+     */
+    private class Buffers(val numVisible: Int, val numHidden: Int, val batchSize: Int) {
+        val weights = DoubleArray(numHidden * numVisible)
+        val visibleBiases = DoubleArray(numVisible)
+        val hiddenBiases = DoubleArray(numHidden)
+        val weightGradient = DoubleArray(numHidden * numVisible)
+        val visibleBiasGradient = DoubleArray(numVisible)
+        val hiddenBiasGradient = DoubleArray(numHidden)
+        val dataVisible = DoubleArray(batchSize * numVisible)
+        val dataHidden = DoubleArray(batchSize * numHidden)
+        val chainVisible = DoubleArray(batchSize * numVisible)
+        val chainHidden = DoubleArray(batchSize * numHidden)
+        val hiddenSamples = DoubleArray(batchSize * numHidden)
+        var chainsInitialized = false
+        var order = IntArray(0)
+    }
+
+    /**
+     * Train on every row of the machine's input data once, in mini-batches, and return the mean squared
+     * reconstruction error.
+     */
+    context(Network)
+    fun trainEpoch(rbm: RestrictedBoltzmannMachine): Double {
+        val data = rbm.inputData
+        val numVisible = rbm.visibleLayer.size
+        val numHidden = rbm.hiddenLayer.size
+        require(data.ncol() == numVisible) {
+            "Input data has ${data.ncol()} columns but the visible layer has $numVisible nodes"
+        }
+        val batch = batchSize.coerceIn(1, maxOf(1, data.nrow()))
+        val b = buffers?.takeIf { it.numVisible == numVisible && it.numHidden == numHidden && it.batchSize == batch }
+            ?: Buffers(numVisible, numHidden, batch).also { buffers = it }
+        readParameters(rbm, b)
+
+        if (b.order.size != data.nrow()) {
+            b.order = IntArray(data.nrow()) { it }
+        }
+        val order = b.order
+        for (i in order.lastIndex downTo 1) {
+            val j = random.nextInt(i + 1)
+            order[i] = order[j].also { order[j] = order[i] }
+        }
+
+        var squaredError = 0.0
+        var batchCount = 0
+        var start = 0
+        while (start < order.size) {
+            val rows = minOf(batch, order.size - start)
+            for (r in 0 until rows) {
+                val row = order[start + r]
+                for (i in 0 until numVisible) {
+                    b.dataVisible[r * numVisible + i] = data[row, i]
+                }
+            }
+            squaredError += trainBatch(b, rows)
+            start += rows
+            batchCount++
+            if (batchCount % publishInterval.coerceAtLeast(1) == 0) {
+                writeParameters(rbm, b)
+            }
+        }
+        writeParameters(rbm, b)
+        reconstructionError = squaredError / (data.nrow() * numVisible)
+        return reconstructionError
+    }
+
+    /**
+     * Apply one CD-k or PCD update for the first [rows] rows of the data buffer and return the summed squared
+     * reconstruction error.
+     */
+    context(Network)
+    private fun trainBatch(b: Buffers, rows: Int): Double {
+        val nv = b.numVisible
+        val nh = b.numHidden
+
+        // Positive phase
+        hiddenProbabilities(b, b.dataVisible, b.dataHidden, rows)
+
+        // Negative phase
+        if (!persistent || !b.chainsInitialized) {
+            b.dataHidden.copyInto(b.chainHidden, 0, 0, rows * nh)
+            b.chainsInitialized = persistent
+        } else {
+            hiddenProbabilities(b, b.chainVisible, b.chainHidden, rows)
+        }
+        repeat(gibbsSteps.coerceAtLeast(1)) {
+            sample(b.chainHidden, b.hiddenSamples, rows * nh)
+            visibleProbabilities(b, b.hiddenSamples, b.chainVisible, rows)
+            hiddenProbabilities(b, b.chainVisible, b.chainHidden, rows)
+        }
+
+        // Gradients: data statistics minus model statistics, averaged over the batch
+        b.weightGradient.fill(0.0)
+        b.visibleBiasGradient.fill(0.0)
+        b.hiddenBiasGradient.fill(0.0)
+        var squaredError = 0.0
+        for (r in 0 until rows) {
+            val vOffset = r * nv
+            val hOffset = r * nh
+            for (j in 0 until nh) {
+                val hData = b.dataHidden[hOffset + j]
+                val hModel = b.chainHidden[hOffset + j]
+                b.hiddenBiasGradient[j] += hData - hModel
+                val wOffset = j * nv
+                for (i in 0 until nv) {
+                    b.weightGradient[wOffset + i] += hData * b.dataVisible[vOffset + i] - hModel * b.chainVisible[vOffset + i]
+                }
+            }
+            for (i in 0 until nv) {
+                val diff = b.dataVisible[vOffset + i] - b.chainVisible[vOffset + i]
+                b.visibleBiasGradient[i] += diff
+                squaredError += diff * diff
+            }
+        }
+        val rate = learningRate / rows
+        for (k in b.weights.indices) {
+            b.weights[k] += rate * b.weightGradient[k]
+        }
+        for (i in 0 until nv) {
+            b.visibleBiases[i] += rate * b.visibleBiasGradient[i]
+        }
+        for (j in 0 until nh) {
+            b.hiddenBiases[j] += rate * b.hiddenBiasGradient[j]
+        }
+        return squaredError
+    }
+
+    /**
+     * hidden = logistic(visible * weights^T + hiddenBiases), for the first [rows] rows.
+     */
+    private fun hiddenProbabilities(b: Buffers, visible: DoubleArray, hidden: DoubleArray, rows: Int) {
+        val nv = b.numVisible
+        val nh = b.numHidden
+        for (r in 0 until rows) {
+            val vOffset = r * nv
+            for (j in 0 until nh) {
+                val wOffset = j * nv
+                var sum = b.hiddenBiases[j]
+                for (i in 0 until nv) {
+                    sum += visible[vOffset + i] * b.weights[wOffset + i]
+                }
+                hidden[r * nh + j] = logistic(sum)
+            }
+        }
+    }
+
+    /**
+     * visible = logistic(hidden * weights + visibleBiases), for the first [rows] rows.
+     */
+    private fun visibleProbabilities(b: Buffers, hidden: DoubleArray, visible: DoubleArray, rows: Int) {
+        val nv = b.numVisible
+        val nh = b.numHidden
+        for (r in 0 until rows) {
+            val vOffset = r * nv
+            b.visibleBiases.copyInto(visible, vOffset)
+            for (j in 0 until nh) {
+                val h = hidden[r * nh + j]
+                if (h != 0.0) {
+                    val wOffset = j * nv
+                    for (i in 0 until nv) {
+                        visible[vOffset + i] += h * b.weights[wOffset + i]
+                    }
+                }
+            }
+            for (i in 0 until nv) {
+                visible[vOffset + i] = logistic(visible[vOffset + i])
+            }
+        }
+    }
+
+    /**
+     * Replace probabilities with binary samples.
+     */
+    context(Network)
+    private fun sample(probabilities: DoubleArray, samples: DoubleArray, count: Int) {
+        for (k in 0 until count) {
+            samples[k] = if (random.nextDouble() < probabilities[k]) 1.0 else 0.0
+        }
+    }
+
+    private fun logistic(x: Double) = 1.0 / (1.0 + exp(-x))
+
+    private fun readParameters(rbm: RestrictedBoltzmannMachine, b: Buffers) {
+        val weightMatrix = rbm.visibleToHidden.weightMatrix
+        for (j in 0 until b.numHidden) {
+            for (i in 0 until b.numVisible) {
+                b.weights[j * b.numVisible + i] = weightMatrix[j, i]
+            }
+            b.hiddenBiases[j] = rbm.hiddenLayer.biases[j, 0]
+        }
+        for (i in 0 until b.numVisible) {
+            b.visibleBiases[i] = rbm.visibleLayer.biases[i, 0]
+        }
+    }
+
+    private fun writeParameters(rbm: RestrictedBoltzmannMachine, b: Buffers) {
+        val weightMatrix = rbm.visibleToHidden.weightMatrix
+        for (i in 0 until b.numVisible) {
+            for (j in 0 until b.numHidden) {
+                weightMatrix[j, i] = b.weights[j * b.numVisible + i]
+            }
+            rbm.visibleLayer.biases[i, 0] = b.visibleBiases[i]
+        }
+        for (j in 0 until b.numHidden) {
+            rbm.hiddenLayer.biases[j, 0] = b.hiddenBiases[j]
+        }
+        rbm.visibleToHidden.updateMasks()
+        rbm.visibleToHidden.events.updated.fire()
+        rbm.visibleLayer.events.updated.fire()
+        rbm.hiddenLayer.events.updated.fire()
+    }
+}
@@ -1,7 +1,11 @@
 package org.simbrain.network.trainers
 
 import org.simbrain.util.shiftRight
+import org.simbrain.util.table.ImportExportOptions
+import org.simbrain.util.table.NumericTable
+import org.simbrain.util.table.readCsvMatrix
 import smile.math.matrix.Matrix
+import java.io.File
 import kotlin.math.min
 
 class MatrixDataset(
@@ -35,4 +39,46 @@ class MatrixDataset(
 fun createDiagonalDataset(nInputs: Int, nOutputs: Int, shiftAmount: Int = 0): MatrixDataset {
     val nrows = min(nInputs, nOutputs)
     return MatrixDataset(Matrix.eye(nrows, nInputs), Matrix.eye(nrows, nOutputs).shiftRight(shiftAmount))
-}
\ No newline at end of file
+}
+
+/**
+ * Creates a dataset from csv files of inputs and targets, read in parallel with [readCsvMatrix]. The matrices read
+ * are used by the dataset without copying.
+ */
+fun readCsvDataset(
+    inputFile: File,
+    targetFile: File,
+    options: ImportExportOptions = ImportExportOptions()
+): MatrixDataset {
+    val inputs = readCsvMatrix(inputFile, options)
+    val targets = readCsvMatrix(targetFile, options)
+    return MatrixDataset(
+        inputs.data,
+        targets.data,
+        inputs.rowNames?.map { it ?: "" },
+        targets.rowNames?.map { it ?: "" },
+        inputs.columnNames,
+        targets.columnNames
+    )
+}
+
+/**
+ * Creates a dataset from a table whose columns hold both the inputs and the targets.
+ */
+fun NumericTable.toMatrixDataset(inputColumns: IntRange, targetColumns: IntRange): MatrixDataset {
+    fun columns(range: IntRange) = Matrix(data.nrow(), range.count()).also { m ->
+        range.forEachIndexed { j, col ->
+            for (i in 0 until data.nrow()) {
+                m[i, j] = data[i, col]
+            }
+        }
+    }
+    return MatrixDataset(
+        columns(inputColumns),
+        columns(targetColumns),
+        rowNames?.map { it ?: "" },
+        rowNames?.map { it ?: "" },
+        columnNames?.slice(inputColumns),
+        columnNames?.slice(targetColumns)
+    )
+}
@@ -0,0 +1,191 @@
+package org.simbrain.network.trainers
+
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.network.updaterules.interfaces.DifferentiableUpdateRule
+import org.simbrain.network.updaterules.interfaces.NoisyUpdateRule
+import org.simbrain.util.roundToFloat
+import org.simbrain.util.validateSameShape
+import smile.math.matrix.Matrix
+import java.util.stream.IntStream
+
+/**
+ * Data-parallel backprop for a chain of weight matrices, as in a [org.simbrain.network.subnetworks.BackpropNetwork].
+ *
+ * A batch is split into [shardCount] contiguous shards. Each shard runs forward and backward passes over its patterns
+ * on its own thread, using its own copies of the layers for activations and inputs, and accumulates its own weight and
+ * bias changes; the network's weights are only read. The shards' changes are then summed pairwise in a fixed tree
+ * order and applied once. Products use the network's [Network.precision], as in [forwardPass] and
+ * [accumulateBackprop]. Since the shards and the order of the sums depend only on the batch size and [shardCount],
+ * results are the same from run to run whatever the number of cores or the timing of the threads.
+ *
+ * Working layers and accumulators are allocated once and reused across batches.
+ */
+class ParallelBackprop(wmList: List<WeightMatrix>, val shardCount: Int) {
+
+    val wmList = wmList.toList()
+
+    init {
+        require(shardCount > 0) { "Shard count must be positive" }
+    }
+
+    /**
+     * Working state for one shard.
+     */
+    private inner class Shard {
+
+        /**
+         * Copies of the target layers of [wmList], holding this shard's inputs and activations.
+         */
+        val layers = wmList.map { it.tar.copy() }
+
+        val weightDeltas = wmList.map { Matrix(it.weightMatrix.nrow(), it.weightMatrix.ncol()) }
+
+        val biasDeltas = wmList.map { Matrix(it.tar.size, 1) }
+
+        var error = 0.0
+
+        /**
+         * Match the working layers to the network's, and clear the accumulators. Each shard gets its own copy of each
+         * update rule, so that rules with state or a noise generator are never used by two threads at once.
+         */
+        fun reset() {
+            layers.forEachIndexed { i, layer ->
+                val source = wmList[i].tar
+                layer.updateRule = source.updateRule.copy()
+                layer.biases.copyFrom(source.biases)
+            }
+            weightDeltas.forEach { it.fill(0.0) }
+            biasDeltas.forEach { it.fill(0.0) }
+            error = 0.0
+        }
+
+        /**
+         * Forward pass for one input, as in [forwardPass] but without changing the network. Noise is keyed by the
+         * network's seed, the layer, the batch and [pattern], so it does not depend on which shard runs the pattern.
+         */
+        context(Network)
+        fun forward(input: Matrix, pattern: Int) {
+            var activations = input
+            wmList.forEachIndexed { i, wm ->
+                val layer = layers[i]
+                (layer.updateRule as? NoisyUpdateRule)?.takeIf { it.addNoise }?.noiseGenerator?.setStream(
+                    randomSeed,
+                    wm.tar.id.hashCode().toLong(),
+                    (batches shl 32) + pattern
+                )
+                layer.inputs.copyFrom(wm.times(activations, precision).add(layer.biases))
+                layer.updateRule.apply(layer, layer.dataHolder)
+                if (precision == Network.Precision.SINGLE) {
+                    layer.activations.roundToFloat()
+                }
+                activations = layer.activations
+            }
+        }
+
+        /**
+         * Backward pass for one target, as in [accumulateBackprop].
+         */
+        context(Network)
+        fun backward(input: Matrix, target: Matrix, lossFunction: BackpropLossFunction) {
+            val output = layers.last().activations
+            error += lossFunction.scalarLoss(output, target)
+            var layerError = lossFunction.outputError(output, target)
+            for (i in wmList.indices.reversed()) {
+                val wm = wmList[i]
+                val layer = layers[i]
+                (layer.updateRule as? DifferentiableUpdateRule)?.getDerivative(layer.inputs)?.let { deriv ->
+                    layerError.mul(deriv)
+                }
+                biasDeltas[i].add(layerError)
+                val sourceActivations = if (i == 0) input else layers[i - 1].activations
+                weightDeltas[i].add(layerError.mm(sourceActivations.transpose()))
+                if (i > 0) {
+                    layerError = wm.transposeTimes(layerError, precision)
+                }
+            }
+        }
+
+        /**
+         * Add another shard's changes and error to this one's.
+         */
+        fun add(other: Shard) {
+            weightDeltas.zip(other.weightDeltas).forEach { (a, b) -> a.add(b) }
+            biasDeltas.zip(other.biasDeltas).forEach { (a, b) -> a.add(b) }
+            error += other.error
+        }
+    }
+
+    private val shards = List(shardCount) { Shard() }
+
+    /**
+     * Number of batches trained, used to key noise streams.
+     */
+    private var batches = 0L
+
+    /**
+     * True if this was built for [wmList] and its matrices are still the same shape.
+     */
+    fun matches(wmList: List<WeightMatrix>, shardCount: Int): Boolean {
+        return this.shardCount == shardCount && this.wmList == wmList && shards[0].weightDeltas.zip(wmList).all {
+            (delta, wm) -> delta.nrow() == wm.weightMatrix.nrow() && delta.ncol() == wm.weightMatrix.ncol()
+        }
+    }
+
+    /**
+     * Accumulate the weight and bias changes for [count] patterns across the shards, apply them scaled by
+     * [learningRate], and return the summed error.
+     */
+    context(Network)
+    fun train(
+        count: Int,
+        learningRate: Double,
+        lossFunction: BackpropLossFunction,
+        pattern: (Int) -> Pair<DoubleArray, Matrix>
+    ): Double {
+        lossFunction.validateLayer(wmList.last().tar)
+        val inputLayer = wmList.first().src
+
+        IntStream.range(0, shardCount).parallel().forEach { s ->
+            val shard = shards[s]
+            shard.reset()
+            val start = (count.toLong() * s / shardCount).toInt()
+            val end = (count.toLong() * (s + 1) / shardCount).toInt()
+            for (i in start until end) {
+                val (input, target) = pattern(i)
+                val inputVector = Matrix.column(input)
+                inputVector.validateSameShape(inputLayer.activations)
+                target.validateSameShape(shard.layers.last().activations)
+                shard.forward(inputVector, i)
+                shard.backward(inputVector, target, lossFunction)
+            }
+        }
+
+        // Tree reduction into the first shard
+        var stride = 1
+        while (stride < shardCount) {
+            val step = stride
+            IntStream.range(0, (shardCount + 2 * step - 1) / (2 * step)).parallel().forEach { pair ->
+                val i = pair * 2 * step
+                if (i + step < shardCount) {
+                    shards[i].add(shards[i + step])
+                }
+            }
+            stride *= 2
+        }
+
+        batches++
+
+        val total = shards[0]
+        wmList.forEachIndexed { i, wm ->
+            wm.weightMatrix.add(total.weightDeltas[i].mul(learningRate))
+            wm.invalidateSingleWeights()
+            wm.events.updated.fire()
+            val layer: NeuronArray = wm.tar
+            layer.biases.add(total.biasDeltas[i].mul(learningRate))
+            layer.events.updated.fire()
+        }
+        return total.error
+    }
+}
@@ -0,0 +1,257 @@
+package org.simbrain.network.trainers
+
+import org.simbrain.util.stats.CounterRandomGenerator
+import smile.math.matrix.Matrix
+import java.io.Closeable
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.DoubleBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.random.Random
+
+/**
+ * A training set too large for the heap, stored in a binary file and streamed to a [SupervisedTrainer] in
+ * mini-batches (see [SupervisedTrainer.streamingDataset]).
+ *
+ * Each row of the file is [inputSize] input values followed by [targetSize] target values, stored as little-endian
+ * doubles; see [write]. The file is memory-mapped, and a background thread copies the rows of upcoming batches into
+ * two batch buffers, one filled while the other is trained on, so the trainer does not wait on the disk and memory
+ * use does not depend on the size of the file.
+ *
+ * When [shuffle] is true rows are visited in a different pseudo-random order each epoch. The order is a keyed Feistel
+ * permutation of the row indices, so it is computed per row without storing a shuffled index array. Use
+ * shuffle = false for sequence data, e.g. with an SRN.
+ *
+ * Close the dataset when done with it to stop the prefetch thread.
+ */
+class StreamingDataset @JvmOverloads constructor(
+    val file: File,
+    val inputSize: Int,
+    val targetSize: Int,
+    val batchSize: Int = 32,
+    val shuffle: Boolean = true,
+    seed: Long = Random.nextLong()
+) : Closeable {
+
+    private val rowSize = inputSize + targetSize
+
+    /**
+     * Number of rows in the file.
+     */
+    val size: Int
+
+    /**
+     * Mapped regions of the file, each holding [rowsPerRegion] whole rows (the last may hold fewer).
+     */
+    private val regions: Array<DoubleBuffer>
+
+    private val rowsPerRegion: Int
+
+    private val free = ArrayBlockingQueue<Batch>(2)
+
+    private val ready = ArrayBlockingQueue<Batch>(2)
+
+    private val random = Random(seed)
+
+    /**
+     * Set if the prefetch thread fails, and rethrown by [nextBatch].
+     */
+    @Volatile
+    private var failure: Throwable? = null
+
+    @Volatile
+    private var closed = false
+
+    private val prefetcher: Thread
+
+    init {
+        require(inputSize > 0 && targetSize > 0) { "Input and target sizes must be positive" }
+        require(batchSize > 0) { "Batch size must be positive" }
+        val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+        try {
+            val rowBytes = 8L * rowSize
+            require(channel.size() % rowBytes == 0L) { "Size of ${file.name} is not a multiple of $rowSize doubles" }
+            size = (channel.size() / rowBytes).toInt()
+            require(size > 0) { "${file.name} is empty" }
+            rowsPerRegion = maxOf(1L, MAX_REGION_SIZE / rowBytes).toInt()
+            regions = Array((size + rowsPerRegion - 1) / rowsPerRegion) { region ->
+                val rows = minOf(rowsPerRegion, size - region * rowsPerRegion)
+                channel.map(FileChannel.MapMode.READ_ONLY, region * rowsPerRegion * rowBytes, rows * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asDoubleBuffer()
+            }
+        } finally {
+            // Mapped buffers remain valid after the channel is closed
+            channel.close()
+        }
+        repeat(2) { free.add(Batch()) }
+        prefetcher = thread(isDaemon = true, name = "Prefetch ${file.name}") { prefetch() }
+    }
+
+    /**
+     * A mini-batch of rows. Inputs and targets are stored row after row in flat arrays. Close the batch when done
+     * with it so its buffers can be refilled.
+     */
+    inner class Batch : AutoCloseable {
+
+        val inputs = DoubleArray(batchSize * inputSize)
+
+        val targets = DoubleArray(batchSize * targetSize)
+
+        /**
+         * Number of rows in this batch. The last batch of an epoch may be smaller than [batchSize].
+         */
+        var size = 0
+            internal set
+
+        /**
+         * Epoch the rows of this batch belong to, starting at 0.
+         */
+        var epoch = 0
+            internal set
+
+        fun input(row: Int) = inputs.copyOfRange(row * inputSize, (row + 1) * inputSize)
+
+        fun target(row: Int) = targets.copyOfRange(row * targetSize, (row + 1) * targetSize)
+
+        override fun close() {
+            free.put(this)
+        }
+    }
+
+    /**
+     * Returns the next batch, waiting for the prefetch thread if it has not filled it yet.
+     */
+    fun nextBatch(): Batch {
+        while (true) {
+            failure?.let { throw IllegalStateException("Could not read ${file.name}", it) }
+            check(!closed) { "Dataset is closed" }
+            ready.poll(100, TimeUnit.MILLISECONDS)?.let { return it }
+        }
+    }
+
+    private fun prefetch() {
+        try {
+            var epoch = 0
+            var position = 0
+            var permutation = newPermutation()
+            while (!closed) {
+                val batch = free.poll(100, TimeUnit.MILLISECONDS) ?: continue
+                val rows = minOf(batchSize, size - position)
+                for (r in 0 until rows) {
+                    readRow(permutation(position + r), batch, r)
+                }
+                batch.size = rows
+                batch.epoch = epoch
+                ready.put(batch)
+                position += rows
+                if (position == size) {
+                    position = 0
+                    epoch++
+                    permutation = newPermutation()
+                }
+            }
+        } catch (e: InterruptedException) {
+            // Closed
+        } catch (e: Throwable) {
+            failure = e
+        }
+    }
+
+    /**
+     * A pseudo-random permutation of the row indices, keyed by a new random key. Indices are split into two halves of
+     * [halfBits] bits and mixed by a [FEISTEL_ROUNDS] round Feistel network, a permutation of the 2^(2 * halfBits)
+     * values that cover the rows. Results outside the rows are fed back through the network (cycle walking) until
+     * they land on a row, which takes under four passes on average. Unlike an affine permutation, rows that are close
+     * together in the file are not kept evenly spaced in the order.
+     */
+    private fun newPermutation(): (Int) -> Int {
+        if (!shuffle || size == 1) {
+            return { it }
+        }
+        val roundKeys = LongArray(FEISTEL_ROUNDS) { random.nextLong() }
+        val halfBits = maxOf(1, (64 - java.lang.Long.numberOfLeadingZeros(size - 1L) + 1) / 2)
+        val mask = (1L shl halfBits) - 1
+        fun feistel(index: Long): Long {
+            var left = index ushr halfBits
+            var right = index and mask
+            for (key in roundKeys) {
+                val next = left xor (CounterRandomGenerator.mix(key xor right) and mask)
+                left = right
+                right = next
+            }
+            return (left shl halfBits) or right
+        }
+        return { row ->
+            var index = feistel(row.toLong())
+            while (index >= size) {
+                index = feistel(index)
+            }
+            index.toInt()
+        }
+    }
+
+    private fun readRow(row: Int, batch: Batch, batchRow: Int) {
+        val region = regions[row / rowsPerRegion]
+        val offset = (row % rowsPerRegion) * rowSize
+        region.get(offset, batch.inputs, batchRow * inputSize, inputSize)
+        region.get(offset + inputSize, batch.targets, batchRow * targetSize, targetSize)
+    }
+
+    override fun close() {
+        closed = true
+        prefetcher.interrupt()
+    }
+
+    companion object {
+
+        /**
+         * Largest region of the file mapped at once. Mapped buffers are limited to 2 GB.
+         */
+        private const val MAX_REGION_SIZE = 1L shl 30
+
+        private const val FEISTEL_ROUNDS = 4
+
+        /**
+         * Write inputs and targets to a file that can be streamed with a [StreamingDataset]. Rows are written in
+         * order, so larger datasets can be built by writing several pairs of matrices with [append] true.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun write(inputs: Matrix, targets: Matrix, file: File, append: Boolean = false) {
+            require(inputs.nrow() == targets.nrow()) { "inputs and targets must be the same size" }
+            val options = if (append) {
+                arrayOf(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+            } else {
+                arrayOf(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+            }
+            FileChannel.open(file.toPath(), *options).use { channel ->
+                val rowBytes = 8 * (inputs.ncol() + targets.ncol())
+                val buffer = ByteBuffer.allocate(maxOf(rowBytes, 1 shl 16) / rowBytes * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                for (i in 0 until inputs.nrow()) {
+                    if (buffer.remaining() < rowBytes) {
+                        buffer.flip()
+                        while (buffer.hasRemaining()) channel.write(buffer)
+                        buffer.clear()
+                    }
+                    for (j in 0 until inputs.ncol()) buffer.putDouble(inputs[i, j])
+                    for (j in 0 until targets.ncol()) buffer.putDouble(targets[i, j])
+                }
+                buffer.flip()
+                while (buffer.hasRemaining()) channel.write(buffer)
+            }
+        }
+
+        /**
+         * Write a [MatrixDataset] to a file that can be streamed with a [StreamingDataset].
+         */
+        @JvmStatic
+        fun write(dataset: MatrixDataset, file: File) = write(dataset.inputs, dataset.targets, file)
+    }
+}
@@ -26,6 +26,7 @@ import org.simbrain.util.propertyeditor.CopyableObject
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.util.propertyeditor.GuiEditable
 import org.simbrain.util.rowVectorTransposed
+import org.simbrain.util.toMatrix
 import smile.math.matrix.Matrix
 import kotlin.random.Random
 
@@ -60,6 +61,13 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
 
     private var stoppingConditionReached = false
 
+    /**
+     * If set, each iteration trains on the next batch of this dataset rather than on the network's training set, so
+     * datasets larger than the heap can be used. The update type is ignored.
+     */
+    @Transient
+    var streamingDataset: StreamingDataset? = null
+
     @Transient val events = TrainerEvents()
 
     context(Network)
@@ -97,7 +105,10 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
     context(Network, SN)
     suspend fun trainOnce() {
         iteration++
-        with(updateType) {
+        val stream = streamingDataset
+        if (stream != null) {
+            lastError = stream.nextBatch().use { trainBatch(it) }
+        } else with(updateType) {
             lastError = when (this) {
                 is UpdateMethod.Stochastic -> trainRow(Random.nextInt(trainingSet.inputs.nrow()))
                 is UpdateMethod.Epoch -> trainBatch(0 until trainingSet.size)
@@ -111,8 +122,16 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
         events.errorUpdated.fire(lastError).await()
     }
 
+    /**
+     * Train on one input and target pair and return the error.
+     */
     context(Network)
-    abstract fun SN.trainRow(rowNum: Int): Double
+    abstract fun SN.trainPattern(input: DoubleArray, target: Matrix): Double
+
+    context(Network)
+    open fun SN.trainRow(rowNum: Int): Double {
+        return trainPattern(trainingSet.inputs.row(rowNum), trainingSet.targets.rowVectorTransposed(rowNum))
+    }
 
     /**
      * @return the mean error for the batch
@@ -126,6 +145,20 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
         return batchError / rowRange.count()
     }
 
+    /**
+     * Train on a batch from a [StreamingDataset].
+     *
+     * @return the mean error for the batch
+     */
+    context(Network)
+    open fun SN.trainBatch(batch: StreamingDataset.Batch): Double {
+        var batchError = 0.0
+        for (i in 0 until batch.size) {
+            batchError += trainPattern(batch.input(i), batch.target(i).toMatrix())
+        }
+        return batchError / batch.size
+    }
+
     sealed class UpdateMethod: CopyableObject {
         class Stochastic : UpdateMethod() {
             override fun copy() = this
@@ -189,12 +222,23 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
 
 class BackpropTrainer : SupervisedTrainer<BackpropNetwork>() {
 
+    var parallelShards by GuiEditable(
+        label = "Parallel shards",
+        description = "If more than 1, each batch is split into this many shards that are trained on separate " +
+                "threads, and their weight changes summed in a fixed order. Results are reproducible and do not " +
+                "depend on the number of cores.",
+        initValue = 1,
+        order = 5
+    )
+
+    @Transient
+    private var parallelBackprop: ParallelBackprop? = null
+
     context(Network)
-    override fun BackpropNetwork.trainRow(rowNum: Int): Double {
-        inputLayer.setActivations(trainingSet.inputs.row(rowNum))
-        val targetVec = trainingSet.targets.rowVectorTransposed(rowNum)
+    override fun BackpropNetwork.trainPattern(input: DoubleArray, target: Matrix): Double {
+        inputLayer.setActivations(input)
         wmList.forwardPass(inputLayer.activations)
-        return wmList.applyBackprop(targetVec, epsilon = learningRate, lossFunction = lossFunction)
+        return wmList.applyBackprop(target, epsilon = learningRate, lossFunction = lossFunction)
     }
 
     /**
@@ -202,21 +246,47 @@ class BackpropTrainer : SupervisedTrainer<BackpropNetwork>() {
      */
     context(Network)
     override fun BackpropNetwork.trainBatch(rowRange: IntRange): Double {
+        return trainAccumulated(rowRange.count()) { i ->
+            val row = rowRange.first + i
+            trainingSet.inputs.row(row) to trainingSet.targets.rowVectorTransposed(row)
+        }
+    }
+
+    context(Network)
+    override fun BackpropNetwork.trainBatch(batch: StreamingDataset.Batch): Double {
+        return trainAccumulated(batch.size) { i -> batch.input(i) to batch.target(i).toMatrix() }
+    }
+
+    /**
+     * Accumulate the weight and bias changes for [count] patterns and then apply them. With more than one
+     * [parallelShards] the patterns are trained on in parallel by a [ParallelBackprop], and the network's layers do
+     * not show the activations of the patterns.
+     */
+    context(Network)
+    private fun BackpropNetwork.trainAccumulated(count: Int, pattern: (Int) -> Pair<DoubleArray, Matrix>): Double {
+
+        val shards = minOf(parallelShards, count)
+        if (shards > 1) {
+            val parallel = parallelBackprop?.takeIf { it.matches(wmList, shards) }
+                ?: ParallelBackprop(wmList, shards).also { parallelBackprop = it }
+            return parallel.train(count, trainer.learningRate, lossFunction, pattern) / count
+        }
 
         val weightAccumulator: HashMap<WeightMatrix, Matrix> = HashMap()
         val biasesAccumulator: HashMap<NeuronArray, Matrix> = HashMap()
 
         var error = 0.0
 
-        for (i in rowRange) {
-            inputLayer.setActivations(trainingSet.inputs.row(i))
-            val targetVec = trainingSet.targets.rowVectorTransposed(i)
+        for (i in 0 until count) {
+            val (input, targetVec) = pattern(i)
+            inputLayer.setActivations(input)
             wmList.forwardPass(inputLayer.activations)
             error += wmList.accumulateBackprop(targetVec, weightAccumulator, biasesAccumulator, lossFunction = lossFunction)
         }
 
         weightAccumulator.forEach { (wm, delta) ->
             wm.weightMatrix.add(delta.mul(trainer.learningRate))
+            wm.invalidateSingleWeights()
             wm.events.updated.fire()
         }
 
@@ -225,7 +295,7 @@ class BackpropTrainer : SupervisedTrainer<BackpropNetwork>() {
             na.events.updated.fire()
         }
 
-        return error / rowRange.count()
+        return error / count
     }
 
 }
@@ -238,14 +308,55 @@ class SRNTrainer : SupervisedTrainer<SRNNetwork>() {
         order = 3
     )
 
-    context(Network)
-    override fun SRNNetwork.trainRow(rowNum: Int): Double {
-        val targetVec = trainingSet.targets.rowVectorTransposed(rowNum)
-        val inputVec = trainingSet.inputs.rowVectorTransposed(rowNum)
+    var truncatedBPTT by GuiEditable(
+        label = "Truncated BPTT",
+        description = "If true, each epoch trains on the training set as one sequence using truncated " +
+                "backpropagation through time, rather than one step backprop on each row",
+        initValue = false,
+        order = 10
+    )
+
+    var bpttSteps by GuiEditable(
+        label = "Time steps",
+        description = "Number of time steps errors are propagated back through the context layer",
+        initValue = 8,
+        conditionallyEnabledBy = SRNTrainer::truncatedBPTT,
+        order = 20
+    )
+
+    var bpttStreams by GuiEditable(
+        label = "Parallel sequences",
+        description = "Number of parts the sequence is split into and trained on side by side",
+        initValue = 16,
+        conditionallyEnabledBy = SRNTrainer::truncatedBPTT,
+        order = 30
+    )
+
+    @Transient
+    private var bptt: TruncatedBPTT? = null
 
-        inputLayer.activations = inputVec
+    context(Network)
+    override fun SRNNetwork.trainPattern(input: DoubleArray, target: Matrix): Double {
+        inputLayer.setActivations(input)
         update()
-        return weightMatrixTree.applyBackprop(targetVec, lossFunction = lossFunction, epsilon = learningRate)
+        return weightMatrixTree.applyBackprop(target, lossFunction = lossFunction, epsilon = learningRate)
+    }
+
+    /**
+     * With [truncatedBPTT] the rows are trained on as one sequence by a [TruncatedBPTT].
+     */
+    context(Network)
+    override fun SRNNetwork.trainBatch(rowRange: IntRange): Double {
+        if (truncatedBPTT) {
+            val trainer = bptt?.takeIf { it.matches(this, bpttSteps, bpttStreams) }
+                ?: TruncatedBPTT(this, bpttSteps, bpttStreams).also { bptt = it }
+            return trainer.trainEpoch(rowRange, learningRate, lossFunction)
+        }
+        var batchError = 0.0
+        for (i in rowRange) {
+            batchError += trainRow(i)
+        }
+        return batchError / rowRange.count()
     }
 
 }
\ No newline at end of file
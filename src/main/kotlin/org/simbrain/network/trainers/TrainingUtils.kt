@@ -65,6 +65,9 @@ fun List<WeightMatrix>.forwardPass(inputVector: Matrix) {
 
     fun NeuronArray.updateWithoutClearingInputs() {
         updateRule.apply(this, dataHolder)
+        if (precision == Network.Precision.SINGLE) {
+            activations.roundToFloat()
+        }
         events.updated.fire()
     }
 
@@ -79,28 +82,34 @@ fun List<WeightMatrix>.forwardPass(inputVector: Matrix) {
 /**
  * Backpropagate the provided errors through this weight matrix, and return the new error.
  */
-fun WeightMatrix.updateWeights(layerError: Matrix, epsilon: Double = .1): Matrix {
+fun WeightMatrix.updateWeights(
+    layerError: Matrix,
+    epsilon: Double = .1,
+    precision: Network.Precision = Network.Precision.DOUBLE
+): Matrix {
     layerError.validateSameShape(target.activations)
     val weightDeltas = layerError.mm(source.activations.transpose())
 
     // Backpropagate the layer error through the weights to get a new error vector
-    //  Prefer this to layerError.T.mm(wm).T because that requies an extra transpose
-    val backropagatedErrors = weightMatrix.transpose().mm(layerError)
+    val backropagatedErrors = transposeTimes(layerError, precision)
 
     // Update weights
     weightMatrix.add(weightDeltas.mul(epsilon))
+    invalidateSingleWeights()
     events.updated.fire()
 
     return backropagatedErrors
 }
 
-fun WeightMatrix.computeDelta(layerError: Matrix): Pair<Matrix, Matrix> {
+fun WeightMatrix.computeDelta(
+    layerError: Matrix,
+    precision: Network.Precision = Network.Precision.DOUBLE
+): Pair<Matrix, Matrix> {
     layerError.validateSameShape(target.activations)
     val weightDeltas = layerError.mm(source.activations.transpose())
 
     // Backpropagate the layer error through the weights to get a new error vector
-    //  Prefer this to layerError.T.mm(wm).T because that requies an extra transpose
-    val backropagatedErrors = weightMatrix.transpose().mm(layerError)
+    val backropagatedErrors = transposeTimes(layerError, precision)
 
     return Pair(weightDeltas, backropagatedErrors)
 }
@@ -226,7 +235,7 @@ fun List<WeightMatrix>.applyBackprop(
             layerError.mul(deriv)
         }
         wm.tar.updateBiases(layerError, epsilon)
-        layerError = wm.updateWeights(layerError, epsilon)
+        layerError = wm.updateWeights(layerError, epsilon, precision)
     }
 
     return error
@@ -255,7 +264,7 @@ fun List<WeightMatrix>.accumulateBackprop(
         biasesAccumulator.getOrPut(wm.tar) {
             Matrix(wm.tar.size, 1)
         }.add(layerError)
-        val (delta, errors) = wm.computeDelta(layerError)
+        val (delta, errors) = wm.computeDelta(layerError, precision)
         layerError = errors
         weightAccumulator.getOrPut(wm) {
             Matrix(wm.weightMatrix.nrow(), wm.weightMatrix.ncol())
@@ -0,0 +1,331 @@
+package org.simbrain.network.trainers
+
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.network.subnetworks.SRNNetwork
+import org.simbrain.network.updaterules.LinearRule
+import org.simbrain.network.updaterules.SigmoidalRule
+import org.simbrain.network.updaterules.interfaces.DifferentiableUpdateRule
+import smile.math.matrix.Matrix
+
+/**
+ * Truncated backpropagation through time for an [SRNNetwork]. See [SRNTrainer.truncatedBPTT].
+ *
+ * The rows of the training set are treated as one sequence, which is split into [streams] contiguous parts trained on
+ * side by side as a mini-batch. The network is unrolled [steps] time steps at a time: a forward pass over the next
+ * [steps] rows of every part records the hidden inputs and activations (the context at each step being the previous
+ * hidden activations) and the output inputs and activations, then errors are propagated back through those steps,
+ * including through the context weights, and the summed weight and bias changes are applied. The hidden state of each
+ * part carries over to the next [steps] rows.
+ *
+ * Every pass is a product of matrices with one column per part, over flat row-major buffers that are allocated once,
+ * including a ring of [steps] + 1 time steps of activations, and reused across updates and epochs. Weights and biases
+ * are kept in the buffers during an epoch and copied back into the network at its end.
+ *
+ * The hidden and output layers must use a [SigmoidalRule] or [LinearRule], and the loss function must be SSE or MSE.
+ */
+class TruncatedBPTT(val srn: SRNNetwork, val steps: Int, val streams: Int) {
+
+    init {
+        require(steps > 0) { "Number of steps must be positive" }
+        require(streams > 0) { "Number of streams must be positive" }
+    }
+
+    private val numInputs = srn.inputLayer.size
+    private val numHidden = srn.hiddenLayer.size
+    private val numOutputs = srn.outputLayer.size
+
+    private val inputToHidden: WeightMatrix = srn.wmList[0]
+    private val hiddenToOutput: WeightMatrix = srn.wmList[1]
+    private val contextToHidden: WeightMatrix = srn.contextToHidden
+
+    // Working copies of the parameters. Weight matrices are row-major, rows being target nodes.
+    private val wIh = DoubleArray(numHidden * numInputs)
+    private val wCh = DoubleArray(numHidden * numHidden)
+    private val wHo = DoubleArray(numOutputs * numHidden)
+    private val bH = DoubleArray(numHidden)
+    private val bO = DoubleArray(numOutputs)
+
+    private val gIh = DoubleArray(wIh.size)
+    private val gCh = DoubleArray(wCh.size)
+    private val gHo = DoubleArray(wHo.size)
+    private val gbH = DoubleArray(numHidden)
+    private val gbO = DoubleArray(numOutputs)
+
+    // Per step buffers, one column per stream. hidden[0] holds the state carried over from the previous update, and
+    // hidden[j + 1] the hidden activations at step j, which are also the context at step j + 1.
+    private val inputs = Array(steps) { DoubleArray(numInputs * streams) }
+    private val hiddenInputs = Array(steps) { DoubleArray(numHidden * streams) }
+    private val hidden = Array(steps + 1) { DoubleArray(numHidden * streams) }
+    private val outputInputs = Array(steps) { DoubleArray(numOutputs * streams) }
+    private val outputs = Array(steps) { DoubleArray(numOutputs * streams) }
+    private val outputErrors = Array(steps) { DoubleArray(numOutputs * streams) }
+
+    private val outputDelta = DoubleArray(numOutputs * streams)
+    private val hiddenDelta = DoubleArray(numHidden * streams)
+    private val contextDelta = DoubleArray(numHidden * streams)
+
+    private val streamStarts = IntArray(streams)
+    private val streamLengths = IntArray(streams)
+
+    /**
+     * True if this was built for [srn] with these settings and the network's layers are still the same size.
+     */
+    fun matches(srn: SRNNetwork, steps: Int, streams: Int): Boolean {
+        return this.srn === srn && this.steps == steps && this.streams == streams &&
+                srn.inputLayer.size == numInputs && srn.hiddenLayer.size == numHidden &&
+                srn.outputLayer.size == numOutputs
+    }
+
+    /**
+     * Train on [rows] of the training set once, as one sequence, and return the mean error per row.
+     */
+    context(Network)
+    fun trainEpoch(rows: IntRange, learningRate: Double, lossFunction: BackpropLossFunction): Double {
+        require(lossFunction == BackpropLossFunction.SSE || lossFunction == BackpropLossFunction.MSE) {
+            "Truncated BPTT supports SSE and MSE loss"
+        }
+        val hiddenActivation = activationFunction(srn.hiddenLayer)
+        val outputActivation = activationFunction(srn.outputLayer)
+        val hiddenRule = srn.hiddenLayer.updateRule as DifferentiableUpdateRule
+        val outputRule = srn.outputLayer.updateRule as DifferentiableUpdateRule
+        val data = srn.trainingSet
+        require(data.inputs.ncol() == numInputs && data.targets.ncol() == numOutputs) {
+            "Training set does not match the network's input and output layers"
+        }
+
+        val count = rows.count()
+        if (count == 0) return 0.0
+        val activeStreams = minOf(streams, count)
+        for (s in 0 until streams) {
+            val start = if (s < activeStreams) (count.toLong() * s / activeStreams).toInt() else count
+            val end = if (s < activeStreams) (count.toLong() * (s + 1) / activeStreams).toInt() else count
+            streamStarts[s] = rows.first + start
+            streamLengths[s] = end - start
+        }
+        val longest = streamLengths.maxOf { it }
+
+        readParameters()
+        for (h in 0 until numHidden) {
+            hidden[0].fill(srn.contextLayer.activations[h, 0], h * streams, (h + 1) * streams)
+        }
+
+        var totalError = 0.0
+        var t0 = 0
+        while (t0 < longest) {
+            val chunk = minOf(steps, longest - t0)
+
+            // Forward
+            for (j in 0 until chunk) {
+                val x = inputs[j]
+                x.fill(0.0)
+                for (s in 0 until streams) {
+                    if (t0 + j < streamLengths[s]) {
+                        val row = streamStarts[s] + t0 + j
+                        for (i in 0 until numInputs) {
+                            x[i * streams + s] = data.inputs[row, i]
+                        }
+                    }
+                }
+                val zh = hiddenInputs[j]
+                setToBiases(zh, bH, numHidden)
+                multiplyAdd(wIh, x, zh, numHidden, numInputs)
+                multiplyAdd(wCh, hidden[j], zh, numHidden, numHidden)
+                val h = hidden[j + 1]
+                for (k in zh.indices) h[k] = hiddenActivation(zh[k])
+
+                val zo = outputInputs[j]
+                setToBiases(zo, bO, numOutputs)
+                multiplyAdd(wHo, h, zo, numOutputs, numHidden)
+                val o = outputs[j]
+                for (k in zo.indices) o[k] = outputActivation(zo[k])
+
+                // Output error is the negative gradient of the loss, as in BackpropLossFunction.outputError
+                val e = outputErrors[j]
+                val scale = if (lossFunction == BackpropLossFunction.MSE) 2.0 / numOutputs else 2.0
+                for (s in 0 until streams) {
+                    val active = t0 + j < streamLengths[s]
+                    val row = streamStarts[s] + t0 + j
+                    var loss = 0.0
+                    for (i in 0 until numOutputs) {
+                        val index = i * streams + s
+                        if (active) {
+                            val diff = data.targets[row, i] - o[index]
+                            e[index] = scale * diff
+                            loss += diff * diff
+                        } else {
+                            e[index] = 0.0
+                        }
+                    }
+                    if (active) {
+                        totalError += if (lossFunction == BackpropLossFunction.MSE) loss / numOutputs else loss
+                    }
+                }
+            }
+
+            // Backward
+            gIh.fill(0.0)
+            gCh.fill(0.0)
+            gHo.fill(0.0)
+            gbH.fill(0.0)
+            gbO.fill(0.0)
+            contextDelta.fill(0.0)
+            for (j in chunk - 1 downTo 0) {
+                val zo = outputInputs[j]
+                val e = outputErrors[j]
+                for (k in zo.indices) outputDelta[k] = e[k] * outputRule.getDerivative(zo[k])
+                accumulateRowSums(outputDelta, gbO, numOutputs)
+                multiplyTransposedAdd(outputDelta, hidden[j + 1], gHo, numOutputs, numHidden)
+
+                // Error at the hidden layer comes from the output and from the next step through the context
+                System.arraycopy(contextDelta, 0, hiddenDelta, 0, hiddenDelta.size)
+                transposeMultiplyAdd(wHo, outputDelta, hiddenDelta, numOutputs, numHidden)
+                val zh = hiddenInputs[j]
+                for (k in zh.indices) hiddenDelta[k] *= hiddenRule.getDerivative(zh[k])
+                // Inactive streams contribute nothing
+                for (s in 0 until streams) {
+                    if (t0 + j >= streamLengths[s]) {
+                        for (h in 0 until numHidden) hiddenDelta[h * streams + s] = 0.0
+                    }
+                }
+                accumulateRowSums(hiddenDelta, gbH, numHidden)
+                multiplyTransposedAdd(hiddenDelta, inputs[j], gIh, numHidden, numInputs)
+                multiplyTransposedAdd(hiddenDelta, hidden[j], gCh, numHidden, numHidden)
+
+                contextDelta.fill(0.0)
+                transposeMultiplyAdd(wCh, hiddenDelta, contextDelta, numHidden, numHidden)
+            }
+
+            for (k in wIh.indices) wIh[k] += learningRate * gIh[k]
+            for (k in wCh.indices) wCh[k] += learningRate * gCh[k]
+            for (k in wHo.indices) wHo[k] += learningRate * gHo[k]
+            for (k in bH.indices) bH[k] += learningRate * gbH[k]
+            for (k in bO.indices) bO[k] += learningRate * gbO[k]
+
+            // Carry the hidden state over to the next chunk
+            System.arraycopy(hidden[chunk], 0, hidden[0], 0, hidden[0].size)
+            t0 += chunk
+        }
+
+        writeParameters()
+        return totalError / count
+    }
+
+    private fun readParameters() {
+        read(inputToHidden.weightMatrix, wIh)
+        read(contextToHidden.weightMatrix, wCh)
+        read(hiddenToOutput.weightMatrix, wHo)
+        read(srn.hiddenLayer.biases, bH)
+        read(srn.outputLayer.biases, bO)
+    }
+
+    private fun writeParameters() {
+        listOf(inputToHidden to wIh, contextToHidden to wCh, hiddenToOutput to wHo).forEach { (wm, weights) ->
+            write(weights, wm.weightMatrix)
+            wm.updateMasks()
+            wm.events.updated.fire()
+        }
+        listOf(srn.hiddenLayer to bH, srn.outputLayer to bO).forEach { (layer, biases) ->
+            write(biases, layer.biases)
+            layer.events.updated.fire()
+        }
+    }
+
+    private fun read(matrix: Matrix, values: DoubleArray) {
+        val cols = matrix.ncol()
+        for (i in 0 until matrix.nrow()) {
+            for (j in 0 until cols) {
+                values[i * cols + j] = matrix[i, j]
+            }
+        }
+    }
+
+    private fun write(values: DoubleArray, matrix: Matrix) {
+        val cols = matrix.ncol()
+        for (i in 0 until matrix.nrow()) {
+            for (j in 0 until cols) {
+                matrix[i, j] = values[i * cols + j]
+            }
+        }
+    }
+
+    private fun setToBiases(target: DoubleArray, biases: DoubleArray, rows: Int) {
+        for (i in 0 until rows) {
+            target.fill(biases[i], i * streams, (i + 1) * streams)
+        }
+    }
+
+    /**
+     * c += a * b, where a is rows x inner and b and c have one column per stream.
+     */
+    private fun multiplyAdd(a: DoubleArray, b: DoubleArray, c: DoubleArray, rows: Int, inner: Int) {
+        for (i in 0 until rows) {
+            val cOffset = i * streams
+            for (k in 0 until inner) {
+                val aik = a[i * inner + k]
+                if (aik == 0.0) continue
+                val bOffset = k * streams
+                for (s in 0 until streams) {
+                    c[cOffset + s] += aik * b[bOffset + s]
+                }
+            }
+        }
+    }
+
+    /**
+     * c += transpose(a) * b, where a is rows x cols, b has rows rows and c has cols rows, each with one column per
+     * stream.
+     */
+    private fun transposeMultiplyAdd(a: DoubleArray, b: DoubleArray, c: DoubleArray, rows: Int, cols: Int) {
+        for (k in 0 until rows) {
+            val bOffset = k * streams
+            for (i in 0 until cols) {
+                val aki = a[k * cols + i]
+                if (aki == 0.0) continue
+                val cOffset = i * streams
+                for (s in 0 until streams) {
+                    c[cOffset + s] += aki * b[bOffset + s]
+                }
+            }
+        }
+    }
+
+    /**
+     * c += a * transpose(b), summing over streams, where a has rows rows and b has cols rows, and c is rows x cols.
+     */
+    private fun multiplyTransposedAdd(a: DoubleArray, b: DoubleArray, c: DoubleArray, rows: Int, cols: Int) {
+        for (i in 0 until rows) {
+            val aOffset = i * streams
+            for (k in 0 until cols) {
+                val bOffset = k * streams
+                var sum = 0.0
+                for (s in 0 until streams) {
+                    sum += a[aOffset + s] * b[bOffset + s]
+                }
+                c[i * cols + k] += sum
+            }
+        }
+    }
+
+    private fun accumulateRowSums(a: DoubleArray, sums: DoubleArray, rows: Int) {
+        for (i in 0 until rows) {
+            var sum = 0.0
+            for (s in 0 until streams) {
+                sum += a[i * streams + s]
+            }
+            sums[i] += sum
+        }
+    }
+
+    /**
+     * The activation function of a layer's update rule, applied to one weighted input.
+     */
+    private fun activationFunction(layer: NeuronArray): (Double) -> Double {
+        return when (val rule = layer.updateRule) {
+            is SigmoidalRule -> { x -> rule.type.valueOf(x, rule.upperBound, rule.lowerBound, rule.slope) }
+            is LinearRule -> { x -> rule.linearRule(x) }
+            else -> throw IllegalArgumentException("Truncated BPTT does not support ${rule.name} in ${layer.id}")
+        }
+    }
+}
@@ -42,7 +42,7 @@ interface UnsupervisedNetwork: EditableObject {
 
 }
 
-class UnsupervisedTrainer: EditableObject {
+open class UnsupervisedTrainer: EditableObject {
 
     var iteration = 0
 
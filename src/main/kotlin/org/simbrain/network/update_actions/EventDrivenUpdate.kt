@@ -0,0 +1,21 @@
+package org.simbrain.network.update_actions
+
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.SpikeCalendar
+import org.simbrain.workspace.updater.UpdateAction
+
+/**
+ * Buffered update in which spikes are pushed through a [SpikeCalendar] instead of every synapse being updated every
+ * iteration. Faster than [BufferedUpdate] for large, sparsely firing spiking networks.
+ */
+class EventDrivenUpdate(private val network: Network) : UpdateAction(
+    "Event-driven spike update",
+    "Buffered update that only processes synapses of neurons that spiked"
+) {
+
+    private val calendar = SpikeCalendar(network)
+
+    override suspend fun run() {
+        network.eventDrivenUpdate(calendar)
+    }
+}
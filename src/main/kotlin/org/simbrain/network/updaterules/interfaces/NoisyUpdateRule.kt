@@ -1,5 +1,7 @@
 package org.simbrain.network.updaterules.interfaces
 
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NetworkModel
 import org.simbrain.util.UserParameter
 import org.simbrain.util.stats.ProbabilityDistribution
 
@@ -30,4 +32,15 @@ interface NoisyUpdateRule {
         tab = "Noise"
     )
     var addNoise: Boolean
-}
\ No newline at end of file
+}
+
+/**
+ * Start the noise generator's stream for a model at the current iteration. The noise the model gets is then a function
+ * of the network's seed, the model's id, and the iteration, and not of the order or thread models are updated on.
+ */
+context(Network)
+fun NoisyUpdateRule.startNoiseStream(model: NetworkModel) {
+    if (addNoise) {
+        noiseGenerator.setStream(randomSeed, model.id.hashCode().toLong(), iterations)
+    }
+}
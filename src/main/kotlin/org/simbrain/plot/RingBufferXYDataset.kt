@@ -0,0 +1,441 @@
+package org.simbrain.plot
+
+import org.jfree.data.DomainInfo
+import org.jfree.data.DomainOrder
+import org.jfree.data.Range
+import org.jfree.data.RangeInfo
+import org.jfree.data.xy.AbstractXYDataset
+import org.jfree.data.xy.XYSeries
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * One series of a [RingBufferXYDataset]. Points are stored in primitive x and y arrays used as a ring buffer, so
+ * adding a point allocates nothing and, once [maximumItemCount] points are stored, overwrites the oldest point.
+ *
+ * A pyramid of y minima and maxima over aligned blocks of 16, 32, 64, ... points is updated as points are added, so
+ * the minimum and maximum over any range of points can be found in logarithmic time. This is used for the y range of
+ * the series and for min / max decimation, in which the points in each pixel column of a chart are replaced by their
+ * minimum and maximum.
+ *
+ * The methods used by scripts (add, clear, getX, getY, minY, maxY, maximumItemCount) follow [XYSeries]. A null or
+ * NaN y value is a gap.
+ */
+class RingBufferSeries(var description: String) {
+
+    /**
+     * Maximum number of points stored. When it is reached the oldest point is removed as each new one is added.
+     */
+    var maximumItemCount = Int.MAX_VALUE
+        set(value) {
+            field = value.coerceAtLeast(1)
+            if (itemCount > field) {
+                itemCount = field
+                changed()
+            }
+        }
+
+    private var xs = DoubleArray(INITIAL_CAPACITY)
+
+    private var ys = DoubleArray(INITIAL_CAPACITY)
+
+    private val capacity get() = xs.size
+
+    /**
+     * Number of points ever added. A point's "absolute index" is its position in this sequence; it is stored at the
+     * absolute index modulo the capacity.
+     */
+    private var total = 0L
+
+    /**
+     * Number of points currently stored.
+     */
+    var itemCount = 0
+        private set
+
+    private val first get() = total - itemCount
+
+    /**
+     * Whether the x values have never decreased. Decimation requires this.
+     */
+    var isAscending = true
+        private set
+
+    /**
+     * Minima and maxima of y for each level of the pyramid. Level l has blocks of [BLOCK_SIZE] shl l points; block b
+     * covers absolute indices b * size until (b + 1) * size and is stored at b modulo the number of blocks in the level.
+     */
+    @Transient
+    private var levelMins: Array<DoubleArray>? = null
+
+    @Transient
+    private var levelMaxs: Array<DoubleArray>? = null
+
+    /**
+     * Called when points are added or removed. Set by the dataset containing this series.
+     */
+    @Transient
+    internal var listener: (() -> Unit)? = null
+
+    /**
+     * Decimated points last computed for a chart, or null if the raw points should be shown.
+     */
+    @Transient
+    internal var view: DecimatedView? = null
+
+    /**
+     * Arrays of the last decimation, reused by the next one.
+     */
+    @Transient
+    private var decimationBuffers: DecimatedView? = null
+
+    internal class DecimatedView(val xs: DoubleArray, val ys: DoubleArray, val count: Int)
+
+    private fun slot(absoluteIndex: Long) = (absoluteIndex % capacity).toInt()
+
+    fun getX(index: Int) = xs[slot(first + index)]
+
+    fun getY(index: Int) = ys[slot(first + index)]
+
+    fun add(x: Number, y: Number?) = add(x.toDouble(), y?.toDouble() ?: Double.NaN)
+
+    fun add(x: Double, y: Double) = add(x, y, true)
+
+    /**
+     * Add a point, notifying the dataset if [notify] is true. Add several points with notify false and then call
+     * [changed] to redraw once.
+     */
+    fun add(x: Double, y: Double, notify: Boolean) {
+        if (itemCount >= maximumItemCount) {
+            itemCount--
+        }
+        if (itemCount == capacity) {
+            resize(capacity * 2)
+        }
+        if (itemCount > 0 && x < getX(itemCount - 1)) {
+            isAscending = false
+        }
+        val index = total
+        xs[slot(index)] = x
+        ys[slot(index)] = y
+        total++
+        itemCount++
+        updatePyramid(index, y)
+        if (notify) {
+            changed()
+        }
+    }
+
+    /**
+     * Remove the oldest points with x values less than [x].
+     */
+    fun removeBefore(x: Double) {
+        val oldCount = itemCount
+        while (itemCount > 0 && getX(0) < x) {
+            itemCount--
+        }
+        if (itemCount != oldCount) {
+            changed()
+        }
+    }
+
+    fun clear() {
+        itemCount = 0
+        isAscending = true
+        if (capacity > INITIAL_CAPACITY) {
+            resize(INITIAL_CAPACITY)
+        }
+        changed()
+    }
+
+    fun changed() {
+        view = null
+        listener?.invoke()
+    }
+
+    val minY get() = findMinMax(0, itemCount).first
+
+    val maxY get() = findMinMax(0, itemCount).second
+
+    val minX get() = if (isAscending) getXOrNaN(0) else (0 until itemCount).minOfOrNull { getX(it) } ?: Double.NaN
+
+    val maxX get() = if (isAscending) getXOrNaN(itemCount - 1) else (0 until itemCount).maxOfOrNull { getX(it) } ?: Double.NaN
+
+    private fun getXOrNaN(index: Int) = if (index in 0 until itemCount) getX(index) else Double.NaN
+
+    /**
+     * Copy the points to a JFreeChart series.
+     */
+    fun toXYSeries() = XYSeries(description, false).also { series ->
+        series.description = description
+        for (i in 0 until itemCount) {
+            series.add(getX(i), getY(i).takeUnless { it.isNaN() }, false)
+        }
+    }
+
+    /**
+     * Move the points to arrays of a new size, keeping each point at its absolute index modulo the size, and rebuild
+     * the pyramid.
+     */
+    private fun resize(newCapacity: Int) {
+        val newXs = DoubleArray(newCapacity)
+        val newYs = DoubleArray(newCapacity)
+        for (i in first until total) {
+            newXs[(i % newCapacity).toInt()] = xs[slot(i)]
+            newYs[(i % newCapacity).toInt()] = ys[slot(i)]
+        }
+        xs = newXs
+        ys = newYs
+        rebuildPyramid()
+    }
+
+    private fun rebuildPyramid() {
+        var levels = 1
+        while ((BLOCK_SIZE shl levels) <= capacity) {
+            levels++
+        }
+        // Two extra blocks per level so that a block still holding live points is never overwritten
+        val sizes = IntArray(levels) { capacity / (BLOCK_SIZE shl it) + 2 }
+        levelMins = Array(levels) { DoubleArray(sizes[it]) { Double.POSITIVE_INFINITY } }
+        levelMaxs = Array(levels) { DoubleArray(sizes[it]) { Double.NEGATIVE_INFINITY } }
+        for (i in first until total) {
+            updatePyramid(i, ys[slot(i)])
+        }
+    }
+
+    private fun updatePyramid(index: Long, y: Double) {
+        val mins = levelMins ?: return rebuildPyramid()
+        val maxs = levelMaxs!!
+        for (level in mins.indices) {
+            val size = BLOCK_SIZE shl level
+            val block = ((index / size) % mins[level].size).toInt()
+            if (index % size == 0L) {
+                mins[level][block] = Double.POSITIVE_INFINITY
+                maxs[level][block] = Double.NEGATIVE_INFINITY
+            }
+            if (!y.isNaN()) {
+                mins[level][block] = min(mins[level][block], y)
+                maxs[level][block] = max(maxs[level][block], y)
+            }
+        }
+    }
+
+    /**
+     * Minimum and maximum y value of the points from index [from] until [to], ignoring gaps. NaN if there are none.
+     */
+    fun findMinMax(from: Int, to: Int): Pair<Double, Double> {
+        if (levelMins == null) {
+            rebuildPyramid()
+        }
+        val mins = levelMins!!
+        val maxs = levelMaxs!!
+        var low = Double.POSITIVE_INFINITY
+        var high = Double.NEGATIVE_INFINITY
+        var i = first + from
+        val end = first + to
+        while (i < end) {
+            // Use the largest block that starts here and ends within the range
+            var level = mins.lastIndex
+            while (level >= 0 && (i % (BLOCK_SIZE shl level) != 0L || i + (BLOCK_SIZE shl level) > end)) {
+                level--
+            }
+            if (level < 0) {
+                val y = ys[slot(i)]
+                if (!y.isNaN()) {
+                    low = min(low, y)
+                    high = max(high, y)
+                }
+                i++
+            } else {
+                val block = ((i / (BLOCK_SIZE shl level)) % mins[level].size).toInt()
+                low = min(low, mins[level][block])
+                high = max(high, maxs[level][block])
+                i += BLOCK_SIZE shl level
+            }
+        }
+        return if (low > high) Double.NaN to Double.NaN else low to high
+    }
+
+    /**
+     * Index of the first point with an x value not less than [x]. Requires [isAscending].
+     */
+    fun lowerBound(x: Double, from: Int = 0, to: Int = itemCount): Int {
+        var lo = from
+        var hi = to
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (getX(mid) < x) lo = mid + 1 else hi = mid
+        }
+        return lo
+    }
+
+    /**
+     * Replace the points with x values from [lower] to [upper] by at most two points per column, the minimum and
+     * maximum of the points in each of [columns] equal slices of the x range. Returns null if the series is not
+     * ascending or there are too few points for this to help.
+     */
+    internal fun decimate(lower: Double, upper: Double, columns: Int): DecimatedView? {
+        if (!isAscending || columns <= 0 || itemCount <= 4 * columns) {
+            return null
+        }
+        // Include one point either side of the range so lines run to the edges of the chart
+        val start = (lowerBound(lower) - 1).coerceAtLeast(0)
+        val end = (lowerBound(upper, start) + 1).coerceAtMost(itemCount)
+        if (end - start <= 4 * columns) {
+            return null
+        }
+        val old = decimationBuffers
+        val outX = old?.xs?.takeIf { it.size >= 2 * columns + 2 } ?: DoubleArray(2 * columns + 2)
+        val outY = old?.ys?.takeIf { it.size >= 2 * columns + 2 } ?: DoubleArray(2 * columns + 2)
+        var count = 0
+        var columnStart = start
+        val width = (upper - lower) / columns
+        for (column in 0..columns) {
+            val columnEnd = if (column == columns) end else lowerBound(lower + (column + 1) * width, columnStart, end)
+            if (columnEnd > columnStart) {
+                val (low, high) = findMinMax(columnStart, columnEnd)
+                val firstX = getX(columnStart)
+                val lastX = getX(columnEnd - 1)
+                if (low.isNaN()) {
+                    outX[count] = firstX
+                    outY[count++] = Double.NaN
+                } else {
+                    // Keep the direction of the line through the column
+                    val rising = getY(columnStart).let { it.isNaN() || it <= getY(columnEnd - 1) }
+                    outX[count] = firstX
+                    outY[count++] = if (rising) low else high
+                    outX[count] = lastX
+                    outY[count++] = if (rising) high else low
+                }
+            }
+            columnStart = columnEnd
+        }
+        return DecimatedView(outX, outY, count).also { decimationBuffers = it }
+    }
+
+    /**
+     * See [org.simbrain.workspace.serialization.WorkspaceComponentDeserializer]
+     */
+    private fun readResolve(): Any {
+        rebuildPyramid()
+        return this
+    }
+
+    companion object {
+
+        private const val INITIAL_CAPACITY = 64
+
+        private const val BLOCK_SIZE = 16
+
+        /**
+         * Copy the points of a JFreeChart series.
+         */
+        fun fromXYSeries(series: XYSeries) = RingBufferSeries(series.description ?: series.key.toString()).also {
+            it.maximumItemCount = series.maximumItemCount
+            for (i in 0 until series.itemCount) {
+                it.add(series.getX(i), series.getY(i))
+            }
+        }
+    }
+}
+
+/**
+ * A JFreeChart dataset of [RingBufferSeries]. When a view is set with [setView], series with many more points than
+ * there are pixel columns are shown min / max decimated, so rendering cost depends on the width of the chart rather
+ * than the number of points.
+ */
+class RingBufferXYDataset : AbstractXYDataset(), DomainInfo, RangeInfo {
+
+    private val seriesList = ArrayList<RingBufferSeries>()
+
+    val series: List<RingBufferSeries> get() = seriesList
+
+    private var viewLower = Double.NaN
+
+    private var viewUpper = Double.NaN
+
+    private var viewColumns = 0
+
+    fun addSeries(series: RingBufferSeries) {
+        series.listener = { fireDatasetChanged() }
+        seriesList.add(series)
+        fireDatasetChanged()
+    }
+
+    fun removeSeries(series: RingBufferSeries) {
+        if (seriesList.remove(series)) {
+            series.listener = null
+            fireDatasetChanged()
+        }
+    }
+
+    fun removeSeries(index: Int) = removeSeries(seriesList[index])
+
+    fun getSeries(index: Int) = seriesList[index]
+
+    /**
+     * Set the range of x values shown and the number of pixel columns they are drawn in. A NaN bound means the
+     * series' own first or last x value.
+     */
+    fun setView(lower: Double, upper: Double, columns: Int) {
+        if (lower != viewLower || upper != viewUpper || columns != viewColumns) {
+            viewLower = lower
+            viewUpper = upper
+            viewColumns = columns
+            seriesList.forEach { it.view = null }
+        }
+    }
+
+    private fun pointsOf(series: Int): RingBufferSeries.DecimatedView? {
+        val s = seriesList[series]
+        val current = s.view
+        if (current != null) {
+            return current.takeIf { it.count >= 0 }
+        }
+        val lower = if (viewLower.isNaN()) s.minX else viewLower
+        val upper = if (viewUpper.isNaN()) s.maxX else viewUpper
+        val view = if (lower < upper) s.decimate(lower, upper, viewColumns) else null
+        // An empty view marks that the raw points are shown
+        s.view = view ?: RingBufferSeries.DecimatedView(DoubleArray(0), DoubleArray(0), -1)
+        return view
+    }
+
+    override fun getSeriesCount() = seriesList.size
+
+    override fun getSeriesKey(series: Int): Comparable<*> = seriesList[series].description
+
+    override fun getItemCount(series: Int) = pointsOf(series)?.count ?: seriesList[series].itemCount
+
+    override fun getXValue(series: Int, item: Int) = pointsOf(series)?.xs?.get(item) ?: seriesList[series].getX(item)
+
+    override fun getYValue(series: Int, item: Int) = pointsOf(series)?.ys?.get(item) ?: seriesList[series].getY(item)
+
+    override fun getX(series: Int, item: Int): Number = getXValue(series, item)
+
+    override fun getY(series: Int, item: Int): Number? = getYValue(series, item).takeUnless { it.isNaN() }
+
+    override fun getDomainOrder(): DomainOrder =
+        if (seriesList.all { it.isAscending }) DomainOrder.ASCENDING else DomainOrder.NONE
+
+    override fun getDomainLowerBound(includeInterval: Boolean) = getDomainBounds(includeInterval)?.lowerBound ?: Double.NaN
+
+    override fun getDomainUpperBound(includeInterval: Boolean) = getDomainBounds(includeInterval)?.upperBound ?: Double.NaN
+
+    override fun getDomainBounds(includeInterval: Boolean) =
+        bounds(seriesList.map { it.minX }, seriesList.map { it.maxX })
+
+    override fun getRangeLowerBound(includeInterval: Boolean) = getRangeBounds(includeInterval)?.lowerBound ?: Double.NaN
+
+    override fun getRangeUpperBound(includeInterval: Boolean) = getRangeBounds(includeInterval)?.upperBound ?: Double.NaN
+
+    override fun getRangeBounds(includeInterval: Boolean) =
+        seriesList.map { it.findMinMax(0, it.itemCount) }.let { minMax ->
+            bounds(minMax.map { it.first }, minMax.map { it.second })
+        }
+
+    private fun bounds(lows: List<Double>, highs: List<Double>): Range? {
+        val low = lows.filterNot { it.isNaN() }.minOrNull() ?: return null
+        val high = highs.filterNot { it.isNaN() }.maxOrNull() ?: return null
+        return Range(low, high)
+    }
+}
@@ -98,7 +98,6 @@ class HistogramModel(
     fun resetData(data: MutableList<DoubleArray>, names: MutableList<String>) {
         this.data = data
         dataNames = names
-        dataSet.resetData(dataNames, data, bins)
         applyCurrentData()
     }
 
@@ -135,6 +134,38 @@ class HistogramModel(
         applyCurrentData()
     }
 
+    /**
+     * Maximum number of values of each series that are binned, 0 to bin all values. Setting this speeds up
+     * histograms of very large arrays, e.g. the weights of a large weight matrix.
+     */
+    var sampleSize: Int
+        get() = dataSet.sampleSize
+        set(value) {
+            dataSet.sampleSize = value
+        }
+
+    /**
+     * Minimum time in milliseconds between redraws of the histogram.
+     */
+    var minimumUpdateInterval: Long
+        get() = dataSet.minimumUpdateInterval
+        set(value) {
+            dataSet.minimumUpdateInterval = value
+        }
+
+    /**
+     * Use fixed bin edges evenly dividing the range from lower to upper, rather than edges that adapt to the data.
+     */
+    fun setFixedRange(lower: Double, upper: Double) {
+        dataSet.setFixedRange(lower, upper)
+        applyCurrentData()
+    }
+
+    fun clearFixedRange() {
+        dataSet.clearFixedRange()
+        applyCurrentData()
+    }
+
     fun setSeriesColor(name: String?, c: Color?) {
         dataSet.setSeriesColor(name, c)
     }
@@ -19,7 +19,8 @@
 package org.simbrain.plot.timeseries
 
 import org.jfree.data.xy.XYSeries
-import org.jfree.data.xy.XYSeriesCollection
+import org.simbrain.plot.RingBufferSeries
+import org.simbrain.plot.RingBufferXYDataset
 import org.simbrain.plot.TimeSeriesEvents
 import org.simbrain.util.UserParameter
 import org.simbrain.util.WithXStreamPropertyConverter
@@ -47,7 +48,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
      * Time Series Data.
      */
     @Transient
-    var dataset = XYSeriesCollection()
+    var dataset = RingBufferXYDataset()
         private set
 
     @UserParameter(
@@ -101,11 +102,11 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
             field = value
             if (value) {
                 for (s in dataset.series) {
-                    (s as XYSeries?)!!.maximumItemCount = windowSize
+                    s.maximumItemCount = windowSize
                 }
             } else {
                 for (s in dataset.series) {
-                    (s as XYSeries?)!!.maximumItemCount = Int.MAX_VALUE
+                    s.maximumItemCount = Int.MAX_VALUE
                 }
             }
         }
@@ -156,11 +157,8 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
      * Clears the plot.
      */
     fun clearData() {
-        val seriesCount = dataset.seriesCount
-        var i = 0
-        while (seriesCount > i) {
-            dataset.getSeries(i).clear()
-            ++i
+        for (s in dataset.series) {
+            s.clear()
         }
     }
 
@@ -195,7 +193,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
      * @return a reference to the series, or null if the model is in scalar mode
      */
     fun addTimeSeries(description: String): TimeSeries {
-        val sts = TimeSeries(addXYSeries(description))
+        val sts = TimeSeries(addSeries(description))
         timeSeriesList.add(sts)
         events.timeSeriesAdded.fire(sts)
         return sts
@@ -214,14 +212,13 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
     }
 
     /**
-     * Adds an xy series to the chart with the specified description.
+     * Adds a series to the chart with the specified description.
      */
-    private fun addXYSeries(description: String): XYSeries {
-        val xy = XYSeries(description)
-        xy.maximumItemCount = windowSize
-        xy.description = description
-        dataset.addSeries(xy)
-        return xy
+    private fun addSeries(description: String): RingBufferSeries {
+        val series = RingBufferSeries(description)
+        series.maximumItemCount = windowSize
+        dataset.addSeries(series)
+        return series
     }
 
     /**
@@ -266,7 +263,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
      */
     private fun readResolve(): Any {
         events = TimeSeriesEvents()
-        dataset = XYSeriesCollection()
+        dataset = RingBufferXYDataset()
         timeSeriesList.forEach { dataset.addSeries(it.series) }
         return this
     }
@@ -281,7 +278,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
                     writer.startNode("timeSeriesList")
                     forEach {
                         writer.startNode("timeSeries")
-                        context.convertAnother(it.series)
+                        context.convertAnother(it.series.toXYSeries())
                         writer.endNode()
                     }
                     writer.endNode()
@@ -292,7 +289,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
                         reader.moveDown()
                         val series = context.convertAnother(reader.value, XYSeries::class.java) as XYSeries
                         withConstructedObject {
-                            val sts = TimeSeries(series)
+                            val sts = TimeSeries(RingBufferSeries.fromXYSeries(series))
                             timeSeriesList.add(sts)
                             dataset.addSeries(sts.series)
                             events.timeSeriesAdded.fire(sts)
@@ -312,7 +309,7 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
         /**
          * The represented time series
          */
-        var series: XYSeries
+        var series: RingBufferSeries
     ) : AttributeContainer {
 
         /**
@@ -324,9 +321,11 @@ class TimeSeriesModel : AttributeContainer, EditableObject {
 
         @Consumable
         fun setValue(value: Double) {
+            // Read the time on the calling thread, which may be processing an earlier tick
+            val time = timeSupplier().toDouble()
             try {
                 SwingUtilities.invokeAndWait {
-                    series.add(timeSupplier(), value as Number)
+                    series.add(time, value)
                 }
             } catch (e: InterruptedException) {
                 e.printStackTrace()
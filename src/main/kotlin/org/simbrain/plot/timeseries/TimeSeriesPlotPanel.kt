@@ -111,10 +111,21 @@ class TimeSeriesPlotPanel(val timeSeriesModel: TimeSeriesModel): JPanel() {
         updateChartSettings()
 
         chart.addProgressListener {
+            updateView()
             updateChartSettings()
         }
     }
 
+    /**
+     * Tell the dataset the x range shown and its width in pixels, so that long series are decimated to about one point
+     * per pixel column.
+     */
+    private fun updateView() {
+        val domainAxis = chart.xyPlot.domainAxis
+        val width = chartPanel.chartRenderingInfo.plotInfo.dataArea.width.toInt().takeIf { it > 0 } ?: chartPanel.width
+        timeSeriesModel.dataset.setView(domainAxis.lowerBound, domainAxis.upperBound, width)
+    }
+
     fun updateChartSettings() {
         // No idea why this is needed, but it makes the width get updated upon closing the settings dialog
 
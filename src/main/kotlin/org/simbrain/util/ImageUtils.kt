@@ -129,6 +129,112 @@ fun BooleanArray.toOverlay(width: Int, height: Int, color: Color ): BufferedImag
     return BufferedImage(colorModel, raster, false, null)
 }
 
+/**
+ * Number of lookup table entries per unit of value in [simbrainColorTable].
+ */
+private const val COLOR_TABLE_RESOLUTION = 1024
+
+/**
+ * [Float.toSimbrainColor] sampled on [-1, 1], so that arrays can be colored without calling [Color.HSBtoRGB] for
+ * every pixel.
+ */
+private val simbrainColorTable by lazy {
+    IntArray(2 * COLOR_TABLE_RESOLUTION + 1) {
+        (it.toFloat() / COLOR_TABLE_RESOLUTION - 1).toSimbrainColor()
+    }
+}
+
+/**
+ * Look up the color of a value in [simbrainColorTable]. Values are clipped to [-1, 1] as in [Float.toSimbrainColor].
+ */
+fun Double.toSimbrainColorFromTable(): Int {
+    val index = if (isNaN()) COLOR_TABLE_RESOLUTION else ((coerceIn(-1.0, 1.0) + 1) * COLOR_TABLE_RESOLUTION + 0.5).toInt()
+    return simbrainColorTable[index]
+}
+
+/**
+ * An image of a fixed size that is repeatedly redrawn from arrays of values, for rendering arrays that change every
+ * update. The pixels of [image] are written directly, so redrawing allocates nothing, and the values last drawn are
+ * kept so that redrawing unchanged values can be skipped.
+ *
+ * @param alpha whether the image has an alpha channel, as in [toOverlay]; otherwise it is 24-bit RGB as in
+ * [toSimbrainColorImage]
+ */
+class ArrayImage(val width: Int, val height: Int, private val alpha: Boolean = false) {
+
+    private val pixels = IntArray(width * height)
+
+    private val lastValues = DoubleArray(width * height)
+
+    private var lastLength = -1
+
+    val image: BufferedImage = if (alpha) {
+        DirectColorModel(32, 0xff0000, 0x00ff00, 0x0000ff, 0xff shl 24)
+    } else {
+        DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff)
+    }.let { colorModel ->
+        val raster = Raster.createWritableRaster(
+            colorModel.createCompatibleSampleModel(width, height),
+            DataBufferInt(pixels, pixels.size),
+            null
+        )
+        BufferedImage(colorModel, raster, false, null)
+    }
+
+    /**
+     * Color the pixels using [Double.toSimbrainColorFromTable] on the values of a matrix, in column-major order, and
+     * fill any remaining pixels with light gray, as in [toSimbrainColorImage]. Returns false without changing the image
+     * if the values are the same as the last time it was drawn.
+     */
+    fun drawSimbrainColors(values: Matrix): Boolean {
+        val nrow = values.nrow()
+        val count = min(nrow * values.ncol(), pixels.size)
+        val redraw = resize(count)
+        var changed = redraw
+        for (i in 0 until count) {
+            val v = values[i % nrow, i / nrow]
+            if (redraw || v.toRawBits() != lastValues[i].toRawBits()) {
+                changed = true
+                lastValues[i] = v
+                pixels[i] = v.toSimbrainColorFromTable()
+            }
+        }
+        return changed
+    }
+
+    /**
+     * Color pixels [color] where the array is true and transparent elsewhere, as in [toOverlay]. Returns false without
+     * changing the image if the values are the same as the last time it was drawn.
+     */
+    fun drawOverlay(values: BooleanArray, color: Color): Boolean {
+        val count = min(values.size, pixels.size)
+        val redraw = resize(count)
+        var changed = redraw
+        for (i in 0 until count) {
+            val v = if (values[i]) 1.0 else 0.0
+            if (redraw || v != lastValues[i]) {
+                changed = true
+                lastValues[i] = v
+                pixels[i] = if (values[i]) color.rgb else 0
+            }
+        }
+        return changed
+    }
+
+    /**
+     * Fill the pixels past the values with the background (light gray, or transparent for overlays) when the number of
+     * values changes. Returns true if it changed.
+     */
+    private fun resize(count: Int): Boolean {
+        if (count == lastLength) {
+            return false
+        }
+        pixels.fill(if (alpha) 0 else Color.lightGray.rgb, count, pixels.size)
+        lastLength = count
+        return true
+    }
+}
+
 /**
  * Scale the size of the image by the provided factor.
  *
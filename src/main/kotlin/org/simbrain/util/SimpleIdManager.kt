@@ -63,6 +63,18 @@ class SimpleIdManager @JvmOverloads constructor (
         return idMap[clazz]!!.getAndIncrement()
     }
 
+    /**
+     * Reserve [count] consecutive ids for a class without creating their strings. Returns the [SimpleId] and the
+     * first reserved index; see [org.simbrain.network.core.NetworkModel.setLazyId].
+     */
+    fun reserveIds(clazz: Class<*>, count: Int): Pair<SimpleId, Int> {
+        if (!idMap.containsKey(clazz)) {
+            putClassIdMapping(clazz)
+        }
+        val simpleId = idMap[clazz]!!
+        return simpleId to simpleId.getAndAdd(count)
+    }
+
     /**
      * An id based on a base name and an integer index.
      */
@@ -77,7 +89,17 @@ class SimpleIdManager @JvmOverloads constructor (
         /**
          * Returns a simple identifier and increments id index.
          */
-        fun getAndIncrement(): String = rootName + delimeter + index.getAndIncrement()
+        fun getAndIncrement(): String = format(index.getAndIncrement())
+
+        /**
+         * Returns the current index and advances it by [count].
+         */
+        fun getAndAdd(count: Int): Int = index.getAndAdd(count)
+
+        /**
+         * The identifier for a given index.
+         */
+        fun format(index: Int): String = rootName + delimeter + index
 
     }
 }
\ No newline at end of file
@@ -214,6 +214,18 @@ fun Matrix.broadcastMultiply(vector: Matrix): Matrix {
 
 fun Matrix.flatten(): DoubleArray = flattenArray(toArray())
 
+/**
+ * Round each element to the nearest single precision value, in place.
+ */
+fun Matrix.roundToFloat(): Matrix {
+    for (i in 0 until nrow()) {
+        for (j in 0 until ncol()) {
+            this[i, j] = this[i, j].toFloat().toDouble()
+        }
+    }
+    return this
+}
+
 /**
  * Display a histogram for the (flattened) matrix.
  * Returns an updater function so that the histogram can be updated when the matrix changes.  That function takes a
@@ -259,6 +271,26 @@ fun Matrix.layerNorm(epsilon: Double = 1e-5): Matrix {
     return normalized
 }
 
+/**
+ * Layer normalize row [i] in place, as in [layerNorm].
+ */
+fun Matrix.layerNormRow(i: Int, epsilon: Double = 1e-5) {
+    val n = ncol()
+    var mean = 0.0
+    for (j in 0 until n) mean += this[i, j]
+    mean /= n
+    var variance = 0.0
+    for (j in 0 until n) {
+        val diff = this[i, j] - mean
+        variance += diff * diff
+    }
+    variance /= n
+    val std = sqrt(variance + epsilon)
+    for (j in 0 until n) {
+        this[i, j] = (this[i, j] - mean) / std
+    }
+}
+
 fun Matrix.relu(): Matrix {
     val activated = Matrix(nrow(), ncol())
     for (i in 0 until nrow()) {
@@ -34,6 +34,12 @@ abstract class DecayFunction(
      */
     abstract fun getScalingFactor(distance: Double): Double
 
+    /**
+     * Distance beyond which [getScalingFactor] returns 0, or infinity if it never does.
+     */
+    open val range: Double
+        get() = peakDistance + dispersion
+
     // TODO: Stub for future implementation of, for example, elliptical decay functions
     // open fun getScalingFactor(relativeLocation: Point2D): Double {
     //     return 0.0
@@ -22,6 +22,9 @@ class GaussianDecayFunction @JvmOverloads constructor(dispersion: Double = 70.0)
         return exp(-.5 * ((distance - mean) / std).pow(2.0))
     }
 
+    override val range: Double
+        get() = Double.POSITIVE_INFINITY
+
     override fun copy(): GaussianDecayFunction {
         return GaussianDecayFunction(dispersion)
             .also {
@@ -0,0 +1,170 @@
+package org.simbrain.util.geneticalgorithm
+
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
+import kotlin.random.Random
+import kotlin.reflect.full.createInstance
+
+/**
+ * The state of an [evaluator] run after a generation has been produced: everything needed to continue the run
+ * exactly where it left off.
+ *
+ * @param generation the last completed generation
+ * @param factories class names of the [EvoSimFactory] used to rebuild each member of the population
+ * @param genomes genomes of the population that will be evaluated next
+ * @param random the evaluator's random number generator
+ * @param fitnessHistory fitness scores of every completed generation, sorted best first
+ */
+class GeneticCheckpoint(
+    val generation: Int,
+    val factories: List<String>,
+    val genomes: List<Any>,
+    val random: Random,
+    val fitnessHistory: List<DoubleArray>
+) {
+
+    /**
+     * Rebuild the population from its genomes.
+     */
+    fun population(): List<EvoSim> {
+        val factoryInstances = HashMap<String, EvoSimFactory>()
+        return (factories zip genomes).map { (factory, genome) ->
+            factoryInstances.getOrPut(factory) {
+                Class.forName(factory).kotlin.createInstance() as EvoSimFactory
+            }.create(genome)
+        }
+    }
+
+    fun generationFitnessPairs() = fitnessHistory.mapIndexed { index, scores ->
+        GenerationFitnessPair(index + 1, scores.toList())
+    }
+}
+
+/**
+ * Periodically saves the state of an [evaluator] run to a zipped checkpoint file so that long runs can be resumed
+ * after a crash or stop, and appends per-generation statistics to a csv file so progress can be watched without the
+ * gui.
+ *
+ * Checkpointing requires every member of the population to be a [DistributableEvoSim]. For a resumed run to be
+ * bit-exact, genomes must include any random number generators they use.
+ *
+ * @param checkpointFile zip file the checkpoint is written to. Written to a temporary file first and then moved, so a
+ * crash during a save leaves the previous checkpoint intact.
+ * @param interval save a checkpoint every this many generations, and when the run ends or is stopped
+ * @param statisticsFile if not null, a csv row of fitness statistics is appended here each generation. When a run is
+ * resumed, rows for generations after the checkpoint are removed, since those generations are run again.
+ */
+class GeneticCheckpointer(
+    val checkpointFile: File,
+    val interval: Int = 10,
+    val statisticsFile: File? = null
+) {
+
+    private val fitnessHistory = mutableListOf<DoubleArray>()
+
+    /**
+     * The last completed generation, if it has not been saved yet.
+     */
+    private var unsaved: Triple<Int, List<EvoSim>, Random>? = null
+
+    /**
+     * Load the last saved checkpoint, or null if none exists, and remove statistics for any later generations.
+     */
+    fun load(): GeneticCheckpoint? {
+        val checkpoint = if (checkpointFile.exists()) {
+            ZipInputStream(checkpointFile.inputStream().buffered()).use { zip ->
+                generateSequence { zip.nextEntry }.first { it.name == CHECKPOINT_ENTRY }
+                genomeXStream().fromXML(zip) as GeneticCheckpoint
+            }
+        } else {
+            null
+        }
+        fitnessHistory.clear()
+        checkpoint?.let { fitnessHistory.addAll(it.fitnessHistory) }
+        statisticsFile?.let { truncateStatistics(it, checkpoint?.generation ?: 0) }
+        return checkpoint
+    }
+
+    /**
+     * Record the fitness of a completed generation, append it to the statistics file, and save a checkpoint if one is
+     * due.
+     */
+    fun onGeneration(generationFitnessPair: GenerationFitnessPair, population: List<EvoSim>, random: Random) {
+        fitnessHistory.add(generationFitnessPair.fitnessScores.toDoubleArray())
+        statisticsFile?.let { appendStatistics(it, generationFitnessPair) }
+        if (generationFitnessPair.generation % interval == 0) {
+            save(generationFitnessPair.generation, population, random)
+            unsaved = null
+        } else {
+            unsaved = Triple(generationFitnessPair.generation, population, random)
+        }
+    }
+
+    /**
+     * Save the last completed generation if it was not saved by [onGeneration]. Called when a run ends or is
+     * stopped.
+     */
+    fun finish() {
+        unsaved?.let { (generation, population, random) -> save(generation, population, random) }
+        unsaved = null
+    }
+
+    fun save(generation: Int, population: List<EvoSim>, random: Random) {
+        val distributable = population.map {
+            it as? DistributableEvoSim ?: throw IllegalArgumentException(
+                "${it::class.simpleName} must implement DistributableEvoSim to be checkpointed"
+            )
+        }
+        val checkpoint = GeneticCheckpoint(
+            generation,
+            distributable.map { it.factory.java.name },
+            distributable.map { it.genome() },
+            random,
+            fitnessHistory.toList()
+        )
+        val tempFile = File(checkpointFile.absoluteFile.parentFile, "${checkpointFile.name}.tmp")
+        ZipOutputStream(tempFile.outputStream().buffered()).use { zip ->
+            zip.putNextEntry(ZipEntry(CHECKPOINT_ENTRY))
+            genomeXStream().toXML(checkpoint, zip)
+            zip.closeEntry()
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    /**
+     * Remove rows for generations after [generation], keeping the header.
+     */
+    private fun truncateStatistics(file: File, generation: Int) {
+        if (!file.exists()) {
+            return
+        }
+        val lines = file.readLines()
+        val kept = lines.filterIndexed { index, line ->
+            index == 0 || (line.substringBefore(",").toIntOrNull() ?: Int.MAX_VALUE) <= generation
+        }
+        if (kept.size < lines.size) {
+            file.writeText(kept.joinToString("") { it + "\n" })
+        }
+    }
+
+    private fun appendStatistics(file: File, generationFitnessPair: GenerationFitnessPair) {
+        val writeHeader = !file.exists() || file.length() == 0L
+        file.appendText(buildString {
+            if (writeHeader) {
+                appendLine("generation,best,p25,median,p75,worst,mean")
+            }
+            with(generationFitnessPair) {
+                val percentiles = listOf(0, 25, 50, 75, 100).map { nthPercentileFitness(it) }
+                appendLine((listOf(generation) + percentiles + fitnessScores.average()).joinToString(","))
+            }
+        })
+    }
+
+    companion object {
+        private const val CHECKPOINT_ENTRY = "checkpoint.xml"
+    }
+}
@@ -69,6 +69,27 @@ class Chromosome<P, G : Gene<P>>(genes: List<G>) : MutableList<G> by ArrayList(g
 
 data class PopulatingFunctionParams(val seed: Long)
 
+/**
+ * Computes the fitness of every member of a population. Implementations must return scores in the same order as the
+ * population.
+ */
+fun interface PopulationEvaluator {
+
+    /**
+     * @param worstFitness score to assign to sims that could not be evaluated, so that they are eliminated.
+     */
+    suspend fun evaluate(population: List<EvoSim>, worstFitness: Double): List<Double>
+}
+
+/**
+ * Evaluates every sim concurrently in this JVM using coroutines.
+ */
+object LocalPopulationEvaluator : PopulationEvaluator {
+    override suspend fun evaluate(population: List<EvoSim>, worstFitness: Double) = coroutineScope {
+        population.map { async { it.eval() } }.awaitAll()
+    }
+}
+
 /**
  * The main evolutionary code.
  * Assumes fitness, i.e. bigger numbers are better. For "error", the eval function should return a negative number.
@@ -80,6 +101,10 @@ data class PopulatingFunctionParams(val seed: Long)
  * @param stoppingFunction a function that determines when to stop running the sim. Generally check a generation
  * number and for fitness.
  * @param peek code to run each iteration, for example to update a progress bar
+ * @param populationEvaluator computes the fitness of each generation. Defaults to evaluating in this JVM; see
+ * [WorkerPoolEvaluator] for evaluating in separate worker processes.
+ * @param checkpointer if not null, the run is resumed from its last checkpoint (if there is one) and checkpoints and
+ * statistics are saved as the run proceeds.
  */
 suspend fun evaluator(
     populatingFunction: PopulatingFunctionParams.() -> EvoSim,
@@ -89,39 +114,60 @@ suspend fun evaluator(
     peek: GenerationFitnessPair.() -> Unit = {},
     sortDescending: Boolean = true,
     seed: Long = Random.nextLong(),
-    random: Random = Random(seed)
+    random: Random = Random(seed),
+    populationEvaluator: PopulationEvaluator = LocalPopulationEvaluator,
+    checkpointer: GeneticCheckpointer? = null
 ): List<EvoSim> = coroutineScope {
     var generation = 0
+    var rng = random
     val populatingFunctionParams = PopulatingFunctionParams(seed)
-    var population = List(populationSize) { populatingFunction(populatingFunctionParams) }
-    do {
-        generation++
-        val fitnessScores = population.map { async { it.eval() } }.awaitAll()
-        val agentFitnessPair = (population zip fitnessScores).shuffled(random).let {
-            if (sortDescending) {
-                it.sortedByDescending { it.second }
-            } else {
-                it.sortedBy { it.second }
-            }
-        }
-        val eliminationCount = (agentFitnessPair.size * eliminationRatio).roundToInt()
-        val survivors = agentFitnessPair.take(populationSize - eliminationCount).map { (sim) -> sim }
-        population = (survivors.map { it.copy() } + survivors.sampleWithReplacement(random).take(eliminationCount)
-            .toList().map {
-                it.copy().apply {
-                    mutate()
+    val checkpoint = checkpointer?.load()
+    var population = if (checkpoint != null) {
+        generation = checkpoint.generation
+        rng = checkpoint.random
+        checkpoint.population()
+    } else {
+        List(populationSize) { populatingFunction(populatingFunctionParams) }
+    }
+    try {
+        do {
+            generation++
+            val fitnessScores = populationEvaluator.evaluate(
+                population,
+                worstFitness = if (sortDescending) Double.NEGATIVE_INFINITY else Double.POSITIVE_INFINITY
+            )
+            val agentFitnessPair = (population zip fitnessScores).shuffled(rng).let {
+                if (sortDescending) {
+                    it.sortedByDescending { it.second }
+                } else {
+                    it.sortedBy { it.second }
                 }
-            })
-        val generationFitnessPair = GenerationFitnessPair(generation, agentFitnessPair.map { it.second })
-        peek(generationFitnessPair)
-    } while (!stoppingFunction(generationFitnessPair))
+            }
+            val eliminationCount = (agentFitnessPair.size * eliminationRatio).roundToInt()
+            val survivors = agentFitnessPair.take(populationSize - eliminationCount).map { (sim) -> sim }
+            population = (survivors.map { it.copy() } + survivors.sampleWithReplacement(rng).take(eliminationCount)
+                .toList().map {
+                    it.copy().apply {
+                        mutate()
+                    }
+                })
+            val generationFitnessPair = GenerationFitnessPair(generation, agentFitnessPair.map { it.second })
+            checkpointer?.onGeneration(generationFitnessPair, population, rng)
+            peek(generationFitnessPair)
+        } while (!stoppingFunction(generationFitnessPair))
+    } finally {
+        // Also reached when the run is cancelled, which can only happen while a generation is being evaluated
+        checkpointer?.finish()
+    }
     population
 }
 
 suspend fun evaluator(
     evaluatorParams: EvaluatorParams,
     populatingFunction: PopulatingFunctionParams.() -> EvoSim,
-    peek: GenerationFitnessPair.() -> Unit = {}
+    peek: GenerationFitnessPair.() -> Unit = {},
+    populationEvaluator: PopulationEvaluator = LocalPopulationEvaluator,
+    checkpointer: GeneticCheckpointer? = null
 ): List<EvoSim> {
     val lastGeneration = evaluator(
         populatingFunction = populatingFunction,
@@ -140,7 +186,9 @@ suspend fun evaluator(
             }
             peek()
         },
-        seed = evaluatorParams.seed.toLong()
+        seed = evaluatorParams.seed.toLong(),
+        populationEvaluator = populationEvaluator,
+        checkpointer = checkpointer
     )
     evaluatorParams.closeProgressWindow()
     return lastGeneration
@@ -0,0 +1,255 @@
+package org.simbrain.util.geneticalgorithm
+
+import com.thoughtworks.xstream.XStream
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import org.simbrain.util.getSimbrainXStream
+import java.io.*
+import java.util.*
+import kotlin.reflect.KClass
+import kotlin.reflect.full.createInstance
+
+/**
+ * An [EvoSim] that can be rebuilt from a genome in another process. Only sims implementing this interface can be
+ * evaluated by a [WorkerPoolEvaluator].
+ */
+interface DistributableEvoSim : EvoSim {
+
+    /**
+     * Factory used by worker processes to rebuild the sim. Must have a no-argument constructor.
+     */
+    val factory: KClass<out EvoSimFactory>
+
+    /**
+     * The genetic state of the sim, e.g. its genotype. Serialized with XStream, so it should not reference a
+     * workspace or other runtime objects.
+     */
+    fun genome(): Any
+}
+
+/**
+ * Rebuilds an [EvoSim] from a genome produced by [DistributableEvoSim.genome].
+ */
+interface EvoSimFactory {
+    fun create(genome: Any): EvoSim
+}
+
+/**
+ * Statistics for a single evaluation performed by a worker.
+ *
+ * @param fitness the score returned by [EvoSim.eval], or the worst fitness if evaluation failed
+ * @param evalMillis time spent in [EvoSim.eval] inside the worker
+ * @param usedHeapBytes worker heap in use after the evaluation
+ * @param attempts number of times the evaluation was tried
+ */
+data class WorkerEvaluationResult(
+    val fitness: Double,
+    val evalMillis: Long,
+    val usedHeapBytes: Long,
+    val attempts: Int
+)
+
+/**
+ * Evaluates a population in a pool of worker JVMs, so that each evaluation gets its own heap and garbage collector.
+ * Genomes are sent to the workers as XStream xml over stdin and fitness is read back over stdout.
+ *
+ * Evaluations that take longer than [timeoutMillis] are treated as hung: the worker is killed and restarted and the
+ * evaluation is retried up to [maxRetries] times, after which the sim is assigned the worst fitness.
+ *
+ * Close the evaluator when done to shut down the worker processes.
+ *
+ * @param workerCount number of worker processes
+ * @param timeoutMillis maximum time allowed for one evaluation
+ * @param maxRetries number of times a failed or hung evaluation is retried
+ * @param jvmArgs extra arguments for the worker JVMs, e.g. heap size
+ */
+class WorkerPoolEvaluator(
+    val workerCount: Int = Runtime.getRuntime().availableProcessors(),
+    val timeoutMillis: Long = 60_000,
+    val maxRetries: Int = 2,
+    val jvmArgs: List<String> = listOf("-Xmx1g")
+) : PopulationEvaluator, AutoCloseable {
+
+    private val idleWorkers = Channel<WorkerProcess>(Channel.UNLIMITED)
+
+    private val allWorkers = mutableListOf<WorkerProcess>()
+
+    private var nextRequestId = 0L
+
+    /**
+     * Results of the most recent call to [evaluate], in population order.
+     */
+    var lastResults: List<WorkerEvaluationResult> = listOf()
+        private set
+
+    override suspend fun evaluate(population: List<EvoSim>, worstFitness: Double): List<Double> = coroutineScope {
+        startWorkers()
+        lastResults = population.map { sim ->
+            require(sim is DistributableEvoSim) {
+                "${sim::class.simpleName} must implement DistributableEvoSim to be evaluated by worker processes"
+            }
+            val request = "${sim.factory.java.name} ${encodeGenome(sim.genome())}"
+            async { evaluateWithRetries(request, worstFitness) }
+        }.awaitAll()
+        lastResults.map { it.fitness }
+    }
+
+    private suspend fun evaluateWithRetries(request: String, worstFitness: Double): WorkerEvaluationResult {
+        repeat(maxRetries + 1) { attempt ->
+            val worker = idleWorkers.receive()
+            val id = synchronized(this) { nextRequestId++ }
+            val response = withTimeoutOrNull(timeoutMillis) { worker.send("$id $request") }
+            if (response != null && response.id == id && response.fitness != null) {
+                idleWorkers.send(worker)
+                return WorkerEvaluationResult(response.fitness, response.evalMillis, response.usedHeap, attempt + 1)
+            }
+            idleWorkers.send(restart(worker))
+        }
+        return WorkerEvaluationResult(worstFitness, 0, 0, maxRetries + 1)
+    }
+
+    private fun startWorkers() = synchronized(allWorkers) {
+        if (allWorkers.isEmpty()) {
+            repeat(workerCount) {
+                WorkerProcess(jvmArgs).also {
+                    allWorkers.add(it)
+                    idleWorkers.trySend(it)
+                }
+            }
+        }
+    }
+
+    private fun restart(worker: WorkerProcess) = synchronized(allWorkers) {
+        worker.close()
+        allWorkers.remove(worker)
+        WorkerProcess(jvmArgs).also { allWorkers.add(it) }
+    }
+
+    override fun close() = synchronized(allWorkers) {
+        allWorkers.forEach { it.close() }
+        allWorkers.clear()
+        while (idleWorkers.tryReceive().isSuccess) { }
+    }
+
+}
+
+private class WorkerResponse(val id: Long, val fitness: Double?, val evalMillis: Long, val usedHeap: Long)
+
+/**
+ * A worker JVM running [runEvaluationWorker]. Responses are read on a background thread so that a hung evaluation can
+ * be abandoned by cancelling [send].
+ */
+private class WorkerProcess(jvmArgs: List<String>) : AutoCloseable {
+
+    private val process = ProcessBuilder(
+        listOf(
+            File(System.getProperty("java.home"), "bin/java").path,
+            "-cp", System.getProperty("java.class.path")
+        ) + workerJvmArgs + jvmArgs + "org.simbrain.util.geneticalgorithm.WorkerPoolEvaluatorKt"
+    ).redirectError(ProcessBuilder.Redirect.INHERIT).start()
+
+    private val writer = process.outputStream.bufferedWriter()
+
+    private val responses = Channel<WorkerResponse>(Channel.UNLIMITED)
+
+    init {
+        Thread {
+            process.inputStream.bufferedReader().useLines { lines ->
+                lines.forEach { line ->
+                    val tokens = line.split(" ")
+                    responses.trySend(
+                        WorkerResponse(
+                            tokens[0].toLong(),
+                            tokens[1].takeUnless { it == "error" }?.toDouble(),
+                            tokens.getOrNull(2)?.toLongOrNull() ?: 0,
+                            tokens.getOrNull(3)?.toLongOrNull() ?: 0
+                        )
+                    )
+                }
+            }
+            responses.close()
+        }.apply { isDaemon = true }.start()
+    }
+
+    /**
+     * Sends a request and suspends until the worker responds. Returns null if the worker died.
+     */
+    suspend fun send(request: String): WorkerResponse? {
+        try {
+            withContext(Dispatchers.IO) {
+                writer.write(request)
+                writer.newLine()
+                writer.flush()
+            }
+        } catch (e: IOException) {
+            return null
+        }
+        return responses.receiveCatching().getOrNull()
+    }
+
+    override fun close() {
+        process.destroyForcibly()
+    }
+
+    companion object {
+        // Keep in sync with simbrainJvmArgs in build.gradle.kts
+        private val workerJvmArgs = listOf(
+            "--add-opens", "java.base/java.util=ALL-UNNAMED",
+            "--add-opens", "java.desktop/java.awt=ALL-UNNAMED",
+            "--add-opens", "java.desktop/java.awt.geom=ALL-UNNAMED",
+            "--add-opens", "java.base/java.util.concurrent=ALL-UNNAMED",
+            "--add-opens", "java.base/java.util.concurrent.atomic=ALL-UNNAMED",
+            "--add-opens", "java.base/java.lang=ALL-UNNAMED",
+            "-Djava.awt.headless=true"
+        )
+    }
+}
+
+internal fun genomeXStream(): XStream = getSimbrainXStream().apply {
+    allowTypesByWildcard(arrayOf("kotlin.**"))
+}
+
+private fun encodeGenome(genome: Any): String =
+    Base64.getEncoder().encodeToString(genomeXStream().toXML(genome).toByteArray(Charsets.UTF_8))
+
+private fun decodeGenome(encoded: String): Any =
+    genomeXStream().fromXML(String(Base64.getDecoder().decode(encoded), Charsets.UTF_8))
+
+/**
+ * Worker process loop. Each line of stdin is a request of the form `id factoryClass genome` and each response is
+ * written to stdout as `id fitness evalMillis usedHeapBytes`, or `id error` if evaluation threw. Anything the sim prints
+ * is redirected to stderr so it does not corrupt the protocol.
+ */
+fun runEvaluationWorker(input: InputStream, output: OutputStream) {
+    val responses = PrintStream(output, true, Charsets.UTF_8)
+    val originalOut = System.out
+    System.setOut(System.err)
+    val factories = HashMap<String, EvoSimFactory>()
+    try {
+        input.bufferedReader().useLines { lines ->
+            lines.filter { it.isNotBlank() }.forEach { line ->
+                val (id, factoryClass, genome) = line.split(" ", limit = 3)
+                try {
+                    val factory = factories.getOrPut(factoryClass) {
+                        Class.forName(factoryClass).kotlin.createInstance() as EvoSimFactory
+                    }
+                    val sim = factory.create(decodeGenome(genome))
+                    val start = System.currentTimeMillis()
+                    val fitness = runBlocking { sim.eval() }
+                    val elapsed = System.currentTimeMillis() - start
+                    val runtime = Runtime.getRuntime()
+                    responses.println("$id $fitness $elapsed ${runtime.totalMemory() - runtime.freeMemory()}")
+                } catch (e: Exception) {
+                    e.printStackTrace()
+                    responses.println("$id error")
+                }
+            }
+        }
+    } finally {
+        System.setOut(originalOut)
+    }
+}
+
+fun main() {
+    runEvaluationWorker(System.`in`, FileOutputStream(FileDescriptor.out))
+}
@@ -0,0 +1,71 @@
+package org.simbrain.util.piccolo
+
+import org.simbrain.util.decayfunctions.DecayFunction
+import kotlin.math.sqrt
+
+/**
+ * A [DecayFunction] sampled at the tiles around a tile, used to precompute how strongly each tile "smells" of tiles of
+ * a given type. See [TileMap.getScentField].
+ *
+ * The offsets are those of [getRelativeGridLocationsInRadius] for the decay function's dispersion, and each weight is
+ * the decay at the distance between tile centers. Kernels with the same tile type, offsets, and weights are equal, so
+ * sensors with the same settings share one field.
+ */
+class ScentKernel private constructor(
+    val tileType: String,
+    val offsetsX: IntArray,
+    val offsetsY: IntArray,
+    val weights: DoubleArray,
+    private val decayFunction: DecayFunction,
+    private val dispersion: Double,
+    private val peakDistance: Double
+) {
+
+    private val hash = listOf(
+        tileType.hashCode(),
+        offsetsX.contentHashCode(),
+        offsetsY.contentHashCode(),
+        weights.contentHashCode()
+    ).hashCode()
+
+    /**
+     * True if this kernel was created for this tile type and decay function, and the decay function has not changed
+     * since.
+     */
+    fun isFor(tileType: String, decayFunction: DecayFunction) = tileType == this.tileType &&
+            decayFunction === this.decayFunction &&
+            decayFunction.dispersion == dispersion &&
+            decayFunction.peakDistance == peakDistance
+
+    override fun equals(other: Any?) = other is ScentKernel &&
+            other.hash == hash &&
+            other.tileType == tileType &&
+            other.offsetsX.contentEquals(offsetsX) &&
+            other.offsetsY.contentEquals(offsetsY) &&
+            other.weights.contentEquals(weights)
+
+    override fun hashCode() = hash
+
+    companion object {
+
+        fun create(tileMap: TileMap, tileType: String, decayFunction: DecayFunction): ScentKernel {
+            val offsets = tileMap.getRelativeGridLocationsInRadius(decayFunction.dispersion).toList()
+            val offsetsX = IntArray(offsets.size) { offsets[it].x.toInt() }
+            val offsetsY = IntArray(offsets.size) { offsets[it].y.toInt() }
+            val weights = DoubleArray(offsets.size) {
+                val dx = offsetsX[it].toDouble() * tileMap.tileWidth
+                val dy = offsetsY[it].toDouble() * tileMap.tileHeight
+                decayFunction.getScalingFactor(sqrt(dx * dx + dy * dy))
+            }
+            return ScentKernel(
+                tileType,
+                offsetsX,
+                offsetsY,
+                weights,
+                decayFunction,
+                decayFunction.dispersion,
+                decayFunction.peakDistance
+            )
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.simbrain.world.odorworld.events.TileMapEvents
 import java.awt.Color
 import java.awt.geom.Point2D
 import java.awt.geom.Rectangle2D
+import kotlin.math.floor
 
 /**
  * Java representation of a .tmx tilemap produced by the Tiled app
@@ -120,6 +121,19 @@ class TileMap(width: Int, height: Int) {
             _collisionBoundsCache = value
         }
 
+    /**
+     * Scent fields computed by [getScentField], which are valid while the layers and their modification counts are
+     * those in [scentFieldLayers] and [scentFieldCounts].
+     */
+    @Transient
+    private var scentFields = HashMap<ScentKernel, DoubleArray>()
+
+    @Transient
+    private var scentFieldLayers: List<TileMapLayer> = listOf()
+
+    @Transient
+    private var scentFieldCounts = IntArray(0)
+
     /**
      * The background color of the map. (optional, may include alpha value since 0.15 in the form #AARRGGBB)
      * (Not used for now)
@@ -209,12 +223,14 @@ class TileMap(width: Int, height: Int) {
 
     fun addLayer(layer: TileMapLayer): TileMapLayer {
         _layers.add(layer)
+        _collisionBoundsCache = null
         events.layersChanged.fire()
         return layer
     }
 
     fun removeLayer(layer: TileMapLayer) {
         _layers.remove(layer)
+        _collisionBoundsCache = null
         events.layersChanged.fire()
     }
 
@@ -253,6 +269,54 @@ class TileMap(width: Int, height: Int) {
         getTileStackAt(gridCoordinate.x.toInt(), gridCoordinate.y.toInt())
 
 
+    /**
+     * Returns a field with, for each tile (row by row), the sum over the tiles of type [ScentKernel.tileType] within
+     * the kernel of the kernel weight at their offset. Offsets wrap around the edges of the map.
+     *
+     * Fields are computed once per kernel and recomputed only after tiles change, so reading a field is constant time
+     * however large the map and the kernel are.
+     */
+    fun getScentField(kernel: ScentKernel): DoubleArray {
+        if (scentFieldLayers != layers || scentFieldCounts.indices.any { scentFieldCounts[it] != layers[it].modificationCount }) {
+            scentFields.clear()
+            scentFieldLayers = layers.toList()
+            scentFieldCounts = IntArray(layers.size) { layers[it].modificationCount }
+        }
+        return scentFields.getOrPut(kernel) { computeScentField(kernel) }
+    }
+
+    /**
+     * Returns the value of the scent field for [kernel] at the tile containing a pixel location.
+     */
+    fun getScentAtPixel(kernel: ScentKernel, x: Double, y: Double): Double {
+        infix fun Int.wrap(other: Int) = (this % other).let { if (it < 0) it + other else it }
+        val i = floor(x / tileWidth).toInt() wrap width
+        val j = floor(y / tileHeight).toInt() wrap height
+        return getScentField(kernel)[j * width + i]
+    }
+
+    /**
+     * Scatter the kernel from each tile of the kernel's type.
+     */
+    private fun computeScentField(kernel: ScentKernel): DoubleArray {
+        val matchesType = HashMap<Int, Boolean>()
+        val field = DoubleArray(width * height)
+        for (j in 0 until height) {
+            for (i in 0 until width) {
+                val matches = layers.any { layer ->
+                    matchesType.getOrPut(layer[i, j]) { getTile(layer[i, j]).type == kernel.tileType }
+                }
+                if (!matches) continue
+                for (k in kernel.weights.indices) {
+                    val x = (i - kernel.offsetsX[k]).mod(width)
+                    val y = (j - kernel.offsetsY[k]).mod(height)
+                    field[y * width + x] += kernel.weights[k]
+                }
+            }
+        }
+        return field
+    }
+
     /**
      * Get a Rectangle2D region of a given tile
      *
@@ -319,10 +383,12 @@ class TileMap(width: Int, height: Int) {
         events.mapSizeChanged.fire()
     }
 
-    val boundsNeedRecompute get() = layers.any { it.boundsNeedRecompute != true }
+    val boundsNeedRecompute get() = layers.any { it.boundsNeedRecompute != false }
 
     fun computeCollisionBounds(): List<Bounded> {
-        return layers.filter { it.blocking }.flatMap { it.getCollisionBounds() }
+        return layers.filter { it.blocking }.flatMap { it.getCollisionBounds() }.also {
+            layers.forEach { it.boundsNeedRecompute = false }
+        }
     }
 
     /**
@@ -332,6 +398,9 @@ class TileMap(width: Int, height: Int) {
         events = TileMapEvents()
         tileSetRanges = tileSets.map { it.firstgid..(it.tilecount + it.firstgid) to it }
         idTileMapping = HashMap()
+        scentFields = HashMap()
+        scentFieldLayers = listOf()
+        scentFieldCounts = IntArray(0)
         return this
     }
 
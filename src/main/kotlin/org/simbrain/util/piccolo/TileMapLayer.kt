@@ -69,6 +69,14 @@ class TileMapLayer(
      */
     private var data: TileMapLayerData
 
+    /**
+     * Incremented whenever the tiles on this layer change, so that values computed from them can be cached. See
+     * [TileMap.getScentField].
+     */
+    @Transient
+    var modificationCount = 0
+        private set
+
     /**
      * The rendered image of the layer
      */
@@ -145,6 +153,7 @@ class TileMapLayer(
     operator fun set(x: Int, y: Int, tileID: Int) {
         data[x, y] = tileID
         boundsNeedRecompute = true
+        modificationCount++
     }
 
     /**
@@ -161,6 +170,8 @@ class TileMapLayer(
         this.width = width
         this.height = height
         data = TileMapLayerData(width, height)
+        boundsNeedRecompute = true
+        modificationCount++
     }
 
     fun setProperty(propertyName: String, propertyValue: String?) {
@@ -183,6 +194,16 @@ class TileMapLayer(
         }
     }
 
+    /**
+     * Base64 encoded layer data is not split into rows, so give it the layer's dimensions.
+     */
+    private fun readResolve(): Any {
+        if (data.width != width && data.gids.size == width * height) {
+            data = TileMapLayerData(width, height, data.gids)
+        }
+        return this
+    }
+
     init {
         properties["block"] = if (blocking) "true" else "false"
         data = TileMapLayerData(width, height)
@@ -192,15 +213,19 @@ class TileMapLayer(
 }
 
 /**
- * Stores the grid of global ids that correspond to the data for a [TileMapLayer]
+ * Stores the grid of global ids that correspond to the data for a [TileMapLayer], row by row in a flat array.
  */
 @XStreamAlias("data")
-class TileMapLayerData(val gidMatrix: MutableList<MutableList<Int>>) {
-    constructor(width: Int, height: Int) : this(MutableList(height) { MutableList(width) { 0 } })
+class TileMapLayerData(val width: Int, val height: Int, val gids: IntArray = IntArray(width * height)) {
+
+    init {
+        require(gids.size == width * height) { "Expected ${width * height} tile ids but got ${gids.size}" }
+    }
+
+    operator fun get(x: Int, y: Int) = gids[y * width + x]
 
-    operator fun get(x: Int, y: Int) = gidMatrix[y][x]
     operator fun set(x: Int, y: Int, tileId: Int) {
-        gidMatrix[y][x] = tileId
+        gids[y * width + x] = tileId
     }
 }
 
@@ -213,7 +238,9 @@ class TiledDataConverter(mapper: Mapper, reflectionProvider: ReflectionProvider)
     override fun marshal(source: Any?, writer: HierarchicalStreamWriter, context: MarshallingContext) {
         val data = source as TileMapLayerData
         writer.addAttribute("encoding", "csv")
-        val csv = data.gidMatrix.joinToString("\n") { it.joinToString(",") }
+        val csv = (0 until data.height).joinToString("\n") { j ->
+            (0 until data.width).joinToString(",") { i -> data[i, j].toString() }
+        }
         writer.setValue(csv)
     }
 
@@ -261,9 +288,9 @@ class TiledDataConverter(mapper: Mapper, reflectionProvider: ReflectionProvider)
     override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Any {
         val encoding = reader.getAttribute("encoding")
         val compression = reader.getAttribute("compression")
-        val gid = decodeData(reader.value, encoding, compression)
-            .map { it.toMutableList() }
-            .toMutableList()
-        return TileMapLayerData(gid)
+        val rows = decodeData(reader.value, encoding, compression).filter { it.isNotEmpty() }
+        val width = rows.firstOrNull()?.size ?: 0
+        require(rows.all { it.size == width }) { "Rows of tile layer data have different lengths" }
+        return TileMapLayerData(width, rows.size, rows.flatten().toIntArray())
     }
 }
\ No newline at end of file
@@ -1,17 +1,26 @@
 package org.simbrain.util.propertyeditor
 
+import kotlinx.coroutines.*
+import kotlinx.coroutines.swing.Swing
 import org.simbrain.util.LabelledItemPanel
 import org.simbrain.util.UserParameter
-import org.simbrain.util.invokeLegacySetter
+import org.simbrain.util.legacySetter
+import org.simbrain.util.widgets.ProgressWindow
 import smile.math.matrix.Matrix
 import java.awt.Color
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
 import javax.swing.JPanel
 import javax.swing.JTabbedPane
+import kotlin.math.min
 import kotlin.reflect.KMutableProperty1
+import kotlin.reflect.KProperty1
 import kotlin.reflect.full.allSuperclasses
 import kotlin.reflect.full.declaredMemberProperties
 import kotlin.reflect.full.findAnnotation
 import kotlin.reflect.jvm.isAccessible
+import kotlin.reflect.jvm.javaGetter
+import kotlin.reflect.jvm.javaSetter
 import kotlin.reflect.jvm.jvmErasure
 
 /**
@@ -86,22 +95,7 @@ class AnnotatedPropertyEditor<O : EditableObject>(val editingObjects: List<O>) :
 
         (delegated + annotated)
             .associateWith { parameter ->
-                makeWidget(
-                    parameter,
-                    isConsistent = if (parameter.value is CopyableObject) {
-                        editingObjects.map { eo -> parameter.property.getter.call(eo)!!::class }.toSet().size == 1
-                    } else {
-                        editingObjects
-                            .map { eo -> parameter.property.getter.call(eo) }
-                            .map { value ->
-                                when (value) {
-                                    is IntArray -> value.contentHashCode()
-                                    is DoubleArray -> value.contentHashCode()
-                                    else -> value.hashCode()
-                                }
-                            }.toSet().size == 1
-                    }
-                )
+                makeWidget(parameter, isConsistent = isConsistent(parameter))
             }
 
     }
@@ -258,30 +252,94 @@ class AnnotatedPropertyEditor<O : EditableObject>(val editingObjects: List<O>) :
         }
     }
 
+    /**
+     * True if all edited objects have the same value for a parameter, or for object valued parameters the same type.
+     * Large selections are scanned in parallel, and the scan stops at the first mismatch.
+     */
+    private fun isConsistent(parameter: GuiEditable<O, *>): Boolean {
+        val accessor = parameter.property.accessor
+        val key: (O) -> Any? = if (parameter.value is CopyableObject) {
+            { eo -> accessor.get(eo)!!::class }
+        } else {
+            { eo ->
+                when (val value = accessor.get(eo)) {
+                    is IntArray -> value.contentHashCode()
+                    is DoubleArray -> value.contentHashCode()
+                    else -> value.hashCode()
+                }
+            }
+        }
+        val first = key(editingObjects.first())
+        return if (editingObjects.size < PARALLEL_THRESHOLD) {
+            editingObjects.all { key(it) == first }
+        } else {
+            editingObjects.parallelStream().allMatch { key(it) == first }
+        }
+    }
+
+    /**
+     * Reads the values of the consistent widgets and returns a function that writes them to an edited object.
+     */
+    private fun prepareCommit(): (O) -> Unit {
+        val setters = parameterWidgetMap.mapNotNull { (parameter, widget) ->
+            if (!widget.isConsistent || parameter.property !is KMutableProperty1<*, *>) {
+                return@mapNotNull null
+            }
+            val accessor = parameter.property.accessor
+            val set: (O, Any?) -> Unit = if (parameter.useLegacySetter) accessor::setLegacy else accessor::set
+            if (widget is ObjectWidget<*, *>) {
+                widget.objectTypeEditor.commitChanges()
+                val prototype = widget.value
+                val setCopy: (O) -> Unit = { eo -> set(eo, prototype.copy()) }
+                setCopy
+            } else {
+                val value = widget.value
+                val setValue: (O) -> Unit = { eo -> set(eo, value) }
+                setValue
+            }
+        }
+        return { eo ->
+            if (setters.isNotEmpty()) {
+                setters.forEach { it(eo) }
+                eo.onCommit()
+            }
+        }
+    }
+
     fun commitChanges() {
-        parameterWidgetMap.forEach { (parameter, widget) ->
-            editingObjects.forEach { eo ->
-                if (widget.isConsistent) {
-                    (parameter.property as? KMutableProperty1<O, Any>)?.let { property ->
-                        if (widget is ObjectWidget<*, *>) {
-                            widget.objectTypeEditor.commitChanges()
-                            if (parameter.useLegacySetter) {
-                                property.invokeLegacySetter(eo, widget.value.copy())
-                            } else {
-                                property.setter.call(eo, widget.value.copy())
-                            }
-                        } else {
-                            if (parameter.useLegacySetter) {
-                                property.invokeLegacySetter(eo, widget.value)
-                            } else {
-                                property.setter.call(eo, widget.value)
-                            }
-                        }
-                        eo.onCommit()
+        val commit = prepareCommit()
+        editingObjects.forEach(commit)
+    }
+
+    /**
+     * Commit changes to large selections on a background thread, in chunks, showing progress in a [ProgressWindow].
+     * [onCompletion] is then called on the Swing thread. Small selections are committed immediately.
+     */
+    @JvmOverloads
+    fun commitChangesInBackground(onCompletion: Runnable = Runnable {}) {
+        if (editingObjects.size < BACKGROUND_COMMIT_THRESHOLD) {
+            commitChanges()
+            onCompletion.run()
+            return
+        }
+        val commit = prepareCommit()
+        val progressWindow = ProgressWindow(
+            editingObjects.size,
+            "Applying changes to ${editingObjects.size} ${editingObjects[0].javaClass.simpleName}s"
+        )
+        GlobalScope.launch(Dispatchers.Default) {
+            try {
+                for (start in editingObjects.indices step COMMIT_CHUNK_SIZE) {
+                    val end = min(start + COMMIT_CHUNK_SIZE, editingObjects.size)
+                    for (i in start until end) {
+                        commit(editingObjects[i])
                     }
+                    withContext(Dispatchers.Swing) { progressWindow.value = end }
                 }
-
+            } finally {
+                withContext(NonCancellable + Dispatchers.Swing) { progressWindow.close() }
             }
+            withContext(Dispatchers.Swing) { onCompletion.run() }
         }
     }
 
@@ -307,6 +365,57 @@ class AnnotatedPropertyEditor<O : EditableObject>(val editingObjects: List<O>) :
 
 }
 
+/**
+ * Selections at least this large are checked for consistency in parallel.
+ */
+private const val PARALLEL_THRESHOLD = 2000
+
+/**
+ * Selections at least this large are committed in the background by [AnnotatedPropertyEditor.commitChangesInBackground].
+ */
+private const val BACKGROUND_COMMIT_THRESHOLD = 5000
+
+private const val COMMIT_CHUNK_SIZE = 2000
+
+/**
+ * Getter and setter of a property resolved to JVM methods once, which is much faster than calling through Kotlin
+ * reflection for each edited object. Falls back to Kotlin reflection when there is no JVM method, e.g. for a private
+ * property accessed directly through its field.
+ */
+private class PropertyAccessor(private val property: KProperty1<*, *>) {
+
+    private val getter: Method? = property.javaGetter?.apply { isAccessible = true }
+
+    private val setter: Method? = (property as? KMutableProperty1<*, *>)?.javaSetter?.apply { isAccessible = true }
+
+    private val legacySetter: Method? by lazy { (property as KMutableProperty1<*, *>).legacySetter }
+
+    fun get(receiver: Any?): Any? = if (getter != null) {
+        getter.invoke(receiver)
+    } else {
+        property.getter.call(receiver)
+    }
+
+    fun set(receiver: Any?, value: Any?) {
+        if (setter != null) {
+            setter.invoke(receiver, value)
+        } else {
+            (property as KMutableProperty1<*, *>).setter.call(receiver, value)
+        }
+    }
+
+    fun setLegacy(receiver: Any?, value: Any?) {
+        legacySetter!!.invoke(receiver, value)
+    }
+}
+
+private val accessorCache = ConcurrentHashMap<KProperty1<*, *>, PropertyAccessor>()
+
+/**
+ * The cached [PropertyAccessor] for a property.
+ */
+private val KProperty1<*, *>.accessor get() = accessorCache.getOrPut(this) { PropertyAccessor(this) }
+
 class APEObjectWrapper<O : EditableObject>(val label: String, obj: O, showLabeledBorder: Boolean = true)
     : EditableObject {
     var editingObject: O by GuiEditable(
@@ -0,0 +1,117 @@
+package org.simbrain.util.stats
+
+import org.apache.commons.math3.random.RandomGenerator
+import kotlin.math.ln
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+/**
+ * A counter-based random number generator. The n-th number of a stream is a SplitMix64 hash of the stream's key and n,
+ * so a stream can be started anywhere without generating the numbers before it, and separate streams give the same
+ * numbers whatever order or thread they are drawn on. Streams are keyed by a seed, a stream id (e.g. a model), and a
+ * tick (e.g. a network iteration); see [setStream].
+ *
+ * Implements the apache commons [RandomGenerator] interface so it can back the commons distributions wrapped by
+ * [ProbabilityDistribution]. See https://prng.di.unimi.it/splitmix64.c
+ */
+class CounterRandomGenerator(seed: Long = Random.nextLong()) : RandomGenerator {
+
+    private var key = 0L
+
+    private var counter = 0L
+
+    /**
+     * Second value produced by the polar method, used by the next call to [nextGaussian].
+     */
+    private var nextNextGaussian = Double.NaN
+
+    init {
+        setSeed(seed)
+    }
+
+    /**
+     * Start the stream for a seed, stream id, and tick.
+     */
+    fun setStream(seed: Long, stream: Long, tick: Long) {
+        key = mix(mix(mix(seed) xor stream) xor tick)
+        counter = 0
+        nextNextGaussian = Double.NaN
+    }
+
+    override fun setSeed(seed: Long) = setStream(seed, 0, 0)
+
+    override fun setSeed(seed: Int) = setSeed(seed.toLong())
+
+    override fun setSeed(seed: IntArray) = setSeed(seed.fold(0L) { acc, i -> acc * 31 + i })
+
+    override fun nextLong(): Long = mix(key + ++counter * GOLDEN_GAMMA)
+
+    override fun nextInt(): Int = (nextLong() ushr 32).toInt()
+
+    override fun nextInt(n: Int): Int {
+        require(n > 0) { "Bound must be positive" }
+        // Rejection sampling on 31 bit values, as in java.util.Random
+        while (true) {
+            val bits = (nextLong() ushr 33).toInt()
+            val value = bits % n
+            if (bits - value + (n - 1) >= 0) {
+                return value
+            }
+        }
+    }
+
+    override fun nextBoolean() = nextLong() < 0
+
+    override fun nextFloat() = (nextLong() ushr 40) * FLOAT_UNIT
+
+    override fun nextDouble() = (nextLong() ushr 11) * DOUBLE_UNIT
+
+    override fun nextBytes(bytes: ByteArray) {
+        var i = 0
+        while (i < bytes.size) {
+            var bits = nextLong()
+            repeat(minOf(8, bytes.size - i)) {
+                bytes[i++] = bits.toByte()
+                bits = bits shr 8
+            }
+        }
+    }
+
+    /**
+     * Standard normal sample using the Marsaglia polar method.
+     */
+    override fun nextGaussian(): Double {
+        if (!nextNextGaussian.isNaN()) {
+            return nextNextGaussian.also { nextNextGaussian = Double.NaN }
+        }
+        while (true) {
+            val v1 = 2 * nextDouble() - 1
+            val v2 = 2 * nextDouble() - 1
+            val s = v1 * v1 + v2 * v2
+            if (s < 1 && s != 0.0) {
+                val multiplier = sqrt(-2 * ln(s) / s)
+                nextNextGaussian = v2 * multiplier
+                return v1 * multiplier
+            }
+        }
+    }
+
+    companion object {
+
+        private const val GOLDEN_GAMMA = -0x61c8864680b583ebL
+
+        private const val DOUBLE_UNIT = 1.0 / (1L shl 53)
+
+        private const val FLOAT_UNIT = 1.0f / (1 shl 24)
+
+        /**
+         * SplitMix64 finalizer.
+         */
+        internal fun mix(value: Long): Long {
+            var z = value
+            z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+            z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+            return z xor (z ushr 31)
+        }
+    }
+}
@@ -6,7 +6,6 @@ import com.thoughtworks.xstream.converters.reflection.ReflectionConverter
 import com.thoughtworks.xstream.converters.reflection.ReflectionProvider
 import com.thoughtworks.xstream.io.HierarchicalStreamReader
 import com.thoughtworks.xstream.mapper.Mapper
-import org.apache.commons.math3.random.JDKRandomGenerator
 import org.simbrain.util.createConstructorCallingConverter
 import org.simbrain.util.getSimbrainXStream
 import org.simbrain.util.propertyeditor.CopyableObject
@@ -28,7 +27,7 @@ abstract class ProbabilityDistribution() : CopyableObject {
      * Random generator for pseudo-random sequences on which a seed can be set.
      */
     @Transient
-    val randomGenerator = JDKRandomGenerator()
+    val randomGenerator = CounterRandomGenerator()
 
     /**
      * Use this to ensure two probability distributions return the same pseudo-random sequence of numbers.
@@ -45,10 +44,28 @@ abstract class ProbabilityDistribution() : CopyableObject {
             }
         }
 
+    /**
+     * Start the random sequence for a stream (e.g. a model) and tick (e.g. an iteration). Samples then depend only on
+     * the seed, stream and tick, and not on what was sampled before, so models sampling in parallel get the same
+     * values whatever the order or number of threads. [randomSeed] is used as the seed when it is set.
+     */
+    fun setStream(seed: Long, stream: Long, tick: Long) {
+        randomGenerator.setStream(randomSeed ?: seed, stream, tick)
+    }
+
     abstract fun sampleDouble(): Double
 
     abstract fun sampleDouble(n: Int): DoubleArray
 
+    /**
+     * Fill [length] entries of an existing array, starting at [offset], with samples.
+     */
+    open fun sampleDouble(values: DoubleArray, offset: Int = 0, length: Int = values.size - offset) {
+        for (i in offset until offset + length) {
+            values[i] = sampleDouble()
+        }
+    }
+
     abstract fun sampleInt(): Int
 
     abstract fun sampleInt(n: Int): IntArray
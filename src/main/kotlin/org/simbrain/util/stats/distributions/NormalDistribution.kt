@@ -36,6 +36,13 @@ class NormalDistribution(mean: Double = 0.0, standardDeviation: Double = 1.0): P
 
     override fun sampleDouble(n: Int): DoubleArray = dist.sample(n)
 
+    override fun sampleDouble(values: DoubleArray, offset: Int, length: Int) {
+        // Same as dist.sample()
+        for (i in offset until offset + length) {
+            values[i] = standardDeviation * randomGenerator.nextGaussian() + mean
+        }
+    }
+
     override fun sampleInt(): Int = dist.sample().toInt()
 
     override fun sampleInt(n: Int) = dist.sample(n).toIntArray()
@@ -35,6 +35,14 @@ class UniformRealDistribution(floor:Double = 0.0, ceil: Double = 1.0) : Probabil
 
     override fun sampleDouble(n: Int): DoubleArray = dist.sample(n)
 
+    override fun sampleDouble(values: DoubleArray, offset: Int, length: Int) {
+        // Same as dist.sample()
+        for (i in offset until offset + length) {
+            val u = randomGenerator.nextDouble()
+            values[i] = u * ceil + (1 - u) * floor
+        }
+    }
+
     override fun sampleInt(): Int = dist.sample().toInt()
 
     override fun sampleInt(n: Int) = dist.sample(n).toIntArray()
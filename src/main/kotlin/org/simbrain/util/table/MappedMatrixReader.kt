@@ -0,0 +1,452 @@
+package org.simbrain.util.table
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import smile.math.matrix.Matrix
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * A numeric table read by [readCsvMatrix] or [readBinaryMatrix], with optional column and row names.
+ */
+class NumericTable(
+    val data: Matrix,
+    val columnNames: List<String>? = null,
+    val rowNames: List<String?>? = null
+) {
+    /**
+     * Wrap the matrix (without copying it) in a data frame.
+     */
+    fun toDataFrame() = MatrixDataFrame(data, columnsFor(data.ncol(), columnNames)).also { frame ->
+        rowNames?.let { frame.rowNames = it }
+    }
+}
+
+/**
+ * Columns for a numeric table, named from [names] if provided.
+ */
+internal fun columnsFor(count: Int, names: List<String>?) = MutableList(count) {
+    Column(names?.getOrNull(it) ?: "Column ${it + 1}", Column.DataType.DoubleType)
+}
+
+/**
+ * Files smaller than this are parsed on one thread.
+ */
+private const val PARALLEL_THRESHOLD = 1 shl 20
+
+/**
+ * Largest region of a file mapped at once. Mapped buffers are limited to 2 GB.
+ */
+private const val MAX_CHUNK_SIZE = 1L shl 30
+
+/**
+ * Read a numeric csv file into a matrix.
+ *
+ * The file is memory-mapped rather than read into strings, split into chunks at line boundaries, and the chunks are
+ * parsed in parallel directly into the matrix: first each chunk's rows are counted so the matrix can be allocated
+ * at its final size, then each chunk parses its rows into its own block of the matrix. Heap use is the matrix plus
+ * a row name per row, if there are row names.
+ *
+ * Blank lines and lines starting with # are skipped. Fields may be surrounded by whitespace or quotes; empty fields
+ * are read as NaN. Every row must have the same number of fields.
+ *
+ * @param options whether the first line has column names and the first field of each row is a row name
+ * @param delimiter the field separator
+ * @param chunkCount the number of chunks to parse in parallel
+ */
+fun readCsvMatrix(
+    file: File,
+    options: ImportExportOptions = ImportExportOptions(),
+    delimiter: Char = ',',
+    chunkCount: Int = Runtime.getRuntime().availableProcessors()
+): NumericTable {
+    require(delimiter.code < 128) { "Delimiter must be an ASCII character" }
+    FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+        val size = channel.size()
+        var start = 0L
+        var columnNames: List<String>? = null
+        if (options.includeColumnNames) {
+            start = channel.skipToDataLine(0, size)
+            val end = channel.lineEnd(start, size)
+            val header = CsvChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), delimiter.code.toByte())
+            columnNames = header.headerNames().let { if (options.includeRowNames) it.drop(1) else it }
+            start = end
+        }
+
+        // Split the rest of the file into chunks that start at the beginning of a line
+        val count = when {
+            size - start < PARALLEL_THRESHOLD -> 1
+            else -> maxOf(chunkCount, ((size - start + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE).toInt())
+        }
+        val boundaries = LongArray(count + 1)
+        boundaries[0] = start
+        boundaries[count] = size
+        for (i in 1 until count) {
+            val nominal = start + (size - start) / count * i
+            boundaries[i] = maxOf(boundaries[i - 1], channel.nextLineStart(nominal, size))
+        }
+        val chunks = (0 until count).map {
+            val length = boundaries[it + 1] - boundaries[it]
+            require(length <= Int.MAX_VALUE) { "Line too long in ${file.name}" }
+            CsvChunk(channel.map(FileChannel.MapMode.READ_ONLY, boundaries[it], length), delimiter.code.toByte())
+        }
+
+        runBlocking(Dispatchers.Default) {
+            chunks.map { async { it.countRows() } }.awaitAll()
+        }
+        val rowCount = chunks.sumOf { it.rows }
+        val fieldCount = chunks.firstOrNull { it.rows > 0 }?.firstRowFields ?: 0
+        val columnCount = if (options.includeRowNames) fieldCount - 1 else fieldCount
+        require(rowCount > 0 && columnCount > 0) { "No data in ${file.name}" }
+
+        val data = Matrix(rowCount, columnCount)
+        val rowNames = if (options.includeRowNames) arrayOfNulls<String>(rowCount) else null
+        runBlocking(Dispatchers.Default) {
+            var firstRow = 0
+            chunks.map { chunk ->
+                val chunkFirstRow = firstRow
+                firstRow += chunk.rows
+                async { chunk.parse(data, chunkFirstRow, columnCount, rowNames) }
+            }.awaitAll()
+        }
+        return NumericTable(data, columnNames, rowNames?.toList())
+    }
+}
+
+/**
+ * Read a matrix stored as raw 8 byte doubles in row-major order, as written by [writeBinaryMatrix]. The number of
+ * rows is the file size divided by the row size. The file is memory-mapped and copied into the matrix in parallel.
+ */
+fun readBinaryMatrix(file: File, columns: Int, order: ByteOrder = ByteOrder.LITTLE_ENDIAN): Matrix {
+    require(columns > 0) { "Number of columns must be positive" }
+    FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+        val rowBytes = 8L * columns
+        val size = channel.size()
+        require(size % rowBytes == 0L) { "Size of ${file.name} is not a multiple of $columns doubles" }
+        val rows = (size / rowBytes).toInt()
+        val data = Matrix(rows, columns)
+        val rowsPerChunk = maxOf(1, minOf(MAX_CHUNK_SIZE / rowBytes, (rows + 7L) / 8).toInt())
+        runBlocking(Dispatchers.Default) {
+            (0 until rows step rowsPerChunk).map { firstRow ->
+                async {
+                    val chunkRows = minOf(rowsPerChunk, rows - firstRow)
+                    val buffer = channel.map(FileChannel.MapMode.READ_ONLY, firstRow * rowBytes, chunkRows * rowBytes)
+                        .order(order)
+                        .asDoubleBuffer()
+                    for (r in 0 until chunkRows) {
+                        for (c in 0 until columns) {
+                            data[firstRow + r, c] = buffer.get()
+                        }
+                    }
+                }
+            }.awaitAll()
+        }
+        return data
+    }
+}
+
+/**
+ * Write a matrix as raw 8 byte doubles in row-major order. See [readBinaryMatrix].
+ */
+fun writeBinaryMatrix(matrix: Matrix, file: File, order: ByteOrder = ByteOrder.LITTLE_ENDIAN) {
+    val options = arrayOf(StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING)
+    FileChannel.open(file.toPath(), *options).use { channel ->
+        val rowBytes = 8L * matrix.ncol()
+        val rowsPerChunk = maxOf(1, (MAX_CHUNK_SIZE / maxOf(1L, rowBytes)).toInt())
+        for (firstRow in 0 until matrix.nrow() step rowsPerChunk) {
+            val chunkRows = minOf(rowsPerChunk, matrix.nrow() - firstRow)
+            val buffer = channel.map(FileChannel.MapMode.READ_WRITE, firstRow * rowBytes, chunkRows * rowBytes)
+            val doubles = buffer.order(order).asDoubleBuffer()
+            for (r in 0 until chunkRows) {
+                for (c in 0 until matrix.ncol()) {
+                    doubles.put(matrix[firstRow + r, c])
+                }
+            }
+            buffer.force()
+        }
+    }
+}
+
+/**
+ * Position of the first line starting at or after [position], or [size].
+ */
+private fun FileChannel.nextLineStart(position: Long, size: Long): Long {
+    if (position == 0L) {
+        return 0
+    }
+    val previous = ByteBuffer.allocate(1)
+    read(previous, position - 1)
+    return if (previous.get(0) == NEWLINE) position else lineEnd(position, size)
+}
+
+/**
+ * Position just after the next newline at or after [position], or [size].
+ */
+private fun FileChannel.lineEnd(position: Long, size: Long): Long {
+    val buffer = ByteBuffer.allocate(1 shl 16)
+    var offset = position
+    while (offset < size) {
+        buffer.clear()
+        val read = read(buffer, offset)
+        if (read <= 0) {
+            break
+        }
+        for (i in 0 until read) {
+            if (buffer.get(i) == NEWLINE) {
+                return offset + i + 1
+            }
+        }
+        offset += read
+    }
+    return size
+}
+
+/**
+ * Position of the first line that is not blank or a comment.
+ */
+private fun FileChannel.skipToDataLine(position: Long, size: Long): Long {
+    var start = position
+    while (start < size) {
+        val end = lineEnd(start, size)
+        val line = ByteBuffer.allocate(minOf(end - start, 4096L).toInt())
+        read(line, start)
+        if (!isBlankOrComment(line, 0, line.position())) {
+            return start
+        }
+        start = end
+    }
+    return size
+}
+
+private const val NEWLINE = '\n'.code.toByte()
+private const val RETURN = '\r'.code.toByte()
+private const val SPACE = ' '.code.toByte()
+private const val TAB = '\t'.code.toByte()
+private const val QUOTE = '"'.code.toByte()
+private const val COMMENT = '#'.code.toByte()
+
+private fun isPadding(b: Byte) = b == SPACE || b == TAB || b == RETURN || b == QUOTE
+
+private fun isBlankOrComment(buffer: ByteBuffer, start: Int, end: Int): Boolean {
+    var i = start
+    while (i < end && isPadding(buffer.get(i))) {
+        i++
+    }
+    return i == end || buffer.get(i) == COMMENT || buffer.get(i) == NEWLINE
+}
+
+/**
+ * Exact powers of ten, for the fast path of [CsvChunk.parseDouble].
+ */
+private val POWERS_OF_TEN = DoubleArray(23) { "1e$it".toDouble() }
+
+/**
+ * A range of whole lines of a mapped csv file.
+ */
+private class CsvChunk(val buffer: MappedByteBuffer, val delimiter: Byte) {
+
+    val size = buffer.limit()
+
+    /**
+     * Number of data rows, set by [countRows].
+     */
+    var rows = 0
+
+    /**
+     * Number of fields in the first data row.
+     */
+    var firstRowFields = -1
+
+    /**
+     * Call [action] with the start and end (excluding the newline) of each line that is not blank or a comment.
+     */
+    inline fun forEachDataLine(action: (Int, Int) -> Unit) {
+        var start = 0
+        while (start < size) {
+            var end = start
+            while (end < size && buffer.get(end) != NEWLINE) {
+                end++
+            }
+            if (!isBlankOrComment(buffer, start, end)) {
+                action(start, end)
+            }
+            start = end + 1
+        }
+    }
+
+    /**
+     * End of the field starting at [start]: the position of the next delimiter, or [lineEnd].
+     */
+    fun fieldEnd(start: Int, lineEnd: Int): Int {
+        var i = start
+        while (i < lineEnd && buffer.get(i) != delimiter) {
+            i++
+        }
+        return i
+    }
+
+    fun countRows() {
+        forEachDataLine { start, end ->
+            if (rows == 0) {
+                var fields = 1
+                for (i in start until end) {
+                    if (buffer.get(i) == delimiter) {
+                        fields++
+                    }
+                }
+                firstRowFields = fields
+            }
+            rows++
+        }
+    }
+
+    /**
+     * Fields of the first line, as strings.
+     */
+    fun headerNames(): List<String> {
+        val names = mutableListOf<String>()
+        forEachDataLine { start, end ->
+            if (names.isEmpty()) {
+                var fieldStart = start
+                while (fieldStart <= end) {
+                    val fieldEnd = fieldEnd(fieldStart, end)
+                    names.add(string(fieldStart, fieldEnd))
+                    fieldStart = fieldEnd + 1
+                }
+            }
+        }
+        return names
+    }
+
+    /**
+     * Parse the rows of this chunk into [data], starting at row [firstRow].
+     */
+    fun parse(data: Matrix, firstRow: Int, columns: Int, rowNames: Array<String?>?) {
+        var row = firstRow
+        forEachDataLine { start, end ->
+            var fieldStart = start
+            if (rowNames != null) {
+                val fieldEnd = fieldEnd(fieldStart, end)
+                rowNames[row] = string(fieldStart, fieldEnd)
+                fieldStart = fieldEnd + 1
+            }
+            for (column in 0 until columns) {
+                if (fieldStart > end) {
+                    throw IllegalArgumentException("Row ${row + 1} has fewer than $columns values")
+                }
+                val fieldEnd = fieldEnd(fieldStart, end)
+                data[row, column] = parseDouble(fieldStart, fieldEnd)
+                fieldStart = fieldEnd + 1
+            }
+            if (fieldStart <= end) {
+                throw IllegalArgumentException("Row ${row + 1} has more than $columns values")
+            }
+            row++
+        }
+    }
+
+    fun string(start: Int, end: Int): String {
+        var s = start
+        var e = end
+        while (s < e && isPadding(buffer.get(s))) s++
+        while (e > s && isPadding(buffer.get(e - 1))) e--
+        val bytes = ByteArray(e - s)
+        buffer.get(s, bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    /**
+     * Parse a decimal number directly from the buffer. Numbers with at most 15 significant digits and a decimal
+     * exponent of at most 22 are computed exactly from their digits (one correctly rounded multiplication or
+     * division); anything else is passed to [String.toDouble].
+     */
+    fun parseDouble(fieldStart: Int, fieldEnd: Int): Double {
+        var start = fieldStart
+        var end = fieldEnd
+        while (start < end && isPadding(buffer.get(start))) start++
+        while (end > start && isPadding(buffer.get(end - 1))) end--
+        if (start == end) {
+            return Double.NaN
+        }
+        var i = start
+        val negative = buffer.get(i) == '-'.code.toByte()
+        if (negative || buffer.get(i) == '+'.code.toByte()) {
+            i++
+        }
+        var mantissa = 0L
+        var digits = 0
+        var anyDigits = false
+        var exponent = 0
+        while (i < end) {
+            val d = buffer.get(i) - '0'.code.toByte()
+            if (d !in 0..9) break
+            if (digits < 18) {
+                mantissa = mantissa * 10 + d
+                if (mantissa != 0L) digits++
+            } else {
+                digits++
+                exponent++
+            }
+            anyDigits = true
+            i++
+        }
+        if (i < end && buffer.get(i) == '.'.code.toByte()) {
+            i++
+            while (i < end) {
+                val d = buffer.get(i) - '0'.code.toByte()
+                if (d !in 0..9) break
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d
+                    if (mantissa != 0L) digits++
+                    exponent--
+                } else {
+                    digits++
+                }
+                anyDigits = true
+                i++
+            }
+        }
+        if (anyDigits && i < end && (buffer.get(i) == 'e'.code.toByte() || buffer.get(i) == 'E'.code.toByte())) {
+            i++
+            val negativeExponent = i < end && buffer.get(i) == '-'.code.toByte()
+            if (i < end && (negativeExponent || buffer.get(i) == '+'.code.toByte())) {
+                i++
+            }
+            var e = 0
+            val exponentStart = i
+            while (i < end && e < 10000) {
+                val d = buffer.get(i) - '0'.code.toByte()
+                if (d !in 0..9) break
+                e = e * 10 + d
+                i++
+            }
+            if (i == exponentStart) {
+                return slowParse(start, end)
+            }
+            exponent += if (negativeExponent) -e else e
+        }
+        if (!anyDigits || i != end || digits > 15) {
+            return slowParse(start, end)
+        }
+        val value = when {
+            mantissa == 0L -> 0.0
+            exponent == 0 -> mantissa.toDouble()
+            exponent in 1..22 -> mantissa * POWERS_OF_TEN[exponent]
+            exponent in -22..-1 -> mantissa / POWERS_OF_TEN[-exponent]
+            else -> return slowParse(start, end)
+        }
+        return if (negative) -value else value
+    }
+
+    fun slowParse(start: Int, end: Int): Double {
+        val value = string(start, end)
+        return value.toDoubleOrNull() ?: throw IllegalArgumentException("Non-numeric value found: '$value'")
+    }
+}
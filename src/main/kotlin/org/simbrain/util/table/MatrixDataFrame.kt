@@ -30,6 +30,15 @@ class MatrixDataFrame @JvmOverloads constructor(
         return null
     }
 
+    /**
+     * Read the column directly from the matrix, without boxing each value.
+     */
+    override fun getDoubleColumn(col: Int): DoubleArray = data.col(col)
+
+    override fun getColumnMajorArray(): Array<DoubleArray> = Array(data.ncol()) { data.col(it) }
+
+    override fun get2DDoubleArray(): Array<DoubleArray> = data.toArray()
+
     override fun setValueAt(value: Any?, rowIndex: Int, colIndex: Int) {
         if (canEditAt(rowIndex, colIndex) && validateRowIndex(rowIndex) && validateColumnIndex(colIndex)) {
             data.set(rowIndex, colIndex, tryParsingDouble(value))
@@ -70,11 +70,9 @@ abstract class SimbrainDataFrame : AbstractTableModel() {
     /**
      * Returns a column (assumed to be numeric) as a double array.
      */
-    fun getDoubleColumn(col: Int): DoubleArray {
+    open fun getDoubleColumn(col: Int): DoubleArray {
         if (columns[col].isNumeric()) {
-            return (0 until rowCount)
-                .map { (getValueAt(it, col) as Number).toDouble() }
-                .toDoubleArray()
+            return DoubleArray(rowCount) { (getValueAt(it, col) as Number).toDouble() }
         }
         throw Error("getDoubleColumn called on a non-numeric column")
     }
@@ -118,7 +116,7 @@ abstract class SimbrainDataFrame : AbstractTableModel() {
     /**
      * Returns all double columns as an array of double arrays.
      */
-    fun getColumnMajorArray(): Array<DoubleArray> {
+    open fun getColumnMajorArray(): Array<DoubleArray> {
         return (0 until columnCount)
             .filter { columns[it].isNumeric() }
             .map { getDoubleColumn(it) }
@@ -143,9 +141,7 @@ abstract class SimbrainDataFrame : AbstractTableModel() {
 
     private fun getDoubleRowUnsafe(row: Int): DoubleArray {
         // No type check
-        return (0 until columnCount)
-            .map { ((getValueAt(row, it) ?: Double.NaN) as Number).toDouble() }
-            .toDoubleArray()
+        return DoubleArray(columnCount) { ((getValueAt(row, it) ?: Double.NaN) as Number).toDouble() }
     }
 
     private fun getFloatRowUnsafe(row: Int): FloatArray {
@@ -164,12 +160,9 @@ abstract class SimbrainDataFrame : AbstractTableModel() {
         if (!columnsOfType(colIndices, Double::class.java, Int::class.java, Float::class.java)) {
             throw Error("getDoubleArray called on a non-double column")
         }
-        return (0 until rowCount)
-            .map { rowIndex ->
-                colIndices.map { colIndex ->
-                    (getValueAt(rowIndex, colIndex) as Number).toDouble()
-                }.toDoubleArray()
-            }.toTypedArray()
+        return Array(rowCount) { rowIndex ->
+            DoubleArray(colIndices.size) { (getValueAt(rowIndex, colIndices[it]) as Number).toDouble() }
+        }
     }
 
 
@@ -185,13 +178,11 @@ abstract class SimbrainDataFrame : AbstractTableModel() {
      *
      * Numeric types are cast to doubles.
      */
-    fun get2DDoubleArray(): Array<DoubleArray> {
+    open fun get2DDoubleArray(): Array<DoubleArray> {
         if (!columnsOfType(Double::class.java)) {
             throw Error("getDoubleArray called on a non-numeric column")
         }
-        return (0 until rowCount)
-            .map { getDoubleRowUnsafe(it) }
-            .toTypedArray()
+        return Array(rowCount) { getDoubleRowUnsafe(it) }
     }
 
     /**
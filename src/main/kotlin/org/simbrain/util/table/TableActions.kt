@@ -253,12 +253,16 @@ fun SimbrainJTable.importCSVAction(fixedColumns: Boolean = true, skipImportOptio
                         it.fireTableStructureChanged()
                     }
                 } else if (it is MatrixDataFrame) {
-                    val rawData = Utils.getDoubleMatrix(csvFile).map { l -> l.toTypedArray() }.toTypedArray()
-                    val importedData = createFrom2DArray(rawData, options, dataType)
-                    if (!fixedColumns || checkColumns(importedData.columnCount)) {
-                        it.data = importedData.data.map { l -> l.map { e -> e as Double }.toDoubleArray() }.toTypedArray().toMatrix()
-                        it.columnNames = importedData.columnNames
-                        it.rowNames = importedData.rowNames
+                    val imported = try {
+                        readCsvMatrix(csvFile, options)
+                    } catch (e: IllegalArgumentException) {
+                        JOptionPane.showMessageDialog(null, e.message, "Error", JOptionPane.ERROR_MESSAGE)
+                        return
+                    }
+                    if (!fixedColumns || checkColumns(imported.data.ncol())) {
+                        it.data = imported.data
+                        it.columns = columnsFor(imported.data.ncol(), imported.columnNames)
+                        it.rowNames = imported.rowNames ?: listOf()
                         it.fireTableStructureChanged()
                     }
                 } else if (it is SmileDataFrame) {
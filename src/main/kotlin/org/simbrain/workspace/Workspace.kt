@@ -116,6 +116,7 @@ class Workspace: CoroutineScope {
     fun addWorkspaceComponent(component: WorkspaceComponent) {
         Logger.debug("adding component: $component")
         _componentList.add(component)
+        couplingManager.invalidatePlan()
         component.workspace = this
         component.setChangedSinceLastSave(false)
         setWorkspaceChanged(true)
@@ -144,6 +145,7 @@ class Workspace: CoroutineScope {
         // Remove all couplings associated with this component
         // this.getCouplingManager().removeCouplings(component);
         _componentList.remove(component)
+        couplingManager.invalidatePlan()
         setWorkspaceChanged(true)
         events.componentRemoved.fire(component)
     }
@@ -334,12 +336,13 @@ class Workspace: CoroutineScope {
     }
 
     /**
-     * Returns global time.
+     * Returns global time. While a [org.simbrain.workspace.updater.PipelinedUpdateAction] stage processes an
+     * earlier tick, this is that tick's time, so values it records are stamped with the tick they belong to.
      *
      * @return the time
      */
     val time: Int
-        get() = updater.time
+        get() = updater.tickTime
 
     /**
      * Reset time.
@@ -432,13 +435,16 @@ class Workspace: CoroutineScope {
 
     /**
      * Open a workspace from the flat representation provided by [.getZipData] }.
+     *
+     * @param headless if true, saved desktop components are ignored. See [WorkspaceSerializer.deserialize].
      */
-    fun openFromZipData(zipData: ByteArray?) {
+    @JvmOverloads
+    fun openFromZipData(zipData: ByteArray?, headless: Boolean = false) {
         try {
             clearWorkspace()
             val serializer = WorkspaceSerializer(this)
             val bis = ByteArrayInputStream(zipData)
-            serializer.deserialize(bis)
+            serializer.deserialize(bis, headless)
             bis.close()
         } catch (e: IOException) {
             e.printStackTrace()
@@ -0,0 +1,324 @@
+package org.simbrain.workspace.batch
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import org.simbrain.network.core.Network
+import org.simbrain.util.Events
+import org.simbrain.util.UserParameter
+import org.simbrain.util.propertyeditor.GuiEditable
+import org.simbrain.util.stats.CounterRandomGenerator
+import org.simbrain.util.stats.ProbabilityDistribution
+import org.simbrain.workspace.AttributeContainer
+import org.simbrain.workspace.Producer
+import org.simbrain.workspace.Workspace
+import java.io.File
+import java.lang.reflect.Modifier
+import java.util.*
+import kotlin.reflect.KMutableProperty1
+import kotlin.reflect.KProperty1
+import kotlin.reflect.full.memberProperties
+import kotlin.reflect.jvm.isAccessible
+import kotlin.reflect.jvm.jvmErasure
+
+/**
+ * A reference to an attribute container in a workspace, written `component/containerId`, e.g. `Network1/Neuron_1`.
+ */
+data class ContainerPath(val componentName: String, val containerId: String) {
+
+    fun find(workspace: Workspace): AttributeContainer {
+        val component = workspace.getComponent(componentName)
+            ?: throw IllegalArgumentException("No component named $componentName")
+        return component.attributeContainers.firstOrNull { it.id == containerId }
+            ?: throw IllegalArgumentException("No attribute container with id $containerId in $componentName")
+    }
+
+    override fun toString() = "$componentName/$containerId"
+
+    companion object {
+        fun parse(path: String) = path.split("/").let { tokens ->
+            require(tokens.size == 2) { "Expected component/containerId but got $path" }
+            ContainerPath(tokens[0].trim(), tokens[1].trim())
+        }
+    }
+}
+
+/**
+ * A user parameter to sweep over, e.g. `Network1/Neuron_1/updateRule.slope`. The property path can descend into
+ * nested objects; the last property must be a [UserParameter] or [GuiEditable].
+ */
+data class SweepParameter(val container: ContainerPath, val propertyPath: List<String>, val values: List<String>)
+
+/**
+ * A producer whose value is recorded each iteration, e.g. `Network1/Neuron_1/getActivation`.
+ */
+data class RecordedOutput(val label: String, val container: ContainerPath, val methodName: String)
+
+/**
+ * Specification of a batch of headless runs, read from a properties file:
+ *
+ * ```
+ * iterations = 1000
+ * replicas = 2
+ * seeds = 1, 2, 3
+ * threads = 8
+ * param.Network1/Neuron_1/updateRule.slope = 0.5, 1.0
+ * output.activation = Network1/Neuron_1/getActivation
+ * ```
+ *
+ * One run is performed for every combination of parameter values, seed and replica. A run with a seed is
+ * reproducible as far as [BatchRunner.seedRandomSources] allows.
+ */
+class SweepSpec(
+    val iterations: Int,
+    val replicas: Int = 1,
+    val seeds: List<Long> = listOf(),
+    val threads: Int = Runtime.getRuntime().availableProcessors(),
+    val parameters: List<SweepParameter> = listOf(),
+    val outputs: List<RecordedOutput> = listOf()
+) {
+
+    /**
+     * Every run in the sweep.
+     */
+    fun runs(): List<BatchRun> {
+        val parameterCombinations = parameters.fold(listOf(listOf<Pair<SweepParameter, String>>())) { acc, parameter ->
+            acc.flatMap { combination -> parameter.values.map { combination + (parameter to it) } }
+        }
+        val seedValues = seeds.ifEmpty { listOf(null) }
+        return parameterCombinations.flatMap { combination ->
+            seedValues.flatMap { seed ->
+                (0 until replicas).map { replica -> combination to (seed to replica) }
+            }
+        }.mapIndexed { index, (combination, seedReplica) ->
+            BatchRun(index, combination, seedReplica.first, seedReplica.second)
+        }
+    }
+
+    companion object {
+
+        fun load(file: File) = Properties().apply { file.reader().use { load(it) } }.let { properties ->
+            fun list(key: String) = properties.getProperty(key)?.split(",")?.map { it.trim() }?.filter { it.isNotEmpty() }
+            SweepSpec(
+                iterations = properties.getProperty("iterations")?.trim()?.toInt()
+                    ?: throw IllegalArgumentException("Sweep spec must specify iterations"),
+                replicas = properties.getProperty("replicas")?.trim()?.toInt() ?: 1,
+                seeds = list("seeds")?.map { it.toLong() } ?: listOf(),
+                threads = properties.getProperty("threads")?.trim()?.toInt() ?: Runtime.getRuntime().availableProcessors(),
+                parameters = properties.stringPropertyNames().filter { it.startsWith("param.") }.sorted().map { key ->
+                    val path = key.removePrefix("param.")
+                    val container = ContainerPath.parse(path.substringBeforeLast("/"))
+                    SweepParameter(container, path.substringAfterLast("/").split("."), list(key)!!)
+                },
+                outputs = properties.stringPropertyNames().filter { it.startsWith("output.") }.sorted().map { key ->
+                    val path = properties.getProperty(key).trim()
+                    RecordedOutput(
+                        key.removePrefix("output."),
+                        ContainerPath.parse(path.substringBeforeLast("/")),
+                        path.substringAfterLast("/")
+                    )
+                }
+            )
+        }
+    }
+}
+
+/**
+ * A single run in a sweep.
+ */
+data class BatchRun(
+    val index: Int,
+    val parameterValues: List<Pair<SweepParameter, String>>,
+    val seed: Long?,
+    val replica: Int
+) {
+    val description
+        get() = (parameterValues.map { (parameter, value) ->
+            "${parameter.container}/${parameter.propertyPath.joinToString(".")}=$value"
+        } + listOfNotNull(seed?.let { "seed=$it" }) + "replica=$replica").joinToString(" ")
+}
+
+/**
+ * Runs a [SweepSpec] against a saved workspace without a gui. Every run gets its own [Workspace] deserialized from the
+ * archive, so runs share no model state and can be executed in parallel. Recorded outputs are written to one csv file
+ * per run in the output directory.
+ */
+class BatchRunner(val workspaceArchive: ByteArray, val spec: SweepSpec, val outputDirectory: File) {
+
+    /**
+     * Run every replica in the sweep, at most [SweepSpec.threads] at a time, and return the total number of workspace
+     * iterations performed.
+     */
+    fun run(log: (String) -> Unit = ::println): Long = runBlocking {
+        outputDirectory.mkdirs()
+        val runs = spec.runs()
+        val permits = Semaphore(spec.threads.coerceAtLeast(1))
+        val start = System.nanoTime()
+        runs.map { batchRun ->
+            async(Dispatchers.Default) {
+                permits.withPermit {
+                    val runStart = System.nanoTime()
+                    runReplica(batchRun)
+                    val seconds = (System.nanoTime() - runStart) / 1e9
+                    log("Run ${batchRun.index} (${batchRun.description}): ${(spec.iterations / seconds).toInt()} iterations/s")
+                }
+            }
+        }.awaitAll()
+        val totalIterations = runs.size.toLong() * spec.iterations
+        val seconds = (System.nanoTime() - start) / 1e9
+        log("Completed ${runs.size} runs in ${"%.2f".format(seconds)}s: ${(totalIterations / seconds).toLong()} iterations/s")
+        totalIterations
+    }
+
+    private suspend fun runReplica(batchRun: BatchRun) {
+        val workspace = Workspace()
+        workspace.openFromZipData(workspaceArchive, headless = true)
+        batchRun.seed?.let { seed -> seedRandomSources(workspace, replicaSeed(seed, batchRun.replica)) }
+        batchRun.parameterValues.forEach { (parameter, value) -> applyParameter(workspace, parameter, value) }
+        val producers: List<Producer> = with(workspace.couplingManager) {
+            spec.outputs.map { it.container.find(workspace).getProducer(it.methodName) }
+        }
+        File(outputDirectory, "run_${batchRun.index}.csv").bufferedWriter().use { writer ->
+            writer.write("# ${batchRun.description}")
+            writer.newLine()
+            writer.write((listOf("time") + spec.outputs.map { it.label }).joinToString(","))
+            writer.newLine()
+            var iteration = 0
+            workspace.iterateWhile {
+                iteration++
+                writer.write((listOf(workspace.time.toString()) + producers.map { formatValue(it.value) }).joinToString(","))
+                writer.newLine()
+                iteration < spec.iterations
+            }
+        }
+        workspace.clearWorkspace()
+    }
+
+    private fun formatValue(value: Any?) = when (value) {
+        is DoubleArray -> value.joinToString(" ")
+        is IntArray -> value.joinToString(" ")
+        is Array<*> -> value.joinToString(" ")
+        else -> value.toString()
+    }
+
+    companion object {
+
+        /**
+         * The seed for one replica of a run with [seed]. The two are hashed together, so that distinct pairs give
+         * unrelated seeds; adding them would give seed 1 replica 1 the same streams as seed 2 replica 0.
+         */
+        fun replicaSeed(seed: Long, replica: Int): Long {
+            return CounterRandomGenerator(0).apply { setStream(seed, replica.toLong(), 0) }.nextLong()
+        }
+
+        /**
+         * Seed the random sources reachable from the components of [workspace] from [seed]. These are each
+         * [Network]'s seed, which drives neuron noise, and the seed of each [ProbabilityDistribution], e.g. noise
+         * generators, input generators and randomizers. Each source's seed is derived from [seed] and its path from
+         * its component, e.g. `Network/network/networkModels/...`. Code that draws from a global generator such as
+         * [kotlin.random.Random.Default] is not seeded, so runs using it are not reproducible.
+         */
+        fun seedRandomSources(workspace: Workspace, seed: Long) {
+            fun derive(path: String) =
+                CounterRandomGenerator(0).apply { setStream(seed, path.hashCode().toLong(), 0) }.nextLong()
+            val visited = Collections.newSetFromMap(IdentityHashMap<Any, Boolean>())
+            // Breadth first, since chains of models can be too deep to recurse through
+            val queue = ArrayDeque<Pair<Any?, String>>()
+            workspace.componentList.forEach { queue.add(it to it.name) }
+            while (queue.isNotEmpty()) {
+                val (value, path) = queue.removeFirst()
+                if (value == null || !visited.add(value)) continue
+                when (value) {
+                    is ProbabilityDistribution -> {
+                        value.randomSeed = derive(path)
+                        continue
+                    }
+                    is Network -> value.randomSeed = derive(path)
+                    is Workspace, is Events -> continue
+                }
+                when (value) {
+                    is Array<*> -> value.forEachIndexed { i, element -> queue.add(element to "$path/$i") }
+                    is Iterable<*> -> value.forEachIndexed { i, element -> queue.add(element to "$path/$i") }
+                    is Map<*, *> -> value.entries.forEachIndexed { i, (key, element) ->
+                        queue.add(element to "$path/${key as? String ?: i}")
+                    }
+                    else -> {
+                        var cls: Class<*>? = value.javaClass
+                        while (cls != null && cls.name.startsWith("org.simbrain.")) {
+                            cls.declaredFields
+                                .filter { !Modifier.isStatic(it.modifiers) && !it.type.isPrimitive }
+                                .sortedBy { it.name }
+                                .forEach { field ->
+                                    val fieldValue = try {
+                                        field.isAccessible = true
+                                        field.get(value)
+                                    } catch (e: Exception) {
+                                        null
+                                    }
+                                    queue.add(fieldValue to "$path/${field.name}")
+                                }
+                            cls = cls.superclass
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Set a user parameter on an attribute container, converting the string value to the property's type.
+         */
+        fun applyParameter(workspace: Workspace, parameter: SweepParameter, value: String) {
+            var target: Any = parameter.container.find(workspace)
+            parameter.propertyPath.dropLast(1).forEach { name ->
+                target = target.findProperty(name).apply { isAccessible = true }.getter.call(target)
+                    ?: throw IllegalArgumentException("Property $name of $target is null")
+            }
+            val property = target.findProperty(parameter.propertyPath.last())
+            require(property is KMutableProperty1<*, *> && property.isUserParameter(target)) {
+                "${parameter.propertyPath.last()} is not a user parameter of ${target::class.simpleName}"
+            }
+            property.isAccessible = true
+            property.setter.call(target, value.toPropertyType(property))
+        }
+
+        private fun Any.findProperty(name: String): KProperty1<*, *> =
+            this::class.memberProperties.firstOrNull { it.name == name }
+                ?: throw IllegalArgumentException("No property $name in ${this::class.simpleName}")
+
+        private fun KProperty1<*, *>.isUserParameter(owner: Any): Boolean {
+            if (annotations.any { it is UserParameter } || getter.annotations.any { it is UserParameter }) {
+                return true
+            }
+            isAccessible = true
+            @Suppress("UNCHECKED_CAST")
+            return (this as KProperty1<Any, *>).getDelegate(owner) is GuiEditable<*, *>
+        }
+
+        private fun String.toPropertyType(property: KProperty1<*, *>): Any = when (val type = property.returnType.jvmErasure) {
+            Double::class -> toDouble()
+            Float::class -> toFloat()
+            Int::class -> toInt()
+            Long::class -> toLong()
+            Boolean::class -> toBooleanStrict()
+            String::class -> this
+            else -> type.java.enumConstants?.firstOrNull { (it as Enum<*>).name == this }
+                ?: throw IllegalArgumentException("Cannot convert $this to ${type.simpleName}")
+        }
+    }
+}
+
+/**
+ * Command line entry point: `BatchRunner workspace.zip sweep.properties outputDirectory`. Does not load any Swing or
+ * Piccolo classes, so it can run on a machine without a display.
+ */
+fun main(args: Array<String>) {
+    if (args.size != 3) {
+        System.err.println("Usage: BatchRunner <workspace.zip> <sweep.properties> <outputDirectory>")
+        return
+    }
+    System.setProperty("java.awt.headless", "true")
+    BatchRunner(File(args[0]).readBytes(), SweepSpec.load(File(args[1])), File(args[2])).run()
+}
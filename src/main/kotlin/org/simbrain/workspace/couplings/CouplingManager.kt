@@ -44,6 +44,30 @@ class CouplingManager(val workspace: Workspace) {
      */
     val couplings: List<Coupling> by cachedCouplingList::value
 
+    /**
+     * Compiled execution plan for the current couplings. Rebuilt lazily after couplings change, so updates can read
+     * it without locking.
+     */
+    @Volatile
+    private var _plan: CouplingPlan? = null
+
+    val plan: CouplingPlan
+        get() = _plan ?: synchronized(_couplings) {
+            _plan ?: CouplingPlan.compile(couplings, workspace.componentList).also { _plan = it }
+        }
+
+    private fun couplingsChanged() {
+        cachedCouplingList.invalidate()
+        invalidatePlan()
+    }
+
+    /**
+     * Force the execution [plan] to be recompiled, e.g. when components are added or removed.
+     */
+    fun invalidatePlan() {
+        _plan = null
+    }
+
     /**
      * Couplings associated with an [AttributeContainer]. For faster lookup.
      */
@@ -197,7 +221,7 @@ class CouplingManager(val workspace: Workspace) {
     fun createCoupling(producer: Producer?, consumer: Consumer?, fireEvents: Boolean = true) = Coupling.create(producer, consumer).also {
         synchronized(_couplings) {
             _couplings.add(it)
-            cachedCouplingList.invalidate()
+            couplingsChanged()
             attributeContainerCouplings.getOrPut(it.producer.baseObject) { LinkedHashSet() }.add(it)
             attributeContainerCouplings.getOrPut(it.consumer.baseObject) { LinkedHashSet() }.add(it)
             if (fireEvents) {
@@ -290,9 +314,7 @@ class CouplingManager(val workspace: Workspace) {
      * Update all couplings by setting the consumers to take the values of their producers.
      */
     fun updateCouplings() {
-        synchronized(_couplings) {
-            couplings.forEach { it.update() }
-        }
+        plan.updateCouplings()
     }
 
     /**
@@ -308,7 +330,7 @@ class CouplingManager(val workspace: Workspace) {
     private fun removeCouplingWithoutFiringEvent(coupling: Coupling) {
         synchronized(_couplings) {
             _couplings.remove(coupling)
-            cachedCouplingList.invalidate()
+            couplingsChanged()
             attributeContainerCouplings[coupling.producer.baseObject]?.let {
                 it.remove(coupling)
                 if (it.isEmpty()) {
@@ -325,20 +347,22 @@ class CouplingManager(val workspace: Workspace) {
     }
 
     fun removeAttributeContainer(attributeContainer: AttributeContainer) {
-        attributeContainerCouplings[attributeContainer]?.let {
-            it.forEach { coupling ->
-                _couplings.remove(coupling)
-                cachedCouplingList.invalidate()
-                if (coupling.consumer.baseObject !== attributeContainer) {
-                    attributeContainerCouplings[coupling.consumer.baseObject]?.remove(coupling)
-                }
-                if (coupling.producer.baseObject !== attributeContainer) {
-                    attributeContainerCouplings[coupling.producer.baseObject]?.remove(coupling)
+        synchronized(_couplings) {
+            attributeContainerCouplings[attributeContainer]?.let {
+                it.forEach { coupling ->
+                    _couplings.remove(coupling)
+                    couplingsChanged()
+                    if (coupling.consumer.baseObject !== attributeContainer) {
+                        attributeContainerCouplings[coupling.consumer.baseObject]?.remove(coupling)
+                    }
+                    if (coupling.producer.baseObject !== attributeContainer) {
+                        attributeContainerCouplings[coupling.producer.baseObject]?.remove(coupling)
+                    }
                 }
+                events.couplingsRemoved.fire(it.toList())
             }
-            events.couplingsRemoved.fire(it.toList())
+            attributeContainerCouplings.remove(attributeContainer)
         }
-        attributeContainerCouplings.remove(attributeContainer)
     }
 
     fun clear() {
@@ -0,0 +1,132 @@
+package org.simbrain.workspace.couplings
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import org.simbrain.workspace.AttributeContainer
+import org.simbrain.workspace.WorkspaceComponent
+import java.util.*
+
+/**
+ * An immutable execution plan for a set of couplings, compiled by [CouplingManager] whenever couplings change.
+ *
+ * Couplings are grouped into levels. Within a level, couplings are grouped into tasks by the component they write
+ * to, and the couplings in a task are applied in their original order. Two tasks in the same level never write a
+ * component the other reads or writes, so the tasks of a level can run in parallel. Levels run in order, so every
+ * component sees exactly the values it would see if all couplings were applied one by one in list order.
+ *
+ * The plan also records, for each component, the last level that reads from or writes to it. Once that level is
+ * done the component can be updated, even if couplings between other components are still being applied.
+ *
+ * @param levels levels of tasks, each task being a list of couplings applied sequentially
+ * @param lastLevels for each component touched by a coupling, the last level that touches it
+ * @param unresolved true if some coupling's container could not be matched to a component, in which case no component
+ * is updated until every coupling has been applied
+ */
+class CouplingPlan private constructor(
+    val levels: List<List<List<Coupling>>>,
+    private val lastLevels: Map<WorkspaceComponent, Int>,
+    private val unresolved: Boolean
+) {
+
+    /**
+     * Index of the level after which the given component can be updated, or -1 if it can be updated right away.
+     */
+    fun readyAfterLevel(component: WorkspaceComponent) = if (unresolved) {
+        levels.lastIndex
+    } else {
+        lastLevels[component] ?: -1
+    }
+
+    /**
+     * Apply all couplings on the calling thread.
+     */
+    fun updateCouplings() {
+        levels.forEach { level -> level.forEach { task -> task.forEach { it.update() } } }
+    }
+
+    /**
+     * Apply all couplings, running the tasks of each level in parallel, and update each component as soon as the
+     * couplings it participates in have been applied.
+     *
+     * @param components the components to update
+     * @param onCouplingsUpdated called once all couplings have been applied
+     * @param updateComponent updates a single component
+     */
+    suspend fun run(
+        components: List<WorkspaceComponent>,
+        onCouplingsUpdated: suspend () -> Unit = {},
+        updateComponent: suspend (WorkspaceComponent) -> Unit
+    ): Unit = coroutineScope {
+        val componentsByLevel = components.groupBy { readyAfterLevel(it) }
+        componentsByLevel[-1]?.forEach { launch { updateComponent(it) } }
+        levels.forEachIndexed { index, level ->
+            if (level.size == 1) {
+                level.first().forEach { it.update() }
+            } else {
+                level.map { task -> async { task.forEach { it.update() } } }.awaitAll()
+            }
+            componentsByLevel[index]?.forEach { launch { updateComponent(it) } }
+        }
+        onCouplingsUpdated()
+    }
+
+    companion object {
+
+        val EMPTY = CouplingPlan(listOf(), mapOf(), false)
+
+        /**
+         * Compile couplings, given in the order they should appear to be applied, into a plan.
+         */
+        fun compile(couplings: List<Coupling>, components: List<WorkspaceComponent>): CouplingPlan {
+            if (couplings.isEmpty()) {
+                return EMPTY
+            }
+
+            val containerComponents = IdentityHashMap<AttributeContainer, WorkspaceComponent>()
+            components.forEach { component ->
+                component.attributeContainers.forEach { containerComponents[it] = component }
+            }
+
+            // Couplings whose containers are not in any component are keyed on the container itself
+            var unresolved = false
+            fun keyOf(container: AttributeContainer): Any = containerComponents[container] ?: container.also {
+                unresolved = true
+            }
+
+            val lastWrite = HashMap<Any, Int>()
+            val lastReadByOtherTask = HashMap<Any, Int>()
+            val lastLevels = HashMap<WorkspaceComponent, Int>()
+            val levels = ArrayList<LinkedHashMap<Any, MutableList<Coupling>>>()
+
+            couplings.forEach { coupling ->
+                val read = keyOf(coupling.producer.baseObject)
+                val write = keyOf(coupling.consumer.baseObject)
+
+                // Couplings writing the same component share a task, so only writes by earlier levels, reads by other
+                // tasks, and writes to the component being read force a later level.
+                val level = maxOf(
+                    lastWrite[write] ?: 0,
+                    (lastWrite[read] ?: -1) + if (read == write) 0 else 1,
+                    (lastReadByOtherTask[write] ?: -1) + 1
+                )
+
+                while (levels.size <= level) {
+                    levels.add(LinkedHashMap())
+                }
+                levels[level].getOrPut(write) { mutableListOf() }.add(coupling)
+
+                lastWrite[write] = level
+                if (read != write) {
+                    lastReadByOtherTask[read] = maxOf(level, lastReadByOtherTask[read] ?: -1)
+                }
+                listOf(read, write).filterIsInstance<WorkspaceComponent>().forEach {
+                    lastLevels[it] = maxOf(level, lastLevels[it] ?: -1)
+                }
+            }
+
+            return CouplingPlan(levels.map { it.values.toList() }, lastLevels, unresolved)
+        }
+    }
+}
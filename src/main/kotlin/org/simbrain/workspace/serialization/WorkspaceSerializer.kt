@@ -171,16 +171,19 @@ class WorkspaceSerializer(val workspace: Workspace) {
      * Creates a workspace from a zip compressed input stream.
      *
      * @param stream The stream to read from. This is expected to be zip compressed.
+     * @param headless if true, desktop components are ignored and no gui classes are touched, so the workspace can be
+     * opened in a process without a display.
      * @throws IOException if an IO error occurs.
      */
     @Throws(IOException::class)
-    fun deserialize(stream: InputStream) {
+    @JvmOverloads
+    fun deserialize(stream: InputStream, headless: Boolean = false) {
         val byteArrays = processInputStream(stream)
         val archive =
             ArchivedWorkspace.xstream().fromXML(ByteArrayInputStream(byteArrays["contents.xml"])) as ArchivedWorkspace
 
         val deserializer = WorkspaceComponentDeserializer()
-        deserializeComponents(archive, deserializer, byteArrays)
+        deserializeComponents(archive, deserializer, byteArrays, headless)
 
         deserializeCouplings(archive)
         // deserializeUpdateActions(archive, deserializer);
@@ -242,7 +245,8 @@ class WorkspaceSerializer(val workspace: Workspace) {
     private fun deserializeComponents(
         archive: ArchivedWorkspace,
         deserializer: WorkspaceComponentDeserializer,
-        byteArrays: Map<String, ByteArray?>
+        byteArrays: Map<String, ByteArray?>,
+        headless: Boolean
     ) {
         if (archive.archivedComponents != null) {
             for (archivedComponent in archive.archivedComponents) {
@@ -253,7 +257,7 @@ class WorkspaceSerializer(val workspace: Workspace) {
                     )
                     wc.postOpenInit(workspace)
                     workspace.addWorkspaceComponent(wc)
-                    if (archivedComponent.desktopComponent != null) {
+                    if (!headless && archivedComponent.desktopComponent != null) {
                         val bounds =
                             getSimbrainXStream().fromXML(ByteArrayInputStream(byteArrays[archivedComponent.desktopComponent.uri])) as Rectangle
                         val desktopComponent = getDesktopComponent(wc)
@@ -262,7 +266,11 @@ class WorkspaceSerializer(val workspace: Workspace) {
                 } catch (ex: Exception) {
                     ex.printStackTrace()
                     val message = String.format("Failed to deserialize component %s.", archivedComponent.name)
-                    JOptionPane.showMessageDialog(null, message)
+                    if (headless) {
+                        System.err.println(message)
+                    } else {
+                        JOptionPane.showMessageDialog(null, message)
+                    }
                 }
             }
         }
@@ -0,0 +1,314 @@
+package org.simbrain.workspace.updater
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import org.simbrain.workspace.AttributeContainer
+import org.simbrain.workspace.WorkspaceComponent
+import org.simbrain.workspace.couplings.Coupling
+import org.simbrain.workspace.couplings.CouplingPlan
+import java.util.*
+
+/**
+ * An alternative to [UpdateAllAction] that pipelines components across ticks. Components are grouped into stages
+ * using the coupling graph: components that feed each other (e.g. an odor world and the network controlling an agent
+ * in it) share a stage, and components that only receive values (e.g. a [org.simbrain.plot.timeseries.TimeSeriesPlotComponent]
+ * or [org.simbrain.plot.projection.ProjectionComponent] fed by a network) are placed in later stages.
+ *
+ * The first stage is updated by [run]. Later stages run in background coroutines, each fed by a bounded queue, so a
+ * downstream stage can process tick t while upstream stages compute tick t+1. When a queue is full the upstream stage
+ * waits, so downstream stages never fall more than [queueCapacity] ticks behind.
+ *
+ * Every consumer receives the same value it would receive from [UpdateAllAction]: the value its producer had at the
+ * end of the previous tick. Values sent to later stages are captured before the producing stage updates, and arrays
+ * are copied so they are not modified while queued. Deferred work is completed in [finish], so when an iteration
+ * ends every component has processed every tick.
+ *
+ * If a later stage throws, it stops processing ticks and the exception is rethrown from the next [run] or [finish], so
+ * it reaches the caller of the update as it would with [UpdateAllAction]. The pipeline is then rebuilt on the next run.
+ *
+ * @param queueCapacity number of ticks a stage can fall behind the stage feeding it
+ */
+class PipelinedUpdateAction @JvmOverloads constructor(
+    @Transient val updater: WorkspaceUpdater,
+    val queueCapacity: Int = 4
+) : UpdateAction(description = "Pipelined Update of Components and Couplings") {
+
+    @Transient
+    private var pipeline: Pipeline? = null
+
+    override suspend fun run() {
+        val plan = updater.workspace.couplingManager.plan
+        val components = updater.components.filter { it.updateOn }
+        var current = pipeline
+        if (current == null || current.plan !== plan || current.components != components) {
+            current?.close()
+            current = Pipeline(plan, components)
+            pipeline = current
+        }
+        current.tick()
+        rethrowStageFailure(current)
+        updater.events.couplingsUpdates.fire()
+    }
+
+    override suspend fun finish() {
+        pipeline?.let {
+            it.drain()
+            rethrowStageFailure(it)
+        }
+    }
+
+    override fun close() {
+        pipeline?.cancel()
+        pipeline = null
+    }
+
+    /**
+     * Throw the exception of a stage that failed, after stopping the pipeline.
+     */
+    private fun rethrowStageFailure(current: Pipeline) {
+        val failure = current.failure ?: return
+        current.cancel()
+        pipeline = null
+        throw failure
+    }
+
+    /**
+     * Values queued for a stage: the workspace time of the tick, and each coupling feeding a later stage with its
+     * producer's value when the tick started.
+     */
+    private sealed class StageMessage {
+        class Tick(val time: Int, val values: List<Pair<Coupling, Any?>>) : StageMessage()
+        class Drain(val done: CompletableDeferred<Unit>) : StageMessage()
+    }
+
+    /**
+     * Components grouped into stages, one of which runs in [run] and the rest in worker coroutines.
+     */
+    private inner class Pipeline(val plan: CouplingPlan, val components: List<WorkspaceComponent>) {
+
+        private val stages: List<Stage>
+
+        // A child of the workspace's job, so that it is also cancelled with the workspace
+        private val scope = CoroutineScope(
+            updater.workspace.coroutineContext + SupervisorJob(updater.workspace.coroutineContext[Job])
+        )
+
+        init {
+            val couplings = plan.levels.flatten().flatten()
+            val containerComponents = IdentityHashMap<AttributeContainer, WorkspaceComponent>()
+            components.forEach { component ->
+                component.attributeContainers.forEach { containerComponents[it] = component }
+            }
+            val componentCouplings = couplings.mapNotNull { coupling ->
+                val producer = containerComponents[coupling.producer.baseObject]
+                val consumer = containerComponents[coupling.consumer.baseObject]
+                if (producer != null && consumer != null) Triple(coupling, producer, consumer) else null
+            }
+            val depths = stageDepths(components, componentCouplings.map { (_, p, c) -> p to c })
+
+            // Couplings from unresolved containers are applied in the first stage, as with UpdateAllAction
+            val resolved = componentCouplings.map { it.first }.toSet()
+            val unresolved = couplings.filterNot { it in resolved }
+
+            val stageCount = (depths.values.maxOrNull() ?: 0) + 1
+            stages = (0 until stageCount).map { depth ->
+                Stage(
+                    updater = updater,
+                    components = components.filter { depths[it] == depth },
+                    localCouplings = componentCouplings
+                        .filter { (_, p, c) -> depths[p] == depth && depths[c] == depth }
+                        .map { it.first } + if (depth == 0) unresolved else listOf(),
+                    incomingCouplings = componentCouplings
+                        .filter { (_, p, c) -> depths[c] == depth && depths[p]!! < depth }
+                        .map { it.first }.toSet(),
+                    outgoingCouplings = componentCouplings
+                        .filter { (_, p, c) -> depths[p] == depth && depths[c]!! > depth }
+                        .map { it.first }
+                )
+            }
+            stages.zipWithNext().forEach { (upstream, downstream) ->
+                val channel = Channel<StageMessage>(queueCapacity)
+                upstream.output = channel
+                scope.launch { downstream.process(channel) }
+            }
+        }
+
+        /**
+         * The exception thrown by the first stage that failed, if any.
+         */
+        val failure: Exception? get() = stages.firstNotNullOfOrNull { it.failure }
+
+        suspend fun tick() {
+            stages.first().update(updater.time, listOf())
+        }
+
+        suspend fun drain() {
+            val done = CompletableDeferred<Unit>()
+            val first = stages.first()
+            val output = first.output
+            if (output == null) {
+                return
+            }
+            output.send(StageMessage.Drain(done))
+            done.await()
+        }
+
+        suspend fun close() {
+            drain()
+            cancel()
+        }
+
+        /**
+         * Stop the stage coroutines without waiting for queued ticks.
+         */
+        fun cancel() {
+            scope.cancel()
+        }
+    }
+
+    /**
+     * A set of components updated together, along with the couplings that feed them.
+     *
+     * @param updater the updater, whose [WorkspaceUpdater.tickTime] is set to the time of the tick being processed
+     * @param localCouplings couplings between components of this stage, applied directly
+     * @param incomingCouplings couplings from earlier stages, whose values arrive through the queue
+     * @param outgoingCouplings couplings to later stages, whose values are captured before this stage updates
+     */
+    private class Stage(
+        val updater: WorkspaceUpdater,
+        val components: List<WorkspaceComponent>,
+        val localCouplings: List<Coupling>,
+        val incomingCouplings: Set<Coupling>,
+        val outgoingCouplings: List<Coupling>
+    ) {
+        var output: Channel<StageMessage>? = null
+
+        /**
+         * Set if an update threw. Later ticks are then skipped, so that stale values are not passed on.
+         */
+        @Volatile
+        var failure: Exception? = null
+
+        /**
+         * Update this stage for the tick at [time], given values captured upstream. Consumers and components that
+         * read the workspace time see [time], even if upstream stages have moved on.
+         */
+        suspend fun update(time: Int, upstreamValues: List<Pair<Coupling, Any?>>) =
+            withContext(updater.laggingTickTime.asContextElement(time)) {
+                val captured = outgoingCouplings.map { it to copyValue(it.producer.value) }
+                upstreamValues.forEach { (coupling, value) ->
+                    if (coupling in incomingCouplings) {
+                        coupling.consumer.setValue(value)
+                    }
+                }
+                localCouplings.forEach { it.update() }
+                components.map { component ->
+                    async {
+                        PerformanceMonitor.record("Updating Component ${component.name}") {
+                            component.update()
+                        }
+                    }
+                }.awaitAll()
+                // Values for stages beyond the next one are passed along
+                output?.send(
+                    StageMessage.Tick(time, upstreamValues.filterNot { it.first in incomingCouplings } + captured)
+                )
+            }
+
+        suspend fun process(input: Channel<StageMessage>) {
+            for (message in input) {
+                when (message) {
+                    is StageMessage.Tick -> if (failure == null) {
+                        try {
+                            update(message.time, message.values)
+                        } catch (e: CancellationException) {
+                            throw e
+                        } catch (e: Exception) {
+                            failure = e
+                        }
+                    }
+                    is StageMessage.Drain -> {
+                        val next = output
+                        if (next != null) {
+                            next.send(message)
+                        } else {
+                            message.done.complete(Unit)
+                        }
+                    }
+                }
+            }
+        }
+
+        private fun copyValue(value: Any?): Any? = when (value) {
+            is DoubleArray -> value.copyOf()
+            is FloatArray -> value.copyOf()
+            is IntArray -> value.copyOf()
+            is BooleanArray -> value.copyOf()
+            is Array<*> -> value.copyOf()
+            else -> value
+        }
+    }
+
+    companion object {
+
+        /**
+         * Assign each component a stage depth. Components on a cycle of couplings share a depth; otherwise a
+         * component's depth is one more than the deepest component that feeds it.
+         */
+        fun stageDepths(
+            components: List<WorkspaceComponent>,
+            edges: List<Pair<WorkspaceComponent, WorkspaceComponent>>
+        ): Map<WorkspaceComponent, Int> {
+            val successors = components.associateWith { mutableSetOf<WorkspaceComponent>() }
+            edges.forEach { (from, to) -> if (from != to) successors[from]?.add(to) }
+
+            // Tarjan's algorithm, producing strongly connected components in reverse topological order
+            var index = 0
+            val indices = HashMap<WorkspaceComponent, Int>()
+            val lowLinks = HashMap<WorkspaceComponent, Int>()
+            val stack = ArrayDeque<WorkspaceComponent>()
+            val onStack = HashSet<WorkspaceComponent>()
+            val sccs = mutableListOf<List<WorkspaceComponent>>()
+            fun connect(v: WorkspaceComponent) {
+                indices[v] = index
+                lowLinks[v] = index
+                index++
+                stack.push(v)
+                onStack.add(v)
+                successors[v]!!.forEach { w ->
+                    if (w !in indices) {
+                        connect(w)
+                        lowLinks[v] = minOf(lowLinks[v]!!, lowLinks[w]!!)
+                    } else if (w in onStack) {
+                        lowLinks[v] = minOf(lowLinks[v]!!, indices[w]!!)
+                    }
+                }
+                if (lowLinks[v] == indices[v]) {
+                    val scc = mutableListOf<WorkspaceComponent>()
+                    do {
+                        val w = stack.pop()
+                        onStack.remove(w)
+                        scc.add(w)
+                    } while (w != v)
+                    sccs.add(scc)
+                }
+            }
+            components.forEach { if (it !in indices) connect(it) }
+
+            val sccOf = HashMap<WorkspaceComponent, Int>()
+            sccs.forEachIndexed { i, scc -> scc.forEach { sccOf[it] = i } }
+            val sccDepths = IntArray(sccs.size)
+            sccs.indices.reversed().forEach { i ->
+                sccs[i].forEach { v ->
+                    successors[v]!!.forEach { w ->
+                        val j = sccOf[w]!!
+                        if (j != i) {
+                            sccDepths[j] = maxOf(sccDepths[j], sccDepths[i] + 1)
+                        }
+                    }
+                }
+            }
+            return components.associateWith { sccDepths[sccOf[it]!!] }
+        }
+    }
+}
@@ -23,6 +23,18 @@ abstract class UpdateAction(
 
 ) {
     abstract suspend fun run()
+
+    /**
+     * Called when a run of updates ends. Actions that defer work to later ticks, like [PipelinedUpdateAction],
+     * complete it here.
+     */
+    open suspend fun finish() {}
+
+    /**
+     * Called when the action is removed from the [UpdateActionManager], e.g. when the workspace is cleared. Actions
+     * that run background work, like [PipelinedUpdateAction], stop it here.
+     */
+    open fun close() {}
 }
 
 inline fun updateAction(description: String? = null, longDescription: String? = description, crossinline action: suspend () -> Unit): UpdateAction {
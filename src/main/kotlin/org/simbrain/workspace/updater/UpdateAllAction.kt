@@ -1,30 +1,33 @@
 package org.simbrain.workspace.updater
 
-import kotlinx.coroutines.async
-import kotlinx.coroutines.awaitAll
-import kotlinx.coroutines.coroutineScope
 import org.pmw.tinylog.Logger
 
 /**
  * This is the default action for all workspace updates.
  * First update couplings then update all the components.
  *
+ * Couplings are applied using the [org.simbrain.workspace.couplings.CouplingPlan] compiled by the coupling manager,
+ * so a component starts updating as soon as the couplings it participates in have been applied, while couplings
+ * between other components are still being transferred. Each component still sees the same values as if all
+ * couplings were applied before any component updated.
+ *
  * @author jyoshimi
  */
 class UpdateAllAction(@Transient val updater: WorkspaceUpdater) : UpdateAction(description = "Update All Components and Couplings") {
 
-    override suspend fun run(): Unit = coroutineScope {
-        val components = updater.components
-        updateCouplings()
-        components
-            .filter { it.updateOn }
-            .map {
-            async {
-               PerformanceMonitor.record("Updating Component ${it.name}") {
-                   it.update()
-               }
+    override suspend fun run() {
+        val components = updater.components.filter { it.updateOn }
+        updater.workspace.couplingManager.plan.run(
+            components,
+            onCouplingsUpdated = {
+                Logger.trace("couplings updated")
+                updater.events.couplingsUpdates.fire()
+            }
+        ) {
+            PerformanceMonitor.record("Updating Component ${it.name}") {
+                it.update()
             }
-        }.awaitAll()
+        }
     }
 
     /**
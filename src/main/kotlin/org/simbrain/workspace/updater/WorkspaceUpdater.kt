@@ -41,6 +41,18 @@ class WorkspaceUpdater(val workspace: Workspace) {
      */
     var time = 0
 
+    /**
+     * Time of the tick being processed by the calling code. This is [time], except in a stage of a
+     * [PipelinedUpdateAction] that is still processing an earlier tick, where it is that tick's time.
+     */
+    val tickTime: Int
+        get() = laggingTickTime.get() ?: time
+
+    /**
+     * Set while a pipeline stage processes a tick, for [tickTime].
+     */
+    internal val laggingTickTime = ThreadLocal<Int?>()
+
     /**
      * The update Manager.
      */
@@ -74,6 +86,7 @@ class WorkspaceUpdater(val workspace: Workspace) {
             while (isRunning) {
                 doUpdate()
             }
+            finishActions()
         }
         isRunning = false
         for (component in workspace.componentList) {
@@ -93,6 +106,7 @@ class WorkspaceUpdater(val workspace: Workspace) {
         events.runStarted.fire().await()
         withContext(workspace.coroutineContext) {
             doUpdate()
+            finishActions()
         }
         events.runFinished.fire().await()
         isRunning = false
@@ -109,6 +123,7 @@ class WorkspaceUpdater(val workspace: Workspace) {
         runBlocking {
             events.runStarted.fire().await()
             doUpdate()
+            finishActions()
             events.runFinished.fire().await()
         }
         isRunning = false
@@ -135,6 +150,7 @@ class WorkspaceUpdater(val workspace: Workspace) {
         repeat(numIterations) {
             doUpdate()
         }
+        finishActions()
         isRunning = false
         finishingTask()
         for (component in workspace.componentList) {
@@ -152,6 +168,7 @@ class WorkspaceUpdater(val workspace: Workspace) {
         do {
             doUpdate()
         } while (predicate())
+        finishActions()
         isRunning = false
         for (component in workspace.componentList) {
             component.isRunning = false
@@ -159,6 +176,17 @@ class WorkspaceUpdater(val workspace: Workspace) {
         events.runFinished.fire()
     }
 
+    /**
+     * Let actions complete any work deferred to later ticks.
+     */
+    private suspend fun finishActions() {
+        withContext(workspace.coroutineContext) {
+            for (action in updateManager.actionList + updateManager.nonRemovableActions) {
+                action.finish()
+            }
+        }
+    }
+
     /**
      * Executes the main workspace update.
      */
@@ -134,10 +134,24 @@ class OdorWorld : EditableObject, Bounded {
     var selectedLayer: TileMapLayer = tileMap.layers[0]
 
     /**
-     * Update world.
+     * Smell vectors of all smell sensors, computed once per update.
+     */
+    @Transient
+    var smellField = SmellField()
+        private set
+
+    /**
+     * Update world. All entities move first, then the smell field is computed from their new locations, then each
+     * entity updates its sensors and effectors.
      */
     suspend fun update() {
-        entityList.forEach(Consumer { obj: OdorWorldEntity -> obj.update() })
+        entityList.forEach(Consumer { obj: OdorWorldEntity -> obj.applyMovement() })
+        try {
+            smellField.update(entityList)
+            entityList.forEach(Consumer { obj: OdorWorldEntity -> obj.updateSensorsAndEffectors() })
+        } finally {
+            smellField.clear()
+        }
         events.updated.fire().await()
     }
 
@@ -364,6 +378,7 @@ class OdorWorld : EditableObject, Bounded {
      */
     private fun readResolve(): Any {
         events = OdorWorldEvents()
+        smellField = SmellField()
 
         entityList.forEach { entity ->
             entity.events.deleted.on { handleEntityDelete(it) }
@@ -0,0 +1,120 @@
+package org.simbrain.world.odorworld
+
+import org.simbrain.world.odorworld.entities.OdorWorldEntity
+import org.simbrain.world.odorworld.sensors.SmellSensor
+import java.util.*
+import kotlin.math.sqrt
+
+/**
+ * Computes the smell vectors of all the [SmellSensor]s in an [OdorWorld] in one pass per update, rather than having
+ * each sensor walk every entity on its own.
+ *
+ * Sensor and source locations are gathered into flat arrays and the distances between every sensor and every source
+ * computed together. Each source's stimulus vector and decay function are looked up once per pass, and sources
+ * that do not add noise skip sensors beyond the range of their decay function (see
+ * [org.simbrain.util.decayfunctions.DecayFunction.range]) without evaluating it. The results are written to each
+ * sensor's [SmellSensor.smellVector].
+ */
+class SmellField {
+
+    /**
+     * Sensors whose smell vector was set by the last call to [update].
+     */
+    private val computed = Collections.newSetFromMap(IdentityHashMap<SmellSensor, Boolean>())
+
+    /**
+     * True if [sensor]'s smell vector is current, in which case [SmellSensor.update] has nothing left to do.
+     */
+    fun isComputed(sensor: SmellSensor) = sensor in computed
+
+    /**
+     * Compute the smell vectors of the smell sensors on [entities] whose sensors are enabled, using the current
+     * locations of the entities. Each sensor smells every entity except the one it belongs to.
+     */
+    fun update(entities: List<OdorWorldEntity>) {
+        computed.clear()
+
+        val sensors = ArrayList<SmellSensor>()
+        val owners = ArrayList<Int>()
+        entities.forEachIndexed { index, entity ->
+            if (entity.isSensorsEnabled) {
+                entity.sensors.forEach {
+                    if (it is SmellSensor) {
+                        sensors.add(it)
+                        owners.add(index)
+                    }
+                }
+            }
+        }
+        if (sensors.isEmpty()) return
+
+        val sourceCount = entities.size
+        val sources = Array(sourceCount) { entities[it].smellSource }
+        val stimuli = Array(sourceCount) { sources[it].stimulusVector ?: DoubleArray(0) }
+        val decayFunctions = Array(sourceCount) { sources[it].decayFunction }
+        val noisy = BooleanArray(sourceCount) { sources[it].addNoise }
+        val rangesSquared = DoubleArray(sourceCount) { decayFunctions[it].range.let { r -> r * r } }
+        val sourceX = DoubleArray(sourceCount) { entities[it].location.x }
+        val sourceY = DoubleArray(sourceCount) { entities[it].location.y }
+
+        val sensorCount = sensors.size
+        val sensorX = DoubleArray(sensorCount)
+        val sensorY = DoubleArray(sensorCount)
+        sensors.forEachIndexed { i, sensor ->
+            val location = sensor.computeAbsoluteLocation(entities[owners[i]])
+            sensorX[i] = location.x
+            sensorY[i] = location.y
+        }
+
+        // Squared distances, row per sensor
+        val distancesSquared = DoubleArray(sensorCount * sourceCount)
+        for (i in 0 until sensorCount) {
+            val x = sensorX[i]
+            val y = sensorY[i]
+            val row = i * sourceCount
+            for (j in 0 until sourceCount) {
+                val dx = x - sourceX[j]
+                val dy = y - sourceY[j]
+                distancesSquared[row + j] = dx * dx + dy * dy
+            }
+        }
+
+        for (i in 0 until sensorCount) {
+            val sensor = sensors[i]
+            val owner = owners[i]
+            val row = i * sourceCount
+
+            // As when adding vectors of different lengths, the result is as long as the longest of them
+            var size = sensor.smellVector.size
+            for (j in 0 until sourceCount) {
+                if (j != owner && stimuli[j].size > size) size = stimuli[j].size
+            }
+            val smellVector = DoubleArray(size)
+
+            for (j in 0 until sourceCount) {
+                if (j == owner) continue // Don't smell yourself
+                val distanceSquared = distancesSquared[row + j]
+                if (noisy[j]) {
+                    // Noise is added even out of range
+                    val stimulus = sources[j].getStimulus(sqrt(distanceSquared))
+                    for (k in stimulus.indices) smellVector[k] += stimulus[k]
+                    continue
+                }
+                if (distanceSquared > rangesSquared[j]) continue
+                val scalingFactor = decayFunctions[j].getScalingFactor(sqrt(distanceSquared))
+                val stimulus = stimuli[j]
+                for (k in stimulus.indices) smellVector[k] += stimulus[k] * scalingFactor
+            }
+
+            sensor.smellVector = smellVector
+            computed.add(sensor)
+        }
+    }
+
+    /**
+     * Forget the last pass, so that sensors compute their own smell vectors until the next call to [update].
+     */
+    fun clear() {
+        computed.clear()
+    }
+}
@@ -197,6 +197,13 @@ class OdorWorldEntity @JvmOverloads constructor(
 
     fun update() {
         applyMovement()
+        updateSensorsAndEffectors()
+    }
+
+    /**
+     * Update sensors and then effectors, without moving. See [OdorWorld.update].
+     */
+    fun updateSensorsAndEffectors() {
         if (isSensorsEnabled) {
             sensors.forEach { it.update(this) }
         }
@@ -40,9 +40,12 @@ class SmellSensor @JvmOverloads constructor(
     var smellVector = DoubleArray(0)
 
     /**
-     * Update the smell vector by iterating over entities and adding up their distance-scaled smell vectors.
+     * Update the smell vector by iterating over entities and adding up their distance-scaled smell vectors. When the
+     * world has already computed it for this update (see [org.simbrain.world.odorworld.SmellField]) there is nothing
+     * to do.
      */
     override fun update(parent: OdorWorldEntity) {
+        if (parent.world.smellField.isComputed(this)) return
         smellVector = parent.world.entityList
             .filter { it != parent } // Don't smell yourself
             .map { Pair(it.smellSource, SimbrainMath.distance(it.location, computeAbsoluteLocation(parent))) }
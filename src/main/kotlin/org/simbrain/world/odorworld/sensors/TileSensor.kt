@@ -4,7 +4,6 @@ import org.simbrain.util.UserParameter
 import org.simbrain.util.decayfunctions.DecayFunction
 import org.simbrain.util.decayfunctions.LinearDecayFunction
 import org.simbrain.util.piccolo.*
-import org.simbrain.util.plus
 import org.simbrain.world.odorworld.entities.OdorWorldEntity
 
 /**
@@ -29,29 +28,25 @@ class TileSensor @JvmOverloads constructor(
      */
     @UserParameter(label = "Decay Function", showDetails = false, order = 15)
     override var decayFunction: DecayFunction = LinearDecayFunction(70.0)
-        set(value) {
-            field = value
-            relativeGridCoordinates = null // invalidate pre-computed grid coordinates
-        }
 
     /**
-     * Cached relative grid coordinates this sensor should check
+     * The decay function sampled at nearby tiles. Recreated when the tile type or decay function changes.
      */
-    private var relativeGridCoordinates: List<GridCoordinate>? = null
+    @Transient
+    private var kernel: ScentKernel? = null
 
     override var showDispersion = false
 
+    /**
+     * Reads the tile map's precomputed scent field for this sensor's tile type and decay function at the tile
+     * containing the sensor. Distances are measured from the center of that tile.
+     */
     override fun update(parent: OdorWorldEntity) {
-        currentValue = 0.0
         val sensorLocation = computeAbsoluteLocation(parent)
-        currentValue = with(parent.world.tileMap) {
-            getRelativeGridLocationsInRadius(decayFunction.dispersion)
-                .map { it + sensorLocation.asPixelCoordinate().toGridCoordinate() }
-                .map { it.asGridCoordinate() to getTileStackAt(it.x.toInt(), it.y.toInt()) }
-                .filter { (_, tiles) -> tiles.any { it.type == tileType } }
-                .map { (pos) -> pos.toPixelCoordinate().distance(sensorLocation) }
-                .sumOf { decayFunction.getScalingFactor(it) * baseValue }
-        }
+        val tileMap = parent.world.tileMap
+        val kernel = kernel?.takeIf { it.isFor(tileType, decayFunction) }
+            ?: ScentKernel.create(tileMap, tileType, decayFunction).also { kernel = it }
+        currentValue = baseValue * tileMap.getScentAtPixel(kernel, sensorLocation.x, sensorLocation.y)
     }
 
     override fun copy(): TileSensor {
@@ -40,6 +40,16 @@ class NetworkTimeTests {
         assertEquals(0.0, net.time)
     }
 
+    @Test
+    fun `iterations are counted exactly with a fractional time step`() {
+        net.timeStep = .1
+        // Ten additions of .1 sum to just under 1
+        repeat(10) {
+            net.update()
+        }
+        assertEquals(10, net.iterations)
+    }
+
     @Test
     fun `test custom time step`() {
         net.timeStep = .2
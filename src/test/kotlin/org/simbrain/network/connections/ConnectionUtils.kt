@@ -61,6 +61,59 @@ class ConnectionUtils {
         assertArrayEquals(syns1.toDoubleArray(), syns2.toDoubleArray())
     }
 
+    @Test
+    fun `createSynapses connects indexed pairs and skips existing connections`() {
+        val source = List(3) { Neuron() }
+        val target = List(2) { Neuron() }
+        val syns = createSynapses(
+            source,
+            target,
+            intArrayOf(0, 1, 2, 0),
+            intArrayOf(1, 1, 0, 1),
+            doubleArrayOf(0.5, -0.5, 0.25, 2.0)
+        )
+        assertEquals(3, syns.size)
+        assertEquals(listOf(0.5, -0.5, 0.25), syns.map { it.strength })
+        assertSame(source[1], syns[1].source)
+        assertSame(target[1], syns[1].target)
+        assertEquals(2, target[1].fanIn.size)
+        assertEquals(1, source[0].fanOut.size)
+    }
 
+    @Test
+    fun `synapses are removed from fan in whatever order they are deleted`() {
+        val net = Network()
+        val target = Neuron()
+        val source = List(50) { Neuron() }
+        val syns = createSynapses(source, listOf(target), IntArray(50) { it }, IntArray(50))
+        net.addNetworkModelsBulk(source + target + syns)
+        syns.shuffled(Random(1)).take(30).forEach { it.deleteBlocking() }
+        assertEquals(20, target.fanIn.size)
+        assertEquals(syns.filter { it in net.getModels<Synapse>() }.toSet(), target.fanIn.toSet())
+    }
+
+    @Test
+    fun `bulk added synapses get unique ids`() {
+        val net = Network()
+        val neurons = List(10) { Neuron() }
+        val syns = AllToAll().connectNeurons(neurons, neurons)
+        net.addNetworkModelsBulk(neurons + syns)
+        assertEquals(90, syns.map { it.id }.toSet().size)
+        assertEquals("Synapse_1", syns.first().id)
+        val extra = Synapse(neurons[0], neurons[0])
+        net.addNetworkModel(extra)
+        assertEquals("Synapse_91", extra.id)
+    }
+
+    @Test
+    fun `bulk added ids are saved before they are read`() {
+        val net = Network()
+        val neurons = List(10) { Neuron() }
+        val syns = AllToAll().connectNeurons(neurons, neurons)
+        net.addNetworkModelsBulk(neurons + syns)
+        val copy = net.copy()
+        assertEquals((1..90).map { "Synapse_$it" }.toSet(), copy.getModels<Synapse>().map { it.id }.toSet())
+        assertEquals((1..10).map { "Neuron_$it" }.toSet(), copy.getModels<Neuron>().map { it.id }.toSet())
+    }
 
-}
\ No newline at end of file
+}
@@ -177,4 +177,35 @@ class NetworkTest {
         // (2 in neuron collection are free neurons)
         Assertions.assertEquals(22, net.flatNeuronList.size)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testAddNetworkModelsBulk() {
+        val neurons = (1..200).map { Neuron() }
+        val synapses = neurons.zipWithNext { a, b -> Synapse(a, b) }
+        var batches = 0
+        var added = 0
+        net.events.modelsAdded.on(wait = true) { batches++; added += it.size }
+        runBlocking { net.addNetworkModelsBulk(synapses + neurons)?.await() }
+        Assertions.assertEquals(1, batches)
+        Assertions.assertEquals(399, added)
+        Assertions.assertEquals(202, net.freeNeurons.size)
+        Assertions.assertEquals(200, net.freeSynapses.size)
+        Assertions.assertEquals(399, (neurons + synapses).map { it.id }.toSet().size)
+
+        // Models are ordered by type, and neurons are added before the synapses that refer to them
+        val order = net.modelsInReconstructionOrder.map { updatingOrder(it) }
+        Assertions.assertEquals(order.sorted(), order)
+
+        // Deleted models are removed
+        synapses.take(50).forEach { it.deleteBlocking() }
+        Assertions.assertEquals(150, net.freeSynapses.size)
+        Assertions.assertFalse(synapses[0] in net.getModels<Synapse>())
+        Assertions.assertTrue(synapses[50] in net.getModels<Synapse>())
+    }
+
+    @Test
+    fun testModelsCanBeRemovedWhileIterating() {
+        net.getModels<Neuron>().forEach { it.deleteBlocking() }
+        Assertions.assertEquals(0, net.freeNeurons.size)
+    }
+}
@@ -0,0 +1,59 @@
+package org.simbrain.network.core
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.simbrain.network.spikeresponders.JumpAndDecay
+import org.simbrain.network.spikeresponders.StepResponder
+import org.simbrain.network.update_actions.EventDrivenUpdate
+import org.simbrain.network.updaterules.IntegrateAndFireRule
+import kotlin.random.Random
+
+class SpikeCalendarTest {
+
+    /**
+     * Build the same randomly connected integrate and fire network each time it is called.
+     */
+    private fun buildNetwork(eventDriven: Boolean): Pair<Network, List<Neuron>> {
+        val random = Random(3)
+        val net = Network()
+        val neurons = List(20) {
+            Neuron(IntegrateAndFireRule().apply { backgroundCurrent = random.nextDouble(15.0, 25.0) })
+        }
+        net.addNetworkModels(neurons)
+        for (source in neurons) {
+            for (target in neurons) {
+                if (source !== target && random.nextDouble() < .3) {
+                    net.addNetworkModel(Synapse(source, target).apply {
+                        strength = random.nextDouble(-2.0, 4.0)
+                        delay = random.nextInt(4)
+                        spikeResponder = if (random.nextDouble() < .1) StepResponder() else JumpAndDecay()
+                    })
+                }
+            }
+        }
+        if (eventDriven) {
+            net.updateManager.clear()
+            net.updateManager.addAction(EventDrivenUpdate(net))
+        }
+        return net to neurons
+    }
+
+    @Test
+    fun `event driven update matches buffered update`() {
+        val (bufferedNet, bufferedNeurons) = buildNetwork(false)
+        val (eventNet, eventNeurons) = buildNetwork(true)
+        var spikes = 0
+        repeat(200) {
+            bufferedNet.update()
+            eventNet.update()
+            bufferedNeurons.zip(eventNeurons).forEach { (b, e) ->
+                assertEquals(b.activation, e.activation, 1e-9)
+                assertEquals(with(bufferedNet) { b.isSpike }, with(eventNet) { e.isSpike })
+                if (with(eventNet) { e.isSpike }) spikes++
+            }
+        }
+        assertTrue(spikes > 0)
+    }
+
+}
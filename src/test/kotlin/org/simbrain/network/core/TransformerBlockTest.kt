@@ -0,0 +1,163 @@
+package org.simbrain.network.core
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.util.layerNorm
+import org.simbrain.util.relu
+import org.simbrain.util.stats.distributions.UniformRealDistribution
+import smile.math.matrix.Matrix
+import kotlin.math.exp
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class TransformerBlockTest {
+
+    val net = Network()
+
+    private val random = Random(1)
+
+    private fun block() = TransformerBlock(6, 4, 8).apply {
+        randomize(UniformRealDistribution(-1.0, 1.0))
+    }
+
+    private fun randomRow() = DoubleArray(4) { random.nextDouble(-1.0, 1.0) }
+
+    private fun TransformerBlock.updateWith(rows: List<DoubleArray>) {
+        inputs.copyFrom(Matrix.of(rows.toTypedArray()))
+        with(net) { update() }
+    }
+
+    @Test
+    fun `full update matches matrix form`() {
+        val block = block()
+        val x = Matrix.of(Array(6) { randomRow() })
+        block.updateWith((0 until 6).map { x.row(it) })
+
+        val q = x.mm(block.Q)
+        val k = x.mm(block.K)
+        val v = x.mm(block.V)
+        val scores = q.mm(k.transpose()).div(sqrt(4.0))
+        val attention = Matrix.of(Array(6) { i ->
+            val row = scores.row(i)
+            val max = row.maxOf { it }
+            val e = row.map { exp(it - max) }
+            e.map { it / e.sum() }.toDoubleArray()
+        })
+        val ffIn = x.clone().add(attention.mm(v)).layerNorm()
+        val hidden = ffIn.mm(block.W1).add(block.b1).relu()
+        val expected = ffIn.clone().add(hidden.mm(block.W2).add(block.b2)).layerNorm()
+
+        for (i in 0 until 6) {
+            for (j in 0 until 4) {
+                assertEquals(expected[i, j], block.activations[i, j], 1e-12)
+            }
+        }
+    }
+
+    @Test
+    fun `cached update matches full causal recompute`() {
+        for (heads in listOf(1, 2)) {
+            cachedMatchesFull(block().apply {
+                headCount = heads
+                cachedInference = true
+            })
+        }
+    }
+
+    private fun cachedMatchesFull(block: TransformerBlock) {
+        val window = MutableList(6) { randomRow() }
+        block.updateWith(window)
+
+        repeat(5) {
+            window.removeAt(0)
+            window.add(randomRow())
+            block.updateWith(window)
+
+            val fresh = block.copy()
+            fresh.updateWith(window)
+            for (i in 0 until 6) {
+                for (j in 0 until 4) {
+                    assertEquals(fresh.activations[i, j], block.activations[i, j], 1e-10)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `batched forward matches update for each sequence`() {
+        for (heads in listOf(1, 2, 4)) {
+            for (isCausal in listOf(false, true)) {
+                val block = block().apply {
+                    headCount = heads
+                    causal = isCausal
+                }
+                val sequences = List(3) { Matrix.of(Array(6) { randomRow() }) }
+                val outputs = block.forward(sequences)
+                sequences.forEachIndexed { s, sequence ->
+                    block.updateWith((0 until 6).map { sequence.row(it) })
+                    for (i in 0 until 6) {
+                        for (j in 0 until 4) {
+                            assertEquals(block.activations[i, j], outputs[s][i, j], 1e-12)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `causal first position attends only to itself`() {
+        val block = block().apply {
+            headCount = 2
+            causal = true
+        }
+        block.updateWith(List(6) { randomRow() })
+        assertEquals(1.0, block.selfAttention[0, 0], 1e-12)
+        for (t in 1 until 6) {
+            assertEquals(0.0, block.selfAttention[0, t])
+        }
+    }
+
+    @Test
+    fun `blocks saved before heads load with one head`() {
+        val block = block()
+        TransformerBlock::class.java.getDeclaredField("headCount").apply {
+            isAccessible = true
+            setInt(block, 0)
+        }
+        block.readResolve()
+        assertEquals(1, block.headCount)
+    }
+
+    @Test
+    fun `cached update leaves unchanged inputs alone`() {
+        val block = block().apply { cachedInference = true }
+        val window = List(6) { randomRow() }
+        block.updateWith(window)
+        val before = block.activations.clone()
+        block.updateWith(window)
+        for (i in 0 until 6) {
+            for (j in 0 until 4) {
+                assertEquals(before[i, j], block.activations[i, j])
+            }
+        }
+    }
+
+    @Test
+    fun `cached update sees weights edited in place`() {
+        val block = block().apply { cachedInference = true }
+        val window = List(6) { randomRow() }
+        block.updateWith(window)
+        block.K[0, 0] += 1.0
+        block.W1.copyFrom(block().W1)
+        block.updateWith(window)
+
+        val fresh = block.copy()
+        fresh.updateWith(window)
+        for (i in 0 until 6) {
+            for (j in 0 until 4) {
+                assertEquals(fresh.activations[i, j], block.activations[i, j], 1e-12)
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.simbrain.network.matrix
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.network.subnetworks.BackpropNetwork
+import org.simbrain.network.trainers.MatrixDataset
+import org.simbrain.network.trainers.tar
+import org.simbrain.network.updaterules.SigmoidalRule
+import org.simbrain.util.math.SigmoidFunctionEnum
+import smile.math.matrix.Matrix
+import kotlin.math.abs
+import kotlin.random.Random
+
+class PrecisionTest {
+
+    private fun makeNetwork(precision: Network.Precision, weights: Matrix, input: DoubleArray): Pair<Network, NeuronArray> {
+        val net = Network().also { it.precision = precision }
+        val inputs = NeuronArray(weights.ncol()).apply {
+            setActivations(input)
+            isClamped = true
+        }
+        val outputs = NeuronArray(weights.nrow()).apply {
+            updateRule = SigmoidalRule().apply { type = SigmoidFunctionEnum.TANH }
+            biases = Matrix(weights.nrow(), 1)
+        }
+        val wm = WeightMatrix(inputs, outputs)
+        wm.setMatrixValues(weights)
+        net.addNetworkModels(inputs, outputs, wm)
+        return net to outputs
+    }
+
+    @Test
+    fun `single precision activations stay close to double precision`() {
+        val random = Random(1)
+        val weights = Matrix.of(Array(100) { DoubleArray(300) { random.nextDouble(-0.1, 0.1) } })
+        val input = DoubleArray(300) { random.nextDouble(-1.0, 1.0) }
+        val (doubleNet, doubleOutputs) = makeNetwork(Network.Precision.DOUBLE, weights, input)
+        val (singleNet, singleOutputs) = makeNetwork(Network.Precision.SINGLE, weights, input)
+        repeat(3) {
+            doubleNet.update()
+            singleNet.update()
+        }
+        val expected = doubleOutputs.activationArray
+        val actual = singleOutputs.activationArray
+        for (i in expected.indices) {
+            assertEquals(expected[i], actual[i], 1e-5)
+            assertEquals(actual[i], actual[i].toFloat().toDouble())
+        }
+    }
+
+    @Test
+    fun `single precision products see changed weights`() {
+        val (net, outputs) = makeNetwork(Network.Precision.SINGLE, Matrix.eye(2), doubleArrayOf(0.5, -0.25))
+        net.update()
+        val wm = outputs.incomingConnectors.first() as WeightMatrix
+        assertArrayEquals(doubleArrayOf(0.5, -0.25), wm.getSummedPSRs(), 0.0)
+        wm.setWeights(doubleArrayOf(0.0, 1.0, 1.0, 0.0))
+        net.update()
+        assertArrayEquals(doubleArrayOf(-0.25, 0.5), wm.getSummedPSRs(), 0.0)
+    }
+
+    @Test
+    fun `single precision products see weights set from a 2d array`() {
+        val (net, outputs) = makeNetwork(Network.Precision.SINGLE, Matrix.eye(2), doubleArrayOf(0.5, -0.25))
+        net.update()
+        val wm = outputs.incomingConnectors.first() as WeightMatrix
+        val before = outputs.activationArray
+        wm.setWeights(arrayOf(doubleArrayOf(0.0, 1.0), doubleArrayOf(1.0, 0.0)))
+        net.update()
+        assertArrayEquals(doubleArrayOf(-0.25, 0.5), wm.getSummedPSRs(), 0.0)
+        assertArrayEquals(doubleArrayOf(before[1], before[0]), outputs.activationArray, 0.0)
+    }
+
+    @Test
+    fun `single precision backprop error stays close to double precision`() {
+        val errors = Network.Precision.values().map { precision ->
+            val net = Network().also { it.precision = precision }
+            val bp = BackpropNetwork(intArrayOf(10, 8, 10), null).apply {
+                trainingSet = MatrixDataset(inputs = Matrix.eye(10), targets = Matrix.eye(10))
+                outputLayer.updateRule = SigmoidalRule().apply { type = SigmoidFunctionEnum.LOGISTIC }
+                trainer.learningRate = 0.04
+            }
+            net.addNetworkModels(bp)
+            val random = Random(2)
+            bp.wmList.forEach { wm ->
+                wm.setWeights(DoubleArray(wm.weightMatrix.size().toInt()) { random.nextDouble(-0.5, 0.5) })
+                wm.tar.biases = Matrix(wm.tar.size, 1)
+            }
+            with(net) {
+                with(bp) {
+                    runBlocking {
+                        repeat(200) {
+                            trainer.trainOnce()
+                        }
+                    }
+                }
+            }
+            bp.trainer.lastError
+        }
+        assertEquals(errors[0], errors[1], abs(errors[0]) * 1e-3)
+    }
+}
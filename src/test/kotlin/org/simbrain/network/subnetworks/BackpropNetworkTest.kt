@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.getModelByLabel
 import org.simbrain.network.core.getNetworkXStream
+import org.simbrain.network.trainers.tar
 import org.simbrain.network.trainers.MatrixDataset
 import org.simbrain.network.trainers.SupervisedTrainer.UpdateMethod
 import org.simbrain.network.updaterules.SigmoidalRule
@@ -69,6 +70,93 @@ class BackpropNetworkTest {
 
     }
 
+    @Test
+    fun `parallel shards match sequential training`() {
+        parallelMatchesSequential(1e-9)
+    }
+
+    @Test
+    fun `parallel shards match sequential training in single precision`() {
+        net.precision = Network.Precision.SINGLE
+        // Summing the shards in a different order can move activations by a float rounding step
+        parallelMatchesSequential(1e-6)
+    }
+
+    private fun parallelMatchesSequential(tolerance: Double) {
+        val parallelBp = BackpropNetwork(intArrayOf(10,8,10), null).apply {
+            trainingSet = bp.trainingSet
+            outputLayer.updateRule = SigmoidalRule().apply {
+                type = SigmoidFunctionEnum.LOGISTIC
+            }
+            trainer.parallelShards = 3
+        }
+        net.addNetworkModels(parallelBp)
+        bp.wmList.zip(parallelBp.wmList).forEach { (wm, copy) ->
+            copy.weightMatrix.copyFrom(wm.weightMatrix)
+            copy.tar.biases.copyFrom(wm.tar.biases)
+        }
+        listOf(bp, parallelBp).forEach { network ->
+            network.trainer.learningRate = 0.04
+            with(net) {
+                with(network) {
+                    runBlocking {
+                        repeat(20) {
+                            trainer.trainOnce()
+                        }
+                    }
+                }
+            }
+        }
+        Assertions.assertEquals(bp.trainer.lastError, parallelBp.trainer.lastError, tolerance)
+        bp.wmList.zip(parallelBp.wmList).forEach { (wm, copy) ->
+            for (i in 0 until wm.weightMatrix.nrow()) {
+                for (j in 0 until wm.weightMatrix.ncol()) {
+                    Assertions.assertEquals(wm.weightMatrix[i, j], copy.weightMatrix[i, j], tolerance)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `parallel training with a noisy layer is reproducible`() {
+        fun train(): List<Matrix> {
+            val network = Network().apply { randomSeed = 1 }
+            val noisyBp = BackpropNetwork(intArrayOf(10,8,10), null).apply {
+                trainingSet = bp.trainingSet
+                wmList.first().tar.updateRule = SigmoidalRule().apply { addNoise = true }
+                outputLayer.updateRule = SigmoidalRule().apply {
+                    type = SigmoidFunctionEnum.LOGISTIC
+                }
+                trainer.parallelShards = 3
+                trainer.learningRate = 0.04
+            }
+            network.addNetworkModels(noisyBp)
+            noisyBp.wmList.zip(bp.wmList).forEach { (wm, source) ->
+                wm.weightMatrix.copyFrom(source.weightMatrix)
+                wm.tar.biases.copyFrom(source.tar.biases)
+            }
+            with(network) {
+                with(noisyBp) {
+                    runBlocking {
+                        repeat(20) {
+                            trainer.trainOnce()
+                        }
+                    }
+                }
+            }
+            return noisyBp.wmList.map { it.weightMatrix }
+        }
+        val first = train()
+        val second = train()
+        first.zip(second).forEach { (a, b) ->
+            for (i in 0 until a.nrow()) {
+                for (j in 0 until a.ncol()) {
+                    Assertions.assertEquals(a[i, j], b[i, j])
+                }
+            }
+        }
+    }
+
     @Test
     fun `test backprop network serialization`() {
         val xmlRep = getNetworkXStream().toXML(net)
@@ -0,0 +1,115 @@
+package org.simbrain.network.subnetworks
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.network.core.getModelByLabel
+import org.simbrain.network.core.getNetworkXStream
+import org.simbrain.network.subnetworks.Hopfield.HopfieldUpdate
+import org.simbrain.util.toDoubleArray
+import smile.math.matrix.Matrix
+import kotlin.random.Random
+
+class HopfieldArrayNetworkTest {
+
+    val net = Network()
+    val hopfield = HopfieldArrayNetwork(64).apply {
+        label = "Hopfield"
+    }
+
+    val patterns = Random(1).let { random -> Matrix.of(Array(2) { DoubleArray(64) { random.nextInt(2).toDouble() } }) }
+
+    init {
+        net.addNetworkModels(hopfield)
+        hopfield.inputData = patterns
+    }
+
+    private fun recall(update: HopfieldUpdate): DoubleArray {
+        with(net) { hopfield.trainOnInputData() }
+        hopfield.updateFunc = update
+        // Flip a few units of the first pattern
+        val corrupted = patterns.row(0).also { p -> (0 until 5).forEach { p[it] = 1 - p[it] } }
+        hopfield.neuronArray.setActivations(corrupted)
+        repeat(5) { with(net) { hopfield.update() } }
+        return hopfield.neuronArray.activations.toDoubleArray()
+    }
+
+    @Test
+    fun `stored patterns are recalled with asynchronous updates`() {
+        assertArrayEquals(patterns.row(0), recall(HopfieldUpdate.RAND))
+    }
+
+    @Test
+    fun `stored patterns are recalled with sequential updates`() {
+        assertArrayEquals(patterns.row(0), recall(HopfieldUpdate.SEQ))
+    }
+
+    @Test
+    fun `bulk storage matches storing one pattern at a time`() {
+        hopfield.storePatterns(patterns)
+        val other = HopfieldArrayNetwork(64)
+        net.addNetworkModels(other)
+        (0 until patterns.nrow()).forEach {
+            other.neuronArray.setActivations(patterns.row(it))
+            with(net) { other.trainOnCurrentPattern() }
+        }
+        assertArrayEquals(other.weights.weights, hopfield.weights.weights)
+        assertEquals(0.0, hopfield.weights.weightMatrix[3, 3])
+    }
+
+    @Test
+    fun `energy does not increase during asynchronous updates`() {
+        with(net) { hopfield.trainOnInputData() }
+        hopfield.neuronArray.setActivations(DoubleArray(64) { if (it % 3 == 0) 1.0 else 0.0 })
+        var energy = hopfield.energy
+        repeat(5) {
+            with(net) { hopfield.update() }
+            Assertions.assertTrue(hopfield.energy <= energy + 1e-9)
+            energy = hopfield.energy
+        }
+    }
+
+    @Test
+    fun `external input affects the next state`() {
+        for (update in HopfieldUpdate.values()) {
+            hopfield.updateFunc = update
+            hopfield.neuronArray.setActivations(DoubleArray(64))
+            hopfield.neuronArray.addInputs(Matrix.column(DoubleArray(64) { if (it == 3) 1.0 else 0.0 }))
+            with(net) { hopfield.update() }
+            assertArrayEquals(DoubleArray(64) { if (it == 3) 1.0 else 0.0 }, hopfield.neuronArray.activationArray)
+            // Input is cleared after the update
+            with(net) { hopfield.update() }
+            assertEquals(0.0, hopfield.neuronArray.activationArray.sum())
+        }
+    }
+
+    @Test
+    fun `input from a connected layer cues a stored pattern`() {
+        with(net) { hopfield.trainOnInputData() }
+        hopfield.updateFunc = HopfieldUpdate.SYNC
+        val cue = NeuronArray(64).apply {
+            setActivations(patterns.row(0).map { it * 2 - 1 }.toDoubleArray())
+            isClamped = true
+        }
+        val cueWeights = WeightMatrix(cue, hopfield.neuronArray).apply { setMatrixValues(Matrix.eye(64)) }
+        net.addNetworkModels(cue, cueWeights)
+        hopfield.neuronArray.setActivations(DoubleArray(64))
+        with(net) {
+            hopfield.accumulateInputs()
+            hopfield.update()
+        }
+        assertArrayEquals(patterns.row(0), hopfield.neuronArray.activationArray)
+    }
+
+    @Test
+    fun `test hopfield array serialization`() {
+        val xmlRep = getNetworkXStream().toXML(net)
+        val fromXml = getNetworkXStream().fromXML(xmlRep) as Network
+        Assertions.assertNotNull(fromXml.getModelByLabel(HopfieldArrayNetwork::class.java, "Hopfield"))
+    }
+
+}
@@ -1,10 +1,13 @@
 package org.simbrain.network.subnetworks
 
 import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.getModelByLabel
 import org.simbrain.network.core.getNetworkXStream
+import org.simbrain.network.trainers.ContrastiveDivergenceTrainer
+import smile.math.matrix.Matrix
 
 class RBMTest {
 
@@ -24,4 +27,34 @@ class RBMTest {
         Assertions.assertNotNull(fromXml.getModelByLabel(RestrictedBoltzmannMachine::class.java, "RBM"))
     }
 
-}
\ No newline at end of file
+    private fun reconstructionErrors(persistent: Boolean): Pair<Double, Double> {
+        val network = Network().apply { randomSeed = 1 }
+        val machine = RestrictedBoltzmannMachine(8, 4)
+        network.addNetworkModels(machine)
+        machine.inputData = Matrix.of(Array(40) { row ->
+            DoubleArray(8) { col -> if ((col < 4) == (row % 2 == 0)) 1.0 else 0.0 }
+        })
+        val trainer = machine.trainer as ContrastiveDivergenceTrainer
+        trainer.learningRate = 0.1
+        trainer.batchSize = 5
+        trainer.persistent = persistent
+        return with(network) {
+            val first = trainer.trainEpoch(machine)
+            repeat(200) { trainer.trainEpoch(machine) }
+            first to trainer.reconstructionError
+        }
+    }
+
+    @Test
+    fun `contrastive divergence reduces reconstruction error`() {
+        val (first, last) = reconstructionErrors(persistent = false)
+        assertTrue(last < first)
+    }
+
+    @Test
+    fun `persistent contrastive divergence reduces reconstruction error`() {
+        val (first, last) = reconstructionErrors(persistent = true)
+        assertTrue(last < first)
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.simbrain.network.subnetworks
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.getModelByLabel
+import org.simbrain.network.core.getNetworkXStream
+import smile.math.matrix.Matrix
+import kotlin.random.Random
+
+class SOMArrayNetworkTest {
+
+    val net = Network()
+    val som = SOMArrayNetwork(40, 6, 5).apply {
+        label = "SOM Array"
+    }
+
+    init {
+        net.addNetworkModels(som)
+    }
+
+    private fun bruteForceWinner(input: DoubleArray): Int {
+        val weights = som.prototypes.weightMatrix
+        return (0 until som.numUnits).minBy { i ->
+            input.indices.sumOf { j -> (weights[i, j] - input[j]).let { it * it } }
+        }
+    }
+
+    private fun quantizationError(inputs: Matrix) = (0 until inputs.nrow()).sumOf { row ->
+        som.findWinner(inputs.row(row))
+        som.winDistance
+    }
+
+    @Test
+    fun `test som array structure`() {
+        assertEquals(30, som.numUnits)
+        assertEquals(40, som.inputLayer.size)
+        assertEquals(30, som.somLayer.size)
+        assertEquals(30, som.prototypes.weightMatrix.nrow())
+        assertEquals(40, som.prototypes.weightMatrix.ncol())
+    }
+
+    @Test
+    fun `winner search matches brute force`() {
+        val random = Random(1)
+        repeat(50) {
+            val input = DoubleArray(40) { random.nextDouble(-1.0, 1.0) }
+            assertEquals(bruteForceWinner(input), som.findWinner(input))
+        }
+    }
+
+    @Test
+    fun `online training sets the winner and decays parameters`() {
+        with(net) {
+            som.trainOnCurrentPattern()
+        }
+        assertEquals(1.0, som.somLayer.activations.sum())
+        assertEquals(1.0, som.somLayer.activations[som.winner, 0])
+        assertTrue(som.learningRate < som.initialLearningRate)
+        assertTrue(som.neighborhoodRadius < som.initialNeighborhoodRadius)
+        som.reset()
+        assertEquals(som.initialLearningRate, som.learningRate)
+    }
+
+    @Test
+    fun `batch training reduces quantization error`() {
+        val random = Random(2)
+        val inputs = Matrix.of(Array(100) { DoubleArray(40) { random.nextDouble() } })
+        val before = quantizationError(inputs)
+        with(net) {
+            repeat(5) { som.trainBatchEpoch(inputs) }
+        }
+        assertTrue(quantizationError(inputs) < before)
+    }
+
+    @Test
+    fun `test som array serialization`() {
+        val xmlRep = getNetworkXStream().toXML(net)
+        val fromXml = getNetworkXStream().fromXML(xmlRep) as Network
+        val deserialized = fromXml.getModelByLabel(SOMArrayNetwork::class.java, "SOM Array")
+        Assertions.assertNotNull(deserialized)
+        val input = DoubleArray(40) { it / 40.0 }
+        assertEquals(som.findWinner(input), deserialized.findWinner(input))
+    }
+
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.getModelByLabel
 import org.simbrain.network.core.getNetworkXStream
+import org.simbrain.network.trainers.MatrixDataset
+import smile.math.matrix.Matrix
 
 class SRNTest {
 
@@ -32,6 +34,47 @@ class SRNTest {
         }
     }
 
+    @Test
+    fun `truncated BPTT learns`() {
+        with(net) {
+            srn.randomize()
+            srn.trainer.learningRate = 0.02
+            srn.trainer.truncatedBPTT = true
+            runBlocking {
+                srn.trainer.run { srn.train(10000) }
+            }
+            assert(srn.trainer.lastError < 0.1) { "Error too high: ${srn.trainer.lastError}" }
+        }
+    }
+
+    @Test
+    fun `truncated BPTT uses the context to predict a sequence`() {
+        // 0 1 0 2 0 1 0 2 ...: what follows 0 depends on what came before it
+        val sequence = IntArray(401) { if (it % 2 == 0) 0 else if (it % 4 == 1) 1 else 2 }
+        val sequenceSrn = SRNNetwork(3, 8, 3).apply {
+            trainingSet = MatrixDataset(
+                Matrix.of(Array(400) { t -> DoubleArray(3) { if (it == sequence[t]) 1.0 else 0.0 } }),
+                Matrix.of(Array(400) { t -> DoubleArray(3) { if (it == sequence[t + 1]) 1.0 else 0.0 } })
+            )
+            trainer.truncatedBPTT = true
+            trainer.bpttSteps = 4
+            trainer.bpttStreams = 8
+            trainer.learningRate = 0.01
+        }
+        net.addNetworkModels(sequenceSrn)
+        with(net) {
+            runBlocking {
+                sequenceSrn.trainer.run { sequenceSrn.train(1) }
+                val initialError = sequenceSrn.trainer.lastError
+                sequenceSrn.trainer.run { sequenceSrn.train(2000) }
+                // Without the context the best possible mean error is 0.25
+                assert(sequenceSrn.trainer.lastError < minOf(initialError, 0.25)) {
+                    "Error too high: ${sequenceSrn.trainer.lastError}"
+                }
+            }
+        }
+    }
+
     @Test
     fun `test SRN serialization`() {
         val xmlRep = getNetworkXStream().toXML(net)
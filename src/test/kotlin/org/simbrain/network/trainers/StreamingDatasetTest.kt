@@ -0,0 +1,88 @@
+package org.simbrain.network.trainers
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.simbrain.network.core.Network
+import org.simbrain.network.subnetworks.BackpropNetwork
+import org.simbrain.network.updaterules.SigmoidalRule
+import org.simbrain.util.math.SigmoidFunctionEnum
+import smile.math.matrix.Matrix
+import java.io.File
+
+class StreamingDatasetTest {
+
+    @TempDir
+    lateinit var dir: File
+
+    @Test
+    fun `each epoch visits every row once in a new order`() {
+        val inputs = Matrix.of(Array(103) { doubleArrayOf(it.toDouble(), -it.toDouble()) })
+        val targets = Matrix.of(Array(103) { doubleArrayOf(it * 10.0) })
+        val file = File(dir, "rows.bin")
+        StreamingDataset.write(inputs, targets, file)
+        StreamingDataset(file, 2, 1, batchSize = 10, seed = 1).use { dataset ->
+            assertEquals(103, dataset.size)
+            val epochs = List(2) { mutableListOf<Int>() }
+            repeat(22) {
+                dataset.nextBatch().use { batch ->
+                    assertEquals(if (it % 11 == 10) 3 else 10, batch.size)
+                    for (i in 0 until batch.size) {
+                        val row = batch.input(i)[0].toInt()
+                        assertEquals(-row.toDouble(), batch.input(i)[1])
+                        assertEquals(row * 10.0, batch.target(i)[0])
+                        epochs[batch.epoch].add(row)
+                    }
+                }
+            }
+            epochs.forEach { assertEquals((0 until 103).toList(), it.sorted()) }
+            assertNotEquals(epochs[0], epochs[1])
+        }
+    }
+
+    @Test
+    fun `shuffled rows that are adjacent in the file are not evenly spaced`() {
+        val inputs = Matrix.of(Array(103) { doubleArrayOf(it.toDouble()) })
+        val file = File(dir, "rows.bin")
+        StreamingDataset.write(inputs, Matrix(103, 1), file)
+        StreamingDataset(file, 1, 1, batchSize = 103, seed = 1).use { dataset ->
+            val positions = IntArray(103)
+            dataset.nextBatch().use { batch ->
+                for (i in 0 until batch.size) {
+                    positions[batch.input(i)[0].toInt()] = i
+                }
+            }
+            // An affine order puts every row the same distance after the row before it in the file
+            val gaps = (1 until 103).map { Math.floorMod(positions[it] - positions[it - 1], 103) }.toSet()
+            assertTrue(gaps.size > 10) { "Gaps: $gaps" }
+        }
+    }
+
+    @Test
+    fun `backprop trains from a streaming dataset`() {
+        val file = File(dir, "eye.bin")
+        StreamingDataset.write(Matrix.eye(10), Matrix.eye(10), file)
+        val net = Network()
+        val bp = BackpropNetwork(intArrayOf(10, 8, 10), null).apply {
+            outputLayer.updateRule = SigmoidalRule().apply {
+                type = SigmoidFunctionEnum.LOGISTIC
+            }
+        }
+        net.addNetworkModels(bp)
+        bp.trainer.learningRate = 0.04
+        StreamingDataset(file, 10, 10, batchSize = 10).use { dataset ->
+            bp.trainer.streamingDataset = dataset
+            with(net) {
+                with(bp) {
+                    runBlocking {
+                        repeat(1000) {
+                            trainer.trainOnce()
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(bp.trainer.lastError < 0.1) { "Error: ${bp.trainer.lastError}" }
+    }
+}
@@ -1,12 +1,15 @@
 package org.simbrain.plot
 
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.simbrain.network.NetworkComponent
 import org.simbrain.network.core.Network
 import org.simbrain.network.neurongroups.NeuronGroup
 import org.simbrain.plot.histogram.HistogramComponent
 import org.simbrain.plot.histogram.HistogramModel
+import org.simbrain.plot.histogram.OverwritableHistogramDataset
+import kotlin.random.Random
 import org.simbrain.workspace.Workspace
 
 
@@ -41,8 +44,8 @@ class HistogramTest {
     fun `test equal inputs produce one bin of height 2`() {
         ng.activationArray = doubleArrayOf(2.0, 2.0)
         workspace.simpleIterate()
-        assertEquals(1, histogram.seriesData.first().data.count{
-            it.count == 2
+        assertEquals(1, histogram.seriesData.first().counts.count {
+            it == 2
         })
     }
 
@@ -50,11 +53,56 @@ class HistogramTest {
     fun `test unequal inputs produce two bins of height 1`() {
         ng.activationArray = doubleArrayOf(1.0, 2.0)
         workspace.simpleIterate()
-        assertEquals(2, histogram.seriesData.first().data.count{
-            it.count == 1
+        assertEquals(2, histogram.seriesData.first().counts.count {
+            it == 1
         })
     }
 
-}
+    @Test
+    fun `counts match a direct count as the values change`() {
+        val dataset = OverwritableHistogramDataset()
+        val random = Random(1)
+        val values = DoubleArray(10_000)
+        repeat(5) { step ->
+            values.indices.forEach { values[it] = random.nextDouble() * (step + 1) }
+            dataset.resetData(listOf("weights"), listOf(values), 20)
+            assertEquals(values.size, dataset.dataSeries.first().counts.sum())
+            (0 until 20).forEach { bin ->
+                val start = dataset.getStartX(0, bin).toDouble()
+                val end = dataset.getEndX(0, bin).toDouble()
+                val expected = values.count { it >= start && it < end || bin == 19 && it == end }
+                assertEquals(expected, dataset.getY(0, bin).toInt())
+            }
+        }
+    }
 
+    @Test
+    fun `values outside a fixed range are counted in the end bins`() {
+        val dataset = OverwritableHistogramDataset()
+        dataset.setFixedRange(0.0, 10.0)
+        dataset.resetData(listOf("data"), listOf(doubleArrayOf(-5.0, 0.5, 9.5, 15.0)), 10)
+        assertEquals(listOf(2, 0, 0, 0, 0, 0, 0, 0, 0, 2), dataset.dataSeries.first().counts.toList())
+        assertEquals(0.0, dataset.getStartX(0, 0))
+        assertEquals(10.0, dataset.getEndX(0, 9))
+    }
 
+    @Test
+    fun `sampled counts are scaled to the number of values`() {
+        val dataset = OverwritableHistogramDataset()
+        dataset.sampleSize = 1000
+        // Skewed values, so that bins have very different heights
+        val random = Random(1)
+        val values = DoubleArray(100_000) { random.nextDouble().let { it * it } }
+        dataset.resetData(listOf("data"), listOf(values), 10)
+        assertTrue(dataset.dataSeries.first().counts.sum() <= 1000)
+        val total = (0 until 10).sumOf { dataset.getY(0, it).toDouble() }
+        assertEquals(values.size.toDouble(), total, 1e-6)
+        (0 until 10).forEach { bin ->
+            val start = dataset.getStartX(0, bin).toDouble()
+            val end = dataset.getEndX(0, bin).toDouble()
+            val expected = values.count { it >= start && it < end || bin == 9 && it == end }
+            assertEquals(expected.toDouble(), dataset.getY(0, bin).toDouble(), 0.05 * values.size)
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.simbrain.plot
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import kotlin.math.sin
+import kotlin.random.Random
+
+class RingBufferXYDatasetTest {
+
+    @Test
+    fun `oldest points are dropped past the maximum item count`() {
+        val series = RingBufferSeries("test").apply { maximumItemCount = 100 }
+        repeat(250) { series.add(it.toDouble(), it * 2.0) }
+        assertEquals(100, series.itemCount)
+        assertEquals(150.0, series.getX(0))
+        assertEquals(498.0, series.getY(99))
+        assertEquals(300.0, series.minY)
+        assertEquals(498.0, series.maxY)
+    }
+
+    @Test
+    fun `range minimum and maximum match a direct scan`() {
+        val random = Random(1)
+        val series = RingBufferSeries("test").apply { maximumItemCount = 3000 }
+        repeat(5000) { series.add(it.toDouble(), if (it % 97 == 0) Double.NaN else random.nextDouble()) }
+        repeat(50) {
+            val from = random.nextInt(series.itemCount)
+            val to = random.nextInt(from, series.itemCount + 1)
+            val values = (from until to).map { series.getY(it) }.filterNot { it.isNaN() }
+            val (min, max) = series.findMinMax(from, to)
+            assertEquals(values.minOrNull() ?: Double.NaN, min)
+            assertEquals(values.maxOrNull() ?: Double.NaN, max)
+        }
+    }
+
+    @Test
+    fun `decimated view has about two points per column and keeps extremes`() {
+        val dataset = RingBufferXYDataset()
+        val series = RingBufferSeries("test")
+        dataset.addSeries(series)
+        repeat(1_000_000) { series.add(it.toDouble(), sin(it / 1000.0)) }
+        series.add(1_000_000.0, 5.0)
+        dataset.setView(Double.NaN, Double.NaN, 500)
+        val count = dataset.getItemCount(0)
+        assertTrue(count <= 1002)
+        val ys = (0 until count).map { dataset.getYValue(0, it) }
+        assertEquals(5.0, ys.max())
+        assertEquals(series.minY, ys.min())
+        assertEquals(0.0, dataset.getXValue(0, 0))
+        assertEquals(1_000_000.0, dataset.getXValue(0, count - 1))
+    }
+
+    @Test
+    fun `short series are shown without decimation`() {
+        val dataset = RingBufferXYDataset()
+        val series = RingBufferSeries("test")
+        dataset.addSeries(series)
+        repeat(100) { series.add(it.toDouble(), it.toDouble()) }
+        dataset.setView(Double.NaN, Double.NaN, 500)
+        assertEquals(100, dataset.getItemCount(0))
+        series.clear()
+        assertEquals(0, dataset.getItemCount(0))
+        assertNull(dataset.getRangeBounds(false))
+    }
+}
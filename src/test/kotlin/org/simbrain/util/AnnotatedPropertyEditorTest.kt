@@ -87,4 +87,25 @@ class AnnotatedPropertyEditorTest {
         assertEquals(.25, n2.activation)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `test consistency of large selections`() {
+        val neurons = List(10_000) { Neuron().apply { activation = .5 } }
+        val prop = Neuron::class.declaredMemberProperties.first { it.name == "activation" }
+        val consistent = AnnotatedPropertyEditor(neurons)
+        assertEquals(true, (consistent.propertyNameWidgetMap[prop.name] as NumericWidget).isConsistent)
+        neurons.last().activation = .6
+        val inconsistent = AnnotatedPropertyEditor(neurons)
+        assertEquals(false, (inconsistent.propertyNameWidgetMap[prop.name] as NumericWidget).isConsistent)
+    }
+
+    @Test
+    fun `test commit to large selection`() {
+        val neurons = List(10_000) { Neuron() }
+        val ape = AnnotatedPropertyEditor(neurons)
+        val prop = Neuron::class.declaredMemberProperties.first { it.name == "activation" }
+        (ape.propertyNameWidgetMap[prop.name] as NumericWidget).widget.value = .25
+        ape.commitChanges()
+        assertEquals(true, neurons.all { it.activation == .25 })
+    }
+
+}
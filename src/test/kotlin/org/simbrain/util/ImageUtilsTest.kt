@@ -0,0 +1,42 @@
+package org.simbrain.util
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import smile.math.matrix.Matrix
+import java.awt.Color
+
+class ImageUtilsTest {
+
+    @Test
+    fun `color table matches direct color conversion`() {
+        listOf(-2.0, -1.0, -0.5, 0.0, 0.25, 1.0, 3.0).forEach {
+            assertEquals(it.toSimbrainColor(), it.toSimbrainColorFromTable())
+        }
+    }
+
+    @Test
+    fun `array image matches simbrain color image and skips unchanged values`() {
+        val values = doubleArrayOf(-1.0, -0.5, 0.0, 0.5, 1.0)
+        val arrayImage = ArrayImage(3, 2)
+        assertTrue(arrayImage.drawSimbrainColors(Matrix.column(values)))
+        val expected = values.toSimbrainColorImage(3, 2)
+        for (y in 0 until 2) {
+            for (x in 0 until 3) {
+                assertEquals(expected.getRGB(x, y), arrayImage.image.getRGB(x, y))
+            }
+        }
+        assertFalse(arrayImage.drawSimbrainColors(Matrix.column(values)))
+        values[2] = 0.75
+        assertTrue(arrayImage.drawSimbrainColors(Matrix.column(values)))
+        assertEquals(0.75.toSimbrainColor() or (0xff shl 24), arrayImage.image.getRGB(2, 0))
+    }
+
+    @Test
+    fun `array image overlay is transparent where there are no spikes`() {
+        val arrayImage = ArrayImage(2, 2, alpha = true)
+        assertTrue(arrayImage.drawOverlay(booleanArrayOf(true, false, false, true), Color.YELLOW))
+        assertEquals(Color.YELLOW.rgb, arrayImage.image.getRGB(0, 0))
+        assertEquals(0, arrayImage.image.getRGB(1, 0))
+        assertFalse(arrayImage.drawOverlay(booleanArrayOf(true, false, false, true), Color.YELLOW))
+    }
+}
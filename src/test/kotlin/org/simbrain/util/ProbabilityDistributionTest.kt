@@ -294,4 +294,32 @@ class ProbabilityDistributionTest {
             assertNotEquals(deserialized1.sampleDouble(), deserialized2.sampleDouble())
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `bulk samples match single samples`() {
+        listOf(NormalDistribution(1.0, 2.0), UniformRealDistribution(-1.0, 3.0), PoissonDistribution()).forEach {
+            it.randomSeed = 1
+            val single = DoubleArray(10) { _ -> it.sampleDouble() }
+            it.randomSeed = 1
+            val bulk = DoubleArray(12)
+            it.sampleDouble(bulk, 1, 10)
+            assertArrayEquals(single, bulk.copyOfRange(1, 11))
+            assertEquals(0.0, bulk[0])
+            assertEquals(0.0, bulk[11])
+        }
+    }
+
+    @Test
+    fun `streams do not depend on what was sampled before`() {
+        val dist = NormalDistribution()
+        dist.setStream(5, 2, 7)
+        val first = dist.sampleDouble(5)
+        dist.setStream(5, 3, 7)
+        val other = dist.sampleDouble(5)
+        dist.setStream(5, 2, 7)
+        assertArrayEquals(first, dist.sampleDouble(5))
+        assertFalse(first.contentEquals(other))
+        dist.setStream(5, 2, 8)
+        assertFalse(first.contentEquals(dist.sampleDouble(5)))
+    }
+}
@@ -0,0 +1,82 @@
+package org.simbrain.util.geneticalgorithm
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.simbrain.workspace.Workspace
+import java.io.File
+import kotlin.math.abs
+import kotlin.random.Random
+
+class DriftGenome(var value: Double, val random: Random)
+
+class DriftSim(val driftGenome: DriftGenome) : DistributableEvoSim {
+    override val factory = DriftSimFactory::class
+    override fun genome() = driftGenome
+    override fun mutate() {
+        driftGenome.value += driftGenome.random.nextDouble(-1.0, 1.0)
+    }
+    override suspend fun build() {}
+    override fun visualize(workspace: Workspace) = this
+    override fun copy() = DriftSim(DriftGenome(driftGenome.value, Random(driftGenome.random.nextLong())))
+    override suspend fun eval() = -abs(driftGenome.value - 10.0)
+}
+
+class DriftSimFactory : EvoSimFactory {
+    override fun create(genome: Any) = DriftSim(genome as DriftGenome)
+}
+
+class GeneticCheckpointerTest {
+
+    private fun run(lastGeneration: Int, checkpointer: GeneticCheckpointer?) = runBlocking {
+        evaluator(
+            populatingFunction = { DriftSim(DriftGenome(0.0, Random(seed))) },
+            populationSize = 10,
+            eliminationRatio = 0.5,
+            stoppingFunction = { generation >= lastGeneration },
+            seed = 42,
+            checkpointer = checkpointer
+        ).map { (it as DriftSim).driftGenome.value }
+    }
+
+    @Test
+    fun `resumed run matches uninterrupted run`(@TempDir dir: File) {
+        val uninterrupted = run(6, null)
+        val checkpointFile = File(dir, "run.zip")
+        run(3, GeneticCheckpointer(checkpointFile, interval = 1))
+        val resumed = run(6, GeneticCheckpointer(checkpointFile, interval = 1))
+        assertEquals(uninterrupted, resumed)
+    }
+
+    @Test
+    fun `statistics are appended each generation`(@TempDir dir: File) {
+        val statisticsFile = File(dir, "stats.csv")
+        run(4, GeneticCheckpointer(File(dir, "run.zip"), interval = 2, statisticsFile = statisticsFile))
+        val lines = statisticsFile.readLines()
+        assertEquals("generation,best,p25,median,p75,worst,mean", lines.first())
+        assertEquals(listOf("1", "2", "3", "4"), lines.drop(1).map { it.substringBefore(",") })
+    }
+
+    @Test
+    fun `run stopped between checkpoints resumes from where it stopped`(@TempDir dir: File) {
+        val uninterrupted = run(6, null)
+        val checkpointFile = File(dir, "run.zip")
+        val statisticsFile = File(dir, "stats.csv")
+        run(4, GeneticCheckpointer(checkpointFile, interval = 3, statisticsFile = statisticsFile))
+        val resumed = run(6, GeneticCheckpointer(checkpointFile, interval = 3, statisticsFile = statisticsFile))
+        assertEquals(uninterrupted, resumed)
+        assertEquals((1..6).map { "$it" }, statisticsFile.readLines().drop(1).map { it.substringBefore(",") })
+    }
+
+    @Test
+    fun `statistics after the checkpoint are removed on resume`(@TempDir dir: File) {
+        val checkpointFile = File(dir, "run.zip")
+        val statisticsFile = File(dir, "stats.csv")
+        run(3, GeneticCheckpointer(checkpointFile, interval = 3, statisticsFile = statisticsFile))
+        // As if the run had crashed after writing statistics for generation 4 but before checkpointing it
+        statisticsFile.appendText("4,0,0,0,0,0,0\n")
+        run(5, GeneticCheckpointer(checkpointFile, interval = 3, statisticsFile = statisticsFile))
+        assertEquals((1..5).map { "$it" }, statisticsFile.readLines().drop(1).map { it.substringBefore(",") })
+    }
+}
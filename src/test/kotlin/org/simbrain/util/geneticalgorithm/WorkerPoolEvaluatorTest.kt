@@ -0,0 +1,123 @@
+package org.simbrain.util.geneticalgorithm
+
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.simbrain.util.getSimbrainXStream
+import org.simbrain.workspace.Workspace
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.*
+import java.util.concurrent.TimeUnit
+import kotlin.system.exitProcess
+
+class SquareSim(val x: Double) : EvoSim {
+    override fun mutate() {}
+    override suspend fun build() {}
+    override fun visualize(workspace: Workspace) = this
+    override fun copy() = SquareSim(x)
+    override suspend fun eval() = x * x
+}
+
+class SquareSimFactory : EvoSimFactory {
+    override fun create(genome: Any) = SquareSim(genome as Double)
+}
+
+/**
+ * Fails its first [failures] evaluations by hanging or crashing the worker, then returns the attempt number. Each
+ * attempt appends the worker's pid to [attemptLog], so the log survives the worker being killed.
+ */
+class FlakySim(val attemptLog: String, val failures: Int, val failure: String) : DistributableEvoSim {
+    override val factory = FlakySimFactory::class
+    override fun genome() = "$attemptLog|$failures|$failure"
+    override fun mutate() {}
+    override suspend fun build() {}
+    override fun visualize(workspace: Workspace) = this
+    override fun copy() = FlakySim(attemptLog, failures, failure)
+    override suspend fun eval(): Double {
+        val log = File(attemptLog)
+        log.appendText("${ProcessHandle.current().pid()}\n")
+        val attempt = log.readLines().size
+        if (attempt <= failures) {
+            when (failure) {
+                "hang" -> awaitCancellation()
+                "crash" -> exitProcess(1)
+            }
+        }
+        return attempt.toDouble()
+    }
+}
+
+class FlakySimFactory : EvoSimFactory {
+    override fun create(genome: Any): EvoSim {
+        val (attemptLog, failures, failure) = (genome as String).split("|")
+        return FlakySim(attemptLog, failures.toInt(), failure)
+    }
+}
+
+class WorkerPoolEvaluatorTest {
+
+    private fun encode(genome: Any) = Base64.getEncoder().encodeToString(getSimbrainXStream().toXML(genome).toByteArray())
+
+    @Test
+    fun `worker evaluates each request and reports fitness by id`() {
+        val factory = SquareSimFactory::class.java.name
+        val requests = "3 $factory ${encode(2.0)}\n7 $factory ${encode(-3.0)}\n"
+        val output = ByteArrayOutputStream()
+        runEvaluationWorker(requests.byteInputStream(), output)
+        val responses = output.toString().lines().filter { it.isNotBlank() }.map { it.split(" ") }
+        assertEquals(listOf("3", "7"), responses.map { it[0] })
+        assertEquals(listOf(4.0, 9.0), responses.map { it[1].toDouble() })
+    }
+
+    @Test
+    fun `worker reports errors without stopping`() {
+        val requests = "1 not.a.Factory ${encode(1.0)}\n2 ${SquareSimFactory::class.java.name} ${encode(1.5)}\n"
+        val output = ByteArrayOutputStream()
+        runEvaluationWorker(requests.byteInputStream(), output)
+        val responses = output.toString().lines().filter { it.isNotBlank() }
+        assertEquals("1 error", responses[0])
+        assertEquals(2.25, responses[1].split(" ")[1].toDouble())
+    }
+
+    private fun evaluate(evaluator: WorkerPoolEvaluator, sim: EvoSim) = evaluator.use {
+        runBlocking { it.evaluate(listOf(sim), -1.0) }.single() to it.lastResults.single()
+    }
+
+    private fun workerPids(log: File) = log.readLines().map { it.toLong() }
+
+    @Test
+    fun `hung worker is killed and the evaluation retried`(@TempDir dir: File) {
+        val log = File(dir, "attempts")
+        val evaluator = WorkerPoolEvaluator(workerCount = 1, timeoutMillis = 10_000, maxRetries = 2, jvmArgs = listOf())
+        val (fitness, result) = evaluate(evaluator, FlakySim(log.path, 1, "hang"))
+        assertEquals(2.0, fitness)
+        assertEquals(2, result.attempts)
+        val pids = workerPids(log)
+        assertEquals(2, pids.distinct().size)
+        // Killing is asynchronous, so wait for the hung worker to exit; this times out if it was left running
+        ProcessHandle.of(pids[0]).ifPresent { it.onExit().get(10, TimeUnit.SECONDS) }
+    }
+
+    @Test
+    fun `crashed worker is replaced and the evaluation retried`(@TempDir dir: File) {
+        val log = File(dir, "attempts")
+        val evaluator = WorkerPoolEvaluator(workerCount = 1, timeoutMillis = 30_000, maxRetries = 2, jvmArgs = listOf())
+        val (fitness, result) = evaluate(evaluator, FlakySim(log.path, 2, "crash"))
+        assertEquals(3.0, fitness)
+        assertEquals(3, result.attempts)
+        assertEquals(3, workerPids(log).distinct().size)
+    }
+
+    @Test
+    fun `evaluation that keeps failing gets the worst fitness`(@TempDir dir: File) {
+        val log = File(dir, "attempts")
+        val evaluator = WorkerPoolEvaluator(workerCount = 1, timeoutMillis = 30_000, maxRetries = 1, jvmArgs = listOf())
+        val (fitness, result) = evaluate(evaluator, FlakySim(log.path, 5, "crash"))
+        assertEquals(-1.0, fitness)
+        assertEquals(2, result.attempts)
+        assertEquals(2, workerPids(log).size)
+    }
+}
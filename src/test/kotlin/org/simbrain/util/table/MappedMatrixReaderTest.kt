@@ -0,0 +1,88 @@
+package org.simbrain.util.table
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.junit.jupiter.api.io.TempDir
+import smile.math.matrix.Matrix
+import java.io.File
+import kotlin.random.Random
+
+class MappedMatrixReaderTest {
+
+    @TempDir
+    lateinit var dir: File
+
+    @Test
+    fun `names, comments, blank lines and quotes are handled`() {
+        val file = File(dir, "small.csv").apply {
+            writeText("# a comment\n\"\",\"a\",\"b\"\nfirst, 1.5, -2\r\n\n# another\nsecond,\"3e2\",\n")
+        }
+        val table = readCsvMatrix(file, ImportExportOptions(includeColumnNames = true, includeRowNames = true))
+        assertEquals(listOf("a", "b"), table.columnNames)
+        assertEquals(listOf("first", "second"), table.rowNames)
+        assertEquals(2, table.data.nrow())
+        assertEquals(1.5, table.data[0, 0])
+        assertEquals(-2.0, table.data[0, 1])
+        assertEquals(300.0, table.data[1, 0])
+        assertTrue(table.data[1, 1].isNaN())
+    }
+
+    @Test
+    fun `large files parsed in parallel match the values written`() {
+        val random = Random(1)
+        val rows = 20000
+        val columns = 12
+        val values = Array(rows) { r ->
+            DoubleArray(columns) { c ->
+                when (c % 4) {
+                    0 -> random.nextDouble()
+                    1 -> random.nextInt(-1000, 1000).toDouble()
+                    2 -> random.nextDouble() * 1e-7
+                    else -> (random.nextDouble() - 0.5) * 1e12
+                }
+            }
+        }
+        val file = File(dir, "large.csv").apply {
+            bufferedWriter().use { writer ->
+                values.forEach { writer.write(it.joinToString(",")); writer.newLine() }
+            }
+        }
+        assertTrue(file.length() > 1 shl 20)
+        val data = readCsvMatrix(file, chunkCount = 7).data
+        assertEquals(rows, data.nrow())
+        assertEquals(columns, data.ncol())
+        for (r in 0 until rows) {
+            for (c in 0 until columns) {
+                assertEquals(values[r][c], data[r, c])
+            }
+        }
+    }
+
+    @Test
+    fun `ragged rows and non-numeric values are rejected`() {
+        val ragged = File(dir, "ragged.csv").apply { writeText("1,2\n3\n") }
+        assertThrows<IllegalArgumentException> { readCsvMatrix(ragged) }
+        val text = File(dir, "text.csv").apply { writeText("1,2\n3,x\n") }
+        assertThrows<IllegalArgumentException> { readCsvMatrix(text) }
+    }
+
+    @Test
+    fun `binary matrices round trip`() {
+        val random = Random(2)
+        val matrix = Matrix.of(Array(1000) { DoubleArray(7) { random.nextDouble() } })
+        val file = File(dir, "matrix.bin")
+        writeBinaryMatrix(matrix, file)
+        assertEquals(1000L * 7 * 8, file.length())
+        val read = readBinaryMatrix(file, 7)
+        assertArrayEquals(matrix.toArray(), read.toArray())
+    }
+
+    @Test
+    fun `matrix data frame arrays come from the matrix`() {
+        val frame = MatrixDataFrame(Matrix.of(arrayOf(doubleArrayOf(1.0, 2.0), doubleArrayOf(3.0, 4.0))))
+        assertArrayEquals(doubleArrayOf(2.0, 4.0), frame.getDoubleColumn(1))
+        assertArrayEquals(arrayOf(doubleArrayOf(1.0, 3.0), doubleArrayOf(2.0, 4.0)), frame.getColumnMajorArray())
+        assertArrayEquals(arrayOf(doubleArrayOf(1.0, 2.0), doubleArrayOf(3.0, 4.0)), frame.get2DDoubleArray())
+    }
+}
@@ -1,14 +1,24 @@
 package org.simbrain.workspace
 
 
+import kotlinx.coroutines.job
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
 import org.simbrain.network.NetworkComponent
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.Neuron
+import org.simbrain.network.updaterules.LinearRule
+import org.simbrain.network.util.EmptyScalarData
+import org.simbrain.plot.timeseries.TimeSeriesPlotComponent
 import org.simbrain.util.complement
 import org.simbrain.workspace.couplings.Coupling
+import org.simbrain.workspace.updater.PipelinedUpdateAction
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import javax.swing.SwingUtilities
+import kotlin.concurrent.thread
 
 class CouplingTest {
 
@@ -241,4 +251,149 @@ class CouplingTest {
         assertEquals(.5, neuron2.activation, 0.0)
         assertEquals(.5, neuron3.activation, 0.0)
     }
+
+    @Test
+    fun `coupling plan separates independent components and orders dependent couplings`() {
+        val neuron1 = Neuron().also { network.addNetworkModel(it) }
+        val network2 = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net2", it)) }
+        val neuron2 = Neuron().also { network2.addNetworkModel(it) }
+        val network3 = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net3", it)) }
+        val neuron3 = Neuron().also { network3.addNetworkModel(it) }
+        val network4 = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net4", it)) }
+        val neuron4 = Neuron().also { network4.addNetworkModel(it) }
+
+        with(couplingManager) {
+            // net1 -> net2 and net3 -> net4 are independent, so they share a level
+            val c12 = createCoupling(neuron1.getProducer("getActivation"), neuron2.getConsumer("addInputValue"))
+            val c34 = createCoupling(neuron3.getProducer("getActivation"), neuron4.getConsumer("addInputValue"))
+            // net2 is written in level 0, so reading from it must wait for level 1
+            val c23 = createCoupling(neuron2.getProducer("getActivation"), neuron3.getConsumer("addInputValue"))
+
+            val levels = plan.levels
+            assertEquals(2, levels.size)
+            assertEquals(setOf(listOf(c12), listOf(c34)), levels[0].toSet())
+            assertEquals(listOf(listOf(c23)), levels[1])
+            assertEquals(1, plan.readyAfterLevel(workspace.getComponent("net2")!!))
+            assertEquals(0, plan.readyAfterLevel(workspace.getComponent("net4")!!))
+        }
+    }
+
+    @Test
+    fun `coupling plan is recompiled when couplings change`() {
+        val neuron1 = Neuron().also { network.addNetworkModel(it) }
+        val network2 = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net2", it)) }
+        val neuron2 = Neuron().also { network2.addNetworkModel(it) }
+        with(couplingManager) {
+            assertEquals(0, plan.levels.size)
+            val coupling = createCoupling(neuron1.getProducer("getActivation"), neuron2.getConsumer("addInputValue"))
+            assertEquals(listOf(listOf(listOf(coupling))), plan.levels)
+            removeCoupling(coupling)
+            assertEquals(0, plan.levels.size)
+        }
+    }
+
+    @Test
+    fun `pipelined update gives the same values as the default update`() {
+        fun runChain(pipelined: Boolean): List<Double> {
+            val workspace = Workspace()
+            val neurons = (1..3).map { i ->
+                val network = Network()
+                workspace.addWorkspaceComponent(NetworkComponent("net$i", network))
+                Neuron().also { network.addNetworkModel(it) }
+            }
+            neurons[0].clamped = true
+            neurons[0].activation = 0.5
+            with(workspace.couplingManager) {
+                createCoupling(neurons[0].getProducer("getActivation"), neurons[1].getConsumer("addInputValue"))
+                createCoupling(neurons[1].getProducer("getActivation"), neurons[2].getConsumer("addInputValue"))
+            }
+            if (pipelined) {
+                with(workspace.updater.updateManager) {
+                    clear()
+                    addAction(PipelinedUpdateAction(workspace.updater))
+                }
+            }
+            return (1..3).flatMap {
+                workspace.simpleIterate(1)
+                neurons.map { it.activation }
+            }
+        }
+        assertEquals(runChain(false), runChain(true))
+    }
+
+    @Test
+    fun `lagging pipeline stage records the time of the tick it processes`() {
+        val workspace = Workspace()
+        val network = Network()
+        workspace.addWorkspaceComponent(NetworkComponent("net", network))
+        val neuron = Neuron().also { network.addNetworkModel(it) }
+        val plot = TimeSeriesPlotComponent("plot")
+        workspace.addWorkspaceComponent(plot)
+        val series = plot.addTimeSeries("activation")
+        with(workspace.couplingManager) {
+            createCoupling(neuron.getProducer("getActivation"), series.getConsumer("setValue"))
+        }
+        with(workspace.updater.updateManager) {
+            clear()
+            addAction(PipelinedUpdateAction(workspace.updater, queueCapacity = 4))
+        }
+
+        // Hold the plot stage on the event thread until the network stage has run every tick
+        val release = CountDownLatch(1)
+        SwingUtilities.invokeLater { release.await(10, TimeUnit.SECONDS) }
+        var timeAtRelease = 0
+        thread {
+            while (workspace.updater.time < 3) {
+                Thread.sleep(1)
+            }
+            timeAtRelease = workspace.updater.time
+            release.countDown()
+        }
+        workspace.simpleIterate(3)
+
+        assertEquals(3, timeAtRelease)
+        assertEquals(listOf(1.0, 2.0, 3.0), (0 until series.series.itemCount).map { series.series.getX(it) })
+    }
+
+    private fun pipelinedWorkspace(): Pair<Workspace, Neuron> {
+        val workspace = Workspace()
+        val neurons = (1..2).map { i ->
+            val network = Network()
+            workspace.addWorkspaceComponent(NetworkComponent("net$i", network))
+            Neuron().also { network.addNetworkModel(it) }
+        }
+        with(workspace.couplingManager) {
+            createCoupling(neurons[0].getProducer("getActivation"), neurons[1].getConsumer("addInputValue"))
+        }
+        with(workspace.updater.updateManager) {
+            clear()
+            addAction(PipelinedUpdateAction(workspace.updater))
+        }
+        return workspace to neurons[1]
+    }
+
+    @Test
+    fun `clearing the workspace stops the pipeline stages`() {
+        val (workspace) = pipelinedWorkspace()
+        val workspaceJob = workspace.coroutineContext.job
+        val before = workspaceJob.children.toSet()
+        workspace.simpleIterate(2)
+        val pipelineJobs = workspaceJob.children.toSet() - before
+        assertTrue(pipelineJobs.any { it.isActive })
+        workspace.clearWorkspace()
+        assertTrue(pipelineJobs.none { it.isActive })
+    }
+
+    @Test
+    fun `pipeline stage errors reach the caller of the update`() {
+        val (workspace, downstream) = pipelinedWorkspace()
+        downstream.updateRule = object : LinearRule() {
+            context(Network)
+            override fun apply(neuron: Neuron, data: EmptyScalarData) {
+                throw IllegalStateException("Stage failed")
+            }
+        }
+        val error = assertThrows<IllegalStateException> { workspace.simpleIterate(3) }
+        assertEquals("Stage failed", error.message)
+    }
 }
@@ -0,0 +1,112 @@
+package org.simbrain.workspace.batch
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.simbrain.network.NetworkComponent
+import org.simbrain.network.core.addNeurons
+import org.simbrain.network.updaterules.LinearRule
+import org.simbrain.util.stats.distributions.NormalDistribution
+import org.simbrain.workspace.Workspace
+import java.io.File
+
+class BatchRunnerTest {
+
+    @Test
+    fun `runs every combination of parameters, seeds and replicas`() {
+        val container = ContainerPath("Network", "Neuron_1")
+        val spec = SweepSpec(
+            iterations = 1,
+            replicas = 2,
+            seeds = listOf(1, 2, 3),
+            parameters = listOf(
+                SweepParameter(container, listOf("bias"), listOf("0.1", "0.2")),
+                SweepParameter(container, listOf("updateRule", "slope"), listOf("1", "2"))
+            )
+        )
+        assertEquals(2 * 2 * 3 * 2, spec.runs().size)
+        assertEquals((0 until 24).toList(), spec.runs().map { it.index })
+    }
+
+    @Test
+    fun `sweeps a user parameter and records a producer`(@TempDir dir: File) {
+        val workspace = Workspace()
+        val networkComponent = NetworkComponent("Network")
+        workspace.addWorkspaceComponent(networkComponent)
+        val (neuron) = runBlocking { networkComponent.network.addNeurons(1) }
+        val container = ContainerPath("Network", neuron.id!!)
+
+        val spec = SweepSpec(
+            iterations = 3,
+            threads = 2,
+            parameters = listOf(SweepParameter(container, listOf("bias"), listOf("0.5", "0.7"))),
+            outputs = listOf(RecordedOutput("activation", container, "getActivation"))
+        )
+        val iterations = BatchRunner(workspace.zipDataHeadless!!, spec, dir).run { }
+        assertEquals(6, iterations)
+
+        listOf(0.5, 0.7).forEachIndexed { index, bias ->
+            val rows = File(dir, "run_$index.csv").readLines().drop(2)
+            assertEquals(3, rows.size)
+            assertEquals(bias, rows.last().split(",")[1].toDouble(), 1e-9)
+        }
+    }
+
+    @Test
+    fun `runs with the same seed give the same noisy output`(@TempDir dir: File) {
+        val workspace = Workspace()
+        val networkComponent = NetworkComponent("Network")
+        workspace.addWorkspaceComponent(networkComponent)
+        val (neuron) = runBlocking { networkComponent.network.addNeurons(1) }
+        neuron.updateRule = LinearRule().apply {
+            addNoise = true
+            noiseGenerator = NormalDistribution()
+        }
+        val container = ContainerPath("Network", neuron.id!!)
+        val spec = SweepSpec(
+            iterations = 20,
+            replicas = 2,
+            seeds = listOf(7),
+            outputs = listOf(RecordedOutput("activation", container, "getActivation"))
+        )
+
+        fun runAll(name: String): List<List<String>> {
+            val output = File(dir, name)
+            BatchRunner(workspace.zipDataHeadless!!, spec, output).run { }
+            return (0 until 2).map { File(output, "run_$it.csv").readLines() }
+        }
+
+        val first = runAll("first")
+        val second = runAll("second")
+        assertEquals(first, second)
+        assertNotEquals(first[0].drop(2), first[1].drop(2))
+        assertNotEquals(1, first[0].drop(2).map { it.split(",")[1] }.toSet().size)
+    }
+
+    @Test
+    fun `distinct seed and replica pairs give distinct streams`(@TempDir dir: File) {
+        assertNotEquals(BatchRunner.replicaSeed(1, 1), BatchRunner.replicaSeed(2, 0))
+
+        val workspace = Workspace()
+        val networkComponent = NetworkComponent("Network")
+        workspace.addWorkspaceComponent(networkComponent)
+        val (neuron) = runBlocking { networkComponent.network.addNeurons(1) }
+        neuron.updateRule = LinearRule().apply {
+            addNoise = true
+            noiseGenerator = NormalDistribution()
+        }
+        val container = ContainerPath("Network", neuron.id!!)
+        val spec = SweepSpec(
+            iterations = 10,
+            replicas = 2,
+            seeds = listOf(1, 2),
+            outputs = listOf(RecordedOutput("activation", container, "getActivation"))
+        )
+        BatchRunner(workspace.zipDataHeadless!!, spec, dir).run { }
+        // Runs are seed 1 replica 0, seed 1 replica 1, seed 2 replica 0 and seed 2 replica 1
+        val outputs = (0 until 4).map { File(dir, "run_$it.csv").readLines().drop(2) }
+        assertEquals(4, outputs.toSet().size)
+    }
+}
@@ -1,14 +1,21 @@
 package org.simbrain.world.odorworld
 
 import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Assertions.assertArrayEquals
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
+import org.simbrain.util.SmellSource
+import org.simbrain.util.decayfunctions.GaussianDecayFunction
+import org.simbrain.util.decayfunctions.LinearDecayFunction
+import org.simbrain.util.decayfunctions.StepDecayFunction
 import org.simbrain.util.point
 import org.simbrain.world.odorworld.effectors.StraightMovement
 import org.simbrain.world.odorworld.entities.EntityType
 import org.simbrain.world.odorworld.entities.OdorWorldEntity
 import org.simbrain.world.odorworld.sensors.ObjectSensor
+import org.simbrain.world.odorworld.sensors.SmellSensor
 import java.io.ByteArrayInputStream
 import java.io.InputStream
 import java.nio.charset.StandardCharsets
@@ -57,4 +64,32 @@ class OdorWorldTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `smell field matches smell computed by each sensor`() {
+        val entities = (0 until 12).map { i ->
+            OdorWorldEntity(world, EntityType.MOUSE).apply {
+                location = point(i * 37 % 200, i * 53 % 150)
+                smellSource = SmellSource(DoubleArray(2 + i % 3) { it + i * 0.5 })
+                smellSource.decayFunction = when (i % 3) {
+                    0 -> LinearDecayFunction(80.0)
+                    1 -> StepDecayFunction()
+                    else -> GaussianDecayFunction(60.0).apply { peakDistance = 20.0 }
+                }
+                addSensor(SmellSensor("Left", 45.0, 20.0))
+                addSensor(SmellSensor("Right", -45.0, 20.0))
+                world.addEntity(this)
+            }
+        }
+        world.smellField.update(world.entityList)
+        val fromField = entities.map { e -> e.sensors.map { (it as SmellSensor).smellVector.copyOf() } }
+        world.smellField.clear()
+        entities.forEachIndexed { i, e ->
+            e.sensors.forEachIndexed { j, sensor ->
+                sensor.update(e)
+                assertArrayEquals((sensor as SmellSensor).smellVector, fromField[i][j], 1e-12)
+            }
+        }
+        assertTrue(fromField.flatten().any { it.sum() > 0.0 })
+    }
+
+}
@@ -1,7 +1,9 @@
 package org.simbrain.world.odorworld
 
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
 import org.junit.jupiter.api.Test
+import org.simbrain.util.decayfunctions.LinearDecayFunction
 import org.simbrain.util.piccolo.*
 
 class TileMapTest {
@@ -70,4 +72,27 @@ class TileMapTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `scent field matches direct sum and is updated when tiles change`() {
+        val decayFunction = LinearDecayFunction(150.0)
+        with(world.tileMap) {
+            clear()
+            val gid = 25
+            val type = getTile(gid).type
+            listOf(2 to 3, 3 to 3, 10 to 1, 0 to 0).forEach { (x, y) -> setTile(x, y, gid) }
+            val kernel = ScentKernel.create(this, type, decayFunction)
+            fun directSum(x: Int, y: Int) = getRelativeGridLocationsInRadius(decayFunction.dispersion)
+                .filter { o -> getTileStackAt(x + o.x.toInt(), y + o.y.toInt()).any { it.type == type } }
+                .sumOf { o -> decayFunction.getScalingFactor(o.toPixelCoordinate().distance(GridCoordinate(0, 0).toPixelCoordinate())) }
+            for (y in 0 until height) {
+                for (x in 0 until width) {
+                    assertEquals(directSum(x, y), getScentAtPixel(kernel, x * 32.0 + 5, y * 32.0 + 20), 1e-9)
+                }
+            }
+            assertSame(getScentField(kernel), getScentField(ScentKernel.create(this, type, decayFunction)))
+            setTile(5, 5, gid)
+            assertEquals(directSum(5, 5), getScentField(kernel)[5 * width + 5], 1e-9)
+        }
+    }
+
+}